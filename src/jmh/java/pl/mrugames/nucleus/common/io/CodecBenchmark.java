@@ -0,0 +1,161 @@
+package pl.mrugames.nucleus.common.io;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import pl.mrugames.nucleus.server.client.frames.BufferFrame;
+import pl.mrugames.nucleus.server.client.frames.WebSocketFrame;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every reader and writer pair of the non-blocking sockets, {@value #FRAMES} frames per operation.
+ * <p>
+ * Reads are done on a buffer holding all frames ({@code coalesced}), or on a buffer which is filled a few bytes
+ * at a time ({@code split}), so every frame is completed by one of several reads, as with a slow network.
+ * {@link TextReader} returns whatever is in the buffer, so it reads fewer, larger frames when they are coalesced.
+ * <p>
+ * Run with {@code -prof gc} to see allocation per operation, the Gradle task adds it by default.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    static final int FRAMES = 16;
+
+    private static final int SEGMENTS_PER_FRAME = 4;
+    private static final int FRAME_OVERHEAD = 256;
+
+    @State(Scope.Thread)
+    public abstract static class CodecState {
+        @Param({"line", "text", "byte", "lengthPrefixed", "object", "compactObject", "webSocket"})
+        String codec;
+
+        @Param({"16", "1024", "65536"})
+        int frameSize;
+
+        ByteBuffer buffer;
+        ClientWriter<Serializable> writer;
+        ClientReader<? extends Serializable> reader;
+        Serializable frame;
+
+        @SuppressWarnings("unchecked")
+        void createCodec() {
+            buffer = ByteBuffer.allocate(FRAMES * (frameSize + FRAME_OVERHEAD));
+
+            byte[] payload = new byte[frameSize];
+            Arrays.fill(payload, (byte) 'a');
+            String text = new String(payload);
+
+            switch (codec) {
+                case "line":
+                    writer = (ClientWriter) new LineWriter(buffer);
+                    reader = new LineReader(buffer, frameSize);
+                    frame = text;
+                    break;
+                case "text":
+                    writer = (ClientWriter) new TextWriter(buffer);
+                    reader = new TextReader(buffer);
+                    frame = text;
+                    break;
+                case "byte":
+                    writer = (ClientWriter) new ByteWriter(buffer);
+                    reader = new ByteReader(buffer);
+                    frame = payload;
+                    break;
+                case "lengthPrefixed":
+                    writer = (ClientWriter) new LengthPrefixedWriter(buffer);
+                    reader = new LengthPrefixedReader(buffer);
+                    frame = new BufferFrame(ByteBuffer.wrap(payload));
+                    break;
+                case "object":
+                    writer = new ObjectWriter<>(buffer);
+                    reader = new ObjectReader<>(buffer);
+                    frame = text;
+                    break;
+                case "compactObject":
+                    CompactSerializer serializer = new CompactSerializer.Builder().build();
+                    writer = new ObjectWriter<>(buffer, serializer);
+                    reader = new ObjectReader<>(buffer, serializer);
+                    frame = text;
+                    break;
+                case "webSocket":
+                    writer = (ClientWriter) new WebSocketWriter(buffer);
+                    reader = new WebSocketReader(buffer);
+                    frame = new WebSocketFrame(WebSocketFrame.FrameType.BINARY, payload);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown codec: " + codec);
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class WriteState extends CodecState {
+        @Setup
+        public void setup() {
+            createCodec();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ReadState extends CodecState {
+        @Param({"coalesced", "split"})
+        String arrival;
+
+        int encodedLength;
+        int segment;
+
+        @Setup
+        public void setup() throws Exception {
+            createCodec();
+
+            for (int i = 0; i < FRAMES; ++i) {
+                writer.write(frame);
+            }
+
+            encodedLength = buffer.position();
+            segment = arrival.equals("split") ? Math.max(1, encodedLength / (FRAMES * SEGMENTS_PER_FRAME)) : encodedLength;
+            buffer.flip();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public int write(WriteState state) throws Exception {
+        ByteBuffer buffer = state.buffer;
+        buffer.clear();
+
+        for (int i = 0; i < FRAMES; ++i) {
+            state.writer.write(state.frame);
+        }
+
+        return buffer.position();
+    }
+
+    /**
+     * The buffer is not compacted between reads, only its limit moves, so the cost of the socket read is not included.
+     */
+    @Benchmark
+    @OperationsPerInvocation(FRAMES)
+    public void read(ReadState state, Blackhole blackhole) throws Exception {
+        ByteBuffer buffer = state.buffer;
+        ClientReader<? extends Serializable> reader = state.reader;
+
+        buffer.position(0);
+        int limit = 0;
+
+        while (limit < state.encodedLength) {
+            limit = Math.min(state.encodedLength, limit + state.segment);
+            buffer.limit(limit);
+
+            while (reader.isReady()) {
+                blackhole.consume(reader.read());
+            }
+        }
+    }
+}
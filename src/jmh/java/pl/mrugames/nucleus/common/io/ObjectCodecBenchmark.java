@@ -0,0 +1,126 @@
+package pl.mrugames.nucleus.common.io;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Round trip of a frame through the object protocol codecs: write into the buffer, then read it back.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ObjectCodecBenchmark {
+    public static class Quote implements Serializable {
+        private final long id;
+        private final String symbol;
+        private final double price;
+        private final int quantity;
+
+        public Quote(long id, String symbol, double price, int quantity) {
+            this.id = id;
+            this.symbol = symbol;
+            this.price = price;
+            this.quantity = quantity;
+        }
+    }
+
+    private final Quote quote = new Quote(123456789L, "EURUSD", 1.08345, 250);
+
+    private ByteBuffer buffer;
+    private ObjectWriter<Quote> javaWriter;
+    private ObjectReader<Quote> javaReader;
+    private ObjectWriter<Quote> compactWriter;
+    private ObjectReader<Quote> compactReader;
+
+    @Setup
+    public void setup() {
+        buffer = ByteBuffer.allocate(4096);
+
+        javaWriter = new ObjectWriter<>(buffer);
+        javaReader = new ObjectReader<>(buffer);
+
+        CompactSerializer serializer = new CompactSerializer.Builder()
+                .register(Quote.class, 16, new CompactSerializer.Codec<Quote>() {
+                    @Override
+                    public void write(Quote value, ByteBuffer target) {
+                        CompactSerializer.putVarLong(target, value.id);
+                        CompactSerializer.putString(target, value.symbol);
+                        target.putDouble(value.price);
+                        CompactSerializer.putVarInt(target, value.quantity);
+                    }
+
+                    @Override
+                    public Quote read(ByteBuffer source) {
+                        return new Quote(CompactSerializer.getVarLong(source), CompactSerializer.getString(source), source.getDouble(), CompactSerializer.getVarInt(source));
+                    }
+                })
+                .build();
+
+        compactWriter = new ObjectWriter<>(buffer, serializer);
+        compactReader = new ObjectReader<>(buffer, serializer);
+    }
+
+    /**
+     * Java serialization through intermediate arrays, as the object codecs did before the serializer was pluggable.
+     */
+    @Benchmark
+    public Object javaSerializationWithArrays() throws Exception {
+        buffer.clear();
+
+        byte[] bytes;
+        try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+             ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream)) {
+            objectOutputStream.writeObject(quote);
+            bytes = byteArrayOutputStream.toByteArray();
+        }
+
+        buffer.putInt(bytes.length).put(bytes).flip();
+
+        byte[] frame = new byte[buffer.getInt()];
+        buffer.get(frame);
+
+        try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteArrayInputStream(frame))) {
+            return objectInputStream.readUnshared();
+        }
+    }
+
+    @Benchmark
+    public Object javaSerializer() throws Exception {
+        buffer.clear();
+        javaWriter.write(quote);
+        buffer.flip();
+
+        return javaReader.read();
+    }
+
+    @Benchmark
+    public Object compactSerializer() throws Exception {
+        buffer.clear();
+        compactWriter.write(quote);
+        buffer.flip();
+
+        return compactReader.read();
+    }
+
+    @Benchmark
+    public int javaSerializerWriteOnly() throws Exception {
+        buffer.clear();
+        javaWriter.write(quote);
+
+        return buffer.position();
+    }
+
+    @Benchmark
+    public int compactSerializerWriteOnly() throws Exception {
+        buffer.clear();
+        compactWriter.write(quote);
+
+        return buffer.position();
+    }
+}
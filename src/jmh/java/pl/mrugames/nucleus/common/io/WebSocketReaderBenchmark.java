@@ -0,0 +1,87 @@
+package pl.mrugames.nucleus.common.io;
+
+import org.openjdk.jmh.annotations.*;
+import pl.mrugames.nucleus.server.client.frames.WebSocketFrame;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of a masked client frame, compared with unmasking one byte at a time.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WebSocketReaderBenchmark {
+    private static final byte[] MASK = {(byte) 0xB5, (byte) 0x9C, 0x1E, (byte) 0x93};
+
+    @Param({"16", "1024", "65536"})
+    private int payloadSize;
+
+    @Param({"heap", "direct"})
+    private String bufferType;
+
+    private ByteBuffer buffer;
+    private WebSocketReader reader;
+    private int payloadOffset;
+
+    @Setup
+    public void setup() {
+        byte[] payload = new byte[payloadSize];
+        new Random(payloadSize).nextBytes(payload);
+
+        buffer = bufferType.equals("direct") ? ByteBuffer.allocateDirect(payloadSize + 14) : ByteBuffer.allocate(payloadSize + 14);
+        buffer.put((byte) 0x82);
+
+        if (payloadSize <= 125) {
+            buffer.put((byte) (0x80 | payloadSize));
+        } else if (payloadSize <= 0xFFFF) {
+            buffer.put((byte) (0x80 | 126)).putShort((short) payloadSize);
+        } else {
+            buffer.put((byte) (0x80 | 127)).putLong(payloadSize);
+        }
+
+        buffer.put(MASK);
+        payloadOffset = buffer.position();
+
+        for (int i = 0; i < payloadSize; ++i) {
+            buffer.put((byte) (payload[i] ^ MASK[i % 4]));
+        }
+
+        buffer.flip();
+        reader = new WebSocketReader(buffer);
+    }
+
+    @Benchmark
+    public WebSocketFrame read() throws Exception {
+        buffer.position(0);
+        return reader.read();
+    }
+
+    /**
+     * Unmasking as it was done before word-at-a-time fast path.
+     */
+    @Benchmark
+    public byte[] unmaskByteAtATime() {
+        buffer.position(payloadOffset);
+
+        byte[] payload = new byte[payloadSize];
+        for (int i = 0; i < payloadSize; ++i) {
+            payload[i] = (byte) (buffer.get() ^ MASK[i % 4]);
+        }
+
+        return payload;
+    }
+
+    @Benchmark
+    public byte[] unmaskWordAtATime() {
+        byte[] payload = new byte[payloadSize];
+        WebSocketReader.unmask(buffer, payloadOffset, payload, 0xB59C1E93);
+
+        return payload;
+    }
+}
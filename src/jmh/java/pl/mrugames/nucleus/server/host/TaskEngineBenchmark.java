@@ -0,0 +1,122 @@
+package pl.mrugames.nucleus.server.host;
+
+import com.codahale.metrics.MetricFilter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import pl.mrugames.nucleus.server.Metrics;
+import pl.mrugames.nucleus.server.tasks.TaskExecutor;
+import pl.mrugames.nucleus.server.tasks.TaskWatchdog;
+
+import java.util.concurrent.*;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Throughput of short client tasks submitted through {@link TaskExecutor}, as selector threads submit them.
+ * Every benchmark thread plays a selector thread: it submits a batch of tasks and waits until all of them finish.
+ * <p>
+ * {@code external} tasks are independent, {@code chained} tasks submit a follow-up task from the worker,
+ * as {@link pl.mrugames.nucleus.server.tasks.ClientRequestTask} does with decoded requests.
+ * The current engine is {@code -p engine=fixed -p completionQueue=linkedBlocking}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class TaskEngineBenchmark {
+    private static final int TASKS = 256;
+
+    @Param({"fixed", "workStealing"})
+    public String engine;
+
+    @Param({"linkedBlocking", "linkedTransfer"})
+    public String completionQueue;
+
+    @Param({"4"})
+    public int workers;
+
+    /**
+     * Work of a single task, in {@link Blackhole#consumeCPU(long)} tokens.
+     */
+    @Param({"50"})
+    public int work;
+
+    private ExecutorService executor;
+    private TaskExecutor taskExecutor;
+    private Thread watchdogThread;
+
+    @State(Scope.Thread)
+    public static class Batch {
+        private CountDownLatch finished;
+    }
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        Metrics.getRegistry().removeMatching(MetricFilter.ALL);
+
+        executor = engine.equals("fixed") ? Executors.newFixedThreadPool(workers) : HostManager.newWorkStealingExecutor(workers);
+
+        CompletionService completionService = completionQueue.equals("linkedBlocking")
+                ? new ExecutorCompletionService(executor)
+                : HostManager.newCompletionService(executor);
+
+        TaskWatchdog taskWatchdog = new TaskWatchdog(completionService);
+        taskExecutor = new TaskExecutor(completionService, taskWatchdog);
+
+        watchdogThread = new Thread(taskWatchdog, "task-watchdog");
+        watchdogThread.setDaemon(true);
+        watchdogThread.start();
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        watchdogThread.interrupt();
+        watchdogThread.join();
+
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+
+        Metrics.getHealthCheckRegistry().unregister(name(TaskWatchdog.class));
+        Metrics.getRegistry().removeMatching(MetricFilter.ALL);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TASKS)
+    public void external(Batch batch) throws InterruptedException {
+        batch.finished = new CountDownLatch(TASKS);
+
+        for (int i = 0; i < TASKS; ++i) {
+            taskExecutor.submit(() -> {
+                Blackhole.consumeCPU(work);
+                batch.finished.countDown();
+                return null;
+            }, 30);
+        }
+
+        batch.finished.await();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TASKS)
+    public void chained(Batch batch) throws InterruptedException {
+        batch.finished = new CountDownLatch(TASKS);
+
+        for (int i = 0; i < TASKS; ++i) {
+            taskExecutor.submit(() -> {
+                Blackhole.consumeCPU(work);
+
+                return taskExecutor.submit(() -> {
+                    Blackhole.consumeCPU(work);
+                    batch.finished.countDown();
+                    return null;
+                }, 30);
+            }, 30);
+        }
+
+        batch.finished.await();
+    }
+}
@@ -6,4 +6,7 @@ module pl.mrugames.nucleus {
 
     exports pl.mrugames.nucleus.server.host;
     exports pl.mrugames.nucleus.server.client;
+    exports pl.mrugames.nucleus.server.websocket;
+    exports pl.mrugames.nucleus.common.io;
+    exports pl.mrugames.nucleus.client;
 }
\ No newline at end of file
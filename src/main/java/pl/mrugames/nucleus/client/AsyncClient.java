@@ -0,0 +1,362 @@
+package pl.mrugames.nucleus.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.mrugames.nucleus.common.io.ClientReader;
+import pl.mrugames.nucleus.common.io.ClientWriter;
+
+import javax.annotation.Nullable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Non-blocking connection of the {@link ClientEngine}, created with {@link AsyncClientBuilder}.
+ * <p>
+ * Any number of requests may be in flight, they are written in the order of calls and matched with responses
+ * either in the same order, or by ids extracted from frames, see {@link AsyncClientBuilder#setCorrelation}.
+ * Matching in order requires a server which answers in order, e.g. with
+ * {@link pl.mrugames.nucleus.server.client.RequestExecutionMode#SERIAL}.
+ * <p>
+ * Methods are thread safe. Futures are completed by the reactor thread, so dependent actions which may block
+ * should use async variants of {@link CompletableFuture} methods. A request which never gets a response
+ * can be limited with {@link CompletableFuture#orTimeout}.
+ */
+public class AsyncClient<Write extends Serializable, Read extends Serializable> implements AutoCloseable {
+    private final static Logger logger = LoggerFactory.getLogger(AsyncClient.class);
+    private final static int MAX_FRAMES_PER_WRITE = 64;
+
+    private final String name;
+    private final SocketChannel channel;
+    private final ClientReactor reactor;
+    private final ByteBuffer readBuffer;
+    private final ByteBuffer writeBuffer;
+    private final ClientReader<Read> clientReader;
+    private final ClientWriter<Write> clientWriter;
+    private final Function<? super Write, ?> requestId;
+    private final Function<? super Read, ?> responseId;
+    private final Consumer<? super Read> unsolicitedFrameHandler;
+    private final Queue<CompletableFuture<Read>> inOrder;
+    private final Map<Object, CompletableFuture<Read>> byId;
+    private final Queue<ByteBuffer> outbound;
+    private final ByteBuffer[] gatheredFrames;
+    private final AtomicBoolean flushScheduled;
+    private final Lock writeLock;
+    private final CompletableFuture<AsyncClient<Write, Read>> connected;
+
+    private volatile SelectionKey key;
+    private volatile boolean closed;
+
+    AsyncClient(String name,
+                SocketChannel channel,
+                ClientReactor reactor,
+                int bufferSize,
+                Function<ByteBuffer, ClientWriter<Write>> writerFactory,
+                Function<ByteBuffer, ClientReader<Read>> readerFactory,
+                @Nullable Function<? super Write, ?> requestId,
+                @Nullable Function<? super Read, ?> responseId,
+                @Nullable Consumer<? super Read> unsolicitedFrameHandler) {
+        this.name = name;
+        this.channel = channel;
+        this.reactor = reactor;
+        this.readBuffer = ByteBuffer.allocateDirect(bufferSize);
+        this.readBuffer.flip();
+        this.writeBuffer = ByteBuffer.allocate(bufferSize);
+        this.clientReader = readerFactory.apply(readBuffer);
+        this.clientWriter = writerFactory.apply(writeBuffer);
+        this.requestId = requestId;
+        this.responseId = responseId;
+        this.unsolicitedFrameHandler = unsolicitedFrameHandler;
+        this.inOrder = new ConcurrentLinkedQueue<>();
+        this.byId = new ConcurrentHashMap<>();
+        this.outbound = new ConcurrentLinkedQueue<>();
+        this.gatheredFrames = new ByteBuffer[MAX_FRAMES_PER_WRITE];
+        this.flushScheduled = new AtomicBoolean();
+        this.writeLock = new ReentrantLock();
+        this.connected = new CompletableFuture<>();
+
+        if (clientReader.isZeroCopy()) {
+            throw new IllegalArgumentException("Zero copy readers are not supported, their frames would be overwritten by following reads");
+        }
+    }
+
+    /**
+     * Sends the request and returns its response. The future fails when the request cannot be encoded,
+     * or the connection is closed before the response arrives.
+     */
+    public CompletableFuture<Read> request(Write frame) {
+        CompletableFuture<Read> future = new CompletableFuture<>();
+
+        try {
+            enqueue(frame, future);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    /**
+     * Sends a frame which has no response.
+     */
+    public void send(Write frame) throws Exception {
+        enqueue(frame, null);
+    }
+
+    /**
+     * @return requests waiting for their responses
+     */
+    public int getPendingRequests() {
+        return inOrder.size() + byId.size();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Pending requests fail with {@link ClosedChannelException}.
+     */
+    @Override
+    public void close() {
+        close(new ClosedChannelException());
+    }
+
+    CompletableFuture<AsyncClient<Write, Read>> connect() {
+        reactor.execute(() -> {
+            try {
+                key = channel.register(reactor.getSelector(), channel.isConnected() ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+
+                if (channel.isConnected()) {
+                    connected.complete(this);
+                }
+            } catch (Exception e) {
+                close(e);
+            }
+        });
+
+        return connected;
+    }
+
+    /**
+     * Called by the reactor thread.
+     */
+    void handle(SelectionKey key) {
+        try {
+            if (key.isConnectable()) {
+                channel.finishConnect();
+                key.interestOps(SelectionKey.OP_READ);
+
+                logger.debug("[{}] Connected to {}", name, channel.getRemoteAddress());
+                connected.complete(this);
+            }
+
+            if (key.isValid() && key.isWritable()) {
+                flush();
+            }
+
+            if (key.isValid() && key.isReadable()) {
+                read();
+            }
+        } catch (Exception e) {
+            logger.debug("[{}] Connection failed", name, e);
+            close(e);
+        }
+    }
+
+    /**
+     * The future is registered before the frame is queued, so the response cannot arrive before it.
+     */
+    private void enqueue(Write frame, @Nullable CompletableFuture<Read> future) throws Exception {
+        writeLock.lock();
+        try {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+
+            ByteBuffer encoded;
+
+            try {
+                clientWriter.write(frame);
+
+                writeBuffer.flip();
+                encoded = ByteBuffer.allocate(writeBuffer.remaining());
+                encoded.put(writeBuffer);
+                encoded.flip();
+            } finally {
+                writeBuffer.clear();
+            }
+
+            if (future != null) {
+                register(frame, future);
+            }
+
+            outbound.add(encoded);
+        } finally {
+            writeLock.unlock();
+        }
+
+        if (flushScheduled.compareAndSet(false, true)) {
+            reactor.execute(this::flushScheduled);
+        }
+    }
+
+    private void register(Write frame, CompletableFuture<Read> future) {
+        if (requestId == null) {
+            inOrder.add(future);
+            return;
+        }
+
+        Object id = requestId.apply(frame);
+        if (byId.putIfAbsent(id, future) != null) {
+            throw new IllegalStateException("Request with the same id is already pending: " + id);
+        }
+    }
+
+    private void flushScheduled() {
+        // cleared first, so frames queued during the write schedule another flush
+        flushScheduled.set(false);
+
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.debug("[{}] Failed to write", name, e);
+            close(e);
+        }
+    }
+
+    /**
+     * Queued frames are written with gathering writes. When the socket is full, the rest is written
+     * when the channel becomes writable.
+     */
+    private void flush() throws IOException {
+        SelectionKey key = this.key;
+        if (key == null || !connected.isDone()) {
+            return;  // written when the connection is established
+        }
+
+        while (true) {
+            int count = 0;
+            for (ByteBuffer frame : outbound) {
+                gatheredFrames[count++] = frame;
+
+                if (count == gatheredFrames.length) {
+                    break;
+                }
+            }
+
+            if (count == 0) {
+                key.interestOps(SelectionKey.OP_READ);
+                return;
+            }
+
+            try {
+                channel.write(gatheredFrames, 0, count);
+
+                for (int i = 0; i < count; ++i) {
+                    if (gatheredFrames[i].hasRemaining()) {
+                        key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                        return;
+                    }
+
+                    outbound.poll();
+                }
+            } finally {
+                Arrays.fill(gatheredFrames, 0, count, null);
+            }
+        }
+    }
+
+    private void read() throws Exception {
+        readBuffer.compact();
+        int read = channel.read(readBuffer);
+        readBuffer.flip();
+
+        if (read < 0) {
+            throw new EOFException("Connection closed by the server");
+        }
+
+        while (clientReader.isReady()) {
+            Read frame = clientReader.read();
+
+            if (frame != null) {
+                dispatch(frame);
+            }
+        }
+
+        if (readBuffer.limit() == readBuffer.capacity() && readBuffer.position() == 0) {
+            throw new IllegalStateException(String.format("Frame does not fit into the read buffer. Buffer size: %d", readBuffer.capacity()));
+        }
+    }
+
+    private void dispatch(Read frame) {
+        CompletableFuture<Read> future = responseId == null ? inOrder.poll() : byId.remove(responseId.apply(frame));
+
+        if (future != null) {
+            future.complete(frame);
+        } else if (unsolicitedFrameHandler != null) {
+            unsolicitedFrameHandler.accept(frame);
+        } else {
+            logger.warn("[{}] Frame does not match any request: '{}'", name, frame);
+        }
+    }
+
+    /**
+     * Can be called by any thread, only the first call has effect.
+     */
+    void close(Throwable cause) {
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+        } finally {
+            writeLock.unlock();
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("[{}] Failed to close the channel", name, e);
+        }
+
+        connected.completeExceptionally(cause);
+        outbound.clear();
+
+        CompletableFuture<Read> future;
+        while ((future = inOrder.poll()) != null) {
+            future.completeExceptionally(cause);
+        }
+
+        for (Object id : byId.keySet()) {
+            future = byId.remove(id);
+
+            if (future != null) {
+                future.completeExceptionally(cause);
+            }
+        }
+
+        logger.debug("[{}] Closed", name);
+    }
+}
@@ -0,0 +1,121 @@
+package pl.mrugames.nucleus.client;
+
+import pl.mrugames.nucleus.common.io.ClientReader;
+import pl.mrugames.nucleus.common.io.ClientWriter;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Connects {@link AsyncClient}s of a {@link ClientEngine}. The builder can be reused for many connections.
+ *
+ * @param <Write> type of frames sent to the server
+ * @param <Read>  type of frames received from the server
+ */
+public class AsyncClientBuilder<Write extends Serializable, Read extends Serializable> {
+    private final ClientEngine clientEngine;
+    private final Function<ByteBuffer, ClientWriter<Write>> writerFactory;
+    private final Function<ByteBuffer, ClientReader<Read>> readerFactory;
+
+    private int bufferSize = 1024;
+    private Function<? super Write, ?> requestId;
+    private Function<? super Read, ?> responseId;
+    private Consumer<? super Read> unsolicitedFrameHandler;
+
+    /**
+     * Codecs are the same which are used by servers, e.g. {@code LineWriter::new}. Zero copy readers are not supported.
+     */
+    public AsyncClientBuilder(ClientEngine clientEngine,
+                              Function<ByteBuffer, ClientWriter<Write>> writerFactory,
+                              Function<ByteBuffer, ClientReader<Read>> readerFactory) {
+        this.clientEngine = clientEngine;
+        this.writerFactory = writerFactory;
+        this.readerFactory = readerFactory;
+    }
+
+    /**
+     * Frames have to fit into the buffers.
+     *
+     * @param bufferSize size of the read and the write buffer of every connection [bytes]
+     */
+    public AsyncClientBuilder<Write, Read> setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     * By default responses are matched with requests in order. With ids, the server may answer in any order.
+     * Ids are compared with {@link Object#equals(Object)}, ids of pending requests have to be unique.
+     */
+    public AsyncClientBuilder<Write, Read> setCorrelation(Function<? super Write, ?> requestId, Function<? super Read, ?> responseId) {
+        this.requestId = requestId;
+        this.responseId = responseId;
+        return this;
+    }
+
+    /**
+     * Receives frames which do not match any pending request, e.g. pushed by the server.
+     * Called by the reactor thread, so it must not block. By default such frames are logged and dropped.
+     */
+    public AsyncClientBuilder<Write, Read> setUnsolicitedFrameHandler(@Nullable Consumer<? super Read> unsolicitedFrameHandler) {
+        this.unsolicitedFrameHandler = unsolicitedFrameHandler;
+        return this;
+    }
+
+    /**
+     * @return completed when the connection is established
+     */
+    public CompletableFuture<AsyncClient<Write, Read>> connect(String host, int port) {
+        if (clientEngine.isClosed()) {
+            throw new IllegalStateException("Client engine is closed");
+        }
+
+        SocketChannel channel = null;
+
+        try {
+            channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            channel.connect(new InetSocketAddress(host, port));
+
+            AsyncClient<Write, Read> client = new AsyncClient<>(
+                    clientEngine.nextClientName(),
+                    channel,
+                    clientEngine.nextReactor(),
+                    bufferSize,
+                    writerFactory,
+                    readerFactory,
+                    requestId,
+                    responseId,
+                    unsolicitedFrameHandler
+            );
+
+            return client.connect();
+        } catch (Exception e) {
+            closeQuietly(channel, e);
+
+            CompletableFuture<AsyncClient<Write, Read>> failed = new CompletableFuture<>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    private void closeQuietly(@Nullable SocketChannel channel, Exception cause) {
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+        }
+    }
+}
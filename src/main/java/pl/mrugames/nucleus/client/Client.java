@@ -6,19 +6,40 @@ import pl.mrugames.nucleus.common.io.ClientWriter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.PushbackInputStream;
 import java.io.Serializable;
+import java.net.InetSocketAddress;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.util.function.Function;
 
 public class Client<Write extends Serializable, Read extends Serializable> implements AutoCloseable {
+    private static final int NO_DATA = -2;
+
     private final Socket socket;
+    private final PushbackInputStream inputStream;
     private final ClientReader<Read> clientReader;
     private final ClientWriter<Write> clientWriter;
 
     public Client(String address, int port, Function<OutputStream, ClientWriter<Write>> writerFactory, Function<InputStream, ClientReader<Read>> readerFactory) throws IOException {
-        this.socket = new Socket(address, port);
-        this.clientReader = readerFactory.apply(socket.getInputStream());
-        this.clientWriter = writerFactory.apply(socket.getOutputStream());
+        this(address, port, 0, writerFactory, readerFactory);
+    }
+
+    /**
+     * @param connectTimeoutMillis zero waits until the operating system gives up
+     */
+    public Client(String address, int port, int connectTimeoutMillis, Function<OutputStream, ClientWriter<Write>> writerFactory, Function<InputStream, ClientReader<Read>> readerFactory) throws IOException {
+        this.socket = new Socket();
+
+        try {
+            socket.connect(new InetSocketAddress(address, port), connectTimeoutMillis);
+            this.inputStream = new PushbackInputStream(socket.getInputStream(), 1);
+            this.clientReader = readerFactory.apply(inputStream);
+            this.clientWriter = writerFactory.apply(socket.getOutputStream());
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
     }
 
     public void write(Write frame) throws Exception {
@@ -29,8 +50,70 @@ public class Client<Write extends Serializable, Read extends Serializable> imple
         return clientReader.read();
     }
 
+    /**
+     * Checks whether the server has not closed the connection. Waits for data at most a millisecond,
+     * a byte which arrived is kept for the next {@link #read()}. Must not be called while other thread reads.
+     */
+    public boolean isAlive() {
+        if (isShutdown()) {
+            return false;
+        }
+
+        try {
+            return peek() != -1;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Stricter {@link #isAlive()} for idle connections which are about to be reused. Any unread byte fails the check,
+     * e.g. a late response to a timed out request would be read as the response to the next one.
+     */
+    public boolean isIdle() {
+        if (isShutdown()) {
+            return false;
+        }
+
+        try {
+            return peek() == NO_DATA;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public boolean isClosed() {
+        return socket.isClosed();
+    }
+
     @Override
     public void close() throws Exception {
         socket.close();
     }
+
+    private boolean isShutdown() {
+        return socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown();
+    }
+
+    /**
+     * @return next byte, which is pushed back for the next read, -1 if the server has closed the connection
+     * or {@link #NO_DATA} if nothing arrived within a millisecond
+     */
+    private int peek() throws IOException {
+        int timeout = socket.getSoTimeout();
+        socket.setSoTimeout(1);
+
+        try {
+            int data = inputStream.read();
+            if (data >= 0) {
+                inputStream.unread(data);
+            }
+
+            return data;
+        } catch (SocketTimeoutException e) {
+            return NO_DATA;
+        } finally {
+            socket.setSoTimeout(timeout);
+        }
+    }
 }
@@ -0,0 +1,92 @@
+package pl.mrugames.nucleus.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Serves many {@link AsyncClient}s with a few selector threads. Every connection is assigned to one of the threads,
+ * which reads, decodes and writes all of its frames, so no thread is blocked by a connection.
+ * <p>
+ * Create connections with {@link AsyncClientBuilder}.
+ */
+public class ClientEngine implements AutoCloseable {
+    private final static Logger logger = LoggerFactory.getLogger(ClientEngine.class);
+
+    private final String name;
+    private final ClientReactor[] reactors;
+    private final AtomicInteger nextReactor;
+    private final AtomicInteger clientId;
+
+    private volatile boolean closed;
+
+    /**
+     * @param selectorThreads a single thread usually handles thousands of connections
+     */
+    public ClientEngine(String name, int selectorThreads) throws IOException {
+        if (selectorThreads < 1) {
+            throw new IllegalArgumentException("At least one selector thread is required");
+        }
+
+        this.name = name;
+        this.reactors = new ClientReactor[selectorThreads];
+        this.nextReactor = new AtomicInteger();
+        this.clientId = new AtomicInteger();
+
+        for (int i = 0; i < selectorThreads; ++i) {
+            reactors[i] = new ClientReactor(name + "-reactor-" + i);
+
+            Thread thread = new Thread(reactors[i], reactors[i].getName());
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        logger.info("[{}] Client engine started with {} selector threads", name, selectorThreads);
+    }
+
+    /**
+     * Closes all connections, their pending requests fail.
+     */
+    @Override
+    public void close() {
+        closed = true;
+
+        for (ClientReactor reactor : reactors) {
+            reactor.shutdown();
+        }
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        long deadline = System.nanoTime() + timeUnit.toNanos(timeout);
+
+        for (ClientReactor reactor : reactors) {
+            if (!reactor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Connections are spread over reactors round-robin.
+     */
+    ClientReactor nextReactor() {
+        return reactors[Math.floorMod(nextReactor.getAndIncrement(), reactors.length)];
+    }
+
+    String nextClientName() {
+        return name + "-client-" + clientId.incrementAndGet();
+    }
+}
@@ -0,0 +1,610 @@
+package pl.mrugames.nucleus.client;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.mrugames.nucleus.common.io.ClientReader;
+import pl.mrugames.nucleus.common.io.ClientWriter;
+import pl.mrugames.nucleus.server.Metrics;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Keeps open {@link Client} connections to one or more endpoints, so callers do not pay a TCP handshake per call.
+ * Created with {@link ClientPoolBuilder}.
+ * <p>
+ * Every endpoint has between min and max connections. Leases are spread over endpoints round-robin, an idle
+ * connection is preferred over opening a new one and the most recently used one is taken first, so surplus
+ * connections become idle and are closed after the idle timeout.
+ * A background thread evicts idle connections, checks health of the rest and opens connections up to the minimum.
+ * An endpoint which fails to connect is skipped for one validation interval, unless all endpoints failed.
+ * <p>
+ * Thread safe.
+ */
+public class ClientPool<Write extends Serializable, Read extends Serializable> implements AutoCloseable {
+    private final static Logger logger = LoggerFactory.getLogger(ClientPool.class);
+
+    private final String name;
+    private final List<Endpoint<Write, Read>> endpoints;
+    private final int minConnections;
+    private final int maxConnections;
+    private final long idleTimeoutNanos;
+    private final long validationIntervalNanos;
+    private final long leaseTimeoutNanos;
+    private final int connectTimeoutMillis;
+    private final Function<OutputStream, ClientWriter<Write>> writerFactory;
+    private final Function<InputStream, ClientReader<Read>> readerFactory;
+    private final Predicate<? super Client<Write, Read>> healthCheck;
+    private final Lock lock;
+    private final Condition released;
+    private final AtomicInteger nextEndpoint;
+    private final ScheduledExecutorService maintenanceExecutor;
+
+    private final Histogram leaseWaitTime;
+    private final Counter createdConnections;
+    private final Counter failedConnections;
+    private final Counter evictedConnections;
+    private final Counter failedHealthChecks;
+    private final Counter leaseTimeouts;
+
+    private boolean closed;
+
+    ClientPool(String name,
+               List<String> hosts,
+               List<Integer> ports,
+               int minConnections,
+               int maxConnections,
+               long idleTimeoutNanos,
+               long validationIntervalNanos,
+               long leaseTimeoutNanos,
+               int connectTimeoutMillis,
+               Function<OutputStream, ClientWriter<Write>> writerFactory,
+               Function<InputStream, ClientReader<Read>> readerFactory,
+               Predicate<? super Client<Write, Read>> healthCheck) {
+        if (hosts.isEmpty()) {
+            throw new IllegalArgumentException("At least one endpoint is required");
+        }
+
+        if (minConnections < 0 || maxConnections < 1 || minConnections > maxConnections) {
+            throw new IllegalArgumentException(String.format("Connections per endpoint have to satisfy 0 <= min <= max and max >= 1, min: %d, max: %d", minConnections, maxConnections));
+        }
+
+        this.name = name;
+        this.endpoints = new ArrayList<>(hosts.size());
+        this.minConnections = minConnections;
+        this.maxConnections = maxConnections;
+        this.idleTimeoutNanos = idleTimeoutNanos;
+        this.validationIntervalNanos = validationIntervalNanos;
+        this.leaseTimeoutNanos = leaseTimeoutNanos;
+        this.connectTimeoutMillis = connectTimeoutMillis;
+        this.writerFactory = writerFactory;
+        this.readerFactory = readerFactory;
+        this.healthCheck = healthCheck;
+        this.lock = new ReentrantLock();
+        this.released = lock.newCondition();
+        this.nextEndpoint = new AtomicInteger();
+
+        for (int i = 0; i < hosts.size(); ++i) {
+            endpoints.add(new Endpoint<>(hosts.get(i), ports.get(i)));
+        }
+
+        Metrics.getRegistry().register(name(ClientPool.class, name, "leased_connections"), (Gauge<Integer>) () -> count(true));
+        Metrics.getRegistry().register(name(ClientPool.class, name, "idle_connections"), (Gauge<Integer>) () -> count(false));
+        leaseWaitTime = Metrics.getRegistry().histogram(name(ClientPool.class, name, "lease_wait_micros"));
+        createdConnections = Metrics.getRegistry().counter(name(ClientPool.class, name, "created_connections"));
+        failedConnections = Metrics.getRegistry().counter(name(ClientPool.class, name, "failed_connections"));
+        evictedConnections = Metrics.getRegistry().counter(name(ClientPool.class, name, "evicted_connections"));
+        failedHealthChecks = Metrics.getRegistry().counter(name(ClientPool.class, name, "failed_health_checks"));
+        leaseTimeouts = Metrics.getRegistry().counter(name(ClientPool.class, name, "lease_timeouts"));
+
+        this.maintenanceExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name + "-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        maintenanceExecutor.scheduleWithFixedDelay(this::maintain, 0, validationIntervalNanos, TimeUnit.NANOSECONDS);
+
+        logger.info("[{}] Client pool started with {} endpoints, {}-{} connections per endpoint", name, endpoints.size(), minConnections, maxConnections);
+    }
+
+    /**
+     * Leases a connection with the default lease timeout.
+     *
+     * @see #lease(long, TimeUnit)
+     */
+    public PooledClient<Write, Read> lease() throws Exception {
+        return lease(leaseTimeoutNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Takes an idle connection or opens a new one. When all endpoints have their maximum of connections leased,
+     * waits until one is returned. The connection is returned with {@link PooledClient#close()}.
+     *
+     * @throws TimeoutException      when no connection is returned in time
+     * @throws IOException           when no endpoint accepts a new connection
+     * @throws IllegalStateException when the pool is closed
+     */
+    public PooledClient<Write, Read> lease(long timeout, TimeUnit timeUnit) throws Exception {
+        long start = System.nanoTime();
+        long deadline = start + timeUnit.toNanos(timeout);
+
+        while (true) {
+            Connection<Write, Read> connection;
+            Endpoint<Write, Read> reserved = null;
+
+            lock.lock();
+            try {
+                while (true) {
+                    if (closed) {
+                        throw new IllegalStateException("Client pool is closed");
+                    }
+
+                    int first = Math.floorMod(nextEndpoint.getAndIncrement(), endpoints.size());
+                    boolean skipDown = !allDown(System.nanoTime());
+
+                    connection = takeIdle(first, skipDown);
+                    if (connection == null) {
+                        reserved = reserve(first, skipDown);
+                    }
+
+                    if (connection != null || reserved != null) {
+                        break;
+                    }
+
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        leaseTimeouts.inc();
+                        throw new TimeoutException(String.format("No connection was returned to the pool in %d ms", TimeUnit.NANOSECONDS.toMillis(deadline - start)));
+                    }
+
+                    released.awaitNanos(remaining);
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (reserved != null) {
+                try {
+                    connection = connect(reserved, true);
+                } catch (IOException e) {
+                    lock.lock();
+                    try {
+                        if (allDown(System.nanoTime())) {
+                            throw e;
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+
+                    continue;
+                }
+            }
+
+            leaseWaitTime.update(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+            return new PooledClient<>(this, connection);
+        }
+    }
+
+    /**
+     * Closes idle connections, leased ones are closed when they are returned.
+     */
+    @Override
+    public void close() {
+        List<Connection<Write, Read>> idle = new ArrayList<>();
+
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+
+            for (Endpoint<Write, Read> endpoint : endpoints) {
+                idle.addAll(endpoint.idle);
+                endpoint.idle.clear();
+            }
+
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        maintenanceExecutor.shutdownNow();
+        idle.forEach(this::closeQuietly);
+
+        Metrics.getRegistry().remove(name(ClientPool.class, name, "leased_connections"));
+        Metrics.getRegistry().remove(name(ClientPool.class, name, "idle_connections"));
+
+        logger.info("[{}] Client pool closed", name);
+    }
+
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return connections which are leased, idle or being opened or validated, of all endpoints
+     */
+    public int getConnections() {
+        lock.lock();
+        try {
+            return endpoints.stream().mapToInt(Endpoint::total).sum();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getIdleConnections() {
+        return count(false);
+    }
+
+    public int getLeasedConnections() {
+        return count(true);
+    }
+
+    /**
+     * Called by {@link PooledClient#close()}. Broken connections are closed, so the slot can be used by a new one.
+     */
+    void release(Connection<Write, Read> connection, boolean broken) {
+        boolean discard;
+
+        lock.lock();
+        try {
+            Endpoint<Write, Read> endpoint = connection.endpoint;
+            --endpoint.leased;
+
+            discard = closed || broken || connection.client.isClosed();
+            if (!discard) {
+                connection.idleSince = System.nanoTime();
+                endpoint.idle.addFirst(connection);
+            }
+
+            released.signal();
+        } finally {
+            lock.unlock();
+        }
+
+        if (discard) {
+            closeQuietly(connection);
+        }
+    }
+
+    /**
+     * Runs on the maintenance thread, every validation interval.
+     */
+    void maintain() {
+        try {
+            evict();
+            validate();
+            fill();
+        } catch (Exception e) {
+            logger.error("[{}] Maintenance failed", name, e);
+        }
+    }
+
+    /**
+     * Closes connections which are idle longer than the idle timeout, while the endpoint has more than minimum.
+     */
+    private void evict() {
+        List<Connection<Write, Read>> evicted = new ArrayList<>();
+
+        lock.lock();
+        try {
+            long now = System.nanoTime();
+
+            for (Endpoint<Write, Read> endpoint : endpoints) {
+                Iterator<Connection<Write, Read>> iterator = endpoint.idle.descendingIterator();
+
+                while (iterator.hasNext() && endpoint.total() > minConnections) {
+                    Connection<Write, Read> connection = iterator.next();
+
+                    if (now - connection.idleSince > idleTimeoutNanos) {
+                        iterator.remove();
+                        evicted.add(connection);
+                    }
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        evictedConnections.inc(evicted.size());
+        evicted.forEach(this::closeQuietly);
+    }
+
+    /**
+     * Idle connections are checked one at a time, so the rest stays available for leases.
+     */
+    private void validate() {
+        List<Connection<Write, Read>> idle = new ArrayList<>();
+
+        lock.lock();
+        try {
+            endpoints.forEach(endpoint -> idle.addAll(endpoint.idle));
+        } finally {
+            lock.unlock();
+        }
+
+        for (Connection<Write, Read> connection : idle) {
+            Endpoint<Write, Read> endpoint = connection.endpoint;
+
+            lock.lock();
+            try {
+                if (closed || !endpoint.idle.remove(connection)) {
+                    continue;  // leased or evicted in the meantime
+                }
+
+                ++endpoint.validating;
+            } finally {
+                lock.unlock();
+            }
+
+            boolean healthy = isHealthy(connection);
+
+            lock.lock();
+            try {
+                --endpoint.validating;
+
+                if (healthy && !closed) {
+                    endpoint.idle.addLast(connection);
+                    released.signal();
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            if (!healthy) {
+                failedHealthChecks.inc();
+                logger.debug("[{}] Connection to {}:{} failed the health check", name, endpoint.host, endpoint.port);
+            }
+
+            if (!healthy || isClosed()) {
+                closeQuietly(connection);
+            }
+        }
+    }
+
+    /**
+     * Opens connections up to the minimum of every endpoint which is not down.
+     */
+    private void fill() {
+        for (Endpoint<Write, Read> endpoint : endpoints) {
+            while (true) {
+                lock.lock();
+                try {
+                    if (closed || endpoint.isDown(System.nanoTime()) || endpoint.total() >= minConnections) {
+                        break;
+                    }
+
+                    ++endpoint.connecting;
+                } finally {
+                    lock.unlock();
+                }
+
+                try {
+                    connect(endpoint, false);
+                } catch (IOException | IllegalStateException e) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * The slot has to be reserved with {@link Endpoint#connecting}. The new connection is either leased,
+     * or added to idle ones.
+     *
+     * @throws IllegalStateException when the pool was closed while connecting
+     */
+    private Connection<Write, Read> connect(Endpoint<Write, Read> endpoint, boolean lease) throws IOException {
+        Client<Write, Read> client;
+
+        try {
+            client = new Client<>(endpoint.host, endpoint.port, connectTimeoutMillis, writerFactory, readerFactory);
+        } catch (IOException e) {
+            failedConnections.inc();
+            logger.warn("[{}] Failed to connect to {}:{}, {}", name, endpoint.host, endpoint.port, e.getMessage());
+
+            lock.lock();
+            try {
+                --endpoint.connecting;
+                endpoint.downUntil = System.nanoTime() + validationIntervalNanos;
+                released.signal();
+            } finally {
+                lock.unlock();
+            }
+
+            throw e;
+        }
+
+        createdConnections.inc();
+        Connection<Write, Read> connection = new Connection<>(client, endpoint);
+
+        lock.lock();
+        try {
+            --endpoint.connecting;
+            endpoint.downUntil = 0;
+
+            if (!closed) {
+                if (lease) {
+                    ++endpoint.leased;
+                } else {
+                    connection.idleSince = System.nanoTime();
+                    endpoint.idle.addFirst(connection);
+                    released.signal();
+                }
+
+                return connection;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        closeQuietly(connection);
+        throw new IllegalStateException("Client pool is closed");
+    }
+
+    @Nullable
+    private Connection<Write, Read> takeIdle(int first, boolean skipDown) {
+        long now = System.nanoTime();
+
+        for (int i = 0; i < endpoints.size(); ++i) {
+            Endpoint<Write, Read> endpoint = endpoints.get((first + i) % endpoints.size());
+
+            if (skipDown && endpoint.isDown(now)) {
+                continue;
+            }
+
+            Connection<Write, Read> connection = endpoint.idle.pollFirst();
+            if (connection != null) {
+                ++endpoint.leased;
+                return connection;
+            }
+        }
+
+        return null;
+    }
+
+    @Nullable
+    private Endpoint<Write, Read> reserve(int first, boolean skipDown) {
+        long now = System.nanoTime();
+
+        for (int i = 0; i < endpoints.size(); ++i) {
+            Endpoint<Write, Read> endpoint = endpoints.get((first + i) % endpoints.size());
+
+            if (skipDown && endpoint.isDown(now)) {
+                continue;
+            }
+
+            if (endpoint.total() < maxConnections) {
+                ++endpoint.connecting;
+                return endpoint;
+            }
+        }
+
+        return null;
+    }
+
+    private boolean allDown(long now) {
+        return endpoints.stream().allMatch(endpoint -> endpoint.isDown(now));
+    }
+
+    private boolean isHealthy(Connection<Write, Read> connection) {
+        try {
+            return healthCheck.test(connection.client);
+        } catch (Exception e) {
+            logger.debug("[{}] Health check failed", name, e);
+            return false;
+        }
+    }
+
+    private int count(boolean leased) {
+        lock.lock();
+        try {
+            return endpoints.stream().mapToInt(endpoint -> leased ? endpoint.leased : endpoint.idle.size()).sum();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void closeQuietly(Connection<Write, Read> connection) {
+        try {
+            connection.client.close();
+        } catch (Exception e) {
+            logger.warn("[{}] Failed to close connection to {}:{}", name, connection.endpoint.host, connection.endpoint.port, e);
+        }
+    }
+
+    /**
+     * Guarded by the pool lock.
+     */
+    private static class Endpoint<Write extends Serializable, Read extends Serializable> {
+        private final String host;
+        private final int port;
+
+        /**
+         * The most recently returned connection first.
+         */
+        private final Deque<Connection<Write, Read>> idle;
+
+        private int leased;
+        private int connecting;
+        private int validating;
+        private long downUntil;
+
+        private Endpoint(String host, int port) {
+            this.host = host;
+            this.port = port;
+            this.idle = new ArrayDeque<>();
+        }
+
+        private int total() {
+            return idle.size() + leased + connecting + validating;
+        }
+
+        private boolean isDown(long now) {
+            return downUntil != 0 && now - downUntil < 0;
+        }
+    }
+
+    static class Connection<Write extends Serializable, Read extends Serializable> {
+        private final Client<Write, Read> client;
+        private final Endpoint<Write, Read> endpoint;
+
+        /**
+         * Guarded by the pool lock.
+         */
+        private long idleSince;
+
+        private Connection(Client<Write, Read> client, Endpoint<Write, Read> endpoint) {
+            this.client = client;
+            this.endpoint = endpoint;
+        }
+
+        Client<Write, Read> getClient() {
+            return client;
+        }
+
+        String getHost() {
+            return endpoint.host;
+        }
+
+        int getPort() {
+            return endpoint.port;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+package pl.mrugames.nucleus.client;
+
+import pl.mrugames.nucleus.common.io.ClientReader;
+import pl.mrugames.nucleus.common.io.ClientWriter;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Builds a {@link ClientPool}. Codecs are the same which are used by {@link Client}, e.g. {@code LineWriter::new}.
+ */
+public class ClientPoolBuilder<Write extends Serializable, Read extends Serializable> {
+    private final Function<OutputStream, ClientWriter<Write>> writerFactory;
+    private final Function<InputStream, ClientReader<Read>> readerFactory;
+    private final List<String> hosts;
+    private final List<Integer> ports;
+
+    private String name = "ClientPool";
+    private int minConnections = 0;
+    private int maxConnections = 8;
+    private long idleTimeoutNanos = TimeUnit.MINUTES.toNanos(5);
+    private long validationIntervalNanos = TimeUnit.SECONDS.toNanos(30);
+    private long leaseTimeoutNanos = TimeUnit.SECONDS.toNanos(10);
+    private int connectTimeoutMillis = 10_000;
+    private Predicate<? super Client<Write, Read>> healthCheck = Client::isIdle;
+
+    public ClientPoolBuilder(Function<OutputStream, ClientWriter<Write>> writerFactory,
+                             Function<InputStream, ClientReader<Read>> readerFactory) {
+        this.writerFactory = writerFactory;
+        this.readerFactory = readerFactory;
+        this.hosts = new ArrayList<>();
+        this.ports = new ArrayList<>();
+    }
+
+    /**
+     * Used by threads and metrics of the pool.
+     */
+    public ClientPoolBuilder<Write, Read> setName(String name) {
+        this.name = name;
+        return this;
+    }
+
+    /**
+     * At least one endpoint is required. Leases are spread over endpoints round-robin.
+     */
+    public ClientPoolBuilder<Write, Read> addEndpoint(String host, int port) {
+        hosts.add(host);
+        ports.add(port);
+        return this;
+    }
+
+    /**
+     * Connections which are kept open even when idle. They are opened by the background thread.
+     *
+     * @param minConnections per endpoint
+     */
+    public ClientPoolBuilder<Write, Read> setMinConnections(int minConnections) {
+        this.minConnections = minConnections;
+        return this;
+    }
+
+    /**
+     * @param maxConnections per endpoint, leased and idle
+     */
+    public ClientPoolBuilder<Write, Read> setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    /**
+     * Connections above the minimum are closed when they are not leased for this time.
+     */
+    public ClientPoolBuilder<Write, Read> setIdleTimeout(long idleTimeout, TimeUnit timeUnit) {
+        this.idleTimeoutNanos = timeUnit.toNanos(idleTimeout);
+        return this;
+    }
+
+    /**
+     * How often idle connections are evicted and checked, and how long an endpoint which failed to connect is skipped.
+     */
+    public ClientPoolBuilder<Write, Read> setValidationInterval(long validationInterval, TimeUnit timeUnit) {
+        this.validationIntervalNanos = timeUnit.toNanos(validationInterval);
+        return this;
+    }
+
+    /**
+     * Used by {@link ClientPool#lease()}.
+     */
+    public ClientPoolBuilder<Write, Read> setLeaseTimeout(long leaseTimeout, TimeUnit timeUnit) {
+        this.leaseTimeoutNanos = timeUnit.toNanos(leaseTimeout);
+        return this;
+    }
+
+    public ClientPoolBuilder<Write, Read> setConnectTimeout(long connectTimeout, TimeUnit timeUnit) {
+        this.connectTimeoutMillis = Math.toIntExact(timeUnit.toMillis(connectTimeout));
+        return this;
+    }
+
+    /**
+     * Checks idle connections in the background, failed ones are closed. By default detects connections
+     * closed by the server or with unread data, see {@link Client#isIdle()}. A check may send a ping frame and read its answer.
+     */
+    public ClientPoolBuilder<Write, Read> setHealthCheck(Predicate<? super Client<Write, Read>> healthCheck) {
+        this.healthCheck = healthCheck;
+        return this;
+    }
+
+    public ClientPool<Write, Read> build() {
+        return new ClientPool<>(
+                name,
+                hosts,
+                ports,
+                minConnections,
+                maxConnections,
+                idleTimeoutNanos,
+                validationIntervalNanos,
+                leaseTimeoutNanos,
+                connectTimeoutMillis,
+                writerFactory,
+                readerFactory,
+                healthCheck
+        );
+    }
+}
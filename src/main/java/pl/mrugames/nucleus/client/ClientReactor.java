@@ -0,0 +1,124 @@
+package pl.mrugames.nucleus.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selector thread of the {@link ClientEngine}. Connections are registered, read and written only by this thread,
+ * other threads pass work to it with {@link #execute(Runnable)}.
+ */
+class ClientReactor implements Runnable {
+    private final static Logger logger = LoggerFactory.getLogger(ClientReactor.class);
+
+    private final String name;
+    private final Selector selector;
+    private final Queue<Runnable> tasks;
+    private final CountDownLatch terminated;
+
+    private volatile Thread thread;
+    private volatile boolean stopped;
+
+    ClientReactor(String name) throws IOException {
+        this.name = name;
+        this.selector = Selector.open();
+        this.tasks = new ConcurrentLinkedQueue<>();
+        this.terminated = new CountDownLatch(1);
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        logger.info("[{}] Reactor started", name);
+
+        try {
+            while (!stopped) {
+                selector.select();
+
+                runTasks();
+
+                for (SelectionKey key : selector.selectedKeys()) {
+                    ((AsyncClient<?, ?>) key.attachment()).handle(key);
+                }
+
+                selector.selectedKeys().clear();
+            }
+        } catch (Exception e) {
+            logger.error("[{}] Reactor failed", name, e);
+        } finally {
+            closeAll();
+            terminated.countDown();
+
+            // tasks added while the reactor was stopping, they fail on the closed selector
+            runTasks();
+            logger.info("[{}] Reactor stopped", name);
+        }
+    }
+
+    /**
+     * Runs the task on the reactor thread, the selector is woken up if it is called from other thread.
+     * When the reactor is terminated, the task runs on the calling thread.
+     */
+    void execute(Runnable task) {
+        tasks.add(task);
+
+        if (terminated.getCount() == 0) {
+            runTasks();
+        } else if (Thread.currentThread() != thread) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Connections are closed, their pending requests fail.
+     */
+    void shutdown() {
+        stopped = true;
+        selector.wakeup();
+    }
+
+    boolean awaitTermination(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        return terminated.await(timeout, timeUnit);
+    }
+
+    Selector getSelector() {
+        return selector;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.error("[{}] Task failed", name, e);
+            }
+        }
+    }
+
+    private void closeAll() {
+        runTasks();
+
+        for (SelectionKey key : selector.keys()) {
+            ((AsyncClient<?, ?>) key.attachment()).close(new ClosedChannelException());
+        }
+
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.error("[{}] Failed to close the selector", name, e);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package pl.mrugames.nucleus.client;
+
+import java.io.Serializable;
+
+/**
+ * Connection leased from a {@link ClientPool}, {@link #close()} returns it to the pool.
+ * <p>
+ * A connection which failed to read or write is closed when it is returned, as its stream may be left in the middle
+ * of a frame. The same applies to connections marked with {@link #invalidate()}, e.g. after a protocol error.
+ * Not thread safe, a lease is meant for a single caller.
+ */
+public class PooledClient<Write extends Serializable, Read extends Serializable> implements AutoCloseable {
+    private final ClientPool<Write, Read> pool;
+    private final ClientPool.Connection<Write, Read> connection;
+
+    private boolean broken;
+    private boolean released;
+
+    PooledClient(ClientPool<Write, Read> pool, ClientPool.Connection<Write, Read> connection) {
+        this.pool = pool;
+        this.connection = connection;
+    }
+
+    public void write(Write frame) throws Exception {
+        checkLeased();
+
+        try {
+            connection.getClient().write(frame);
+        } catch (Exception e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    public Read read() throws Exception {
+        checkLeased();
+
+        try {
+            return connection.getClient().read();
+        } catch (Exception e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    /**
+     * The connection is closed instead of being returned to the pool.
+     */
+    public void invalidate() {
+        broken = true;
+    }
+
+    public String getHost() {
+        return connection.getHost();
+    }
+
+    public int getPort() {
+        return connection.getPort();
+    }
+
+    /**
+     * Returns the connection to the pool. Only the first call has effect.
+     */
+    @Override
+    public void close() {
+        if (released) {
+            return;
+        }
+
+        released = true;
+        pool.release(connection, broken);
+    }
+
+    private void checkLeased() {
+        if (released) {
+            throw new IllegalStateException("Client was returned to the pool");
+        }
+    }
+}
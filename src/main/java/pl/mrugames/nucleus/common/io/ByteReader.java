@@ -5,18 +5,38 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 
+/**
+ * Reads frames prefixed with their length as a 4 byte integer. Every frame is copied to a new array,
+ * see {@link LengthPrefixedReader} for a reader which does not copy frames.
+ */
 public class ByteReader implements ClientReader<byte[]> {
-    private final ByteBuffer byteBuffer;
+    public final static int DEFAULT_MAX_FRAME_SIZE = 1_000_000;
+
+    private ByteBuffer byteBuffer;
     private final DataInputStream inputStream;
+    private final int maxFrameSize;
 
     public ByteReader(ByteBuffer byteBuffer) {
+        this(byteBuffer, DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    /**
+     * @param maxFrameSize longer frames are rejected before anything is allocated [bytes]
+     */
+    public ByteReader(ByteBuffer byteBuffer, int maxFrameSize) {
         this.byteBuffer = byteBuffer;
         this.inputStream = null;
+        this.maxFrameSize = maxFrameSize;
     }
 
     public ByteReader(InputStream inputStream) {
+        this(inputStream, DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    public ByteReader(InputStream inputStream, int maxFrameSize) {
         this.byteBuffer = null;
         this.inputStream = new DataInputStream(inputStream);
+        this.maxFrameSize = maxFrameSize;
     }
 
     @Override
@@ -33,20 +53,15 @@ public class ByteReader implements ClientReader<byte[]> {
             return false;
         }
 
-        try {
-            byteBuffer.mark();
-            int len = byteBuffer.getInt();
+        int len = checkLength(byteBuffer.getInt(byteBuffer.position()));
 
-            return byteBuffer.limit() - byteBuffer.position() >= len;
-        } finally {
-            byteBuffer.reset();
-        }
+        return byteBuffer.limit() - byteBuffer.position() - 4 >= len;
     }
 
     @Override
     public byte[] read() throws IOException {
         if (byteBuffer != null) {
-            int len = byteBuffer.getInt();
+            int len = checkLength(byteBuffer.getInt());
 
             byte[] bytes = new byte[len];
             byteBuffer.get(bytes);
@@ -55,14 +70,10 @@ public class ByteReader implements ClientReader<byte[]> {
         }
 
         if (inputStream != null) {
-            int length = inputStream.readInt();
+            int length = checkLength(inputStream.readInt());
 
             byte[] bytes = new byte[length];
-            int read = inputStream.read(bytes);
-
-            if (read != length) {
-                throw new IllegalStateException("Expected " + length + " bytes, read: " + read);
-            }
+            inputStream.readFully(bytes);
 
             return bytes;
         }
@@ -70,4 +81,25 @@ public class ByteReader implements ClientReader<byte[]> {
         throw new IllegalStateException();
     }
 
+    @Override
+    public void setBuffer(ByteBuffer byteBuffer) {
+        if (this.byteBuffer == null) {
+            throw new UnsupportedOperationException("Operation available only for non-blocking sockets");
+        }
+
+        this.byteBuffer = byteBuffer;
+    }
+
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    private int checkLength(int length) {
+        if (length < 0 || length > maxFrameSize) {
+            throw new IllegalArgumentException(String.format("Frame length exceeds maximum allowed size. Frame length: %d", Integer.toUnsignedLong(length)));
+        }
+
+        return length;
+    }
+
 }
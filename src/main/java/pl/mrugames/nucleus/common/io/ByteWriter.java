@@ -6,7 +6,7 @@ import java.io.OutputStream;
 import java.nio.ByteBuffer;
 
 public class ByteWriter implements ClientWriter<byte[]> {
-    private final ByteBuffer byteBuffer;
+    private ByteBuffer byteBuffer;
     private final DataOutputStream outputStream;
 
     public ByteWriter(ByteBuffer byteBuffer) {
@@ -32,4 +32,12 @@ public class ByteWriter implements ClientWriter<byte[]> {
         }
     }
 
+    @Override
+    public void setBuffer(ByteBuffer byteBuffer) {
+        if (this.byteBuffer == null) {
+            throw new UnsupportedOperationException("Operation available only for non-blocking sockets");
+        }
+
+        this.byteBuffer = byteBuffer;
+    }
 }
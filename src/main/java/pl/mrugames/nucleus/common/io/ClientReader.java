@@ -1,9 +1,33 @@
 package pl.mrugames.nucleus.common.io;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 
 public interface ClientReader<FrameType extends Serializable> {
     boolean isReady() throws Exception;
 
     FrameType read() throws Exception;
+
+    /**
+     * Frames of zero copy readers are views of the read buffer. The buffer is not compacted until workers return,
+     * so the frames stay valid while they are processed.
+     */
+    default boolean isZeroCopy() {
+        return false;
+    }
+
+    /**
+     * Switches the reader to a new read buffer, which holds unread data of the previous one starting at position 0.
+     * Called under the read buffer lock when the buffer grows or shrinks.
+     */
+    default void setBuffer(ByteBuffer byteBuffer) {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support resizing of the read buffer");
+    }
+
+    /**
+     * Releases resources held besides the buffer, e.g. decompression state. Called under both buffer locks
+     * when the connection is closed.
+     */
+    default void close() {
+    }
 }
@@ -1,7 +1,26 @@
 package pl.mrugames.nucleus.common.io;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 
 public interface ClientWriter<FrameType extends Serializable> {
+    /**
+     * @throws java.nio.BufferOverflowException if the frame does not fit in the buffer
+     */
     void write(FrameType frameToSend) throws Exception;
+
+    /**
+     * Switches the writer to another buffer, e.g. a bigger one when the frame did not fit in the write buffer.
+     * Called under the write buffer lock.
+     */
+    default void setBuffer(ByteBuffer byteBuffer) {
+        throw new UnsupportedOperationException(getClass().getName() + " does not support switching of the write buffer");
+    }
+
+    /**
+     * Releases resources held besides the buffer, e.g. compression state. Called under both buffer locks
+     * when the connection is closed.
+     */
+    default void close() {
+    }
 }
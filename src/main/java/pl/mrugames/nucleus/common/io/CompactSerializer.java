@@ -0,0 +1,330 @@
+package pl.mrugames.nucleus.common.io;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of registered classes. An object is written as a type id followed by whatever the codec
+ * of its class writes, no class descriptors or field names are sent. Both sides have to register the same classes
+ * with the same ids.
+ * <p>
+ * Strings, boxed integers, longs, doubles, booleans and byte arrays are registered by default,
+ * ids below {@link #FIRST_USER_TYPE_ID} are reserved for them. Codecs write directly into the buffer,
+ * helpers for variable length integers and strings are provided.
+ * <p>
+ * Immutable and thread safe, use {@link Builder} to create it.
+ */
+public class CompactSerializer implements Serializer {
+    public static final int FIRST_USER_TYPE_ID = 16;
+
+    private static final int NULL_ID = 0;
+
+    public interface Codec<T> {
+        void write(T value, ByteBuffer target) throws Exception;
+
+        T read(ByteBuffer source) throws Exception;
+    }
+
+    private final Map<Class<?>, Registration<?>> byClass;
+    private final Registration<?>[] byId;
+
+    private CompactSerializer(Map<Class<?>, Registration<?>> byClass) {
+        this.byClass = byClass;
+
+        int maxId = 0;
+        for (Registration<?> registration : byClass.values()) {
+            maxId = Math.max(maxId, registration.id);
+        }
+
+        this.byId = new Registration<?>[maxId + 1];
+        for (Registration<?> registration : byClass.values()) {
+            byId[registration.id] = registration;
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public void serialize(Object object, ByteBuffer target) throws Exception {
+        if (object == null) {
+            putVarInt(target, NULL_ID);
+            return;
+        }
+
+        Registration<Object> registration = (Registration<Object>) byClass.get(object.getClass());
+        if (registration == null) {
+            throw new IllegalArgumentException("Class is not registered: " + object.getClass().getName());
+        }
+
+        putVarInt(target, registration.id);
+        registration.codec.write(object, target);
+    }
+
+    @Override
+    public Object deserialize(ByteBuffer source) throws Exception {
+        int id = getVarInt(source);
+        if (id == NULL_ID) {
+            return null;
+        }
+
+        if (id < 0 || id >= byId.length || byId[id] == null) {
+            throw new IllegalStateException("Unknown type id: " + id);
+        }
+
+        return byId[id].codec.read(source);
+    }
+
+    /**
+     * Unsigned LEB128, 1 byte for values up to 127, negative values take 5 bytes.
+     */
+    public static void putVarInt(ByteBuffer target, int value) {
+        while ((value & ~0x7F) != 0) {
+            target.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        target.put((byte) value);
+    }
+
+    /**
+     * The fifth byte carries only the 4 highest bits, anything above would be silently shifted out, so it is malformed.
+     */
+    public static int getVarInt(ByteBuffer source) {
+        int value = 0;
+
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = source.get();
+            if (shift == 28 && (b & ~0x0F) != 0) {
+                break;
+            }
+
+            value |= (b & 0x7F) << shift;
+
+            if (b >= 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalStateException("Malformed variable length integer");
+    }
+
+    /**
+     * Unsigned LEB128, negative values take 10 bytes. Use {@link #zigZag(long)} for signed values.
+     */
+    public static void putVarLong(ByteBuffer target, long value) {
+        while ((value & ~0x7FL) != 0) {
+            target.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        target.put((byte) value);
+    }
+
+    public static long getVarLong(ByteBuffer source) {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = source.get();
+            value |= (long) (b & 0x7F) << shift;
+
+            if (b >= 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalStateException("Malformed variable length integer");
+    }
+
+    /**
+     * Maps signed values to unsigned ones, so small negative values are short as well.
+     */
+    public static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    public static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * UTF-8 prefixed with its length in bytes. ASCII strings are written without an intermediate array.
+     */
+    public static void putString(ByteBuffer target, String value) {
+        int length = value.length();
+
+        int i = 0;
+        while (i < length && value.charAt(i) < 0x80) {
+            ++i;
+        }
+
+        if (i == length) {
+            putVarInt(target, length);
+            for (i = 0; i < length; ++i) {
+                target.put((byte) value.charAt(i));
+            }
+        } else {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            putVarInt(target, bytes.length);
+            target.put(bytes);
+        }
+    }
+
+    public static String getString(ByteBuffer source) {
+        int length = getLength(source);
+        String value;
+
+        if (source.hasArray()) {
+            value = new String(source.array(), source.arrayOffset() + source.position(), length, StandardCharsets.UTF_8);
+            source.position(source.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            source.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        return value;
+    }
+
+    public static void putBytes(ByteBuffer target, byte[] value) {
+        putVarInt(target, value.length);
+        target.put(value);
+    }
+
+    public static byte[] getBytes(ByteBuffer source) {
+        byte[] value = new byte[getLength(source)];
+        source.get(value);
+        return value;
+    }
+
+    /**
+     * Checked before anything is allocated, the length comes from the network.
+     */
+    private static int getLength(ByteBuffer source) {
+        int length = getVarInt(source);
+
+        if (length < 0 || length > source.remaining()) {
+            throw new IllegalStateException(String.format("Length exceeds the frame. Length: %d, remaining: %d", length, source.remaining()));
+        }
+
+        return length;
+    }
+
+    private static class Registration<T> {
+        private final int id;
+        private final Codec<T> codec;
+
+        private Registration(int id, Codec<T> codec) {
+            this.id = id;
+            this.codec = codec;
+        }
+    }
+
+    public static class Builder {
+        private final Map<Class<?>, Registration<?>> registrations = new HashMap<>();
+        private final Map<Integer, Class<?>> ids = new HashMap<>();
+
+        public Builder() {
+            add(String.class, 1, new Codec<String>() {
+                @Override
+                public void write(String value, ByteBuffer target) {
+                    putString(target, value);
+                }
+
+                @Override
+                public String read(ByteBuffer source) {
+                    return getString(source);
+                }
+            });
+
+            add(Integer.class, 2, new Codec<Integer>() {
+                @Override
+                public void write(Integer value, ByteBuffer target) {
+                    putVarLong(target, zigZag(value));
+                }
+
+                @Override
+                public Integer read(ByteBuffer source) {
+                    return (int) unZigZag(getVarLong(source));
+                }
+            });
+
+            add(Long.class, 3, new Codec<Long>() {
+                @Override
+                public void write(Long value, ByteBuffer target) {
+                    putVarLong(target, zigZag(value));
+                }
+
+                @Override
+                public Long read(ByteBuffer source) {
+                    return unZigZag(getVarLong(source));
+                }
+            });
+
+            add(Double.class, 4, new Codec<Double>() {
+                @Override
+                public void write(Double value, ByteBuffer target) {
+                    target.putDouble(value);
+                }
+
+                @Override
+                public Double read(ByteBuffer source) {
+                    return source.getDouble();
+                }
+            });
+
+            add(Boolean.class, 5, new Codec<Boolean>() {
+                @Override
+                public void write(Boolean value, ByteBuffer target) {
+                    target.put((byte) (value ? 1 : 0));
+                }
+
+                @Override
+                public Boolean read(ByteBuffer source) {
+                    return source.get() != 0;
+                }
+            });
+
+            add(byte[].class, 6, new Codec<byte[]>() {
+                @Override
+                public void write(byte[] value, ByteBuffer target) {
+                    putBytes(target, value);
+                }
+
+                @Override
+                public byte[] read(ByteBuffer source) {
+                    return getBytes(source);
+                }
+            });
+        }
+
+        /**
+         * @param id unique, at least {@link #FIRST_USER_TYPE_ID}, ids are stored in an array, so they should be small
+         */
+        public <T> Builder register(Class<T> type, int id, Codec<T> codec) {
+            if (id < FIRST_USER_TYPE_ID) {
+                throw new IllegalArgumentException("Type ids below " + FIRST_USER_TYPE_ID + " are reserved, id: " + id);
+            }
+
+            add(type, id, codec);
+            return this;
+        }
+
+        public CompactSerializer build() {
+            return new CompactSerializer(new HashMap<>(registrations));
+        }
+
+        private <T> void add(Class<T> type, int id, Codec<T> codec) {
+            if (registrations.containsKey(type)) {
+                throw new IllegalArgumentException("Class is already registered: " + type.getName());
+            }
+
+            if (ids.containsKey(id)) {
+                throw new IllegalArgumentException("Type id " + id + " is already used by " + ids.get(id).getName());
+            }
+
+            registrations.put(type, new Registration<>(id, codec));
+            ids.put(id, type);
+        }
+    }
+}
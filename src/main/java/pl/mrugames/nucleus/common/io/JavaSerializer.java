@@ -0,0 +1,92 @@
+package pl.mrugames.nucleus.common.io;
+
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Java serialization. Every frame is self contained, so it carries the full class descriptor.
+ * Streams write to and read from the buffer directly, without intermediate arrays.
+ */
+public class JavaSerializer implements Serializer {
+    private static volatile JavaSerializer instance;
+
+    public static synchronized JavaSerializer getInstance() {
+        if (instance == null) {
+            instance = new JavaSerializer();
+        }
+
+        return instance;
+    }
+
+    private JavaSerializer() {
+    }
+
+    @Override
+    public void serialize(Object object, ByteBuffer target) throws Exception {
+        try (ObjectOutputStream objectOutputStream = new ObjectOutputStream(new ByteBufferOutputStream(target))) {
+            objectOutputStream.writeObject(object);
+        }
+    }
+
+    @Override
+    public Object deserialize(ByteBuffer source) throws Exception {
+        try (ObjectInputStream objectInputStream = new ObjectInputStream(new ByteBufferInputStream(source))) {
+            return objectInputStream.readUnshared();
+        }
+    }
+
+    private static class ByteBufferOutputStream extends OutputStream {
+        private final ByteBuffer target;
+
+        private ByteBufferOutputStream(ByteBuffer target) {
+            this.target = target;
+        }
+
+        @Override
+        public void write(int b) {
+            target.put((byte) b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            target.put(b, off, len);
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer source;
+
+        private ByteBufferInputStream(ByteBuffer source) {
+            this.source = source;
+        }
+
+        @Override
+        public int read() {
+            return source.hasRemaining() ? source.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+
+            if (!source.hasRemaining()) {
+                return -1;
+            }
+
+            int amount = Math.min(len, source.remaining());
+            source.get(b, off, amount);
+
+            return amount;
+        }
+
+        @Override
+        public int available() {
+            return source.remaining();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package pl.mrugames.nucleus.common.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encoding of the length which precedes every frame of {@link LengthPrefixedReader} and {@link LengthPrefixedWriter}.
+ */
+public enum LengthPrefix {
+    /**
+     * 4 bytes, big endian, same as {@link ByteReader}.
+     */
+    INT {
+        @Override
+        int peek(ByteBuffer source) {
+            if (source.remaining() < Integer.BYTES) {
+                return INCOMPLETE;
+            }
+
+            return source.getInt(source.position());
+        }
+
+        @Override
+        int size(int length) {
+            return Integer.BYTES;
+        }
+
+        @Override
+        void put(ByteBuffer target, int length) {
+            target.putInt(length);
+        }
+    },
+
+    /**
+     * Unsigned LEB128, 1 byte for frames up to 127 bytes, 2 bytes up to 16383 bytes.
+     * The fifth byte carries only the 3 highest bits of a non-negative length, anything above is malformed.
+     */
+    VARINT {
+        @Override
+        int peek(ByteBuffer source) {
+            int position = source.position();
+            int value = 0;
+
+            for (int i = 0; i < MAX_VARINT_SIZE; ++i) {
+                if (position + i >= source.limit()) {
+                    return INCOMPLETE;
+                }
+
+                byte b = source.get(position + i);
+                if (i == MAX_VARINT_SIZE - 1 && (b & ~0x07) != 0) {
+                    break;
+                }
+
+                value |= (b & 0x7F) << (7 * i);
+
+                if (b >= 0) {
+                    return value;
+                }
+            }
+
+            throw new IllegalStateException("Malformed variable length integer");
+        }
+
+        @Override
+        int size(int length) {
+            int size = 1;
+
+            while ((length & ~0x7F) != 0) {
+                length >>>= 7;
+                ++size;
+            }
+
+            return size;
+        }
+
+        @Override
+        void put(ByteBuffer target, int length) {
+            CompactSerializer.putVarInt(target, length);
+        }
+    };
+
+    /**
+     * Returned by {@link #peek(ByteBuffer)} when the prefix has not arrived yet.
+     */
+    static final int INCOMPLETE = Integer.MIN_VALUE;
+
+    private static final int MAX_VARINT_SIZE = 5;
+
+    /**
+     * Decodes the prefix without changing position of the source.
+     *
+     * @return length of the frame or {@link #INCOMPLETE}
+     */
+    abstract int peek(ByteBuffer source);
+
+    /**
+     * @return size of the prefix for a frame of given length [bytes]
+     */
+    abstract int size(int length);
+
+    abstract void put(ByteBuffer target, int length);
+}
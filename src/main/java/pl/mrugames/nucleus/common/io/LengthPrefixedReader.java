@@ -0,0 +1,86 @@
+package pl.mrugames.nucleus.common.io;
+
+import pl.mrugames.nucleus.server.client.frames.BufferFrame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Reads frames prefixed with their length. Frames are not copied, payloads are read-only slices of the read buffer,
+ * see {@link ClientReader#isZeroCopy()}. A worker which keeps a payload after it returns has to copy it.
+ * <p>
+ * Length is checked as soon as the prefix arrives, so a client cannot make the server wait for a frame
+ * which would never fit into the buffer.
+ */
+public class LengthPrefixedReader implements ClientReader<BufferFrame> {
+    private ByteBuffer byteBuffer;
+    private final LengthPrefix lengthPrefix;
+    private final int maxFrameSize;
+
+    public LengthPrefixedReader(ByteBuffer byteBuffer) {
+        this(byteBuffer, LengthPrefix.INT, ByteReader.DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    /**
+     * @param maxFrameSize longer frames are rejected [bytes], should not exceed size of the read buffer
+     */
+    public LengthPrefixedReader(ByteBuffer byteBuffer, LengthPrefix lengthPrefix, int maxFrameSize) {
+        this.byteBuffer = byteBuffer;
+        this.lengthPrefix = lengthPrefix;
+        this.maxFrameSize = maxFrameSize;
+    }
+
+    @Override
+    public boolean isReady() {
+        int length = peekLength();
+        if (length == LengthPrefix.INCOMPLETE) {
+            return false;
+        }
+
+        return byteBuffer.remaining() - lengthPrefix.size(length) >= length;
+    }
+
+    @Override
+    public BufferFrame read() {
+        if (!isReady()) {
+            throw new IllegalStateException("No complete frame in the buffer");
+        }
+
+        int length = peekLength();
+        byteBuffer.position(byteBuffer.position() + lengthPrefix.size(length));
+
+        ByteBuffer payload = byteBuffer.slice();
+        payload.limit(length);
+
+        byteBuffer.position(byteBuffer.position() + length);
+
+        return new BufferFrame(payload.asReadOnlyBuffer());
+    }
+
+    @Override
+    public boolean isZeroCopy() {
+        return true;
+    }
+
+    @Override
+    public void setBuffer(ByteBuffer byteBuffer) {
+        this.byteBuffer = byteBuffer;
+    }
+
+    public LengthPrefix getLengthPrefix() {
+        return lengthPrefix;
+    }
+
+    public int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    private int peekLength() {
+        int length = lengthPrefix.peek(byteBuffer);
+
+        if (length != LengthPrefix.INCOMPLETE && (length < 0 || length > maxFrameSize)) {
+            throw new IllegalArgumentException(String.format("Frame length exceeds maximum allowed size. Frame length: %d", Integer.toUnsignedLong(length)));
+        }
+
+        return length;
+    }
+}
@@ -0,0 +1,39 @@
+package pl.mrugames.nucleus.common.io;
+
+import pl.mrugames.nucleus.server.client.frames.BufferFrame;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes remaining bytes of the payload prefixed with their length. Position of the payload is not changed.
+ */
+public class LengthPrefixedWriter implements ClientWriter<BufferFrame> {
+    private ByteBuffer byteBuffer;
+    private final LengthPrefix lengthPrefix;
+
+    public LengthPrefixedWriter(ByteBuffer byteBuffer) {
+        this(byteBuffer, LengthPrefix.INT);
+    }
+
+    public LengthPrefixedWriter(ByteBuffer byteBuffer, LengthPrefix lengthPrefix) {
+        this.byteBuffer = byteBuffer;
+        this.lengthPrefix = lengthPrefix;
+    }
+
+    @Override
+    public void write(BufferFrame frameToSend) {
+        ByteBuffer payload = frameToSend.getPayload();
+
+        lengthPrefix.put(byteBuffer, payload.remaining());
+        byteBuffer.put(payload.duplicate());
+    }
+
+    @Override
+    public void setBuffer(ByteBuffer byteBuffer) {
+        this.byteBuffer = byteBuffer;
+    }
+
+    public LengthPrefix getLengthPrefix() {
+        return lengthPrefix;
+    }
+}
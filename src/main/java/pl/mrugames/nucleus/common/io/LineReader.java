@@ -6,20 +6,51 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 import java.util.Scanner;
 
+/**
+ * Reads lines ended with {@code \r\n}. The line ending is searched directly in the buffer and the scanned part
+ * is remembered between {@link #isReady()} calls, so every byte is checked only once.
+ * <p>
+ * The reader assumes it is the only one consuming the buffer.
+ */
 public class LineReader implements ClientReader<String> {
-    private final ByteBuffer byteBuffer;
+    public static final int DEFAULT_MAX_LINE_LENGTH = 8 * 1024;
+
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
+
+    private ByteBuffer byteBuffer;
     private final Charset charset = StandardCharsets.UTF_8;
     private final String lineEnding = "\r\n";
     private final InputStream inputStream;
+    private final int maxLineLength;
+
+    /**
+     * Amount of bytes after buffer position which were scanned already and contain no line ending.
+     */
+    private int scanned;
+
+    /**
+     * Length of the first line in the buffer, without line ending. Negative if no complete line was found yet.
+     */
+    private int lineLength = -1;
 
     public LineReader(ByteBuffer byteBuffer) {
+        this(byteBuffer, DEFAULT_MAX_LINE_LENGTH);
+    }
+
+    /**
+     * @param maxLineLength without line ending [bytes]
+     */
+    public LineReader(ByteBuffer byteBuffer, int maxLineLength) {
         this.byteBuffer = byteBuffer;
         this.inputStream = null;
+        this.maxLineLength = maxLineLength;
     }
 
     public LineReader(InputStream inputStream) {
         this.byteBuffer = null;
         this.inputStream = inputStream;
+        this.maxLineLength = DEFAULT_MAX_LINE_LENGTH;
     }
 
     @Override
@@ -28,38 +59,22 @@ public class LineReader implements ClientReader<String> {
             throw new UnsupportedOperationException("Operation available only for non-blocking sockets");
         }
 
-        byteBuffer.mark();
-
-        int available = byteBuffer.limit() - byteBuffer.position();
-        byte[] bytes = new byte[available];
-        byteBuffer.get(bytes);
-        String str = new String(bytes, charset);
-
-        byteBuffer.reset();
-
-        return str.contains(lineEnding);
+        return lineLength >= 0 || scan();
     }
 
     @Override
     public String read() throws Exception {
         if (byteBuffer != null) {
-            byteBuffer.mark();
-
-            int available = byteBuffer.limit() - byteBuffer.position();
-            byte[] bytes = new byte[available];
-            byteBuffer.get(bytes);
-            String str = new String(bytes, charset);
-            int firstNl = str.indexOf(lineEnding);
-
-            str = str.substring(0, firstNl);
-
-            byteBuffer.reset();
+            if (!isReady()) {
+                throw new IllegalStateException("No complete line in the buffer");
+            }
 
-            byteBuffer.position(byteBuffer.position() + str.getBytes(charset).length + lineEnding.getBytes(charset).length);
+            String line = decode(lineLength);
 
-            str = str.substring(0, str.length());
+            byteBuffer.position(byteBuffer.position() + lineEnding.length());
+            lineLength = -1;
 
-            return str;
+            return line;
         }
 
         if (inputStream != null) {
@@ -70,7 +85,71 @@ public class LineReader implements ClientReader<String> {
         throw new IllegalStateException();
     }
 
+    @Override
+    public void setBuffer(ByteBuffer byteBuffer) {
+        if (this.byteBuffer == null) {
+            throw new UnsupportedOperationException("Operation available only for non-blocking sockets");
+        }
+
+        this.byteBuffer = byteBuffer;
+    }
+
     public String getLineEnding() {
         return lineEnding;
     }
+
+    public int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+    private boolean scan() {
+        int position = byteBuffer.position();
+        int limit = byteBuffer.limit();
+
+        if (scanned > limit - position) {
+            scanned = 0;
+        }
+
+        // the line ending could be split between reads, so the byte before the start is checked again
+        for (int i = position + Math.max(scanned, 1); i < limit; ++i) {
+            if (byteBuffer.get(i) == LF && byteBuffer.get(i - 1) == CR) {
+                scanned = 0;
+                lineLength = checkLength(i - 1 - position);
+                return true;
+            }
+        }
+
+        scanned = limit - position;
+
+        // the last byte may be the beginning of the line ending
+        checkLength(scanned - 1);
+
+        return false;
+    }
+
+    private int checkLength(int length) {
+        if (length > maxLineLength) {
+            throw new IllegalArgumentException(String.format("Line length exceeds maximum allowed size. Line length: %d", length));
+        }
+
+        return length;
+    }
+
+    /**
+     * Decodes the line and moves buffer position to its end.
+     */
+    private String decode(int length) {
+        String line;
+
+        if (byteBuffer.hasArray()) {
+            line = new String(byteBuffer.array(), byteBuffer.arrayOffset() + byteBuffer.position(), length, charset);
+            byteBuffer.position(byteBuffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            byteBuffer.get(bytes);
+            line = new String(bytes, charset);
+        }
+
+        return line;
+    }
 }
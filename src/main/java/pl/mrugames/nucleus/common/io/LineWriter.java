@@ -6,7 +6,7 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
 public class LineWriter implements ClientWriter<String> {
-    private final ByteBuffer byteBuffer;
+    private ByteBuffer byteBuffer;
     private final Charset charset = StandardCharsets.UTF_8;
     private final String lineEnding = "\r\n";
     private final OutputStream outputStream;
@@ -34,6 +34,15 @@ public class LineWriter implements ClientWriter<String> {
         }
     }
 
+    @Override
+    public void setBuffer(ByteBuffer byteBuffer) {
+        if (this.byteBuffer == null) {
+            throw new UnsupportedOperationException("Operation available only for non-blocking sockets");
+        }
+
+        this.byteBuffer = byteBuffer;
+    }
+
     public String getLineEnding() {
         return lineEnding;
     }
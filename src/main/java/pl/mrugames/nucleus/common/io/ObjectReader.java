@@ -1,20 +1,35 @@
 package pl.mrugames.nucleus.common.io;
 
-import java.io.ByteArrayInputStream;
 import java.io.InputStream;
-import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 
+/**
+ * Reads frames prefixed with their length. Frames are deserialized directly from the buffer.
+ */
 public class ObjectReader<FrameType extends Serializable> implements ClientReader<FrameType> {
+    private ByteBuffer byteBuffer;
     private final ByteReader byteReader;
+    private final Serializer serializer;
 
     public ObjectReader(ByteBuffer byteBuffer) {
+        this(byteBuffer, JavaSerializer.getInstance());
+    }
+
+    public ObjectReader(ByteBuffer byteBuffer, Serializer serializer) {
+        this.byteBuffer = byteBuffer;
         this.byteReader = new ByteReader(byteBuffer);
+        this.serializer = serializer;
     }
 
     public ObjectReader(InputStream inputStream) {
+        this(inputStream, JavaSerializer.getInstance());
+    }
+
+    public ObjectReader(InputStream inputStream, Serializer serializer) {
+        this.byteBuffer = null;
         this.byteReader = new ByteReader(inputStream);
+        this.serializer = serializer;
     }
 
     @Override
@@ -25,10 +40,28 @@ public class ObjectReader<FrameType extends Serializable> implements ClientReade
     @Override
     @SuppressWarnings("unchecked")
     public FrameType read() throws Exception {
-        byte[] frame = byteReader.read();
-        try (ByteArrayInputStream byteInputStream = new ByteArrayInputStream(frame);
-             ObjectInputStream objectInputStream = new ObjectInputStream(byteInputStream)) {
-            return (FrameType) objectInputStream.readUnshared();
+        if (byteBuffer == null) {
+            return (FrameType) serializer.deserialize(ByteBuffer.wrap(byteReader.read()));
         }
+
+        int length = byteBuffer.getInt();
+
+        ByteBuffer frame = byteBuffer.slice();
+        frame.limit(length);
+
+        // the frame is skipped even if it cannot be deserialized
+        byteBuffer.position(byteBuffer.position() + length);
+
+        return (FrameType) serializer.deserialize(frame);
+    }
+
+    @Override
+    public void setBuffer(ByteBuffer byteBuffer) {
+        byteReader.setBuffer(byteBuffer);
+        this.byteBuffer = byteBuffer;
+    }
+
+    public Serializer getSerializer() {
+        return serializer;
     }
 }
@@ -1,31 +1,90 @@
 package pl.mrugames.nucleus.common.io;
 
-import java.io.*;
+import java.io.DataOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 
+/**
+ * Writes frames prefixed with their length. Frames are serialized directly into the buffer.
+ */
 public class ObjectWriter<FrameType extends Serializable> implements ClientWriter<FrameType> {
-    private final ByteWriter byteWriter;
+    private static final int INITIAL_STREAM_BUFFER_SIZE = 1024;
+
+    private ByteBuffer byteBuffer;
+    private final DataOutputStream outputStream;
+    private final Serializer serializer;
+
+    private ByteBuffer streamBuffer;
 
     public ObjectWriter(ByteBuffer byteBuffer) {
-        this.byteWriter = new ByteWriter(byteBuffer);
+        this(byteBuffer, JavaSerializer.getInstance());
+    }
+
+    public ObjectWriter(ByteBuffer byteBuffer, Serializer serializer) {
+        this.byteBuffer = byteBuffer;
+        this.outputStream = null;
+        this.serializer = serializer;
     }
 
     public ObjectWriter(OutputStream outputStream) {
-        this.byteWriter = new ByteWriter(outputStream);
+        this(outputStream, JavaSerializer.getInstance());
+    }
+
+    public ObjectWriter(OutputStream outputStream, Serializer serializer) {
+        this.byteBuffer = null;
+        this.outputStream = new DataOutputStream(outputStream);
+        this.serializer = serializer;
+        this.streamBuffer = ByteBuffer.allocate(INITIAL_STREAM_BUFFER_SIZE);
     }
 
     @Override
     public void write(FrameType frameToSend) throws Exception {
-        byte[] bytes = bytes(frameToSend);
-        byteWriter.write(bytes);
+        if (byteBuffer != null) {
+            writeFrame(frameToSend, byteBuffer);
+            return;
+        }
+
+        // the length has to be known before the frame is written to the stream
+        while (true) {
+            streamBuffer.clear();
+
+            try {
+                writeFrame(frameToSend, streamBuffer);
+                break;
+            } catch (BufferOverflowException e) {
+                streamBuffer = ByteBuffer.allocate(streamBuffer.capacity() * 2);
+            }
+        }
+
+        outputStream.write(streamBuffer.array(), 0, streamBuffer.position());
     }
 
-    private byte[] bytes(FrameType frameToSend) throws IOException {
-        try (ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-             ObjectOutputStream objectOutputStream = new ObjectOutputStream(byteArrayOutputStream)) {
-            objectOutputStream.writeObject(frameToSend);
+    @Override
+    public void setBuffer(ByteBuffer byteBuffer) {
+        if (this.byteBuffer == null) {
+            throw new UnsupportedOperationException("Operation available only for non-blocking sockets");
+        }
+
+        this.byteBuffer = byteBuffer;
+    }
 
-            return byteArrayOutputStream.toByteArray();
+    public Serializer getSerializer() {
+        return serializer;
+    }
+
+    private void writeFrame(FrameType frameToSend, ByteBuffer target) throws Exception {
+        int start = target.position();
+        target.putInt(0);
+
+        try {
+            serializer.serialize(frameToSend, target);
+        } catch (Exception e) {
+            target.position(start);
+            throw e;
         }
+
+        target.putInt(start, target.position() - start - Integer.BYTES);
     }
 }
@@ -0,0 +1,25 @@
+package pl.mrugames.nucleus.common.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Encoding of frames used by {@link ObjectWriter} and {@link ObjectReader}. Frames are prefixed with their length
+ * by the codecs, so a serializer writes and reads only the object itself.
+ * <p>
+ * Serializers are shared by all connections of a protocol, so they have to be thread safe.
+ */
+public interface Serializer {
+    /**
+     * Writes the object at the position of the target buffer.
+     *
+     * @throws java.nio.BufferOverflowException if the object does not fit in the buffer
+     */
+    void serialize(Object object, ByteBuffer target) throws Exception;
+
+    /**
+     * Reads the object from the position of the source buffer, limit of the source is the end of the frame.
+     * The source is a view of the read buffer, which is reused after this method returns,
+     * so no reference to it may be kept.
+     */
+    Object deserialize(ByteBuffer source) throws Exception;
+}
@@ -8,7 +8,7 @@ import java.nio.charset.StandardCharsets;
  * Reads <b>any</b> text available.
  */
 public class TextReader implements ClientReader<String> {
-    private final ByteBuffer byteBuffer;
+    private ByteBuffer byteBuffer;
     private final Charset charset = StandardCharsets.UTF_8;
 
     public TextReader(ByteBuffer byteBuffer) {
@@ -20,6 +20,11 @@ public class TextReader implements ClientReader<String> {
         return byteBuffer.hasRemaining();
     }
 
+    @Override
+    public void setBuffer(ByteBuffer byteBuffer) {
+        this.byteBuffer = byteBuffer;
+    }
+
     @Override
     public String read() throws Exception {
         int available = byteBuffer.limit() - byteBuffer.position();
@@ -5,7 +5,7 @@ import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
 
 public class TextWriter implements ClientWriter<String> {
-    private final ByteBuffer byteBuffer;
+    private ByteBuffer byteBuffer;
     private final Charset charset = StandardCharsets.UTF_8;
 
     public TextWriter(ByteBuffer byteBuffer) {
@@ -16,4 +16,9 @@ public class TextWriter implements ClientWriter<String> {
     public void write(String frameToSend) throws Exception {
         byteBuffer.put(frameToSend.getBytes(charset));
     }
+
+    @Override
+    public void setBuffer(ByteBuffer byteBuffer) {
+        this.byteBuffer = byteBuffer;
+    }
 }
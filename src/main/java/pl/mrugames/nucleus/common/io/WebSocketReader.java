@@ -3,23 +3,120 @@ package pl.mrugames.nucleus.common.io;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pl.mrugames.nucleus.server.client.frames.WebSocketFrame;
+import pl.mrugames.nucleus.server.websocket.PerMessageDeflate;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+/**
+ * Reads WebSocket frames sent by a client. Fragmented messages are reassembled, unless streaming mode is enabled.
+ * In streaming mode every fragment is returned as soon as it arrives, see {@link WebSocketFrame#isFinalFragment()}.
+ * Control frames may be interleaved with fragments of a message.
+ * <p>
+ * When {@code permessage-deflate} is negotiated, messages with the RSV1 bit set are decompressed, see {@link #setCompression(PerMessageDeflate)}.
+ */
 public class WebSocketReader implements ClientReader<WebSocketFrame> {
     private final static Logger logger = LoggerFactory.getLogger(WebSocketReader.class);
-    private final static int MAX_PAYLOAD_SIZE = 1_000_000;
-    private final ByteBuffer byteBuffer;
+    public final static int DEFAULT_MAX_MESSAGE_SIZE = 1_000_000;
+    private final static int MAX_CONTROL_PAYLOAD_SIZE = 125;
+
+    private ByteBuffer byteBuffer;
+    private final int maxMessageSize;
+    private final boolean streaming;
 
     private final int maskSize = 4;
 
+    private final List<byte[]> fragments = new ArrayList<>();
+    private boolean messageInProgress;
+    private WebSocketFrame.FrameType messageType;
+    private int messageLength;
+    private boolean messageCompressed;
+
+    private volatile PerMessageDeflate compression;
+
     public WebSocketReader(ByteBuffer byteBuffer) {
+        this(byteBuffer, DEFAULT_MAX_MESSAGE_SIZE, false);
+    }
+
+    /**
+     * @param maxMessageSize size of a reassembled message, or of a single fragment in streaming mode [bytes]
+     * @param streaming      return fragments as they arrive, instead of reassembling them
+     */
+    public WebSocketReader(ByteBuffer byteBuffer, int maxMessageSize, boolean streaming) {
         this.byteBuffer = byteBuffer;
+        this.maxMessageSize = maxMessageSize;
+        this.streaming = streaming;
     }
 
+    /**
+     * Fragments which do not finish a message are consumed and kept until the whole message arrives.
+     */
     @Override
     public boolean isReady() throws Exception {
+        while (isFrameAvailable()) {
+            if (streaming || isDeliverable(byteBuffer.get(byteBuffer.position()))) {
+                return true;
+            }
+
+            readFrame();
+        }
+
+        return false;
+    }
+
+    @Override
+    public WebSocketFrame read() throws Exception {
+        if (!isReady()) {
+            throw new IllegalStateException("No complete frame in the buffer");
+        }
+
+        return readFrame();
+    }
+
+    @Override
+    public void setBuffer(ByteBuffer byteBuffer) {
+        this.byteBuffer = byteBuffer;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public int getMaxMessageSize() {
+        return maxMessageSize;
+    }
+
+    /**
+     * Should be set before the handshake response is sent, so the first compressed message is already understood.
+     *
+     * @param compression null disables decompression
+     */
+    public void setCompression(@Nullable PerMessageDeflate compression) {
+        this.compression = compression;
+    }
+
+    @Nullable
+    public PerMessageDeflate getCompression() {
+        return compression;
+    }
+
+    /**
+     * The compression is shared with the writer, closing it twice does no harm.
+     */
+    @Override
+    public void close() {
+        PerMessageDeflate compression = this.compression;
+        if (compression != null) {
+            compression.close();
+        }
+    }
+
+    private boolean isFrameAvailable() throws IOException {
         if (amountAvailable() < 2) {  // frame type + length byte
             return false;
         }
@@ -35,20 +132,55 @@ public class WebSocketReader implements ClientReader<WebSocketFrame> {
             }
 
             long length = computePayloadLength(lengthByte);
+            int mask = (lengthByte & 0x80) != 0 ? maskSize : 0;
 
-            if (amountAvailable() < maskSize + length) {
-                return false;
-            }
-
-            return true;
+            return amountAvailable() >= mask + length;
         } finally {
             byteBuffer.reset();
         }
     }
 
-    @Override
-    public WebSocketFrame read() throws Exception {
-        WebSocketFrame.FrameType frameType = getFrameType();
+    /**
+     * Final fragments and control frames are delivered. Fragmented control frames are delivered as well,
+     * so reading them fails.
+     */
+    private boolean isDeliverable(byte first) {
+        boolean fin = (first & 0x80) != 0;
+        boolean control = (first & 0x08) != 0;
+
+        return fin || control;
+    }
+
+    /**
+     * @return null if the frame is a fragment of a message which is not finished yet
+     */
+    @Nullable
+    private WebSocketFrame readFrame() throws IOException, DataFormatException {
+        PerMessageDeflate compression = this.compression;
+
+        byte first = byteBuffer.get();
+        boolean fin = (first & 0x80) != 0;
+        boolean compressed = compression != null && (first & 0x40) != 0;
+        int opcode = first & 0x0F;
+        boolean control = (opcode & 0x08) != 0;
+
+        WebSocketFrame.FrameType frameType = getFrameType(first, compression != null);
+
+        if (control && !fin) {
+            throw new IllegalStateException("Control frames must not be fragmented");
+        }
+
+        if (opcode == 0x00 && !messageInProgress) {
+            throw new IllegalStateException("Continuation frame received, but no fragmented message was started");
+        }
+
+        if (opcode != 0x00 && !control && messageInProgress) {
+            throw new IllegalStateException("New message started before the fragmented one was finished");
+        }
+
+        if (compressed && (control || opcode == 0x00)) {
+            throw new IllegalStateException("Only the first frame of a data message may be compressed");
+        }
 
         byte lengthByte = byteBuffer.get();
         long payloadLength = computePayloadLength(lengthByte);
@@ -57,25 +189,99 @@ public class WebSocketReader implements ClientReader<WebSocketFrame> {
             throw new IllegalStateException("Failed to read payload length");
         }
 
-        if (payloadLength > MAX_PAYLOAD_SIZE) {
+        if (control && payloadLength > MAX_CONTROL_PAYLOAD_SIZE) {
+            throw new IllegalStateException(String.format("Control frame payload too long. Payload length: %d", payloadLength));
+        }
+
+        if (payloadLength > maxMessageSize) {
             throw new IllegalArgumentException(String.format("Payload length exceeds maximum allowed size. Payload length: %d", payloadLength));
         }
 
-        byte[] mask = getMaskingKey(lengthByte);
-        byte[] decoded = decode(mask, (int) payloadLength);
+        boolean reassembling = !streaming && !control && (messageInProgress || !fin);
+        if (reassembling && messageLength + payloadLength > maxMessageSize) {
+            long length = messageLength + payloadLength;
+            resetMessage();
 
-        return new WebSocketFrame(frameType, decoded);
-    }
+            throw new IllegalArgumentException(String.format("Message length exceeds maximum allowed size. Message length: %d", length));
+        }
+
+        byte[] decoded = decode(lengthByte, (int) payloadLength);
+
+        if (control) {
+            return new WebSocketFrame(frameType, decoded);
+        }
+
+        if (opcode != 0x00) {
+            messageType = frameType;
+            messageCompressed = compressed;
+        }
+
+        if (streaming) {
+            messageInProgress = !fin;
+
+            if (messageCompressed) {
+                decoded = compression.decompress(decoded, fin, maxMessageSize);
+            }
+
+            return new WebSocketFrame(messageType, decoded, fin);
+        }
+
+        if (!reassembling) {
+            if (compressed) {
+                decoded = compression.decompress(decoded, true, maxMessageSize);
+            }
+
+            return new WebSocketFrame(frameType, decoded);
+        }
+
+        messageInProgress = true;
+        fragments.add(decoded);
+        messageLength += decoded.length;
 
-    private WebSocketFrame.FrameType getFrameType() {
-        byte first = byteBuffer.get();
-        boolean fin = (first & 0x80) != 0;
         if (!fin) {
-            throw new UnsupportedOperationException("Message fragmentation not supported");
+            return null;
         }
 
-        if ((first & 0x70) != 0) {
-            logger.warn("Reserved bits should be 0, but were {}. Returning null.", first & 0x70);
+        byte[] payload = joinFragments();
+        boolean decompress = messageCompressed;
+        WebSocketFrame.FrameType type = messageType;
+        resetMessage();
+
+        if (decompress) {
+            payload = compression.decompress(payload, true, maxMessageSize);
+        }
+
+        return new WebSocketFrame(type, payload);
+    }
+
+    private byte[] joinFragments() {
+        byte[] message = new byte[messageLength];
+
+        int position = 0;
+        for (byte[] fragment : fragments) {
+            System.arraycopy(fragment, 0, message, position, fragment.length);
+            position += fragment.length;
+        }
+
+        return message;
+    }
+
+    private void resetMessage() {
+        fragments.clear();
+        messageInProgress = false;
+        messageType = null;
+        messageLength = 0;
+        messageCompressed = false;
+    }
+
+    /**
+     * @return type of the message for continuation frames
+     */
+    private WebSocketFrame.FrameType getFrameType(byte first, boolean compression) {
+        // RSV1 marks compressed messages when the extension is negotiated
+        int reserved = first & (compression ? 0x30 : 0x70);
+        if (reserved != 0) {
+            logger.warn("Reserved bits should be 0, but were {}. Returning null.", reserved);
             return null;
         }
 
@@ -84,7 +290,8 @@ public class WebSocketReader implements ClientReader<WebSocketFrame> {
 
         switch (opcode) {
             case 0x00:
-                throw new UnsupportedOperationException("Message fragmentation not supported");
+                frameType = messageType;
+                break;
             case 0x01:
                 frameType = WebSocketFrame.FrameType.TEXT;
                 break;
@@ -95,9 +302,11 @@ public class WebSocketReader implements ClientReader<WebSocketFrame> {
                 frameType = WebSocketFrame.FrameType.CLOSE;
                 break;
             case 0x09:
-                throw new UnsupportedOperationException("ping not supported");
+                frameType = WebSocketFrame.FrameType.PING;
+                break;
             case 0x0A:
-                throw new UnsupportedOperationException("pong not supported");
+                frameType = WebSocketFrame.FrameType.PONG;
+                break;
             default:
                 throw new IllegalStateException("Unsupported opcode received");
         }
@@ -127,7 +336,7 @@ public class WebSocketReader implements ClientReader<WebSocketFrame> {
         } else if (lenByte == 0x7E) {
             return amountAvailable() >= 2;  // short
         } else if (lenByte == 0x7F) {
-            return amountAvailable() >= 4; // long
+            return amountAvailable() >= 8; // long
         }
 
         throw new IllegalStateException("Unknown length, " + lenByte);
@@ -137,34 +346,48 @@ public class WebSocketReader implements ClientReader<WebSocketFrame> {
         return byteBuffer.limit() - byteBuffer.position();
     }
 
-    private byte[] decode(byte[] mask, int payloadLength) throws IOException {
-        byte[] buffer = new byte[payloadLength];
+    private byte[] decode(byte lengthByte, int payloadLength) {
+        byte[] payload = new byte[payloadLength];
 
-        if (mask != null) {
-            for (int i = 0; i < payloadLength; ++i) {
-                buffer[i] = (byte) (byteBuffer.get() ^ mask[i % 4]);
-            }
-        } else {
-            for (int i = 0; i < payloadLength; ++i) {
-                buffer[i] = byteBuffer.get();
-            }
+        boolean withMask = (lengthByte & 0x80) != 0;
+        if (!withMask) {
+            byteBuffer.get(payload);
+            return payload;
         }
 
-        return buffer;
+        int mask = byteBuffer.getInt();
+        if (byteBuffer.order() == ByteOrder.LITTLE_ENDIAN) {
+            mask = Integer.reverseBytes(mask);
+        }
+
+        unmask(byteBuffer, byteBuffer.position(), payload, mask);
+        byteBuffer.position(byteBuffer.position() + payloadLength);
+
+        return payload;
     }
 
-    private byte[] getMaskingKey(byte lengthByte) throws IOException {
-        boolean withMask = (lengthByte & 0x80) != 0;
-        if (!withMask) {
-            return null;
+    /**
+     * Unmasks the payload 8 bytes at a time, remaining bytes one by one. Position of the source is not changed.
+     *
+     * @param offset absolute position of the payload in the source
+     * @param mask   masking key, first byte of the key in the most significant bits
+     */
+    static void unmask(ByteBuffer source, int offset, byte[] destination, int mask) {
+        ByteBuffer target = ByteBuffer.wrap(destination).order(source.order());
+
+        long longMask = (mask & 0xFFFFFFFFL) | ((long) mask << 32);
+        if (source.order() == ByteOrder.LITTLE_ENDIAN) {
+            longMask = Long.reverseBytes(longMask);
         }
 
-        byte[] mask = new byte[maskSize];
-        for (int i = 0; i < maskSize; ++i) {
-            mask[i] = byteBuffer.get();
+        int i = 0;
+        for (; i + 8 <= destination.length; i += 8) {
+            target.putLong(i, source.getLong(offset + i) ^ longMask);
         }
 
-        return mask;
+        for (; i < destination.length; ++i) {
+            destination[i] = (byte) (source.get(offset + i) ^ (mask >>> (24 - ((i & 3) << 3))));
+        }
     }
 
 }
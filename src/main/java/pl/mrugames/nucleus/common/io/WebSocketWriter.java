@@ -1,11 +1,20 @@
 package pl.mrugames.nucleus.common.io;
 
 import pl.mrugames.nucleus.server.client.frames.WebSocketFrame;
+import pl.mrugames.nucleus.server.websocket.PerMessageDeflate;
 
+import javax.annotation.Nullable;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 
 public class WebSocketWriter implements ClientWriter<WebSocketFrame> {
-    private final ByteBuffer byteBuffer;
+    private ByteBuffer byteBuffer;
+
+    private volatile PerMessageDeflate compression;
+
+    // compressed payload of a message which did not fit in the buffer, kept for the retry
+    private WebSocketFrame overflowedFrame;
+    private byte[] overflowedPayload;
 
     public WebSocketWriter(ByteBuffer byteBuffer) {
         this.byteBuffer = byteBuffer;
@@ -19,23 +28,105 @@ public class WebSocketWriter implements ClientWriter<WebSocketFrame> {
                 byteBuffer.put((byte) 0x00);
                 break;
             case TEXT:
-                byteBuffer.put((byte) 0x81); // fin + text frame
-
-                long payloadLen = frameToSend.getPayload().length;
-                if (payloadLen <= 0x7D) {
-                    byteBuffer.put((byte) (payloadLen & 0x7F));
-                } else if (payloadLen <= 0xFFFF) {
-                    byteBuffer.put((byte) 0x7E);
-                    byteBuffer.putShort((short) payloadLen);
-                } else {
-                    byteBuffer.put((byte) 0x7F);
-                    byteBuffer.putLong(payloadLen);
-                }
-
-                byteBuffer.put(frameToSend.getPayload());
+                writeMessage((byte) 0x81, frameToSend); // fin + text frame
+                break;
+            case BINARY:
+                writeMessage((byte) 0x82, frameToSend); // fin + binary frame
+                break;
+            case PING:
+                writeFrame((byte) 0x89, frameToSend.getPayload());
+                break;
+            case PONG:
+                writeFrame((byte) 0x8A, frameToSend.getPayload());
                 break;
             default:
-                throw new UnsupportedOperationException("Only text frames are supported");
+                throw new UnsupportedOperationException("Unsupported frame type: " + frameToSend.getFrameType());
+        }
+    }
+
+    @Override
+    public void setBuffer(ByteBuffer byteBuffer) {
+        this.byteBuffer = byteBuffer;
+    }
+
+    /**
+     * @param compression null disables compression
+     */
+    public void setCompression(@Nullable PerMessageDeflate compression) {
+        this.compression = compression;
+    }
+
+    @Nullable
+    public PerMessageDeflate getCompression() {
+        return compression;
+    }
+
+    /**
+     * The compression is shared with the reader, closing it twice does no harm.
+     */
+    @Override
+    public void close() {
+        overflowedFrame = null;
+        overflowedPayload = null;
+
+        PerMessageDeflate compression = this.compression;
+        if (compression != null) {
+            compression.close();
+        }
+    }
+
+    /**
+     * Compresses data messages big enough and marks them with RSV1 bit. Control frames are never compressed.
+     * <p>
+     * With context takeover every compression changes the state of the deflater, so a message which did not fit
+     * in the buffer is not compressed again when its write is retried with a bigger buffer.
+     */
+    private void writeMessage(byte first, WebSocketFrame frame) {
+        byte[] payload = frame.getPayload();
+
+        if (frame == overflowedFrame) {
+            payload = overflowedPayload;
+            first |= 0x40;
+        } else {
+            PerMessageDeflate compression = this.compression;
+
+            if (compression != null && compression.shouldCompress(payload)) {
+                payload = compression.compress(payload);
+                first |= 0x40;
+            }
+        }
+
+        overflowedFrame = null;
+        overflowedPayload = null;
+
+        if ((first & 0x40) != 0 && byteBuffer.remaining() < frameLength(payload)) {
+            overflowedFrame = frame;
+            overflowedPayload = payload;
+            throw new BufferOverflowException();
         }
+
+        writeFrame(first, payload);
+    }
+
+    private int frameLength(byte[] payload) {
+        int headerLength = payload.length <= 0x7D ? 2 : payload.length <= 0xFFFF ? 4 : 10;
+        return headerLength + payload.length;
+    }
+
+    private void writeFrame(byte first, byte[] payload) {
+        byteBuffer.put(first);
+
+        long payloadLen = payload.length;
+        if (payloadLen <= 0x7D) {
+            byteBuffer.put((byte) (payloadLen & 0x7F));
+        } else if (payloadLen <= 0xFFFF) {
+            byteBuffer.put((byte) 0x7E);
+            byteBuffer.putShort((short) payloadLen);
+        } else {
+            byteBuffer.put((byte) 0x7F);
+            byteBuffer.putLong(payloadLen);
+        }
+
+        byteBuffer.put(payload);
     }
 }
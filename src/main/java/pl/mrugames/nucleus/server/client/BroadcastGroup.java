@@ -0,0 +1,210 @@
+package pl.mrugames.nucleus.server.client;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.mrugames.nucleus.common.io.ClientWriter;
+import pl.mrugames.nucleus.server.Metrics;
+import pl.mrugames.nucleus.server.client.filters.FilterProcessor;
+import pl.mrugames.nucleus.server.tasks.ClientShutdownTask;
+
+import javax.annotation.Nullable;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Sends the same frame to many clients. The frame is filtered and encoded once, into a read-only buffer which is shared
+ * by outbound queues of all members, instead of once per client as {@link Comm#send(Object)} does.
+ * <p>
+ * The group has its own writer, so members have to use a protocol which understands its frames and writer
+ * state negotiated per connection is not used, e.g. WebSocket messages are broadcast uncompressed.
+ * Clients join and leave groups through {@link ClientController} and leave all groups when they are shut down.
+ * <p>
+ * Thread safe.
+ */
+public class BroadcastGroup {
+    private final static Logger logger = LoggerFactory.getLogger(BroadcastGroup.class);
+
+    private final String name;
+    private final ClientWriter<Serializable> clientWriter;
+    private final FilterProcessor outputFilterProcessor;
+    private final ByteBuffer encodeBuffer;
+    private final Lock encodeLock;
+    private final Map<Client<?, ?>, Member> members;
+
+    private final Histogram fanOutTime;
+    private final Meter delivered;
+    private final Meter dropped;
+    private final Counter disconnected;
+
+    /**
+     * @param clientWriterFactory writer used to encode broadcast frames
+     * @param bufferSize          maximum size of an encoded frame [bytes]
+     */
+    @SuppressWarnings("unchecked")
+    public BroadcastGroup(String name,
+                          Function<ByteBuffer, ? extends ClientWriter<? extends Serializable>> clientWriterFactory,
+                          FilterProcessor outputFilterProcessor,
+                          int bufferSize) {
+        this.name = name;
+        this.encodeBuffer = ByteBuffer.allocate(bufferSize);
+        this.clientWriter = (ClientWriter<Serializable>) clientWriterFactory.apply(encodeBuffer);
+        this.outputFilterProcessor = outputFilterProcessor;
+        this.encodeLock = new ReentrantLock();
+        this.members = new ConcurrentHashMap<>();
+
+        fanOutTime = Metrics.getRegistry().histogram(name(BroadcastGroup.class, name, "fan_out_micros"));
+        delivered = Metrics.getRegistry().meter(name(BroadcastGroup.class, name, "delivered"));
+        dropped = Metrics.getRegistry().meter(name(BroadcastGroup.class, name, "dropped"));
+        disconnected = Metrics.getRegistry().counter(name(BroadcastGroup.class, name, "disconnected"));
+    }
+
+    /**
+     * Queues the frame for every member. Does not wait until it is written to sockets.
+     *
+     * @return number of members the frame was queued for
+     */
+    public int broadcast(Object frame) throws Exception {
+        long start = System.nanoTime();
+
+        ByteBuffer encoded = encode(frame);
+        if (encoded == null) {
+            logger.debug("[{}] Frame '{}' filtered out!", name, frame);
+            return 0;
+        }
+
+        int count = 0;
+        for (Member member : members.values()) {
+            if (deliver(member, encoded)) {
+                ++count;
+            }
+        }
+
+        delivered.mark(count);
+        fanOutTime.update(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+
+        return count;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    public boolean contains(Client<?, ?> client) {
+        return members.containsKey(client);
+    }
+
+    /**
+     * A client shut down concurrently may have left its groups before it was inserted, so it is removed again.
+     * The shutdown flag is set before the client leaves its groups, so one of them always sees the other.
+     *
+     * @param maxQueuedBytes member is treated as a slow consumer when its outbound queue would exceed this size
+     */
+    void add(Client<?, ?> client, SlowConsumerPolicy policy, long maxQueuedBytes) {
+        members.put(client, new Member(client, policy, maxQueuedBytes));
+        client.getBroadcastGroups().add(this);
+
+        if (client.getShutdown().get() || client.getComm().isClosed()) {
+            logger.debug("[{}] Client {} is shut down, not adding it to the group", name, client.getName());
+            remove(client);
+        }
+    }
+
+    /**
+     * @return false if the client was not a member
+     */
+    boolean remove(Client<?, ?> client) {
+        client.getBroadcastGroups().remove(this);
+        return members.remove(client) != null;
+    }
+
+    /**
+     * @return read-only buffer with the encoded frame, null if the frame was filtered out
+     */
+    @Nullable
+    ByteBuffer encode(Object frame) throws Exception {
+        encodeLock.lock();
+        try {
+            Optional<? extends Serializable> result = outputFilterProcessor.filter(frame);
+            if (!result.isPresent()) {
+                return null;
+            }
+
+            clientWriter.write(result.get());
+            encodeBuffer.flip();
+
+            ByteBuffer encoded = ByteBuffer.allocate(encodeBuffer.remaining());
+            encoded.put(encodeBuffer).flip();
+
+            return encoded.asReadOnlyBuffer();
+        } finally {
+            encodeBuffer.clear();
+        }
+    }
+
+    private boolean deliver(Member member, ByteBuffer encoded) {
+        Comm comm = member.client.getComm();
+
+        if (comm.getQueuedBytes() + encoded.remaining() > member.maxQueuedBytes) {
+            if (member.policy == SlowConsumerPolicy.DISCONNECT) {
+                disconnect(member.client);
+            } else {
+                dropped.mark();
+            }
+
+            return false;
+        }
+
+        try {
+            comm.sendEncoded(encoded.duplicate());
+            return true;
+        } catch (ClosedChannelException e) {
+            logger.debug("[{}] Client {} is closed, removing it from the group", name, member.client.getName());
+            remove(member.client);
+        } catch (Exception e) {
+            logger.error("[{}] Failed to queue frame for client {}", name, member.client.getName(), e);
+        }
+
+        return false;
+    }
+
+    private void disconnect(Client<?, ?> client) {
+        // only the first broadcast which notices the slow consumer shuts it down
+        if (!remove(client)) {
+            return;
+        }
+
+        logger.warn("[{}] Client {} does not keep up with broadcasts, disconnecting", name, client.getName());
+        disconnected.inc();
+
+        client.getTaskExecutor().submit(new ClientShutdownTask(client), client.getRequestTimeoutSeconds());
+    }
+
+    private static class Member {
+        private final Client<?, ?> client;
+        private final SlowConsumerPolicy policy;
+        private final long maxQueuedBytes;
+
+        private Member(Client<?, ?> client, SlowConsumerPolicy policy, long maxQueuedBytes) {
+            this.client = client;
+            this.policy = policy;
+            this.maxQueuedBytes = maxQueuedBytes;
+        }
+    }
+}
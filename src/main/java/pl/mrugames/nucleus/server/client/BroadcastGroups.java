@@ -0,0 +1,25 @@
+package pl.mrugames.nucleus.server.client;
+
+import pl.mrugames.nucleus.common.io.WebSocketWriter;
+import pl.mrugames.nucleus.server.client.filters.ByteBufferToWebSocketFrameFilter;
+import pl.mrugames.nucleus.server.client.filters.FilterProcessor;
+import pl.mrugames.nucleus.server.client.filters.StringToWebSocketFrameFilter;
+
+public class BroadcastGroups {
+    private BroadcastGroups() {
+    }
+
+    /**
+     * For clients of {@link ClientFactories#createClientFactoryForWSServer}, broadcasts strings as text messages.
+     */
+    public static BroadcastGroup createBroadcastGroupForWebSocket(String name, int bufferSize) {
+        return new BroadcastGroup(name, WebSocketWriter::new, FilterProcessor.oneFilterFactory(StringToWebSocketFrameFilter.getInstance()), bufferSize);
+    }
+
+    /**
+     * For clients of {@link ClientFactories#createClientFactoryForBinaryWSServer}, broadcasts buffers as binary messages.
+     */
+    public static BroadcastGroup createBroadcastGroupForBinaryWebSocket(String name, int bufferSize) {
+        return new BroadcastGroup(name, WebSocketWriter::new, FilterProcessor.oneFilterFactory(ByteBufferToWebSocketFrameFilter.getInstance()), bufferSize);
+    }
+}
@@ -0,0 +1,163 @@
+package pl.mrugames.nucleus.server.client;
+
+import com.codahale.metrics.Counter;
+import pl.mrugames.nucleus.server.Metrics;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Pool of direct or heap buffers, grouped in power-of-two size classes.
+ * Direct buffers are passed to the socket without the copy the JDK does for heap buffers.
+ * Buffers larger than the biggest size class are allocated on demand and never pooled.
+ * <p>
+ * Thread safe. A released buffer must not be used by the releasing party anymore.
+ */
+public class ByteBufferPool {
+    public static final int DEFAULT_MIN_BUFFER_SIZE = 64;
+    public static final int DEFAULT_MAX_BUFFER_SIZE = 64 * 1024;
+    public static final int DEFAULT_MAX_POOLED_PER_SIZE_CLASS = 256;
+
+    private final boolean direct;
+    private final int minBufferSize;
+    private final int maxBufferSize;
+    private final int maxPooledPerSizeClass;
+    private final Queue<ByteBuffer>[] sizeClasses;
+    private final AtomicInteger[] pooled;
+
+    private final Counter allocated;
+    private final Counter reused;
+    private final Counter dropped;
+
+    public ByteBufferPool(String name, boolean direct) {
+        this(name, direct, DEFAULT_MIN_BUFFER_SIZE, DEFAULT_MAX_BUFFER_SIZE, DEFAULT_MAX_POOLED_PER_SIZE_CLASS);
+    }
+
+    /**
+     * @param minBufferSize         smallest size class, rounded up to a power of two [bytes]
+     * @param maxBufferSize         biggest size class, rounded up to a power of two [bytes]
+     * @param maxPooledPerSizeClass amount of idle buffers kept per size class, the ones above are left to GC
+     */
+    public ByteBufferPool(String name, boolean direct, int minBufferSize, int maxBufferSize, int maxPooledPerSizeClass) {
+        if (minBufferSize <= 0 || minBufferSize > maxBufferSize || maxBufferSize > 1 << 30) {
+            throw new IllegalArgumentException("Invalid buffer sizes, min: " + minBufferSize + ", max: " + maxBufferSize);
+        }
+
+        if (maxPooledPerSizeClass < 0) {
+            throw new IllegalArgumentException("Max pooled buffers per size class must not be negative, got: " + maxPooledPerSizeClass);
+        }
+
+        this.direct = direct;
+        this.minBufferSize = roundUpToPowerOfTwo(minBufferSize);
+        this.maxBufferSize = roundUpToPowerOfTwo(maxBufferSize);
+        this.maxPooledPerSizeClass = maxPooledPerSizeClass;
+
+        int classes = sizeClassIndex(this.maxBufferSize) + 1;
+        this.sizeClasses = newSizeClasses(classes);
+        this.pooled = new AtomicInteger[classes];
+        for (int i = 0; i < classes; ++i) {
+            pooled[i] = new AtomicInteger();
+        }
+
+        allocated = Metrics.getRegistry().counter(name(ByteBufferPool.class, name, "allocated"));
+        reused = Metrics.getRegistry().counter(name(ByteBufferPool.class, name, "reused"));
+        dropped = Metrics.getRegistry().counter(name(ByteBufferPool.class, name, "dropped"));
+    }
+
+    /**
+     * @return cleared buffer of at least given capacity
+     */
+    public ByteBuffer acquire(int capacity) {
+        if (capacity > maxBufferSize) {
+            allocated.inc();
+            return allocate(capacity);
+        }
+
+        int index = sizeClassIndex(capacity);
+
+        ByteBuffer buffer = sizeClasses[index].poll();
+        if (buffer != null) {
+            pooled[index].decrementAndGet();
+            reused.inc();
+            return buffer;
+        }
+
+        allocated.inc();
+        return allocate(minBufferSize << index);
+    }
+
+    /**
+     * Buffers which do not come from a pool of this kind are ignored.
+     */
+    public void release(ByteBuffer buffer) {
+        if (buffer == null) {
+            return;
+        }
+
+        int capacity = buffer.capacity();
+        if (buffer.isDirect() != direct || buffer.isReadOnly() || capacity < minBufferSize || capacity > maxBufferSize || Integer.bitCount(capacity) != 1) {
+            dropped.inc();
+            return;
+        }
+
+        int index = sizeClassIndex(capacity);
+        if (pooled[index].incrementAndGet() > maxPooledPerSizeClass) {
+            pooled[index].decrementAndGet();
+            dropped.inc();
+            return;
+        }
+
+        buffer.clear();
+        sizeClasses[index].add(buffer);
+    }
+
+    public boolean isDirect() {
+        return direct;
+    }
+
+    /**
+     * Amount of idle buffers in the pool.
+     */
+    public int size() {
+        int size = 0;
+        for (AtomicInteger count : pooled) {
+            size += count.get();
+        }
+
+        return size;
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private int sizeClassIndex(int capacity) {
+        if (capacity <= minBufferSize) {
+            return 0;
+        }
+
+        return Integer.numberOfTrailingZeros(roundUpToPowerOfTwo(capacity)) - Integer.numberOfTrailingZeros(minBufferSize);
+    }
+
+    /**
+     * Generic arrays cannot be created, the array holds only queues of buffers, so the cast is safe.
+     */
+    @SuppressWarnings("unchecked")
+    private static Queue<ByteBuffer>[] newSizeClasses(int classes) {
+        Queue<ByteBuffer>[] sizeClasses = (Queue<ByteBuffer>[]) new Queue<?>[classes];
+        for (int i = 0; i < classes; ++i) {
+            sizeClasses[i] = new ConcurrentLinkedQueue<>();
+        }
+
+        return sizeClasses;
+    }
+
+    private static int roundUpToPowerOfTwo(int value) {
+        int highestOneBit = Integer.highestOneBit(value);
+        return highestOneBit == value ? value : highestOneBit << 1;
+    }
+}
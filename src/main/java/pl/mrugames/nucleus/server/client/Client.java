@@ -4,10 +4,14 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pl.mrugames.nucleus.server.tasks.TaskExecutor;
 
+import javax.annotation.Nullable;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.time.Instant;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.Lock;
 
 public class Client<In, Out> {
@@ -18,37 +22,62 @@ public class Client<In, Out> {
     private final SocketChannel channel;
     private final Comm comm;
     private final TaskExecutor taskExecutor;
-    private final ByteBuffer readBuffer;
+    private final ReadBufferSizer readBufferSizer;
+    private final ByteBuffer writeBuffer;
+    private final ByteBufferPool bufferPool;
     private final AtomicBoolean shutdown = new AtomicBoolean();
+    private final AtomicInteger requestTasks = new AtomicInteger();
+    private final AtomicBoolean shutdownRequested = new AtomicBoolean();
     private final Lock readBufferLock;
     private final Lock writeBufferLock;
     private final long connectionTimeoutSeconds;
     private final long requestTimeoutSeconds;
+    private final long pingIntervalSeconds;
     private final Instant created;
+    private final RequestExecutionMode requestExecutionMode;
+    private final Mailbox mailbox;
+    private final Set<BroadcastGroup> broadcastGroups;
 
     private volatile ProtocolSwitch protocolSwitch;
+    private volatile ByteBuffer readBuffer;
+    private volatile boolean endOfStream;
 
+    /**
+     * @param readBufferSizer null if the read buffer has a fixed size
+     */
     Client(String name,
            TaskExecutor taskExecutor,
            Comm comm,
            ClientWorker<In, Out> clientWorker,
            SocketChannel channel,
            ByteBuffer readBuffer,
+           ByteBuffer writeBuffer,
+           ByteBufferPool bufferPool,
            Lock readBufferLock,
            Lock writeBufferLock,
            long connectionTimeoutSeconds,
-           long requestTimeoutSeconds) {
+           long requestTimeoutSeconds,
+           long pingIntervalSeconds,
+           RequestExecutionMode requestExecutionMode,
+           @Nullable ReadBufferSizer readBufferSizer) {
         this.name = name;
         this.taskExecutor = taskExecutor;
         this.clientWorker = clientWorker;
         this.channel = channel;
         this.comm = comm;
         this.readBuffer = readBuffer;
+        this.writeBuffer = writeBuffer;
+        this.bufferPool = bufferPool;
         this.readBufferLock = readBufferLock;
         this.writeBufferLock = writeBufferLock;
         this.connectionTimeoutSeconds = connectionTimeoutSeconds;
         this.requestTimeoutSeconds = requestTimeoutSeconds;
+        this.pingIntervalSeconds = pingIntervalSeconds;
         this.created = Instant.now();
+        this.requestExecutionMode = requestExecutionMode;
+        this.mailbox = new Mailbox();
+        this.broadcastGroups = ConcurrentHashMap.newKeySet();
+        this.readBufferSizer = readBufferSizer;
 
         logger.info("[{}] New client has been created", name);
     }
@@ -69,10 +98,64 @@ public class Client<In, Out> {
         return clientWorker;
     }
 
+    /**
+     * The buffer is replaced when it grows or shrinks, it should not be kept outside of the read buffer lock.
+     */
     public ByteBuffer getReadBuffer() {
         return readBuffer;
     }
 
+    /**
+     * Grows the read buffer if it is full and no frame can be decoded from it, shrinks it after a period of small reads.
+     * Called by the reactor after data is read, under the read buffer lock.
+     */
+    public void adjustReadBuffer() throws Exception {
+        if (readBufferSizer == null) {
+            return;
+        }
+
+        boolean inUse = comm.isReadBufferInUse();
+        int capacity;
+
+        if (ReadBufferSizer.isFull(readBuffer, inUse)) {
+            // complete frames are decoded first, which makes space for the rest
+            capacity = comm.canRead() ? readBuffer.capacity() : readBufferSizer.grow(readBuffer.capacity());
+        } else {
+            capacity = readBufferSizer.shrink(readBuffer, inUse);
+        }
+
+        if (capacity != readBuffer.capacity()) {
+            resizeReadBuffer(capacity);
+        }
+    }
+
+    private void resizeReadBuffer(int capacity) {
+        ByteBuffer resized = bufferPool.acquire(capacity);
+        resized.put(readBuffer.duplicate());
+        resized.flip();
+
+        comm.setReadBuffer(resized);
+
+        // views of zero copy frames still point to the old buffer, it is left to GC then
+        if (!comm.isReadBufferInUse()) {
+            bufferPool.release(readBuffer);
+        }
+
+        logger.debug("[{}] Read buffer resized from {} to {} bytes", name, readBuffer.capacity(), resized.capacity());
+        readBuffer = resized;
+    }
+
+    public ByteBuffer getWriteBuffer() {
+        return writeBuffer;
+    }
+
+    /**
+     * Pool the read and write buffers come from, they have to be released to it when the client is shut down.
+     */
+    public ByteBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
     public SocketChannel getChannel() {
         return channel;
     }
@@ -81,6 +164,40 @@ public class Client<In, Out> {
         return shutdown;
     }
 
+    /**
+     * Counts a request task from its creation until it finishes or is discarded.
+     */
+    public void requestTaskCreated() {
+        requestTasks.incrementAndGet();
+    }
+
+    /**
+     * @return true if the client has closed its side of the connection and this was the last request task,
+     * so the caller has to shut the client down
+     */
+    public boolean requestTaskFinished() {
+        return requestTasks.decrementAndGet() == 0 && endOfStream && requestShutdown();
+    }
+
+    /**
+     * Called by the reactor when the client has closed its side of the connection, e.g. with {@code shutdownOutput()}.
+     * Requests received before are still processed and their responses sent, the client is shut down
+     * when the last request task finishes.
+     *
+     * @return true if no request task is pending, so the caller has to shut the client down now
+     */
+    public boolean endOfStream() {
+        endOfStream = true;
+        return requestTasks.get() == 0 && requestShutdown();
+    }
+
+    /**
+     * Only one of the reactor and the last request task shuts the client down.
+     */
+    private boolean requestShutdown() {
+        return !shutdown.get() && shutdownRequested.compareAndSet(false, true);
+    }
+
     public void scheduleProtocolSwitch(ProtocolSwitch protocolSwitch) {
         this.protocolSwitch = protocolSwitch;
     }
@@ -105,7 +222,65 @@ public class Client<In, Out> {
         return requestTimeoutSeconds;
     }
 
+    /**
+     * @return 0 if keepalive pings are disabled
+     */
+    public long getPingIntervalSeconds() {
+        return pingIntervalSeconds;
+    }
+
     public Instant getCreated() {
         return created;
     }
+
+    public RequestExecutionMode getRequestExecutionMode() {
+        return requestExecutionMode;
+    }
+
+    /**
+     * SERIAL mode. Frames are added in arrival order, under the read buffer lock.
+     */
+    public void addToMailbox(Object frame) {
+        mailbox.add(frame);
+    }
+
+    /**
+     * @return true if the caller became the mailbox owner and has to process its frames
+     */
+    public boolean tryAcquireMailbox() {
+        return mailbox.tryAcquire();
+    }
+
+    /**
+     * Mailbox owner only.
+     */
+    @Nullable
+    public Object pollMailbox() {
+        return mailbox.poll();
+    }
+
+    public void releaseMailbox() {
+        mailbox.release();
+    }
+
+    public int getMailboxSize() {
+        return mailbox.size();
+    }
+
+    Mailbox getMailbox() {
+        return mailbox;
+    }
+
+    /**
+     * Called when the client is shut down.
+     */
+    public void leaveBroadcastGroups() {
+        for (BroadcastGroup group : broadcastGroups) {
+            group.remove(this);
+        }
+    }
+
+    Set<BroadcastGroup> getBroadcastGroups() {
+        return broadcastGroups;
+    }
 }
@@ -20,6 +20,20 @@ public class ClientController {
         client.scheduleProtocolSwitch(new ProtocolSwitch(name, switchProtocolStrategy));
     }
 
+    /**
+     * Frames broadcast to the group will be sent to the client, until it leaves the group or is shut down.
+     * Should not be called before {@link ClientWorker#onInit()}.
+     *
+     * @param maxQueuedBytes client is treated as a slow consumer when its outbound queue would exceed this size
+     */
+    public void join(BroadcastGroup group, SlowConsumerPolicy policy, long maxQueuedBytes) {
+        group.add(client, policy, maxQueuedBytes);
+    }
+
+    public void leave(BroadcastGroup group) {
+        group.remove(client);
+    }
+
     void setClient(Client client) {
         this.client = client;
     }
@@ -1,9 +1,16 @@
 package pl.mrugames.nucleus.server.client;
 
+import pl.mrugames.nucleus.common.io.WebSocketReader;
+import pl.mrugames.nucleus.server.client.frames.WebSocketFrame;
 import pl.mrugames.nucleus.server.client.initializers.WebSocketInitializerFactory;
+import pl.mrugames.nucleus.server.websocket.PerMessageDeflateExtension;
+
+import javax.annotation.Nullable;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.List;
+import java.util.function.BiFunction;
 
 public class ClientFactories {
 
@@ -13,19 +20,172 @@ public class ClientFactories {
             int requestTimeoutSeconds,
             ClientWorkerFactory<String, String> clientWorkerFactory,
             int bufferSize) {
+        return createClientFactoryForWSServer(name, connectionTimeoutSeconds, requestTimeoutSeconds, clientWorkerFactory, bufferSize, 0);
+    }
+
+    /**
+     * @param pingIntervalSeconds idle connections are pinged in this interval, 0 disables pings
+     */
+    public static ClientFactory<String, String> createClientFactoryForWSServer(
+            String name,
+            int connectionTimeoutSeconds,
+            int requestTimeoutSeconds,
+            ClientWorkerFactory<String, String> clientWorkerFactory,
+            int bufferSize,
+            int pingIntervalSeconds) {
+        return createClientFactoryForWSServer(name, connectionTimeoutSeconds, requestTimeoutSeconds, clientWorkerFactory, bufferSize, pingIntervalSeconds, null);
+    }
+
+    /**
+     * @param pingIntervalSeconds idle connections are pinged in this interval, 0 disables pings
+     * @param deflateExtension    offered to clients during handshake, null disables compression
+     */
+    public static ClientFactory<String, String> createClientFactoryForWSServer(
+            String name,
+            int connectionTimeoutSeconds,
+            int requestTimeoutSeconds,
+            ClientWorkerFactory<String, String> clientWorkerFactory,
+            int bufferSize,
+            int pingIntervalSeconds,
+            @Nullable PerMessageDeflateExtension deflateExtension) {
+        return createClientFactoryBuilderForWSServer(name, clientWorkerFactory, deflateExtension)
+                .setConnectionTimeout(connectionTimeoutSeconds)
+                .setRequestTimeout(requestTimeoutSeconds)
+                .setBufferSize(bufferSize)
+                .setPingInterval(pingIntervalSeconds)
+                .build();
+    }
+
+    /**
+     * Builder of {@link #createClientFactoryForWSServer} factories, for settings which the methods do not take,
+     * e.g. a shared {@link ByteBufferPool}.
+     *
+     * @param deflateExtension offered to clients during handshake, null disables compression
+     */
+    public static ClientFactoryBuilder<String, String> createClientFactoryBuilderForWSServer(
+            String name,
+            ClientWorkerFactory<String, String> clientWorkerFactory,
+            @Nullable PerMessageDeflateExtension deflateExtension) {
+        return createClientFactoryBuilderForWSServer(name, clientWorkerFactory, deflateExtension, WebSocketReader.DEFAULT_MAX_MESSAGE_SIZE);
+    }
+
+    /**
+     * @param deflateExtension offered to clients during handshake, null disables compression
+     * @param maxMessageSize   longer messages are rejected [bytes]
+     */
+    public static ClientFactoryBuilder<String, String> createClientFactoryBuilderForWSServer(
+            String name,
+            ClientWorkerFactory<String, String> clientWorkerFactory,
+            @Nullable PerMessageDeflateExtension deflateExtension,
+            int maxMessageSize) {
+        return createWebSocketBuilder(name, clientWorkerFactory, deflateExtension,
+                (http, ws) -> ProtocolFactories.createProtocolFactoryForWebSocket(http, ws, maxMessageSize, false));
+    }
+
+    /**
+     * Messages are not reassembled, workers receive every fragment as soon as it arrives, see {@link WebSocketFrame#isFinalFragment()}.
+     * Payloads of text fragments are not decoded, a UTF-8 character may be split between them.
+     * Responses are sent as text messages.
+     *
+     * @param deflateExtension offered to clients during handshake, null disables compression
+     * @param maxFragmentSize  longer fragments are rejected [bytes]
+     */
+    public static ClientFactoryBuilder<WebSocketFrame, String> createClientFactoryBuilderForStreamingWSServer(
+            String name,
+            ClientWorkerFactory<WebSocketFrame, String> clientWorkerFactory,
+            @Nullable PerMessageDeflateExtension deflateExtension,
+            int maxFragmentSize) {
+        return createWebSocketBuilder(name, clientWorkerFactory, deflateExtension,
+                (http, ws) -> ProtocolFactories.createProtocolFactoryForWebSocket(http, ws, maxFragmentSize, true));
+    }
+
+    public static ClientFactory<ByteBuffer, ByteBuffer> createClientFactoryForBinaryWSServer(
+            String name,
+            int connectionTimeoutSeconds,
+            int requestTimeoutSeconds,
+            ClientWorkerFactory<ByteBuffer, ByteBuffer> clientWorkerFactory,
+            int bufferSize) {
+        return createClientFactoryForBinaryWSServer(name, connectionTimeoutSeconds, requestTimeoutSeconds, clientWorkerFactory, bufferSize, 0, null);
+    }
+
+    /**
+     * Workers receive payloads of messages as read-only buffers, responses are sent as binary messages.
+     * To close the connection, send {@link pl.mrugames.nucleus.server.websocket.WebsocketConstants#WEBSOCKET_CLOSE_BUFFER}.
+     *
+     * @param pingIntervalSeconds idle connections are pinged in this interval, 0 disables pings
+     * @param deflateExtension    offered to clients during handshake, null disables compression
+     */
+    public static ClientFactory<ByteBuffer, ByteBuffer> createClientFactoryForBinaryWSServer(
+            String name,
+            int connectionTimeoutSeconds,
+            int requestTimeoutSeconds,
+            ClientWorkerFactory<ByteBuffer, ByteBuffer> clientWorkerFactory,
+            int bufferSize,
+            int pingIntervalSeconds,
+            @Nullable PerMessageDeflateExtension deflateExtension) {
+        return createClientFactoryBuilderForBinaryWSServer(name, clientWorkerFactory, deflateExtension)
+                .setConnectionTimeout(connectionTimeoutSeconds)
+                .setRequestTimeout(requestTimeoutSeconds)
+                .setBufferSize(bufferSize)
+                .setPingInterval(pingIntervalSeconds)
+                .build();
+    }
+
+    /**
+     * Builder of {@link #createClientFactoryForBinaryWSServer} factories, for settings which the methods do not take,
+     * e.g. a shared {@link ByteBufferPool}.
+     *
+     * @param deflateExtension offered to clients during handshake, null disables compression
+     */
+    public static ClientFactoryBuilder<ByteBuffer, ByteBuffer> createClientFactoryBuilderForBinaryWSServer(
+            String name,
+            ClientWorkerFactory<ByteBuffer, ByteBuffer> clientWorkerFactory,
+            @Nullable PerMessageDeflateExtension deflateExtension) {
+        return createClientFactoryBuilderForBinaryWSServer(name, clientWorkerFactory, deflateExtension, WebSocketReader.DEFAULT_MAX_MESSAGE_SIZE);
+    }
+
+    /**
+     * @param deflateExtension offered to clients during handshake, null disables compression
+     * @param maxMessageSize   longer messages are rejected [bytes]
+     */
+    public static ClientFactoryBuilder<ByteBuffer, ByteBuffer> createClientFactoryBuilderForBinaryWSServer(
+            String name,
+            ClientWorkerFactory<ByteBuffer, ByteBuffer> clientWorkerFactory,
+            @Nullable PerMessageDeflateExtension deflateExtension,
+            int maxMessageSize) {
+        return createWebSocketBuilder(name, clientWorkerFactory, deflateExtension,
+                (http, ws) -> ProtocolFactories.createProtocolFactoryForBinaryWebSocket(http, ws, maxMessageSize, false));
+    }
+
+    /**
+     * Messages are not reassembled, workers receive every fragment as soon as it arrives, see {@link WebSocketFrame#isFinalFragment()}.
+     * Responses are sent as binary messages.
+     *
+     * @param deflateExtension offered to clients during handshake, null disables compression
+     * @param maxFragmentSize  longer fragments are rejected [bytes]
+     */
+    public static ClientFactoryBuilder<WebSocketFrame, ByteBuffer> createClientFactoryBuilderForStreamingBinaryWSServer(
+            String name,
+            ClientWorkerFactory<WebSocketFrame, ByteBuffer> clientWorkerFactory,
+            @Nullable PerMessageDeflateExtension deflateExtension,
+            int maxFragmentSize) {
+        return createWebSocketBuilder(name, clientWorkerFactory, deflateExtension,
+                (http, ws) -> ProtocolFactories.createProtocolFactoryForBinaryWebSocket(http, ws, maxFragmentSize, true));
+    }
+
+    private static <In, Out> ClientFactoryBuilder<In, Out> createWebSocketBuilder(
+            String name,
+            ClientWorkerFactory<In, Out> clientWorkerFactory,
+            @Nullable PerMessageDeflateExtension deflateExtension,
+            BiFunction<String, String, List<ProtocolFactory<? extends Serializable, ? extends Serializable>>> protocolFactories) {
 
         String httpProtocolName = "http-protocol";
         String webSocketProtocolName = "web-socket-protocol";
 
-        return new ClientFactory<>(
-                name,
-                name + "-client",
-                new WebSocketInitializerFactory(httpProtocolName, webSocketProtocolName, clientWorkerFactory),
-                ProtocolFactories.createProtocolFactoryForWebSocket(httpProtocolName, webSocketProtocolName),
-                bufferSize,
-                connectionTimeoutSeconds,
-                requestTimeoutSeconds
-        );
+        return new ClientFactoryBuilder<>(
+                new WebSocketInitializerFactory<>(httpProtocolName, webSocketProtocolName, clientWorkerFactory, deflateExtension),
+                protocolFactories.apply(httpProtocolName, webSocketProtocolName))
+                .setName(name);
     }
 
     public static <In, Out> ClientFactory<In, Out> createClientFactoryForJavaServer(
@@ -36,14 +196,11 @@ public class ClientFactories {
             int bufferSize,
             List<ProtocolFactory<? extends Serializable, ? extends Serializable>> protocolFactories
     ) {
-        return new ClientFactory<>(
-                name,
-                name + "-client",
-                clientWorkerFactory,
-                protocolFactories,
-                bufferSize,
-                connectionTimeoutSeconds,
-                requestTimeoutSeconds
-        );
+        return new ClientFactoryBuilder<>(clientWorkerFactory, protocolFactories)
+                .setName(name)
+                .setConnectionTimeout(connectionTimeoutSeconds)
+                .setRequestTimeout(requestTimeoutSeconds)
+                .setBufferSize(bufferSize)
+                .build();
     }
 }
@@ -1,7 +1,9 @@
 package pl.mrugames.nucleus.server.client;
 
+import com.codahale.metrics.Counter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pl.mrugames.nucleus.server.Metrics;
 import pl.mrugames.nucleus.server.tasks.TaskExecutor;
 
 import java.io.IOException;
@@ -15,6 +17,8 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
 public class ClientFactory<In, Out> {
     private static final Logger logger = LoggerFactory.getLogger(ClientFactory.class);
 
@@ -23,48 +27,98 @@ public class ClientFactory<In, Out> {
     private final String clientNamePrefix;
     private final ClientWorkerFactory<In, Out> clientWorkerFactory;
     private final int bufferSize;
+    private final int maxBufferSize;
     private final List<ProtocolFactory<? extends Serializable, ? extends Serializable>> protocolFactories;
     private final long connectionTimeoutSeconds;
     private final long requestTimeoutSeconds;
-
+    private final long pingIntervalSeconds;
+    private final RequestExecutionMode requestExecutionMode;
+    private final ByteBufferPool bufferPool;
+    private final Counter readBuffersGrown;
+    private final Counter readBuffersShrunk;
+    private final boolean coalescingWrites;
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final int maxFrameSize;
+
+    /**
+     * @param bufferSize       initial size of the read buffer and size of the write buffer [bytes]
+     * @param maxBufferSize    the read buffer grows up to this size when a frame does not fit into it [bytes]
+     * @param coalescingWrites whether frames sent while a request is processed are written together
+     * @param lowWatermark     a client becomes writable again when its queued outbound bytes drop to this amount [bytes]
+     * @param highWatermark    a client becomes not writable when its queued outbound bytes exceed this amount [bytes]
+     * @param maxFrameSize     maximum size of an encoded outbound frame [bytes]
+     * @see ClientFactoryBuilder
+     */
     ClientFactory(String factoryName,
                   String clientNamePrefix,
                   ClientWorkerFactory<In, Out> clientWorkerFactory,
                   List<ProtocolFactory<? extends Serializable, ? extends Serializable>> protocolFactories,
                   int bufferSize,
+                  int maxBufferSize,
                   long connectionTimeoutSeconds,
-                  long requestTimeoutSeconds
+                  long requestTimeoutSeconds,
+                  long pingIntervalSeconds,
+                  RequestExecutionMode requestExecutionMode,
+                  ByteBufferPool bufferPool,
+                  boolean coalescingWrites,
+                  int lowWatermark,
+                  int highWatermark,
+                  int maxFrameSize
     ) {
+        if (maxBufferSize < bufferSize) {
+            throw new IllegalArgumentException("Max buffer size has to be at least the buffer size, max: " + maxBufferSize + ", buffer size: " + bufferSize);
+        }
+
+        if (lowWatermark < 0 || highWatermark < lowWatermark) {
+            throw new IllegalArgumentException("Watermarks have to satisfy 0 <= low <= high, low: " + lowWatermark + ", high: " + highWatermark);
+        }
+
+        if (maxFrameSize < bufferSize) {
+            throw new IllegalArgumentException("Max frame size has to be at least the buffer size, max: " + maxFrameSize + ", buffer size: " + bufferSize);
+        }
+
         this.clientId = new AtomicLong();
         this.factoryName = factoryName;
         this.clientNamePrefix = clientNamePrefix;
         this.clientWorkerFactory = clientWorkerFactory;
         this.protocolFactories = protocolFactories;
         this.bufferSize = bufferSize;
+        this.maxBufferSize = maxBufferSize;
         this.connectionTimeoutSeconds = connectionTimeoutSeconds;
         this.requestTimeoutSeconds = requestTimeoutSeconds;
+        this.pingIntervalSeconds = pingIntervalSeconds;
+        this.requestExecutionMode = requestExecutionMode;
+        this.bufferPool = bufferPool;
+        this.coalescingWrites = coalescingWrites;
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.maxFrameSize = maxFrameSize;
+        this.readBuffersGrown = Metrics.getRegistry().counter(name(ClientFactory.class, factoryName, "read_buffers_grown"));
+        this.readBuffersShrunk = Metrics.getRegistry().counter(name(ClientFactory.class, factoryName, "read_buffers_shrunk"));
     }
 
-    public Client<In, Out> create(SocketChannel channel, TaskExecutor taskExecutor, ConnectionWatchdog watchdog) throws Exception {
+    public Client<In, Out> create(SocketChannel channel, TaskExecutor taskExecutor, ConnectionWatchdog watchdog, WriteScheduler writeScheduler) throws Exception {
         try {
             logger.info("[{}] New client is being created!", factoryName);
 
             String clientName = clientNamePrefix + "-" + clientId.incrementAndGet();
             ClientInfo clientInfo = new ClientInfo(clientName, channel.socket());
 
-            ByteBuffer readBuffer = ByteBuffer.allocate(bufferSize);
+            ByteBuffer readBuffer = bufferPool.acquire(bufferSize);
             readBuffer.flip();
 
-            ByteBuffer writeBuffer = ByteBuffer.allocate(bufferSize);
+            ByteBuffer writeBuffer = bufferPool.acquire(bufferSize);
 
             Lock readLock = new ReentrantLock();
             Lock writeLock = new ReentrantLock();
-            Comm comm = createComms(clientName, channel, readBuffer, writeBuffer, readLock, writeLock);
+            Comm comm = createComms(clientName, channel, readBuffer, writeBuffer, readLock, writeLock, writeScheduler);
 
             ClientController clientController = new ClientController();
             ClientWorker<In, Out> clientWorker = createWorker(clientName, comm, clientInfo, clientController);
+            comm.setClientWorker(clientWorker);
 
-            Client<In, Out> client = createClient(clientName, taskExecutor, comm, clientWorker, channel, readBuffer, readLock, writeLock);
+            Client<In, Out> client = createClient(clientName, taskExecutor, comm, clientWorker, channel, readBuffer, writeBuffer, readLock, writeLock);
             clientController.setClient(client);
 
             watchdog.register(client);
@@ -78,7 +132,13 @@ public class ClientFactory<In, Out> {
     }
 
     @SuppressWarnings("unchecked")
-    Comm createComms(String clientName, SocketChannel channel, ByteBuffer readBuffer, ByteBuffer writeBuffer, Lock readBufferLock, Lock writeBufferLock) throws IOException {
+    Comm createComms(String clientName,
+                     SocketChannel channel,
+                     ByteBuffer readBuffer,
+                     ByteBuffer writeBuffer,
+                     Lock readBufferLock,
+                     Lock writeBufferLock,
+                     WriteScheduler writeScheduler) throws IOException {
         logger.info("[{}] Creating comms for client: {}", factoryName, clientName);
 
         String defaultProtocol = null;
@@ -103,7 +163,13 @@ public class ClientFactory<In, Out> {
                 readBufferLock,
                 writeBufferLock,
                 channel,
-                defaultProtocol);
+                writeScheduler,
+                bufferPool,
+                defaultProtocol,
+                coalescingWrites,
+                lowWatermark,
+                highWatermark,
+                maxFrameSize);
 
         logger.info("[{}] Comms has been created for client: {}", factoryName, clientName);
 
@@ -126,10 +192,15 @@ public class ClientFactory<In, Out> {
                                  ClientWorker<In, Out> clientWorker,
                                  SocketChannel channel,
                                  ByteBuffer readBuffer,
+                                 ByteBuffer writeBuffer,
                                  Lock readLock,
                                  Lock writeLock
     ) {
-        return new Client<>(clientName, taskExecutor, comm, clientWorker, channel, readBuffer, readLock, writeLock, connectionTimeoutSeconds, requestTimeoutSeconds);
+        ReadBufferSizer readBufferSizer = maxBufferSize > bufferSize
+                ? new ReadBufferSizer(bufferSize, maxBufferSize, ReadBufferSizer.DEFAULT_SHRINK_AFTER_READS, readBuffersGrown, readBuffersShrunk)
+                : null;
+
+        return new Client<>(clientName, taskExecutor, comm, clientWorker, channel, readBuffer, writeBuffer, bufferPool, readLock, writeLock, connectionTimeoutSeconds, requestTimeoutSeconds, pingIntervalSeconds, requestExecutionMode, readBufferSizer);
     }
 
     void closeChannel(SocketChannel channel) {
@@ -146,4 +217,12 @@ public class ClientFactory<In, Out> {
     public long getRequestTimeoutSeconds() {
         return requestTimeoutSeconds;
     }
+
+    public int getMaxBufferSize() {
+        return maxBufferSize;
+    }
+
+    ByteBufferPool getBufferPool() {
+        return bufferPool;
+    }
 }
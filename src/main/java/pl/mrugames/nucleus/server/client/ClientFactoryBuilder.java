@@ -1,5 +1,6 @@
 package pl.mrugames.nucleus.server.client;
 
+import java.io.Serializable;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -11,6 +12,14 @@ public class ClientFactoryBuilder<In, Out> {
     private int connectionTimeout = 60;
     private int requestTimeout = 30;
     private int bufferSize = 1024;
+    private Integer maxBufferSize;
+    private int pingInterval = 0;
+    private RequestExecutionMode requestExecutionMode = RequestExecutionMode.CONCURRENT;
+    private ByteBufferPool bufferPool;
+    private boolean coalescingWrites;
+    private int lowWatermark = Comm.DEFAULT_LOW_WATERMARK;
+    private int highWatermark = Comm.DEFAULT_HIGH_WATERMARK;
+    private int maxFrameSize = Comm.DEFAULT_MAX_FRAME_SIZE;
 
     public ClientFactoryBuilder(ClientWorkerFactory<In, Out> clientWorkerFactory,
                                 ProtocolFactory initialProtocolFactory) {
@@ -19,6 +28,15 @@ public class ClientFactoryBuilder<In, Out> {
         this.protocolFactories.add(initialProtocolFactory);
     }
 
+    /**
+     * @param protocolFactories the first one is the initial protocol
+     */
+    ClientFactoryBuilder(ClientWorkerFactory<In, Out> clientWorkerFactory,
+                         List<ProtocolFactory<? extends Serializable, ? extends Serializable>> protocolFactories) {
+        this.clientWorkerFactory = clientWorkerFactory;
+        this.protocolFactories = new LinkedList<>(protocolFactories);
+    }
+
     public ClientFactoryBuilder<In, Out> setName(String name) {
         this.name = name;
         return this;
@@ -37,11 +55,86 @@ public class ClientFactoryBuilder<In, Out> {
         return this;
     }
 
+    /**
+     * Idle connections are pinged, if their protocol has a keepalive. A peer which does not answer within
+     * the interval is disconnected. 0 disables pings.
+     *
+     * @param pingInterval [s]
+     */
+    public ClientFactoryBuilder<In, Out> setPingInterval(int pingInterval) {
+        this.pingInterval = pingInterval;
+        return this;
+    }
+
+    /**
+     * @param bufferSize size of the write buffer and initial size of the read buffer [bytes]
+     */
     public ClientFactoryBuilder<In, Out> setBufferSize(int bufferSize) {
         this.bufferSize = bufferSize;
         return this;
     }
 
+    /**
+     * Read buffers grow twice at a time, up to this size, when a frame does not fit into them,
+     * and shrink back after a period of small messages. By default read buffers do not grow.
+     * Every reader of the factory's protocols has to support {@link pl.mrugames.nucleus.common.io.ClientReader#setBuffer}.
+     *
+     * @param maxBufferSize [bytes]
+     */
+    public ClientFactoryBuilder<In, Out> setMaxBufferSize(int maxBufferSize) {
+        this.maxBufferSize = maxBufferSize;
+        return this;
+    }
+
+    public ClientFactoryBuilder<In, Out> setRequestExecutionMode(RequestExecutionMode requestExecutionMode) {
+        this.requestExecutionMode = requestExecutionMode;
+        return this;
+    }
+
+    /**
+     * Pool of read, write and outbound frame buffers. May be shared between factories.
+     * By default every factory gets its own pool of heap buffers.
+     */
+    public ClientFactoryBuilder<In, Out> setBufferPool(ByteBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+        return this;
+    }
+
+    /**
+     * Frames sent while a request is processed are written together when the worker returns,
+     * with as few system calls and TCP segments as possible. Frames sent outside of requests are not delayed.
+     * Disabled by default, see {@link Comm#sendAll} and {@link Comm#cork()} for explicit batching.
+     */
+    public ClientFactoryBuilder<In, Out> setCoalescingWrites(boolean coalescingWrites) {
+        this.coalescingWrites = coalescingWrites;
+        return this;
+    }
+
+    /**
+     * Limits of queued outbound bytes of a single client, see {@link Comm#isWritable()}
+     * and {@link ClientWorker#onWritabilityChanged(boolean)}.
+     * By default {@link Comm#DEFAULT_LOW_WATERMARK} and {@link Comm#DEFAULT_HIGH_WATERMARK}.
+     *
+     * @param lowWatermark  [bytes]
+     * @param highWatermark [bytes]
+     */
+    public ClientFactoryBuilder<In, Out> setWriteWatermarks(int lowWatermark, int highWatermark) {
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        return this;
+    }
+
+    /**
+     * Outbound frames which do not fit in the write buffer are encoded into bigger buffers, up to this size.
+     * Sending a bigger frame fails with {@link IllegalArgumentException}. By default {@link Comm#DEFAULT_MAX_FRAME_SIZE}.
+     *
+     * @param maxFrameSize [bytes]
+     */
+    public ClientFactoryBuilder<In, Out> setMaxFrameSize(int maxFrameSize) {
+        this.maxFrameSize = maxFrameSize;
+        return this;
+    }
+
     public ClientFactoryBuilder<In, Out> addProtocolFactory(ProtocolFactory protocolFactory) {
         this.protocolFactories.add(protocolFactory);
         return this;
@@ -55,8 +148,16 @@ public class ClientFactoryBuilder<In, Out> {
                 clientWorkerFactory,
                 protocolFactories,
                 bufferSize,
+                maxBufferSize != null ? maxBufferSize : bufferSize,
                 connectionTimeout,
-                requestTimeout
+                requestTimeout,
+                pingInterval,
+                requestExecutionMode,
+                bufferPool != null ? bufferPool : new ByteBufferPool(name, false),
+                coalescingWrites,
+                lowWatermark,
+                highWatermark,
+                maxFrameSize
         );
     }
 }
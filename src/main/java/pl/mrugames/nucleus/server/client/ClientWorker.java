@@ -12,4 +12,12 @@ public interface ClientWorker<In, Out> {
     @Nullable
     Out onShutdown();
 
+    /**
+     * Called when queued outbound bytes exceed the high watermark (false) and when they drop to the low watermark (true),
+     * see {@link Comm#isWritable()}. Called by the thread which sent or wrote the data, often the I/O thread,
+     * so it must not block.
+     */
+    default void onWritabilityChanged(boolean writable) {
+    }
+
 }
@@ -7,21 +7,38 @@ import pl.mrugames.nucleus.common.io.ClientWriter;
 import pl.mrugames.nucleus.server.client.filters.FilterProcessor;
 
 import javax.annotation.Nullable;
+import java.io.IOException;
 import java.io.Serializable;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SocketChannel;
-import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 public class Comm {
     private final static Logger logger = LoggerFactory.getLogger(Comm.class);
+    private final static int MAX_FRAMES_PER_WRITE = 64;
+
+    public final static int DEFAULT_LOW_WATERMARK = 32 * 1024;
+    public final static int DEFAULT_HIGH_WATERMARK = 64 * 1024;
+    public final static int DEFAULT_MAX_FRAME_SIZE = 16 * 1024 * 1024;
 
     private volatile ClientWriter<? extends Serializable> clientWriter;
     private volatile ClientReader<? extends Serializable> clientReader;
     private volatile FilterProcessor inputFilterProcessor;
     private volatile FilterProcessor outputFilterProcessor;
+    private volatile KeepAlive keepAlive;
 
     private final Map<String, Protocol<? extends Serializable, ? extends Serializable>> protocols;
 
@@ -29,26 +46,104 @@ public class Comm {
     private final SocketChannel socketChannel;
     private final Lock readBufferLock;
     private final Lock writeBufferLock;
-
-    private volatile Instant lastDataSent;
-    private volatile Instant lastDataReceived;
+    private final WriteScheduler writeScheduler;
+    private final ByteBufferPool bufferPool;
+    private final Queue<ByteBuffer> outbound;
+    private final AtomicBoolean writeScheduled;
+    private final AtomicLong queuedBytes;
+    private final AtomicInteger framesInProgress;
+    private final AtomicBoolean readPaused;
+    private final AtomicInteger corks;
+    private final AtomicBoolean writePending;
+    private final Lock flushLock;
+    private final ByteBuffer[] gatheredFrames;
+    private final boolean coalescingWrites;
+    private final Queue<PendingWrite> pendingWrites;
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final int maxFrameSize;
+    private final Object writabilityLock;
+
+    private volatile ClientWorker<?, ?> clientWorker;
+    private volatile boolean writable;
+    private volatile long lastDataSent;
+    private volatile long lastDataReceived;
+    private volatile long lastPingSent;
+    private volatile boolean closed;
 
     Comm(Map<String, Protocol<? extends Serializable, ? extends Serializable>> protocols,
          ByteBuffer writeBuffer,
          Lock readBufferLock,
          Lock writeBufferLock,
          SocketChannel socketChannel,
+         WriteScheduler writeScheduler,
+         ByteBufferPool bufferPool,
          String defaultProtocol) {
+        this(protocols, writeBuffer, readBufferLock, writeBufferLock, socketChannel, writeScheduler, bufferPool, defaultProtocol, false);
+    }
+
+    /**
+     * @param coalescingWrites whether responses of a request are written together, see {@link #isCoalescingWrites()}
+     */
+    Comm(Map<String, Protocol<? extends Serializable, ? extends Serializable>> protocols,
+         ByteBuffer writeBuffer,
+         Lock readBufferLock,
+         Lock writeBufferLock,
+         SocketChannel socketChannel,
+         WriteScheduler writeScheduler,
+         ByteBufferPool bufferPool,
+         String defaultProtocol,
+         boolean coalescingWrites) {
+        this(protocols, writeBuffer, readBufferLock, writeBufferLock, socketChannel, writeScheduler, bufferPool, defaultProtocol, coalescingWrites, DEFAULT_LOW_WATERMARK, DEFAULT_HIGH_WATERMARK, DEFAULT_MAX_FRAME_SIZE);
+    }
+
+    /**
+     * @param coalescingWrites whether responses of a request are written together, see {@link #isCoalescingWrites()}
+     * @param lowWatermark     the comm becomes writable again when queued bytes drop to this amount, see {@link #isWritable()}
+     * @param highWatermark    the comm becomes not writable when queued bytes exceed this amount
+     * @param maxFrameSize     frames which do not fit in the write buffer are encoded into bigger ones up to this size [bytes]
+     */
+    Comm(Map<String, Protocol<? extends Serializable, ? extends Serializable>> protocols,
+         ByteBuffer writeBuffer,
+         Lock readBufferLock,
+         Lock writeBufferLock,
+         SocketChannel socketChannel,
+         WriteScheduler writeScheduler,
+         ByteBufferPool bufferPool,
+         String defaultProtocol,
+         boolean coalescingWrites,
+         int lowWatermark,
+         int highWatermark,
+         int maxFrameSize) {
         this.protocols = protocols;
         this.writeBuffer = writeBuffer;
         this.socketChannel = socketChannel;
         this.readBufferLock = readBufferLock;
         this.writeBufferLock = writeBufferLock;
-
-        Instant now = Instant.now();
+        this.writeScheduler = writeScheduler;
+        this.bufferPool = bufferPool;
+        this.outbound = new ConcurrentLinkedQueue<>();
+        this.writeScheduled = new AtomicBoolean();
+        this.queuedBytes = new AtomicLong();
+        this.framesInProgress = new AtomicInteger();
+        this.readPaused = new AtomicBoolean();
+        this.corks = new AtomicInteger();
+        this.writePending = new AtomicBoolean();
+        this.flushLock = new ReentrantLock();
+        this.gatheredFrames = new ByteBuffer[MAX_FRAMES_PER_WRITE];
+        this.coalescingWrites = coalescingWrites;
+        this.pendingWrites = new ConcurrentLinkedQueue<>();
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.maxFrameSize = maxFrameSize;
+        this.writabilityLock = new Object();
+        this.writable = true;
+
+        long now = System.nanoTime();
 
         this.lastDataReceived = now;
         this.lastDataSent = now;
+        this.lastPingSent = now;
 
         switchProtocol(defaultProtocol);
     }
@@ -72,13 +167,42 @@ public class Comm {
             this.clientWriter = toSwitch.getClientWriter();
             this.inputFilterProcessor = toSwitch.getInputFilterProcessor();
             this.outputFilterProcessor = toSwitch.getOutputFilterProcessor();
+            this.keepAlive = toSwitch.getKeepAlive();
         } finally {
             writeBufferLock.unlock();
             readBufferLock.unlock();
         }
     }
 
+    /**
+     * Encodes the frame and queues it for sending. Frames are written to the socket by the {@link WriteScheduler},
+     * so this method never blocks on a slow client.
+     */
     public void send(Object frame) throws Exception {
+        send(frame, null);
+    }
+
+    /**
+     * Like {@link #send(Object)}, but does not throw. The future is completed when the whole frame is written
+     * to the socket, or exceptionally when encoding fails or the comm is closed before.
+     * A frame removed by output filters completes the future immediately.
+     * <p>
+     * Futures are completed by the thread which writes the frame, usually the I/O thread,
+     * so dependent actions which may block should use async variants of {@link CompletableFuture} methods.
+     */
+    public CompletableFuture<Void> sendAsync(Object frame) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        try {
+            send(frame, future);
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+        }
+
+        return future;
+    }
+
+    private void send(Object frame, @Nullable CompletableFuture<Void> future) throws Exception {
         logger.debug("[SEND] Transforming to raw frame: '{}'", frame);
 
         Optional<? extends Serializable> result = outputFilterProcessor.filter(frame);
@@ -86,24 +210,141 @@ public class Comm {
             Serializable rawFrame = result.get();
             logger.debug("[SEND] Frame after transformation: '{}'", rawFrame);
 
-            writeBufferLock.lock();
-            try {
-                writeToSocket(rawFrame);
-            } finally {
-                writeBufferLock.unlock();
-            }
-
+            sendRaw(rawFrame, future);
         } else {
             logger.debug("[SEND] Frame '{}' filtered out!", frame);
+            lastDataSent = System.nanoTime();
+
+            if (future != null) {
+                future.complete(null);
+            }
+        }
+    }
+
+    /**
+     * Queues all frames and writes them together, usually with a single system call.
+     */
+    public void sendAll(Collection<?> frames) throws Exception {
+        cork();
+        try {
+            for (Object frame : frames) {
+                send(frame);
+            }
+        } finally {
+            uncork();
+        }
+    }
+
+    /**
+     * Delays writing of queued frames until {@link #uncork()} is called, so they are written together.
+     * A flush which is already in progress may still pick some of them up.
+     * Calls may be nested and may come from different threads, frames are written when the last cork is removed.
+     * Every call has to be paired with {@link #uncork()}, usually in a finally block.
+     */
+    public void cork() {
+        corks.incrementAndGet();
+    }
+
+    /**
+     * Schedules frames queued while the comm was corked.
+     */
+    public void uncork() {
+        int remaining = corks.decrementAndGet();
+
+        if (remaining < 0) {
+            corks.incrementAndGet();
+            throw new IllegalStateException("Comm is not corked");
+        }
+
+        if (remaining == 0 && writePending.compareAndSet(true, false)) {
+            requestWrite();
+        }
+    }
+
+    /**
+     * If true, the comm is corked while a worker processes a request, so everything it sends during the request
+     * is written together when it returns.
+     */
+    public boolean isCoalescingWrites() {
+        return coalescingWrites;
+    }
+
+    /**
+     * Queues the frame without passing it through output filters.
+     */
+    public void sendRaw(Serializable rawFrame) throws Exception {
+        sendRaw(rawFrame, null);
+    }
+
+    private void sendRaw(Serializable rawFrame, @Nullable CompletableFuture<Void> future) throws Exception {
+        long queued;
+
+        writeBufferLock.lock();
+        try {
+            queued = enqueue(rawFrame, future);
+        } finally {
+            writeBufferLock.unlock();
+        }
+
+        updateWritability(queued);
+        scheduleWrite();
+
+        lastDataSent = System.nanoTime();
+    }
+
+    /**
+     * Queues a frame which is already encoded for the current protocol, e.g. by a {@link BroadcastGroup}.
+     * Output filters and the writer are skipped.
+     *
+     * @param frame read-only buffer, its content may be shared with other clients, so it is not returned to the pool
+     */
+    public void sendEncoded(ByteBuffer frame) throws Exception {
+        if (!frame.isReadOnly()) {
+            throw new IllegalArgumentException("Encoded frame has to be a read-only buffer");
+        }
+
+        long queued;
+
+        writeBufferLock.lock();
+        try {
+            if (closed) {
+                throw new ClosedChannelException();
+            }
+
+            queued = queuedBytes.addAndGet(frame.remaining());
+            outbound.add(frame);
+        } finally {
+            writeBufferLock.unlock();
         }
 
-        lastDataSent = Instant.now();
+        updateWritability(queued);
+        scheduleWrite();
+
+        lastDataSent = System.nanoTime();
+    }
+
+    /**
+     * Sends a keepalive ping, if the current protocol has one.
+     *
+     * @return false if the current protocol has no keepalive
+     */
+    public boolean ping() throws Exception {
+        KeepAlive keepAlive = this.keepAlive;
+        if (keepAlive == null) {
+            return false;
+        }
+
+        long now = System.nanoTime();
+        sendRaw(keepAlive.createPing(now));
+        lastPingSent = now;
+
+        return true;
     }
 
     public boolean canRead() throws Exception {
         readBufferLock.lock();
         try {
-            return clientReader.isReady();
+            return !closed && clientReader.isReady();
         } finally {
             readBufferLock.unlock();
         }
@@ -115,16 +356,33 @@ public class Comm {
 
         readBufferLock.lock();
         try {
-            if (!clientReader.isReady()) {
+            if (closed || !clientReader.isReady()) {
                 logger.debug("[RECEIVE] Reader is not ready!");
                 return null;
             }
 
             rawFrame = clientReader.read();
+
+            // counted before the lock is released, so the buffer is not compacted under a zero copy frame
+            framesInProgress.incrementAndGet();
+
+            // copied frames free their space in the buffer right away
+            if (!clientReader.isZeroCopy()) {
+                resumeReading();
+            }
         } finally {
             readBufferLock.unlock();
         }
 
+        KeepAlive keepAlive = this.keepAlive;
+        if (keepAlive != null && keepAlive.handle(rawFrame, this)) {
+            logger.debug("[RECEIVE] Keepalive frame handled: '{}'", rawFrame);
+
+            frameDone();
+            lastDataReceived = System.nanoTime();
+            return null;
+        }
+
         Object frame;
 
         logger.debug("[RECEIVE] Transforming from raw frame: '{}'", rawFrame);
@@ -134,32 +392,382 @@ public class Comm {
             frame = result.get();
             logger.debug("[RECEIVE] Frame after transformation: '{}'", frame);
 
-            lastDataReceived = Instant.now();
+            lastDataReceived = System.nanoTime();
             return frame;
         } else {
             logger.debug("[RECEIVE] Frame '{}' filtered out!", rawFrame);
         }
 
+        frameDone();
         return null;
     }
 
+    /**
+     * Has to be called when a worker has finished processing a frame returned by {@link #receive()}.
+     */
+    public void frameProcessed() {
+        frameDone();
+    }
+
+    /**
+     * The last zero copy frame releases the read buffer, so it can be compacted by the next read.
+     */
+    private void frameDone() {
+        if (framesInProgress.decrementAndGet() == 0) {
+            resumeReading();
+        }
+    }
+
+    /**
+     * Called by the reader when the read buffer is full, the channel is not selected for reading until space is freed.
+     * Must be called under the read buffer lock.
+     */
+    public void pauseReading() {
+        readPaused.set(true);
+    }
+
+    /**
+     * Resumes reading paused by {@link #pauseReading()} without the {@link WriteScheduler}, to be used by the reader itself.
+     *
+     * @return false if reading was not paused or has been resumed by a worker already, which scheduled the read then
+     */
+    public boolean tryResumeReading() {
+        return readPaused.compareAndSet(true, false);
+    }
+
+    private void resumeReading() {
+        if (readPaused.get() && readPaused.compareAndSet(true, false)) {
+            writeScheduler.scheduleRead(this);
+        }
+    }
+
+    boolean isReadPaused() {
+        return readPaused.get();
+    }
+
+    /**
+     * @return true if frames of a zero copy reader are being processed, so the read buffer must not be compacted
+     * @see ClientReader#isZeroCopy()
+     */
+    public boolean isReadBufferInUse() {
+        return clientReader.isZeroCopy() && framesInProgress.get() > 0;
+    }
+
+    /**
+     * Writes queued frames until the queue is empty or the socket does not accept more data.
+     * Called by the {@link WriteScheduler}.
+     *
+     * @return true if there is nothing more to write, false if the socket is full and flush has to be repeated
+     * when the channel becomes writable.
+     */
+    public boolean flush() throws IOException {
+        while (true) {
+            if (!writeQueued()) {
+                return false;
+            }
+
+            writeScheduled.set(false);
+
+            // a frame could be queued after the last write, but before the flag was cleared
+            if (outbound.isEmpty() || !writeScheduled.compareAndSet(false, true)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Stops reading and writing, returns queued frames to the pool and closes codecs of all protocols.
+     * Caller has to hold both buffer locks, so no codec uses the buffers when they are released.
+     */
+    public void close() {
+        flushLock.lock();
+        try {
+            closed = true;
+
+            ByteBuffer frame;
+            while ((frame = outbound.poll()) != null) {
+                release(frame);
+            }
+
+            queuedBytes.set(0);
+
+            PendingWrite pending;
+            while ((pending = pendingWrites.poll()) != null) {
+                pending.future.completeExceptionally(new ClosedChannelException());
+            }
+        } finally {
+            flushLock.unlock();
+        }
+
+        for (Protocol<? extends Serializable, ? extends Serializable> protocol : protocols.values()) {
+            closeCodecs(protocol);
+        }
+    }
+
+    private void closeCodecs(Protocol<? extends Serializable, ? extends Serializable> protocol) {
+        try {
+            protocol.getClientReader().close();
+            protocol.getClientWriter().close();
+        } catch (RuntimeException e) {
+            logger.error("[CLOSE] Failed to close codecs of protocol '{}'", protocol.getName(), e);
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return amount of bytes queued, but not written to the socket yet
+     */
+    public long getQueuedBytes() {
+        return queuedBytes.get();
+    }
+
+    /**
+     * False after queued bytes exceed the high watermark, until they drop to the low watermark.
+     * Frames are still accepted when the comm is not writable, producers of large or many frames should check it
+     * or wait for {@link ClientWorker#onWritabilityChanged(boolean)}, so a slow client does not exhaust memory.
+     */
+    public boolean isWritable() {
+        return writable;
+    }
+
+    void setClientWorker(ClientWorker<?, ?> clientWorker) {
+        this.clientWorker = clientWorker;
+    }
+
+    /**
+     * @param future completed when the frame is written, may be null
+     * @return amount of queued bytes, including the frame
+     */
+    long enqueue(Serializable rawFrame, @Nullable CompletableFuture<Void> future) throws Exception {
+        if (closed) {
+            throw new ClosedChannelException();
+        }
+
+        ByteBuffer frame = encode(rawFrame);
+
+        long queued = queuedBytes.addAndGet(frame.remaining());
+
+        // registered before the frame is visible to the flush, so it cannot be written without completing the future
+        if (future != null) {
+            pendingWrites.add(new PendingWrite(frame, future));
+        }
+
+        outbound.add(frame);
+
+        return queued;
+    }
+
+    /**
+     * Frames are encoded into the write buffer and copied to a pooled buffer of their size.
+     * A frame which does not fit in the write buffer is encoded again into pooled buffers twice as big,
+     * until it fits or the maximum frame size is reached.
+     *
+     * @return flipped buffer from the pool, holding the encoded frame
+     */
     @SuppressWarnings("unchecked")
-    void writeToSocket(Serializable rawFrame) throws Exception {
-        ((ClientWriter<Serializable>) clientWriter).write(rawFrame);
+    private ByteBuffer encode(Serializable rawFrame) throws Exception {
+        ClientWriter<Serializable> clientWriter = (ClientWriter<Serializable>) this.clientWriter;
+
+        try {
+            clientWriter.write(rawFrame);
+
+            writeBuffer.flip();
+
+            ByteBuffer frame = bufferPool.acquire(writeBuffer.remaining());
+            frame.put(writeBuffer);
+            frame.flip();
+
+            return frame;
+        } catch (BufferOverflowException e) {
+            logger.debug("[SEND] Frame does not fit in the write buffer of {} bytes", writeBuffer.capacity());
+        } finally {
+            writeBuffer.clear();
+        }
+
+        int capacity = writeBuffer.capacity();
+
+        try {
+            while (capacity < maxFrameSize) {
+                capacity = (int) Math.min(capacity * 2L, maxFrameSize);
+
+                // pooled buffers may be bigger, the limit keeps the frame within the maximum size
+                ByteBuffer frame = bufferPool.acquire(capacity);
+                frame.limit(capacity);
+                clientWriter.setBuffer(frame);
+
+                try {
+                    clientWriter.write(rawFrame);
+
+                    frame.flip();
+                    return frame;
+                } catch (BufferOverflowException e) {
+                    bufferPool.release(frame);
+                } catch (Exception e) {
+                    bufferPool.release(frame);
+                    throw e;
+                }
+            }
+        } finally {
+            clientWriter.setBuffer(writeBuffer);
+        }
+
+        throw new IllegalArgumentException(String.format("Encoded frame exceeds maximum allowed size. Max frame size: %d", maxFrameSize));
+    }
+
+    void scheduleWrite() {
+        // the flag is set first, so a concurrent uncork either sees it or is seen here
+        writePending.set(true);
+
+        if (corks.get() == 0 && writePending.compareAndSet(true, false)) {
+            requestWrite();
+        }
+    }
 
-        writeBuffer.flip();
+    private void requestWrite() {
+        if (writeScheduled.compareAndSet(false, true)) {
+            writeScheduler.scheduleWrite(this);
+        }
+    }
+
+    /**
+     * Queued frames are written with gathering writes, many frames per system call.
+     */
+    boolean writeQueued() throws IOException {
+        flushLock.lock();
         try {
-            socketChannel.write(writeBuffer);
+            while (true) {
+                int count = 0;
+                for (ByteBuffer frame : outbound) {
+                    gatheredFrames[count++] = frame;
+
+                    if (count == gatheredFrames.length) {
+                        break;
+                    }
+                }
+
+                if (count == 0) {
+                    return true;
+                }
+
+                long written = count == 1 ? socketChannel.write(gatheredFrames[0]) : socketChannel.write(gatheredFrames, 0, count);
+                long queued = queuedBytes.addAndGet(-written);
+
+                try {
+                    for (int i = 0; i < count; ++i) {
+                        if (gatheredFrames[i].hasRemaining()) {
+                            return false;
+                        }
+
+                        ByteBuffer frame = outbound.poll();
+                        completePendingWrite(frame);
+                        release(frame);
+                    }
+                } finally {
+                    Arrays.fill(gatheredFrames, 0, count, null);
+                    updateWritability(queued);
+                }
+            }
         } finally {
-            writeBuffer.compact();
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * Futures are queued in the order of their frames, so only the head has to be checked.
+     */
+    private void completePendingWrite(ByteBuffer frame) {
+        PendingWrite pending = pendingWrites.peek();
+
+        if (pending != null && pending.frame == frame) {
+            pendingWrites.poll();
+            pending.future.complete(null);
+        }
+    }
+
+    /**
+     * Transitions are made under a lock, so the worker is notified in the same order as they happen.
+     */
+    private void updateWritability(long queued) {
+        if (writable ? queued <= highWatermark : queued > lowWatermark) {
+            return;
+        }
+
+        synchronized (writabilityLock) {
+            long current = queuedBytes.get();
+            boolean changed = writable ? current > highWatermark : current <= lowWatermark;
+
+            if (!changed) {
+                return;
+            }
+
+            writable = !writable;
+            logger.debug("Writability changed, writable: {}, queued bytes: {}", writable, current);
+
+            ClientWorker<?, ?> clientWorker = this.clientWorker;
+            if (clientWorker != null) {
+                try {
+                    clientWorker.onWritabilityChanged(writable);
+                } catch (Exception e) {
+                    logger.error("Writability callback failed", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Shared frames are read-only and never come from the pool.
+     */
+    private void release(ByteBuffer frame) {
+        if (!frame.isReadOnly()) {
+            bufferPool.release(frame);
+        }
+    }
+
+    /**
+     * Points readers of all protocols to a new read buffer, which holds unread data of the previous one.
+     * Caller has to hold the read buffer lock.
+     */
+    void setReadBuffer(ByteBuffer readBuffer) {
+        for (Protocol<? extends Serializable, ? extends Serializable> protocol : protocols.values()) {
+            protocol.getClientReader().setBuffer(readBuffer);
         }
     }
 
-    Instant getLastDataSent() {
+    /**
+     * Gives access to codecs of a protocol, e.g. to configure extensions negotiated during a handshake.
+     *
+     * @return null if there is no such protocol
+     */
+    @Nullable
+    public Protocol<? extends Serializable, ? extends Serializable> getProtocol(String protocol) {
+        return protocols.get(protocol);
+    }
+
+    public SocketChannel getSocketChannel() {
+        return socketChannel;
+    }
+
+    /**
+     * @return value of {@link System#nanoTime()} when the last frame was sent
+     */
+    long getLastDataSent() {
         return lastDataSent;
     }
 
-    Instant getLastDataReceived() {
+    /**
+     * @return value of {@link System#nanoTime()} when the last keepalive ping was sent
+     */
+    long getLastPingSent() {
+        return lastPingSent;
+    }
+
+    /**
+     * @return value of {@link System#nanoTime()} when the last frame was received
+     */
+    long getLastDataReceived() {
         return lastDataReceived;
     }
 
@@ -179,6 +787,10 @@ public class Comm {
         return outputFilterProcessor;
     }
 
+    KeepAlive getKeepAlive() {
+        return keepAlive;
+    }
+
     ByteBuffer getWriteBuffer() {
         return writeBuffer;
     }
@@ -194,4 +806,38 @@ public class Comm {
     Lock getWriteBufferLock() {
         return writeBufferLock;
     }
+
+    WriteScheduler getWriteScheduler() {
+        return writeScheduler;
+    }
+
+    ByteBufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    Queue<ByteBuffer> getOutbound() {
+        return outbound;
+    }
+
+    int getLowWatermark() {
+        return lowWatermark;
+    }
+
+    int getHighWatermark() {
+        return highWatermark;
+    }
+
+    int getMaxFrameSize() {
+        return maxFrameSize;
+    }
+
+    private static class PendingWrite {
+        private final ByteBuffer frame;
+        private final CompletableFuture<Void> future;
+
+        private PendingWrite(ByteBuffer frame, CompletableFuture<Void> future) {
+            this.frame = frame;
+            this.future = future;
+        }
+    }
 }
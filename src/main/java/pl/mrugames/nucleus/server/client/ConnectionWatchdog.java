@@ -9,21 +9,34 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pl.mrugames.nucleus.server.Metrics;
 import pl.mrugames.nucleus.server.tasks.ClientShutdownTask;
+import pl.mrugames.nucleus.server.tasks.TimingWheel;
 
-import java.time.Duration;
 import java.time.Instant;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
 
 import static com.codahale.metrics.MetricRegistry.name;
 
+/**
+ * Closes idle connections. Every client has a single entry in a {@link TimingWheel}, scheduled for the moment
+ * its connection could time out at the earliest. When the entry expires, the client's last activity is checked
+ * and the entry is scheduled again if there was traffic in the meantime - so only due connections are visited.
+ * <p>
+ * If the client has a ping interval, connections idle for the interval are pinged, so they are not dropped
+ * by load balancers, and peers which do not answer a ping within the interval are disconnected.
+ */
 public class ConnectionWatchdog implements Runnable {
     private final static Logger logger = LoggerFactory.getLogger(ConnectionWatchdog.class);
 
+    static final long TICK_MILLIS = 100;
+    static final int TICKS_PER_WHEEL = 512;
+
     private final CountDownLatch startSignal;
-    final CopyOnWriteArraySet<Client> clients;
+    final Set<Client> clients;
+    final TimingWheel<Client> timingWheel;
     final Semaphore semaphore;
     private volatile boolean running;
     private volatile Instant lastCycle;
@@ -32,10 +45,17 @@ public class ConnectionWatchdog implements Runnable {
     private final Counter finishedConnections;
     private final Histogram connectionDuration;
     private final Meter cleanUpCycles;
+    private final Meter pings;
+    private final Counter deadPeers;
 
     public ConnectionWatchdog() {
+        this(TICK_MILLIS, TICKS_PER_WHEEL);
+    }
+
+    ConnectionWatchdog(long tickMillis, int ticksPerWheel) {
         this.startSignal = new CountDownLatch(1);
-        clients = new CopyOnWriteArraySet<>();
+        clients = ConcurrentHashMap.newKeySet();
+        timingWheel = new TimingWheel<>(tickMillis, TimeUnit.MILLISECONDS, ticksPerWheel);
         semaphore = new Semaphore(0);
 
         Metrics.getRegistry().register(name(ConnectionWatchdog.class, "clients", "registered"), (Gauge<Integer>) clients::size);
@@ -50,6 +70,8 @@ public class ConnectionWatchdog implements Runnable {
         finishedConnections = Metrics.getRegistry().counter(name(ConnectionWatchdog.class, "finished_connections"));
         connectionDuration = Metrics.getRegistry().histogram(name(ConnectionWatchdog.class, "connections_durations"));
         cleanUpCycles = Metrics.getRegistry().meter(name(ConnectionWatchdog.class, "cleanup_cycles"));
+        pings = Metrics.getRegistry().meter(name(ConnectionWatchdog.class, "pings"));
+        deadPeers = Metrics.getRegistry().counter(name(ConnectionWatchdog.class, "dead_peers"));
     }
 
     @Override
@@ -60,34 +82,26 @@ public class ConnectionWatchdog implements Runnable {
 
             logger.info("Watchdog have started in thread: {}", Thread.currentThread().getName());
 
-            long nextPossibleTimeout = -1;
+            long tickMillis = timingWheel.getTick(TimeUnit.MILLISECONDS);
             while (!Thread.currentThread().isInterrupted()) {
                 lastCycle = Instant.now();
 
                 try {
-                    cleanUpCycles.mark();
-                    if (nextPossibleTimeout == -1) {
+                    if (clients.isEmpty()) {
                         logger.debug("There are no connections registered.");
-                        semaphore.acquire();
-                        semaphore.release();
-                    } else {
-                        int connections = clients.size();
-                        logger.debug("There are {} connections registered. Next possible timeout in: {} s.", connections, nextPossibleTimeout);
-
-                        if (semaphore.tryAcquire(connections + 1, nextPossibleTimeout, TimeUnit.SECONDS)) {
-                            logger.debug("New connection has been registered. Running next check.");
-                            semaphore.release(connections + 1);
-                        } else {
-                            logger.debug("Possible timeout elapsed. Running next check.");
-                        }
                     }
 
-                    logger.debug("There are {} connections registered. Starting clean up.", clients.size());
-                    nextPossibleTimeout = check();
-                    logger.debug("Clean up finished. There are {} connections registered.", clients.size());
+                    semaphore.acquire(); // wait for connections amount not 0
+                    semaphore.release(); // restore connections amount
+
+                    TimeUnit.MILLISECONDS.sleep(tickMillis);
 
+                    cleanUpCycles.mark();
+                    cycle();
                 } catch (InterruptedException e) {
                     break;
+                } catch (Exception e) {
+                    logger.error("Error during clean up: " + e.getMessage(), e);
                 }
             }
         } finally {
@@ -96,77 +110,131 @@ public class ConnectionWatchdog implements Runnable {
         }
     }
 
-    long check() throws InterruptedException {
+    void cycle() {
+        timingWheel.expire(System.nanoTime(), this::check);
+    }
 
-        long nextPossibleTimeout = -1;
+    /**
+     * Called when client's timeout entry expires. Closes the connection or schedules the next check.
+     */
+    void check(Client client) {
+        if (client.getShutdown().get()) {
+            logger.debug("Connection has been shutdown already. Client: {}", client.getName());
+            remove(client);
+            return;
+        }
 
-        for (Client client : clients) {
-            semaphore.acquire();
+        long now = System.nanoTime();
+        long pingIntervalNanos = TimeUnit.SECONDS.toNanos(client.getPingIntervalSeconds());
 
-            if (isTimeout(client.getComm(), client.getName(), client.getConnectionTimeoutSeconds())) {
-                logger.debug("Connection is timed out, cleaning. Client: {}", client.getName());
+        long nanosToTimeout = calculateNanosToTimeout(client.getComm(), client.getConnectionTimeoutSeconds(), now);
+        if (nanosToTimeout > 0 && !isPeerDead(client.getComm(), pingIntervalNanos, now)) {
+            long nanosToPing = keepAlive(client, pingIntervalNanos, now);
+            timingWheel.schedule(client, Math.min(nanosToTimeout, nanosToPing), TimeUnit.NANOSECONDS);
+            return;
+        }
 
-                try {
-                    client.getTaskExecutor().submit(new ClientShutdownTask(client), client.getRequestTimeoutSeconds());
-                    logger.debug("Connection closed. Client: {}", client.getName());
-                } catch (Exception e) {
-                    logger.error("Error during channel close. Client: {}", client.getName(), e);
-                } finally {
-                    clients.remove(client);
-                    finishedConnections.inc();
+        logger.debug("Connection is timed out, cleaning. Client: {}", client.getName());
 
-                    long duration = Instant.now().toEpochMilli() - client.getCreated().toEpochMilli();
-                    connectionDuration.update(duration);
-                }
+        try {
+            client.getTaskExecutor().submit(new ClientShutdownTask(client), client.getRequestTimeoutSeconds());
+            logger.debug("Connection closed. Client: {}", client.getName());
+        } catch (Exception e) {
+            logger.error("Error during channel close. Client: {}", client.getName(), e);
+        } finally {
+            remove(client);
+        }
 
-                logger.debug("Connection removed. Client: {}", client.getName());
-            } else {
-                long nextTimeout = calculateSecondsToTimeout(client.getComm(), client.getConnectionTimeoutSeconds());
-                if (nextPossibleTimeout == -1 || nextPossibleTimeout > nextTimeout) {
-                    nextPossibleTimeout = nextTimeout;
-                }
+        logger.debug("Connection removed. Client: {}", client.getName());
+    }
 
-                semaphore.release();
-            }
-        }
+    /**
+     * @return nanoseconds left until the connection is idle for longer than the timeout, zero or less if it is timed out
+     */
+    long calculateNanosToTimeout(Comm comm, long timeoutSeconds, long now) {
+        long lastReceived = comm.getLastDataReceived();
+        long lastSent = comm.getLastDataSent();
+
+        long lastActivity = lastReceived - lastSent < 0 ? lastReceived : lastSent;
 
-        return nextPossibleTimeout;
+        return lastActivity + TimeUnit.SECONDS.toNanos(timeoutSeconds) - now;
     }
 
-    boolean isTimeout(Comm comm, String clientName, long timeoutSeconds) {
-        Instant timeout = Instant.now().minusSeconds(timeoutSeconds);
-        if (comm.getLastDataReceived().isBefore(timeout)) {
-            logger.debug("Reception timeout. Client: {}", clientName);
-            return true;
+    /**
+     * Sends a ping if the connection is idle for the ping interval.
+     *
+     * @return nanoseconds until the next ping could be due
+     */
+    long keepAlive(Client client, long pingIntervalNanos, long now) {
+        if (pingIntervalNanos <= 0) {
+            return Long.MAX_VALUE;
         }
 
-        if (comm.getLastDataSent().isBefore(timeout)) {
-            logger.debug("Send timeout. Client: {}", clientName);
-            return true;
+        Comm comm = client.getComm();
+        long lastReceived = comm.getLastDataReceived();
+        long lastSent = comm.getLastDataSent();
+
+        long lastActivity = lastReceived - lastSent < 0 ? lastSent : lastReceived;
+        long idle = now - lastActivity;
+
+        if (idle < pingIntervalNanos) {
+            return pingIntervalNanos - idle;
         }
 
-        return false;
-    }
+        try {
+            if (comm.ping()) {
+                pings.mark();
+            }
+        } catch (Exception e) {
+            logger.error("Failed to send ping. Client: {}", client.getName(), e);
+        }
 
-    long calculateSecondsToTimeout(Comm comm, long timeoutSeconds) {
-        Instant timeout = Instant.now().minusSeconds(timeoutSeconds);
+        return pingIntervalNanos;
+    }
 
-        long receiveTimeout = Duration.between(timeout, comm.getLastDataReceived()).toMillis();
-        long sendTimeout = Duration.between(timeout, comm.getLastDataSent()).toMillis();
+    /**
+     * @return true if nothing was received since the last ping, and it was sent at least the ping interval ago
+     */
+    boolean isPeerDead(Comm comm, long pingIntervalNanos, long now) {
+        if (pingIntervalNanos <= 0) {
+            return false;
+        }
 
-        double result = receiveTimeout > sendTimeout ? sendTimeout : receiveTimeout;
-        result /= 1000.0;
+        long lastPingSent = comm.getLastPingSent();
+        if (comm.getLastDataReceived() - lastPingSent >= 0 || now - lastPingSent < pingIntervalNanos) {
+            return false;
+        }
 
-        return (long) Math.ceil(result);
+        deadPeers.inc();
+        return true;
     }
 
-    synchronized void register(Client client) {
+    void register(Client client) {
         clients.add(client);
+
+        long delaySeconds = client.getConnectionTimeoutSeconds();
+        if (client.getPingIntervalSeconds() > 0) {
+            delaySeconds = Math.min(delaySeconds, client.getPingIntervalSeconds());
+        }
+
+        timingWheel.schedule(client, delaySeconds, TimeUnit.SECONDS);
         semaphore.release();
         logger.debug("New connection has been registered. Client: {}", client.getName());
         acceptedConnections.inc();
     }
 
+    private void remove(Client client) {
+        if (!clients.remove(client)) {
+            return;
+        }
+
+        semaphore.acquireUninterruptibly();
+        finishedConnections.inc();
+
+        long duration = Instant.now().toEpochMilli() - client.getCreated().toEpochMilli();
+        connectionDuration.update(duration);
+    }
+
     public boolean isRunning() {
         return running;
     }
@@ -0,0 +1,22 @@
+package pl.mrugames.nucleus.server.client;
+
+import java.io.Serializable;
+
+/**
+ * Protocol level keepalive, like WebSocket ping and pong frames.
+ * Keepalive frames are handled by {@link Comm}, they never reach filters or a {@link ClientWorker}.
+ */
+public interface KeepAlive {
+    /**
+     * @param nanoTime value of {@link System#nanoTime()} when the ping is sent
+     * @return raw frame to send
+     */
+    Serializable createPing(long nanoTime);
+
+    /**
+     * Replies to pings and records round trip times of pongs.
+     *
+     * @return false if the frame is not a keepalive frame and should be processed as usual
+     */
+    boolean handle(Serializable rawFrame, Comm comm) throws Exception;
+}
@@ -0,0 +1,49 @@
+package pl.mrugames.nucleus.server.client;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Client's queue of decoded frames. Only the owner - a task which acquired the mailbox - processes the frames,
+ * so they are handled one at a time, in the order they were added.
+ */
+class Mailbox {
+    private final Queue<Object> frames;
+    private final AtomicBoolean owned;
+
+    Mailbox() {
+        this.frames = new ConcurrentLinkedQueue<>();
+        this.owned = new AtomicBoolean();
+    }
+
+    void add(Object frame) {
+        frames.add(frame);
+    }
+
+    /**
+     * @return true if the caller became the owner and has to drain the mailbox
+     */
+    boolean tryAcquire() {
+        return owned.compareAndSet(false, true);
+    }
+
+    /**
+     * Owner only.
+     */
+    Object poll() {
+        return frames.poll();
+    }
+
+    void release() {
+        owned.set(false);
+    }
+
+    boolean isEmpty() {
+        return frames.isEmpty();
+    }
+
+    int size() {
+        return frames.size();
+    }
+}
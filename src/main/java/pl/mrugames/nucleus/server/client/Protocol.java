@@ -4,6 +4,7 @@ import pl.mrugames.nucleus.common.io.ClientReader;
 import pl.mrugames.nucleus.common.io.ClientWriter;
 import pl.mrugames.nucleus.server.client.filters.FilterProcessor;
 
+import javax.annotation.Nullable;
 import java.io.Serializable;
 
 public class Protocol<Reader extends Serializable, Writer extends Serializable> {
@@ -12,17 +13,28 @@ public class Protocol<Reader extends Serializable, Writer extends Serializable>
     private final FilterProcessor inputFilterProcessor;
     private final FilterProcessor outputFilterProcessor;
     private final String name;
+    private final KeepAlive keepAlive;
 
     public Protocol(ClientWriter<Writer> clientWriter,
                     ClientReader<Reader> clientReader,
                     FilterProcessor inputFilterProcessor,
                     FilterProcessor outputFilterProcessor,
                     String name) {
+        this(clientWriter, clientReader, inputFilterProcessor, outputFilterProcessor, name, null);
+    }
+
+    public Protocol(ClientWriter<Writer> clientWriter,
+                    ClientReader<Reader> clientReader,
+                    FilterProcessor inputFilterProcessor,
+                    FilterProcessor outputFilterProcessor,
+                    String name,
+                    @Nullable KeepAlive keepAlive) {
         this.clientWriter = clientWriter;
         this.clientReader = clientReader;
         this.inputFilterProcessor = inputFilterProcessor;
         this.outputFilterProcessor = outputFilterProcessor;
         this.name = name;
+        this.keepAlive = keepAlive;
     }
 
     public ClientWriter<Writer> getClientWriter() {
@@ -44,4 +56,12 @@ public class Protocol<Reader extends Serializable, Writer extends Serializable>
     public String getName() {
         return name;
     }
+
+    /**
+     * @return null if the protocol has no keepalive frames
+     */
+    @Nullable
+    public KeepAlive getKeepAlive() {
+        return keepAlive;
+    }
 }
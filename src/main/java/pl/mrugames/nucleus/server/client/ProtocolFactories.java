@@ -1,9 +1,9 @@
 package pl.mrugames.nucleus.server.client;
 
 import pl.mrugames.nucleus.common.io.*;
-import pl.mrugames.nucleus.server.client.filters.FilterProcessor;
-import pl.mrugames.nucleus.server.client.filters.StringToWebSocketFrameFilter;
-import pl.mrugames.nucleus.server.client.filters.WebSocketFrameToStringFilter;
+import pl.mrugames.nucleus.server.client.filters.*;
+import pl.mrugames.nucleus.server.client.frames.WebSocketFrame;
+import pl.mrugames.nucleus.server.websocket.WebSocketKeepAlive;
 
 import java.io.Serializable;
 import java.util.Collections;
@@ -13,6 +13,54 @@ import java.util.List;
 public class ProtocolFactories {
 
     public static List<ProtocolFactory<? extends Serializable, ? extends Serializable>> createProtocolFactoryForWebSocket(String httpProtocolName, String webSocketProtocolName) {
+        return createProtocolFactoryForWebSocket(httpProtocolName, webSocketProtocolName, WebSocketReader.DEFAULT_MAX_MESSAGE_SIZE, false);
+    }
+
+    /**
+     * Messages are passed to workers as strings. In streaming mode workers receive every fragment as a {@link WebSocketFrame} instead,
+     * with the payload not decoded, see {@link WebSocketFragmentFilter}.
+     *
+     * @param maxMessageSize size of a reassembled message, or of a single fragment in streaming mode [bytes]
+     * @param streaming      pass fragments as they arrive, instead of reassembling them
+     */
+    public static List<ProtocolFactory<? extends Serializable, ? extends Serializable>> createProtocolFactoryForWebSocket(
+            String httpProtocolName,
+            String webSocketProtocolName,
+            int maxMessageSize,
+            boolean streaming) {
+        return createProtocolFactoryForWebSocket(httpProtocolName, webSocketProtocolName, maxMessageSize, streaming,
+                streaming ? WebSocketFragmentFilter.getInstance() : WebSocketFrameToStringFilter.getInstance(), StringToWebSocketFrameFilter.getInstance());
+    }
+
+    /**
+     * Messages are passed to workers as {@link java.nio.ByteBuffer}s, without decoding them to strings.
+     */
+    public static List<ProtocolFactory<? extends Serializable, ? extends Serializable>> createProtocolFactoryForBinaryWebSocket(String httpProtocolName, String webSocketProtocolName) {
+        return createProtocolFactoryForBinaryWebSocket(httpProtocolName, webSocketProtocolName, WebSocketReader.DEFAULT_MAX_MESSAGE_SIZE, false);
+    }
+
+    /**
+     * Messages are passed to workers as {@link java.nio.ByteBuffer}s. In streaming mode workers receive every fragment as a {@link WebSocketFrame} instead.
+     *
+     * @param maxMessageSize size of a reassembled message, or of a single fragment in streaming mode [bytes]
+     * @param streaming      pass fragments as they arrive, instead of reassembling them
+     */
+    public static List<ProtocolFactory<? extends Serializable, ? extends Serializable>> createProtocolFactoryForBinaryWebSocket(
+            String httpProtocolName,
+            String webSocketProtocolName,
+            int maxMessageSize,
+            boolean streaming) {
+        return createProtocolFactoryForWebSocket(httpProtocolName, webSocketProtocolName, maxMessageSize, streaming,
+                streaming ? WebSocketFragmentFilter.getInstance() : WebSocketFrameToByteBufferFilter.getInstance(), ByteBufferToWebSocketFrameFilter.getInstance());
+    }
+
+    private static List<ProtocolFactory<? extends Serializable, ? extends Serializable>> createProtocolFactoryForWebSocket(
+            String httpProtocolName,
+            String webSocketProtocolName,
+            int maxMessageSize,
+            boolean streaming,
+            Filter<?, ?> inputFilter,
+            Filter<?, ?> outputFilter) {
         List<ProtocolFactory<?, ?>> protocolFactories = new LinkedList<>();
 
         protocolFactories.add(
@@ -20,22 +68,47 @@ public class ProtocolFactories {
         );
 
         protocolFactories.add(
-                new ProtocolFactory<>(WebSocketWriter::new, WebSocketReader::new,
-                        FilterProcessor.oneFilterFactory(WebSocketFrameToStringFilter.getInstance()),
-                        FilterProcessor.oneFilterFactory(StringToWebSocketFrameFilter.getInstance()),
-                        webSocketProtocolName)
+                new ProtocolFactory<>(WebSocketWriter::new,
+                        buffer -> new WebSocketReader(buffer, maxMessageSize, streaming),
+                        FilterProcessor.oneFilterFactory(inputFilter),
+                        FilterProcessor.oneFilterFactory(outputFilter),
+                        webSocketProtocolName,
+                        new WebSocketKeepAlive())
         );
 
         return Collections.unmodifiableList(protocolFactories);
     }
 
     public static List<ProtocolFactory<? extends Serializable, ? extends Serializable>> createProtocolFactoryForObjectSocket(String protocolName) {
+        return createProtocolFactoryForObjectSocket(protocolName, JavaSerializer.getInstance());
+    }
+
+    /**
+     * @param serializer shared by all connections, e.g. {@link CompactSerializer}
+     */
+    public static List<ProtocolFactory<? extends Serializable, ? extends Serializable>> createProtocolFactoryForObjectSocket(String protocolName, Serializer serializer) {
         return Collections.singletonList(new ProtocolFactory<>(
-                ObjectWriter::new,
-                ObjectReader::new,
+                buffer -> new ObjectWriter<>(buffer, serializer),
+                buffer -> new ObjectReader<>(buffer, serializer),
                 FilterProcessor.EMPTY_FILTER_PROCESSOR,
                 FilterProcessor.EMPTY_FILTER_PROCESSOR,
                 protocolName
         ));
     }
+
+    /**
+     * Workers receive payloads of frames as read-only views of the read buffer, valid until the worker returns,
+     * responses are sent from {@link java.nio.ByteBuffer}s.
+     *
+     * @param maxFrameSize longer frames are rejected [bytes], should not exceed the buffer size
+     */
+    public static List<ProtocolFactory<? extends Serializable, ? extends Serializable>> createProtocolFactoryForLengthPrefixedSocket(String protocolName, LengthPrefix lengthPrefix, int maxFrameSize) {
+        return Collections.singletonList(new ProtocolFactory<>(
+                buffer -> new LengthPrefixedWriter(buffer, lengthPrefix),
+                buffer -> new LengthPrefixedReader(buffer, lengthPrefix, maxFrameSize),
+                FilterProcessor.oneFilterFactory(BufferFrameToByteBufferFilter.getInstance()),
+                FilterProcessor.oneFilterFactory(ByteBufferToBufferFrameFilter.getInstance()),
+                protocolName
+        ));
+    }
 }
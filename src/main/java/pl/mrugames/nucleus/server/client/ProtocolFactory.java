@@ -4,6 +4,7 @@ import pl.mrugames.nucleus.common.io.ClientReader;
 import pl.mrugames.nucleus.common.io.ClientWriter;
 import pl.mrugames.nucleus.server.client.filters.FilterProcessor;
 
+import javax.annotation.Nullable;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.util.function.Function;
@@ -14,23 +15,34 @@ public class ProtocolFactory<Reader extends Serializable, Writer extends Seriali
     private final FilterProcessor inputFilterProcessor;
     private final FilterProcessor outputFilterProcessor;
     private final String key;
+    private final KeepAlive keepAlive;
 
     public ProtocolFactory(Function<ByteBuffer, ClientWriter<Writer>> clientWriterFactory,
                            Function<ByteBuffer, ClientReader<Reader>> clientReaderFactory,
                            FilterProcessor inputFilterProcessor,
                            FilterProcessor outputFilterProcessor,
                            String key) {
+        this(clientWriterFactory, clientReaderFactory, inputFilterProcessor, outputFilterProcessor, key, null);
+    }
+
+    public ProtocolFactory(Function<ByteBuffer, ClientWriter<Writer>> clientWriterFactory,
+                           Function<ByteBuffer, ClientReader<Reader>> clientReaderFactory,
+                           FilterProcessor inputFilterProcessor,
+                           FilterProcessor outputFilterProcessor,
+                           String key,
+                           @Nullable KeepAlive keepAlive) {
         this.clientWriterFactory = clientWriterFactory;
         this.clientReaderFactory = clientReaderFactory;
         this.inputFilterProcessor = inputFilterProcessor;
         this.outputFilterProcessor = outputFilterProcessor;
         this.key = key;
+        this.keepAlive = keepAlive;
     }
 
     public Protocol<Reader, Writer> create(ByteBuffer writeBuffer, ByteBuffer readBuffer) {
         ClientWriter<Writer> clientWriter = clientWriterFactory.apply(writeBuffer);
         ClientReader<Reader> clientReader = clientReaderFactory.apply(readBuffer);
 
-        return new Protocol<>(clientWriter, clientReader, inputFilterProcessor, outputFilterProcessor, key);
+        return new Protocol<>(clientWriter, clientReader, inputFilterProcessor, outputFilterProcessor, key, keepAlive);
     }
 }
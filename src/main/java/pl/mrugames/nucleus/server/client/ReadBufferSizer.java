@@ -0,0 +1,89 @@
+package pl.mrugames.nucleus.server.client;
+
+import com.codahale.metrics.Counter;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decides when the read buffer of a connection grows or shrinks. The buffer grows twice, up to the maximum size,
+ * when it is full and the decoder still needs more bytes. It shrinks by half, down to the initial size,
+ * after a number of consecutive reads which left less than a quarter of it filled.
+ * <p>
+ * One per connection, used by the reactor under the read buffer lock.
+ */
+class ReadBufferSizer {
+    static final int DEFAULT_SHRINK_AFTER_READS = 64;
+
+    private final int initialSize;
+    private final int maxSize;
+    private final int shrinkAfterReads;
+    private final Counter grown;
+    private final Counter shrunk;
+
+    private int smallReads;
+
+    ReadBufferSizer(int initialSize, int maxSize, int shrinkAfterReads, Counter grown, Counter shrunk) {
+        this.initialSize = initialSize;
+        this.maxSize = maxSize;
+        this.shrinkAfterReads = shrinkAfterReads;
+        this.grown = grown;
+        this.shrunk = shrunk;
+    }
+
+    /**
+     * @param inUse whether workers hold views of the buffer, so it cannot be compacted
+     * @return true if no more bytes can be read into the buffer
+     */
+    static boolean isFull(ByteBuffer buffer, boolean inUse) {
+        return inUse ? buffer.limit() == buffer.capacity() : buffer.remaining() == buffer.capacity();
+    }
+
+    /**
+     * Called when the buffer is full and no frame can be decoded from it.
+     *
+     * @return new capacity, or the current one if the buffer has the maximum size already
+     */
+    int grow(int capacity) {
+        smallReads = 0;
+
+        int grownCapacity = (int) Math.min(maxSize, capacity * 2L);
+        if (grownCapacity <= capacity) {
+            return capacity;
+        }
+
+        grown.inc();
+        return grownCapacity;
+    }
+
+    /**
+     * Called after every read which did not fill the buffer.
+     *
+     * @return new capacity, or the current one if the buffer should not shrink yet
+     */
+    int shrink(ByteBuffer buffer, boolean inUse) {
+        int capacity = buffer.capacity();
+
+        if (capacity / 2 < initialSize || buffer.remaining() > capacity / 4) {
+            smallReads = 0;
+            return capacity;
+        }
+
+        // views of the buffer would point to a buffer returned to the pool
+        if (++smallReads < shrinkAfterReads || inUse) {
+            return capacity;
+        }
+
+        smallReads = 0;
+        shrunk.inc();
+
+        return capacity / 2;
+    }
+
+    int getInitialSize() {
+        return initialSize;
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+}
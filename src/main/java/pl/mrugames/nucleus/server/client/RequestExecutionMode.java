@@ -0,0 +1,13 @@
+package pl.mrugames.nucleus.server.client;
+
+public enum RequestExecutionMode {
+    /**
+     * Every decoded frame is a separate task in the pool, so frames of one client may be processed concurrently and out of order.
+     */
+    CONCURRENT,
+
+    /**
+     * Frames of one client are processed in arrival order, one at a time, by a task draining the client's mailbox.
+     */
+    SERIAL
+}
@@ -0,0 +1,16 @@
+package pl.mrugames.nucleus.server.client;
+
+/**
+ * What a {@link BroadcastGroup} does with a member whose outbound queue is over its limit.
+ */
+public enum SlowConsumerPolicy {
+    /**
+     * Skip the frame for this member, it will receive the next one if it catches up.
+     */
+    DROP,
+
+    /**
+     * Remove the member from the group and shut the client down.
+     */
+    DISCONNECT
+}
@@ -0,0 +1,17 @@
+package pl.mrugames.nucleus.server.client;
+
+/**
+ * Owner of the client's channel (usually the I/O thread serving it), which flushes frames queued by {@link Comm}
+ * and selects the channel for reading again once a full read buffer has been freed.
+ */
+public interface WriteScheduler {
+    /**
+     * Requests {@link Comm#flush()} to be called by the channel owner. Must not block.
+     */
+    void scheduleWrite(Comm comm);
+
+    /**
+     * Requests the channel to be selected for reading again, after the reader paused it on a full read buffer. Must not block.
+     */
+    void scheduleRead(Comm comm);
+}
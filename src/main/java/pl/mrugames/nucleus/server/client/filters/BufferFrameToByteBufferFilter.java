@@ -0,0 +1,33 @@
+package pl.mrugames.nucleus.server.client.filters;
+
+import pl.mrugames.nucleus.server.client.frames.BufferFrame;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+
+/**
+ * Passes payloads of length prefixed frames to workers, without copying them.
+ */
+public class BufferFrameToByteBufferFilter implements Filter<BufferFrame, ByteBuffer> {
+    private static volatile BufferFrameToByteBufferFilter instance;
+
+    public static synchronized BufferFrameToByteBufferFilter getInstance() {
+        if (instance == null) {
+            instance = new BufferFrameToByteBufferFilter();
+        }
+
+        return instance;
+    }
+
+    private BufferFrameToByteBufferFilter() {
+    }
+
+    @Override
+    public ByteBuffer filter(@Nullable BufferFrame frame) {
+        if (frame == null) {
+            return null;
+        }
+
+        return frame.getPayload();
+    }
+}
@@ -0,0 +1,34 @@
+package pl.mrugames.nucleus.server.client.filters;
+
+import pl.mrugames.nucleus.server.client.frames.BufferFrame;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+
+/**
+ * Sends remaining bytes of the buffer as a length prefixed frame. The buffer is not copied,
+ * the frame is encoded before {@code Comm.send()} returns.
+ */
+public class ByteBufferToBufferFrameFilter implements Filter<ByteBuffer, BufferFrame> {
+    private static volatile ByteBufferToBufferFrameFilter instance;
+
+    public static synchronized ByteBufferToBufferFrameFilter getInstance() {
+        if (instance == null) {
+            instance = new ByteBufferToBufferFrameFilter();
+        }
+
+        return instance;
+    }
+
+    private ByteBufferToBufferFrameFilter() {
+    }
+
+    @Override
+    public BufferFrame filter(@Nullable ByteBuffer buffer) {
+        if (buffer == null) {
+            return null;
+        }
+
+        return new BufferFrame(buffer);
+    }
+}
@@ -0,0 +1,50 @@
+package pl.mrugames.nucleus.server.client.filters;
+
+import pl.mrugames.nucleus.server.client.frames.WebSocketFrame;
+import pl.mrugames.nucleus.server.websocket.WebsocketConstants;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+
+/**
+ * Sends remaining bytes of the buffer as a binary message. Position of the buffer is not changed.
+ * A buffer wrapping a whole array is not copied, the frame is encoded before {@code Comm.send()} returns.
+ */
+public class ByteBufferToWebSocketFrameFilter implements Filter<ByteBuffer, WebSocketFrame> {
+    private static volatile ByteBufferToWebSocketFrameFilter instance;
+
+    public static synchronized ByteBufferToWebSocketFrameFilter getInstance() {
+        if (instance == null) {
+            instance = new ByteBufferToWebSocketFrameFilter();
+        }
+
+        return instance;
+    }
+
+    private ByteBufferToWebSocketFrameFilter() {
+    }
+
+    @Override
+    public WebSocketFrame filter(@Nullable ByteBuffer buffer) {
+        if (buffer == null) {
+            return null;
+        }
+
+        if (buffer == WebsocketConstants.WEBSOCKET_CLOSE_BUFFER) {
+            return new WebSocketFrame(WebSocketFrame.FrameType.CLOSE, new byte[0]);
+        }
+
+        return new WebSocketFrame(WebSocketFrame.FrameType.BINARY, toArray(buffer));
+    }
+
+    private byte[] toArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+
+        byte[] payload = new byte[buffer.remaining()];
+        buffer.duplicate().get(payload);
+
+        return payload;
+    }
+}
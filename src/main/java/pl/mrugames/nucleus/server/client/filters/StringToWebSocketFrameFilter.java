@@ -4,6 +4,7 @@ import pl.mrugames.nucleus.server.client.frames.WebSocketFrame;
 import pl.mrugames.nucleus.server.websocket.WebsocketConstants;
 
 import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
 
 public class StringToWebSocketFrameFilter implements Filter<String, WebSocketFrame> {
     private static volatile StringToWebSocketFrameFilter instance;
@@ -29,6 +30,6 @@ public class StringToWebSocketFrameFilter implements Filter<String, WebSocketFra
             return new WebSocketFrame(WebSocketFrame.FrameType.CLOSE, new byte[0]);
         }
 
-        return new WebSocketFrame(WebSocketFrame.FrameType.TEXT, s.getBytes());
+        return new WebSocketFrame(WebSocketFrame.FrameType.TEXT, s.getBytes(StandardCharsets.UTF_8));
     }
 }
@@ -0,0 +1,40 @@
+package pl.mrugames.nucleus.server.client.filters;
+
+import pl.mrugames.nucleus.server.client.frames.WebSocketFrame;
+
+import javax.annotation.Nullable;
+
+/**
+ * Passes fragments of text and binary messages read in streaming mode as they are, so workers see {@link WebSocketFrame#isFinalFragment()}.
+ * Payloads are not decoded, since a UTF-8 character may be split between fragments and fragments of a message
+ * may be filtered by different threads - text has to be decoded by the worker, e.g. with a {@link java.nio.charset.CharsetDecoder}
+ * fed with the bytes of an incomplete character left from the previous fragment.
+ * Close frames are passed as well, pings and pongs are dropped.
+ */
+public class WebSocketFragmentFilter implements Filter<WebSocketFrame, WebSocketFrame> {
+    private static volatile WebSocketFragmentFilter instance;
+
+    public synchronized static WebSocketFragmentFilter getInstance() {
+        if (instance == null) {
+            instance = new WebSocketFragmentFilter();
+        }
+
+        return instance;
+    }
+
+    private WebSocketFragmentFilter() {
+    }
+
+    @Override
+    public WebSocketFrame filter(@Nullable WebSocketFrame webSocketFrame) {
+        if (webSocketFrame == null) {
+            return null;
+        }
+
+        if (webSocketFrame.getFrameType() == WebSocketFrame.FrameType.PING || webSocketFrame.getFrameType() == WebSocketFrame.FrameType.PONG) {
+            return null;
+        }
+
+        return webSocketFrame;
+    }
+}
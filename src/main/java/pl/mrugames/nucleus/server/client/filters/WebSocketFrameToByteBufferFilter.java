@@ -0,0 +1,47 @@
+package pl.mrugames.nucleus.server.client.filters;
+
+import pl.mrugames.nucleus.server.client.frames.WebSocketFrame;
+import pl.mrugames.nucleus.server.websocket.WebsocketConstants;
+
+import javax.annotation.Nullable;
+import java.nio.ByteBuffer;
+
+/**
+ * Passes payloads of text and binary messages as read-only buffers, without copying them.
+ * Expects reassembled messages, fragments read in streaming mode are passed by {@link WebSocketFragmentFilter} instead.
+ */
+public class WebSocketFrameToByteBufferFilter implements Filter<WebSocketFrame, ByteBuffer> {
+    private static volatile WebSocketFrameToByteBufferFilter instance;
+
+    public synchronized static WebSocketFrameToByteBufferFilter getInstance() {
+        if (instance == null) {
+            instance = new WebSocketFrameToByteBufferFilter();
+        }
+
+        return instance;
+    }
+
+    private WebSocketFrameToByteBufferFilter() {
+    }
+
+    @Override
+    public ByteBuffer filter(@Nullable WebSocketFrame webSocketFrame) {
+        if (webSocketFrame == null) {
+            return null;
+        }
+
+        if (webSocketFrame.getFrameType() == WebSocketFrame.FrameType.CLOSE) {
+            return WebsocketConstants.WEBSOCKET_CLOSE_BUFFER;
+        }
+
+        if (webSocketFrame.getFrameType() == WebSocketFrame.FrameType.PING || webSocketFrame.getFrameType() == WebSocketFrame.FrameType.PONG) {
+            return null;
+        }
+
+        if (!webSocketFrame.isFinalFragment()) {
+            throw new IllegalStateException("Fragments of a streamed message cannot be converted separately, use WebSocketFragmentFilter");
+        }
+
+        return webSocketFrame.getPayloadBuffer();
+    }
+}
@@ -4,7 +4,11 @@ import pl.mrugames.nucleus.server.client.frames.WebSocketFrame;
 import pl.mrugames.nucleus.server.websocket.WebsocketConstants;
 
 import javax.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
 
+/**
+ * Decodes reassembled text messages, fragments read in streaming mode are passed by {@link WebSocketFragmentFilter} instead.
+ */
 public class WebSocketFrameToStringFilter implements Filter<WebSocketFrame, String> {
     private static volatile WebSocketFrameToStringFilter instance;
 
@@ -29,6 +33,14 @@ public class WebSocketFrameToStringFilter implements Filter<WebSocketFrame, Stri
             return WebsocketConstants.WEBSOCKET_CLOSE_FRAME;
         }
 
-        return new String(webSocketFrame.getPayload());
+        if (webSocketFrame.getFrameType() == WebSocketFrame.FrameType.PING || webSocketFrame.getFrameType() == WebSocketFrame.FrameType.PONG) {
+            return null;
+        }
+
+        if (!webSocketFrame.isFinalFragment()) {
+            throw new IllegalStateException("Fragments of a streamed message cannot be converted separately, use WebSocketFragmentFilter");
+        }
+
+        return new String(webSocketFrame.getPayload(), StandardCharsets.UTF_8);
     }
 }
@@ -0,0 +1,40 @@
+package pl.mrugames.nucleus.server.client.frames;
+
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+
+/**
+ * Payload of a length prefixed frame. Frames are passed between codecs and filters only, they are never serialized.
+ * <p>
+ * It is {@link Serializable} only to satisfy the bound of codec frame types. The payload is a view of a buffer
+ * which cannot be serialized, so serialization fails instead of producing a frame without payload.
+ */
+public class BufferFrame implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private final transient ByteBuffer payload;
+
+    public BufferFrame(ByteBuffer payload) {
+        this.payload = payload;
+    }
+
+    /**
+     * Received frames are read-only views of the read buffer, valid until the worker returns.
+     */
+    public ByteBuffer getPayload() {
+        return payload;
+    }
+
+    private void writeObject(ObjectOutputStream out) throws NotSerializableException {
+        throw new NotSerializableException(BufferFrame.class.getName() + " is passed in-process only");
+    }
+
+    @Override
+    public String toString() {
+        return "BufferFrame{" +
+                "payload=" + payload +
+                '}';
+    }
+}
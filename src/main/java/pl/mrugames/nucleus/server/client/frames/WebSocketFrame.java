@@ -1,34 +1,56 @@
 package pl.mrugames.nucleus.server.client.frames;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 public class WebSocketFrame implements Serializable {
     public enum FrameType {
-        TEXT, BINARY, CLOSE
+        TEXT, BINARY, CLOSE, PING, PONG
     }
 
     private final byte[] payload;
     private final FrameType frameType;
+    private final boolean finalFragment;
 
     public WebSocketFrame(FrameType frameType, byte[] payload) {
+        this(frameType, payload, true);
+    }
+
+    public WebSocketFrame(FrameType frameType, byte[] payload, boolean finalFragment) {
         this.frameType = frameType;
         this.payload = payload;
+        this.finalFragment = finalFragment;
     }
 
     public byte[] getPayload() {
         return payload;
     }
 
+    /**
+     * Read-only view of the payload, no bytes are copied.
+     */
+    public ByteBuffer getPayloadBuffer() {
+        return ByteBuffer.wrap(payload).asReadOnlyBuffer();
+    }
+
     public FrameType getFrameType() {
         return frameType;
     }
 
+    /**
+     * False only for fragments of a message read in streaming mode, the type of every fragment is the message type.
+     */
+    public boolean isFinalFragment() {
+        return finalFragment;
+    }
+
     @Override
     public String toString() {
         return "WebSocketFrame{" +
                 "payload=" + Arrays.toString(payload) +
                 ", frameType=" + frameType +
+                ", finalFragment=" + finalFragment +
                 '}';
     }
 }
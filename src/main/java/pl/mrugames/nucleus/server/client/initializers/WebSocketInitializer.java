@@ -2,13 +2,23 @@ package pl.mrugames.nucleus.server.client.initializers;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pl.mrugames.nucleus.common.io.WebSocketReader;
+import pl.mrugames.nucleus.common.io.WebSocketWriter;
 import pl.mrugames.nucleus.server.client.*;
+import pl.mrugames.nucleus.server.websocket.PerMessageDeflate;
+import pl.mrugames.nucleus.server.websocket.PerMessageDeflateExtension;
 import pl.mrugames.nucleus.server.websocket.WebSocketHandshakeParser;
 
 import javax.annotation.Nullable;
 import java.util.concurrent.atomic.AtomicBoolean;
 
-public class WebSocketInitializer implements ClientWorker<String, String> {
+/**
+ * Performs the handshake, which is read with a text protocol, and then passes messages to the target worker.
+ *
+ * @param <In>  type of WebSocket messages received by the target worker
+ * @param <Out> type of WebSocket messages sent by the target worker
+ */
+public class WebSocketInitializer<In, Out> implements ClientWorker<In, Out> {
     private final static Logger logger = LoggerFactory.getLogger(WebSocketInitializer.class);
 
     private final StringBuffer stringBuffer;
@@ -17,17 +27,19 @@ public class WebSocketInitializer implements ClientWorker<String, String> {
     private final String webSocketProtocolName;
     private final ClientController clientController;
     private final ClientInfo clientInfo;
-    private final ClientWorkerFactory<String, String> clientWorkerFactory;
+    private final ClientWorkerFactory<In, Out> clientWorkerFactory;
     private final Comm comm;
+    private final PerMessageDeflateExtension deflateExtension;
 
-    private volatile ClientWorker<String, String> targetWorker;
+    private volatile ClientWorker<In, Out> targetWorker;
 
     WebSocketInitializer(WebSocketHandshakeParser parser,
                          String webSocketProtocolName,
                          ClientController clientController,
                          ClientInfo clientInfo,
-                         ClientWorkerFactory<String, String> clientWorkerFactory,
-                         Comm comm) {
+                         ClientWorkerFactory<In, Out> clientWorkerFactory,
+                         Comm comm,
+                         @Nullable PerMessageDeflateExtension deflateExtension) {
         this.parser = parser;
         this.stringBuffer = new StringBuffer();
         this.isInitialized = new AtomicBoolean(false);
@@ -36,28 +48,33 @@ public class WebSocketInitializer implements ClientWorker<String, String> {
         this.clientInfo = clientInfo;
         this.clientWorkerFactory = clientWorkerFactory;
         this.comm = comm;
+        this.deflateExtension = deflateExtension;
     }
 
     @Nullable
     @Override
-    public String onInit() {
+    public Out onInit() {
         logger.info("[{}] WebSocket connected. Starting handshake procedure.", clientInfo.getName());
         return null;
     }
 
     @Nullable
     @Override
-    public String onRequest(String request) {
+    public Out onRequest(In request) {
         synchronized (this) {
             if (!isInitialized.get()) {
-                stringBuffer.append(request);
+                // until the protocol is switched, requests are lines of the HTTP handshake
+                stringBuffer.append((Object) request);
 
                 if (parser.isReady(stringBuffer.toString())) {
                     isInitialized.set(true);
                     targetWorker = clientWorkerFactory.create(comm, clientInfo, clientController);
 
+                    String handshake = stringBuffer.toString();
+                    PerMessageDeflate compression = negotiateCompression(handshake);
+
                     try {
-                        comm.send(parser.parse(stringBuffer.toString()));
+                        comm.send(parser.parse(handshake, compression != null ? compression.getResponse() : null));
                     } catch (Exception e) {
                         throw new IllegalStateException("Failed to send handshake response", e);
                     }
@@ -78,9 +95,47 @@ public class WebSocketInitializer implements ClientWorker<String, String> {
         return targetWorker.onRequest(request);
     }
 
+    /**
+     * Configures codecs of the WebSocket protocol before the response is sent, since the client may compress
+     * messages as soon as it receives the response.
+     */
+    @Nullable
+    PerMessageDeflate negotiateCompression(String handshake) {
+        if (deflateExtension == null) {
+            return null;
+        }
+
+        PerMessageDeflate compression = deflateExtension.negotiate(parser.findExtensions(handshake));
+        if (compression == null) {
+            return null;
+        }
+
+        Protocol<?, ?> protocol = comm.getProtocol(webSocketProtocolName);
+        if (protocol == null || !(protocol.getClientReader() instanceof WebSocketReader) || !(protocol.getClientWriter() instanceof WebSocketWriter)) {
+            logger.warn("[{}] Protocol '{}' does not use WebSocket codecs, compression disabled.", clientInfo.getName(), webSocketProtocolName);
+            return null;
+        }
+
+        ((WebSocketReader) protocol.getClientReader()).setCompression(compression);
+        ((WebSocketWriter) protocol.getClientWriter()).setCompression(compression);
+
+        logger.info("[{}] Negotiated extension: {}", clientInfo.getName(), compression.getResponse());
+
+        return compression;
+    }
+
+    @Override
+    public void onWritabilityChanged(boolean writable) {
+        ClientWorker<In, Out> targetWorker = this.targetWorker;
+
+        if (targetWorker != null) {
+            targetWorker.onWritabilityChanged(writable);
+        }
+    }
+
     @Nullable
     @Override
-    public String onShutdown() {
+    public Out onShutdown() {
         if (targetWorker != null) {
             return targetWorker.onShutdown();
         }
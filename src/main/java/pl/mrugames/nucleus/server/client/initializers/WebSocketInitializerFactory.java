@@ -1,21 +1,36 @@
 package pl.mrugames.nucleus.server.client.initializers;
 
 import pl.mrugames.nucleus.server.client.*;
+import pl.mrugames.nucleus.server.websocket.PerMessageDeflateExtension;
 import pl.mrugames.nucleus.server.websocket.WebSocketHandshakeParser;
 
-public class WebSocketInitializerFactory implements ClientWorkerFactory<String, String> {
+import javax.annotation.Nullable;
+
+public class WebSocketInitializerFactory<In, Out> implements ClientWorkerFactory<In, Out> {
     private final String httpProtocol;
     private final String webSocketProtocol;
-    private final ClientWorkerFactory<String, String> clientWorkerFactory;
+    private final ClientWorkerFactory<In, Out> clientWorkerFactory;
+    private final PerMessageDeflateExtension deflateExtension;
+
+    public WebSocketInitializerFactory(String httpProtocol, String webSocketProtocol, ClientWorkerFactory<In, Out> clientWorkerFactory) {
+        this(httpProtocol, webSocketProtocol, clientWorkerFactory, null);
+    }
 
-    public WebSocketInitializerFactory(String httpProtocol, String webSocketProtocol, ClientWorkerFactory<String, String> clientWorkerFactory) {
+    /**
+     * @param deflateExtension null disables compression
+     */
+    public WebSocketInitializerFactory(String httpProtocol,
+                                       String webSocketProtocol,
+                                       ClientWorkerFactory<In, Out> clientWorkerFactory,
+                                       @Nullable PerMessageDeflateExtension deflateExtension) {
         this.httpProtocol = httpProtocol;
         this.webSocketProtocol = webSocketProtocol;
         this.clientWorkerFactory = clientWorkerFactory;
+        this.deflateExtension = deflateExtension;
     }
 
     @Override
-    public ClientWorker<String, String> create(Comm comm, ClientInfo clientInfo, ClientController controller) {
-        return new WebSocketInitializer(WebSocketHandshakeParser.getInstance(), webSocketProtocol, controller, clientInfo, clientWorkerFactory, comm);
+    public ClientWorker<In, Out> create(Comm comm, ClientInfo clientInfo, ClientController controller) {
+        return new WebSocketInitializer<>(WebSocketHandshakeParser.getInstance(), webSocketProtocol, controller, clientInfo, clientWorkerFactory, comm, deflateExtension);
     }
 }
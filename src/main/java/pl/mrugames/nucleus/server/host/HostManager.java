@@ -1,9 +1,13 @@
 package pl.mrugames.nucleus.server.host;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Histogram;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pl.mrugames.nucleus.server.Metrics;
 import pl.mrugames.nucleus.server.client.Client;
 import pl.mrugames.nucleus.server.client.ClientFactory;
+import pl.mrugames.nucleus.server.client.Comm;
 import pl.mrugames.nucleus.server.client.ConnectionWatchdog;
 import pl.mrugames.nucleus.server.tasks.*;
 
@@ -11,11 +15,15 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.*;
 
+import static com.codahale.metrics.MetricRegistry.name;
+
 public class HostManager implements Runnable {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
@@ -27,39 +35,128 @@ public class HostManager implements Runnable {
     private final ExecutorService maintenanceExecutor;
     private final ConnectionWatchdog connectionWatchdog;
     private final TaskWatchdog taskWatchdog;
+    private final int ioThreads;
+    private final Histogram bytesPerRead;
+    private final Counter emptyReads;
+    private final Counter endOfStreamReads;
     final List<Host> hosts;
 
     volatile Selector selector;
+    volatile List<IOReactor> reactors = Collections.emptyList();
+    private volatile ExecutorService reactorExecutor;
     volatile boolean started = false;
     private volatile boolean stopped = false;
 
     public static HostManager create(int numThreads) {
-        ExecutorService executorService = Executors.newFixedThreadPool(numThreads);
-        CompletionService completionService = new ExecutorCompletionService(executorService);
-        TaskWatchdog taskWatchdog = new TaskWatchdog(completionService);
-        ConnectionWatchdog connectionWatchdog = new ConnectionWatchdog();
+        return create(numThreads, 1);
+    }
+
+    /**
+     * @param ioThreads amount of selector threads serving reads of accepted connections.
+     *                  Accepting is always done by the thread which runs the Host Manager.
+     */
+    public static HostManager create(int numThreads, int ioThreads) {
+        return create(Executors.newFixedThreadPool(numThreads), true, ioThreads);
+    }
 
-        return new HostManager(executorService, true, new TaskExecutor(completionService, taskWatchdog), connectionWatchdog, taskWatchdog);
+    public static HostManager createWithWorkStealing(int numThreads) {
+        return createWithWorkStealing(numThreads, 1);
+    }
+
+    /**
+     * Client tasks are run by a {@link ForkJoinPool} in async mode instead of a fixed thread pool. Tasks submitted
+     * by selector threads are spread over striped submission queues and idle workers steal them, so there is no
+     * single queue which all threads contend on. Tasks which a worker submits itself, e.g. requests decoded
+     * by {@link ClientRequestTask}, go to its own queue and usually run on the same thread, while the client's
+     * buffers are still in its cache.
+     * <p>
+     * Workers are not compensated when they block, blocking calls in
+     * {@link pl.mrugames.nucleus.server.client.ClientWorker} delay other clients' tasks as in a fixed pool.
+     *
+     * @param numThreads parallelism of the pool
+     * @param ioThreads  amount of selector threads serving reads of accepted connections.
+     */
+    public static HostManager createWithWorkStealing(int numThreads, int ioThreads) {
+        return create(newWorkStealingExecutor(numThreads), true, ioThreads);
+    }
+
+    public static HostManager createWithVirtualThreads() {
+        return createWithVirtualThreads(1);
+    }
+
+    /**
+     * Client tasks (accepting, requests and shutdowns) are run on virtual threads, one thread per task,
+     * so blocking calls in {@link pl.mrugames.nucleus.server.client.ClientWorker} do not exhaust the pool.
+     * Selector threads and watchdogs still run on platform threads. Requires Java 21 or newer.
+     *
+     * @param ioThreads amount of selector threads serving reads of accepted connections.
+     * @throws UnsupportedOperationException if the runtime does not support virtual threads
+     */
+    public static HostManager createWithVirtualThreads(int ioThreads) {
+        return create(newVirtualThreadPerTaskExecutor(), true, ioThreads);
     }
 
     /**
      * When you use this method, you have to manage executorService on your own (eg. start it and stop it)
      */
     public static HostManager create(ExecutorService executorService) {
-        CompletionService completionService = new ExecutorCompletionService(executorService);
+        return create(executorService, 1);
+    }
+
+    /**
+     * When you use this method, you have to manage executorService on your own (eg. start it and stop it)
+     *
+     * @param ioThreads amount of selector threads serving reads of accepted connections.
+     */
+    public static HostManager create(ExecutorService executorService, int ioThreads) {
+        return create(executorService, false, ioThreads);
+    }
+
+    private static HostManager create(ExecutorService executorService, boolean manageExecutorService, int ioThreads) {
+        CompletionService completionService = newCompletionService(executorService);
         TaskWatchdog taskWatchdog = new TaskWatchdog(completionService);
         ConnectionWatchdog connectionWatchdog = new ConnectionWatchdog();
 
-        return new HostManager(executorService, false, new TaskExecutor(completionService, taskWatchdog), connectionWatchdog, taskWatchdog);
+        return new HostManager(executorService, manageExecutorService, new TaskExecutor(completionService, taskWatchdog), connectionWatchdog, taskWatchdog, ioThreads);
+    }
+
+    /**
+     * Every finished task is queued for the {@link TaskWatchdog} by the worker which ran it. The queue is lock-free,
+     * so workers do not contend on a lock with each other and with the watchdog.
+     */
+    @SuppressWarnings("unchecked")
+    static CompletionService newCompletionService(ExecutorService executorService) {
+        return new ExecutorCompletionService(executorService, new LinkedTransferQueue<>());
+    }
+
+    static ExecutorService newWorkStealingExecutor(int parallelism) {
+        return new WorkStealingExecutor(parallelism);
+    }
+
+    /**
+     * The library is compiled for Java 9, so the executor is looked up reflectively.
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (NoSuchMethodException e) {
+            throw new UnsupportedOperationException("Virtual threads are not supported by Java " + System.getProperty("java.version"), e);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Failed to create virtual thread executor", e);
+        }
     }
 
     private HostManager(ExecutorService clientExecutor, boolean manageExecutorService, TaskExecutor taskExecutor,
-                        ConnectionWatchdog connectionWatchdog, TaskWatchdog taskWatchdog) {
-        this(clientExecutor, manageExecutorService, taskExecutor, Executors.newFixedThreadPool(2), connectionWatchdog, taskWatchdog);
+                        ConnectionWatchdog connectionWatchdog, TaskWatchdog taskWatchdog, int ioThreads) {
+        this(clientExecutor, manageExecutorService, taskExecutor, Executors.newFixedThreadPool(2), connectionWatchdog, taskWatchdog, ioThreads);
     }
 
     HostManager(ExecutorService clientExecutor, boolean manageExecutorService, TaskExecutor taskExecutor,
-                ExecutorService maintenanceExecutor, ConnectionWatchdog connectionWatchdog, TaskWatchdog taskWatchdog) {
+                ExecutorService maintenanceExecutor, ConnectionWatchdog connectionWatchdog, TaskWatchdog taskWatchdog, int ioThreads) {
+        if (ioThreads < 1) {
+            throw new IllegalArgumentException("At least one I/O thread is required, got: " + ioThreads);
+        }
+
         this.hosts = new CopyOnWriteArrayList<>();
         this.executorService = clientExecutor;
         this.manageExecutorService = manageExecutorService;
@@ -67,6 +164,11 @@ public class HostManager implements Runnable {
         this.maintenanceExecutor = maintenanceExecutor;
         this.connectionWatchdog = connectionWatchdog;
         this.taskWatchdog = taskWatchdog;
+        this.ioThreads = ioThreads;
+
+        bytesPerRead = Metrics.getRegistry().histogram(name(HostManager.class, "bytes_per_read"));
+        emptyReads = Metrics.getRegistry().counter(name(HostManager.class, "empty_reads"));
+        endOfStreamReads = Metrics.getRegistry().counter(name(HostManager.class, "end_of_stream_reads"));
     }
 
     public synchronized void newHost(String name, int port, ClientFactory clientFactory) {
@@ -95,6 +197,7 @@ public class HostManager implements Runnable {
 
             selector = Selector.open();
 
+            startReactors();
             startHosts();
 
             while (!Thread.currentThread().isInterrupted()) {
@@ -122,6 +225,18 @@ public class HostManager implements Runnable {
             try {
                 shutdown();
             } finally {
+                if (reactorExecutor != null) {
+                    reactorExecutor.shutdownNow();
+
+                    try {
+                        if (!reactorExecutor.awaitTermination(30, TimeUnit.SECONDS)) {
+                            logger.error("Reactor Executor did not terminate.");
+                        }
+                    } catch (InterruptedException e) {
+                        logger.error("Failed to wait for executor termination", e);
+                    }
+                }
+
                 maintenanceExecutor.shutdownNow();
 
                 try {
@@ -150,17 +265,11 @@ public class HostManager implements Runnable {
         }
     }
 
-    @SuppressWarnings("unchecked")
     private void progressKey(SelectionKey selectionKey) {
         try {
-            SelectableChannel channel = selectionKey.channel();
-
             if (selectionKey.isAcceptable()) {
                 Host host = (Host) selectionKey.attachment();
-                accept((ServerSocketChannel) channel, host);
-            } else if (selectionKey.isReadable()) {
-                Future<Client> client = (Future<Client>) selectionKey.attachment();
-                read(client, (SocketChannel) channel);
+                accept((ServerSocketChannel) selectionKey.channel(), host);
             }
         } catch (CancelledKeyException e) {
             logger.debug("Failed to progress key: {}", selectionKey, e);
@@ -169,14 +278,18 @@ public class HostManager implements Runnable {
         }
     }
 
+    /**
+     * @return false if the channel reached end of stream and should not be selected for reading anymore,
+     * or if the read buffer is full - the channel is selected again when a worker frees it, see {@link Comm#pauseReading()}
+     */
     @SuppressWarnings("unchecked")
-    void read(Future<Client> clientFuture, SocketChannel socketChannel) {
+    boolean read(Future<Client> clientFuture, SocketChannel socketChannel) {
         Client client;
 
         try {
             if (!clientFuture.isDone()) {
                 logger.debug("Client creation is in progress still...");
-                return;
+                return true;
             }
 
             client = clientFuture.get();
@@ -189,12 +302,54 @@ public class HostManager implements Runnable {
                 logger.error("Failed to close client's channel", e1);
             }
 
-            return;
+            return false;
         }
 
         client.getReadBufferLock().lock();
         try {
-            readToBuffer(client.getReadBuffer(), client.getChannel());
+            if (client.getShutdown().get()) {
+                // read buffer could be returned to the pool already
+                return false;
+            }
+
+            boolean append = client.getComm().isReadBufferInUse();
+            int bytes = append
+                    ? appendToBuffer(client.getReadBuffer(), client.getChannel())
+                    : readToBuffer(client.getReadBuffer(), client.getChannel());
+
+            if (bytes < 0) {
+                logger.debug("[{}] Client has closed the connection", client.getName());
+                endOfStreamReads.inc();
+
+                // request tasks still decoding the last reads shut the client down when they finish
+                if (client.endOfStream()) {
+                    client.getTaskExecutor().submit(new ClientShutdownTask(client), client.getRequestTimeoutSeconds());
+                }
+
+                return false;
+            }
+
+            bytesPerRead.update(bytes);
+            client.adjustReadBuffer();
+
+            if (bytes == 0) {
+                emptyReads.inc();
+
+                ByteBuffer readBuffer = client.getReadBuffer();
+                if (readBuffer.limit() < readBuffer.capacity()) {
+                    return true;
+                }
+
+                client.getComm().pauseReading();
+
+                // the last frame could be processed before the pause was set, the next read compacts the buffer already
+                if (append && !client.getComm().isReadBufferInUse()) {
+                    client.getComm().tryResumeReading();
+                    return true;
+                }
+
+                return false;
+            }
 
             ClientRequestTask clientRequestTask = new ClientRequestTask(client);
 
@@ -207,6 +362,8 @@ public class HostManager implements Runnable {
         } finally {
             client.getReadBufferLock().unlock();
         }
+
+        return true;
     }
 
     @SuppressWarnings("unchecked")
@@ -217,10 +374,12 @@ public class HostManager implements Runnable {
 
             configure(socketChannel);
 
-            NewClientAcceptTask acceptTask = new NewClientAcceptTask(host.getName(), host.getClientFactory(), socketChannel, taskExecutor, connectionWatchdog);
+            IOReactor reactor = leastLoadedReactor();
+
+            NewClientAcceptTask acceptTask = new NewClientAcceptTask(host.getName(), host.getClientFactory(), socketChannel, taskExecutor, connectionWatchdog, reactor);
             Future<Client> result = taskExecutor.submit(acceptTask, host.getClientFactory().getRequestTimeoutSeconds());
 
-            register(socketChannel, result);
+            register(reactor, socketChannel, result);
         } catch (Exception e) {
             if (socketChannel != null) {
                 try {
@@ -233,6 +392,20 @@ public class HostManager implements Runnable {
         }
     }
 
+    void startReactors() throws IOException {
+        logger.info("Starting {} I/O reactors", ioThreads);
+
+        List<IOReactor> reactors = new ArrayList<>(ioThreads);
+        for (int i = 0; i < ioThreads; ++i) {
+            reactors.add(new IOReactor("io-reactor-" + i, Selector.open(), this::read));
+        }
+
+        this.reactors = Collections.unmodifiableList(reactors);
+
+        reactorExecutor = Executors.newFixedThreadPool(ioThreads);
+        reactors.forEach(reactorExecutor::execute);
+    }
+
     void startHosts() {
         logger.info("Starting hosts");
 
@@ -289,6 +462,8 @@ public class HostManager implements Runnable {
             } catch (Exception e) {
                 logger.error("Failed to close selector", e);
             }
+
+            reactors.forEach(IOReactor::shutdown);
         }
 
         logger.info("Host Manager has been stopped");
@@ -314,15 +489,57 @@ public class HostManager implements Runnable {
     }
 
     /**
-     * This method is executed in host manager's thread to prevent from spawning multiple tasks (selector returns this key as long as the data is available)
+     * This method is executed in reactor's thread to prevent from spawning multiple tasks (selector returns this key as long as the data is available).
+     * The channel is drained until it has no more data or the buffer is full, so one task decodes the whole burst.
+     *
+     * @return amount of bytes read, or -1 if the channel reached end of stream and nothing was read
      */
-    void readToBuffer(ByteBuffer readBuffer, SocketChannel socketChannel) throws IOException {
+    int readToBuffer(ByteBuffer readBuffer, SocketChannel socketChannel) throws IOException {
         readBuffer.compact();
+        return drain(readBuffer, socketChannel, 0);
+    }
+
+    /**
+     * Reads behind the unread data without compacting the buffer, since workers hold views of it.
+     * Nothing is read if there is no space behind the data, the buffer will be compacted when the workers return.
+     *
+     * @return amount of bytes read, or -1 if the channel reached end of stream and nothing was read
+     */
+    int appendToBuffer(ByteBuffer readBuffer, SocketChannel socketChannel) throws IOException {
+        int start = readBuffer.position();
+
+        readBuffer.position(readBuffer.limit());
+        readBuffer.limit(readBuffer.capacity());
+
+        return drain(readBuffer, socketChannel, start);
+    }
+
+    /**
+     * @param start position of unread data, restored when the buffer is prepared for reading
+     */
+    private int drain(ByteBuffer readBuffer, SocketChannel socketChannel, int start) throws IOException {
+        int total = 0;
+
         try {
-            socketChannel.read(readBuffer);
+            while (readBuffer.hasRemaining()) {
+                int read = socketChannel.read(readBuffer);
+
+                if (read < 0) {
+                    return total > 0 ? total : -1;
+                }
+
+                if (read == 0) {
+                    break;
+                }
+
+                total += read;
+            }
         } finally {
-            readBuffer.flip();
+            readBuffer.limit(readBuffer.position());
+            readBuffer.position(start);
         }
+
+        return total;
     }
 
     /**
@@ -335,8 +552,24 @@ public class HostManager implements Runnable {
     /**
      * Mocking purposes
      */
-    void register(SocketChannel socketChannel, Future<Client> clientFuture) throws ClosedChannelException {
-        socketChannel.register(selector, SelectionKey.OP_READ, clientFuture);
+    void register(IOReactor reactor, SocketChannel socketChannel, Future<Client> clientFuture) {
+        reactor.register(socketChannel, clientFuture);
+    }
+
+    IOReactor leastLoadedReactor() {
+        IOReactor result = null;
+
+        for (IOReactor reactor : reactors) {
+            if (result == null || reactor.getLoad() < result.getLoad()) {
+                result = reactor;
+            }
+        }
+
+        if (result == null) {
+            throw new IllegalStateException("No I/O reactor is running");
+        }
+
+        return result;
     }
 
     /**
@@ -353,4 +586,29 @@ public class HostManager implements Runnable {
     public boolean awaitStart(long timeout, TimeUnit timeUnit) throws InterruptedException {
         return startSignal.await(timeout, timeUnit);
     }
+
+    /**
+     * Tasks of the completion service are created by {@link #newTaskFor}. Tasks of {@link ForkJoinPool} ignore
+     * interrupts on cancellation up to Java 18, so {@link FutureTask}s are used instead, which {@link TaskWatchdog}
+     * can interrupt when they time out.
+     */
+    private static class WorkStealingExecutor extends ForkJoinPool {
+        private WorkStealingExecutor(int parallelism) {
+            super(parallelism, pool -> {
+                ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                thread.setName("nucleus-worker-" + thread.getPoolIndex());
+                return thread;
+            }, null, true);
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+            return new FutureTask<>(callable);
+        }
+
+        @Override
+        protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+            return new FutureTask<>(runnable, value);
+        }
+    }
 }
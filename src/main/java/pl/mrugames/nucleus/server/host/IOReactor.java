@@ -0,0 +1,275 @@
+package pl.mrugames.nucleus.server.host;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.mrugames.nucleus.server.Metrics;
+import pl.mrugames.nucleus.server.client.Client;
+import pl.mrugames.nucleus.server.client.Comm;
+import pl.mrugames.nucleus.server.client.WriteScheduler;
+
+import java.io.IOException;
+import java.nio.channels.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiPredicate;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Selector loop serving reads and writes of the client channels assigned to it by {@link HostManager}.
+ * Channels are registered and written on the reactor's own thread, other threads only enqueue tasks and wake the selector up.
+ */
+class IOReactor implements Runnable, WriteScheduler {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final String name;
+    private final Selector selector;
+    private final BiPredicate<Future<Client>, SocketChannel> reader;
+    private final Queue<Runnable> pendingTasks;
+    private final AtomicInteger pendingRegistrations;
+    private final Map<SelectableChannel, Comm> pendingWrites;
+    private final CountDownLatch startSignal = new CountDownLatch(1);
+
+    private final Meter selectedKeys;
+
+    private volatile int connections;
+
+    IOReactor(String name, Selector selector, BiPredicate<Future<Client>, SocketChannel> reader) {
+        this.name = name;
+        this.selector = selector;
+        this.reader = reader;
+        this.pendingTasks = new ConcurrentLinkedQueue<>();
+        this.pendingRegistrations = new AtomicInteger();
+        this.pendingWrites = new HashMap<>();
+
+        Metrics.getRegistry().register(name(IOReactor.class, name, "connections"), (Gauge<Integer>) () -> connections);
+        Metrics.getRegistry().register(name(IOReactor.class, name, "pending_registrations"), (Gauge<Integer>) pendingRegistrations::get);
+        Metrics.getRegistry().register(name(IOReactor.class, name, "pending_writes"), (Gauge<Integer>) pendingWrites::size);
+        selectedKeys = Metrics.getRegistry().meter(name(IOReactor.class, name, "selected_keys"));
+    }
+
+    @Override
+    public void run() {
+        startSignal.countDown();
+        logger.info("[{}] Reactor has been started in thread: {}", name, Thread.currentThread().getName());
+
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                int selected = selector.select();
+
+                runPendingTasks();
+                removeClosedWriters();
+                connections = selector.keys().size();
+
+                if (selected <= 0) {
+                    continue;
+                }
+
+                selectedKeys.mark(selected);
+
+                Set<SelectionKey> keys = selector.selectedKeys();
+                keys.forEach(this::progressKey);
+                keys.clear();
+            } catch (ClosedSelectorException e) {
+                logger.debug("[{}] {}", name, e.getMessage(), e);
+                break;
+            } catch (Exception e) {
+                logger.error("[{}] {}", name, e.getMessage(), e);
+                break;
+            }
+        }
+
+        logger.info("[{}] Reactor has been stopped", name);
+    }
+
+    /**
+     * Thread safe, the channel is registered by the reactor's thread during its next cycle.
+     */
+    void register(SocketChannel socketChannel, Future<Client> clientFuture) {
+        pendingRegistrations.incrementAndGet();
+
+        execute(() -> {
+            pendingRegistrations.decrementAndGet();
+
+            try {
+                int ops = pendingWrites.containsKey(socketChannel) ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+                socketChannel.register(selector, ops, clientFuture);
+            } catch (Exception e) {
+                logger.error("[{}] Failed to register channel: {}", name, socketChannel, e);
+
+                try {
+                    socketChannel.close();
+                } catch (IOException e1) {
+                    logger.error("[{}] Failed to close channel", name, e1);
+                }
+            }
+        });
+    }
+
+    /**
+     * Thread safe, the frames are written by the reactor's thread during its next cycle.
+     */
+    @Override
+    public void scheduleWrite(Comm comm) {
+        execute(() -> write(comm));
+    }
+
+    /**
+     * Thread safe, the channel is selected for reading again by the reactor's thread during its next cycle.
+     */
+    @Override
+    public void scheduleRead(Comm comm) {
+        execute(() -> enableRead(comm.getSocketChannel()));
+    }
+
+    void enableRead(SocketChannel channel) {
+        SelectionKey key = channel.keyFor(selector);
+
+        try {
+            if (key != null && key.isValid()) {
+                key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+            }
+        } catch (CancelledKeyException e) {
+            logger.debug("[{}] Channel has been closed: {}", name, channel, e);
+        }
+    }
+
+    /**
+     * Flushes the client's queue. If the socket is full, OP_WRITE is enabled until the queue is drained.
+     * The channel could be not registered yet - in such case OP_WRITE is enabled during the registration.
+     */
+    void write(Comm comm) {
+        SocketChannel channel = comm.getSocketChannel();
+        SelectionKey key = channel.keyFor(selector);
+
+        try {
+            if (comm.flush()) {
+                pendingWrites.remove(channel);
+
+                if (key != null && key.isValid() && (key.interestOps() & SelectionKey.OP_WRITE) != 0) {
+                    key.interestOps(key.interestOps() & ~SelectionKey.OP_WRITE);
+                }
+            } else {
+                pendingWrites.put(channel, comm);
+
+                if (key != null && key.isValid()) {
+                    key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+                }
+            }
+        } catch (IOException e) {
+            logger.debug("[{}] Failed to write to channel: {}", name, channel, e);
+            pendingWrites.remove(channel);
+        } catch (CancelledKeyException e) {
+            logger.debug("[{}] Channel has been closed: {}", name, channel, e);
+            pendingWrites.remove(channel);
+        }
+    }
+
+    void execute(Runnable task) {
+        pendingTasks.add(task);
+        selector.wakeup();
+    }
+
+    /**
+     * Amount of connections served by this reactor, including the ones awaiting registration.
+     */
+    int getLoad() {
+        return connections + pendingRegistrations.get();
+    }
+
+    String getName() {
+        return name;
+    }
+
+    Selector getSelector() {
+        return selector;
+    }
+
+    boolean awaitStart(long timeout, TimeUnit timeUnit) throws InterruptedException {
+        return startSignal.await(timeout, timeUnit);
+    }
+
+    /**
+     * Closes every channel registered in this reactor and its selector. Running loop is finished as a consequence.
+     */
+    void shutdown() {
+        logger.info("[{}] Reactor is stopping", name);
+
+        try {
+            List<SelectableChannel> channelsToClose = new LinkedList<>();
+            for (SelectionKey key : selector.keys()) {
+                channelsToClose.add(key.channel());
+            }
+
+            for (SelectableChannel channel : channelsToClose) {
+                try {
+                    channel.close();
+                } catch (Exception e) {
+                    logger.info("[{}] Failed to close connection: {}", name, channel);
+                }
+            }
+        } catch (ClosedSelectorException e) {
+            logger.warn("[{}] Selector is closed already", name, e);
+        } catch (Exception e) {
+            logger.error("[{}] Error during shutdown", name, e);
+        } finally {
+            try {
+                selector.close();
+            } catch (Exception e) {
+                logger.error("[{}] Failed to close selector", name, e);
+            }
+        }
+    }
+
+    void runPendingTasks() {
+        Runnable task;
+        while ((task = pendingTasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (Exception e) {
+                logger.error("[{}] Failed to run pending task", name, e);
+            }
+        }
+    }
+
+    private void removeClosedWriters() {
+        if (!pendingWrites.isEmpty()) {
+            pendingWrites.keySet().removeIf(channel -> !channel.isOpen());
+        }
+    }
+
+    Map<SelectableChannel, Comm> getPendingWrites() {
+        return pendingWrites;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void progressKey(SelectionKey selectionKey) {
+        try {
+            if (selectionKey.isWritable()) {
+                Comm comm = pendingWrites.get(selectionKey.channel());
+                if (comm != null) {
+                    write(comm);
+                } else {
+                    selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_WRITE);
+                }
+            }
+
+            if (selectionKey.isValid() && selectionKey.isReadable()) {
+                Future<Client> client = (Future<Client>) selectionKey.attachment();
+                if (!reader.test(client, (SocketChannel) selectionKey.channel()) && selectionKey.isValid()) {
+                    selectionKey.interestOps(selectionKey.interestOps() & ~SelectionKey.OP_READ);
+                }
+            }
+        } catch (CancelledKeyException e) {
+            logger.debug("[{}] Failed to progress key: {}", name, selectionKey, e);
+        } catch (Exception e) {
+            logger.error("[{}] Failed to progress key: {}", name, selectionKey, e);
+        }
+    }
+}
@@ -3,23 +3,62 @@ package pl.mrugames.nucleus.server.tasks;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pl.mrugames.nucleus.server.client.Client;
+import pl.mrugames.nucleus.server.client.RequestExecutionMode;
 
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class ClientRequestTask implements Callable<Void> {
+public class ClientRequestTask implements Callable<Void>, DiscardableTask {
     private final static Logger logger = LoggerFactory.getLogger(ClientRequestTask.class);
 
     private final Client client;
+    private final AtomicBoolean started = new AtomicBoolean();
 
     public ClientRequestTask(Client client) {
         this.client = client;
+
+        client.requestTaskCreated();
     }
 
     @Override
-    @SuppressWarnings("unchecked")
     public Void call() throws Exception {
+        if (!started.compareAndSet(false, true)) {
+            return null; // discarded
+        }
+
+        try {
+            return process();
+        } finally {
+            requestTaskFinished(client);
+        }
+    }
+
+    /**
+     * Data of the read which submitted the task stays in the read buffer and is decoded by the next task.
+     */
+    @Override
+    public void discard() {
+        if (started.compareAndSet(false, true)) {
+            requestTaskFinished(client);
+        }
+    }
+
+    /**
+     * Shuts the client down if it has closed its side of the connection and this was its last request task.
+     */
+    static void requestTaskFinished(Client client) {
+        if (client.requestTaskFinished()) {
+            client.getTaskExecutor().submit(new ClientShutdownTask(client), client.getRequestTimeoutSeconds());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Void process() throws Exception {
+        if (client.getRequestExecutionMode() == RequestExecutionMode.SERIAL) {
+            return callSerially();
+        }
 
         RequestExecuteTask task;
         try {
@@ -39,6 +78,63 @@ public class ClientRequestTask implements Callable<Void> {
         return null;
     }
 
+    private Void callSerially() throws Exception {
+        try {
+            enqueueRequests();
+        } catch (Exception e) {
+            logger.error("[{}] Failed to process request", client.getName(), e);
+
+            client.getTaskExecutor().submit(new ClientShutdownTask(client), client.getRequestTimeoutSeconds());
+            throw e;
+        }
+
+        drainMailbox();
+
+        return null;
+    }
+
+    /**
+     * Decoding and enqueueing is done under the read lock, so frames decoded by concurrent tasks land in the mailbox in arrival order.
+     */
+    void enqueueRequests() throws Exception {
+        client.getReadBufferLock().lock();
+        try {
+            Object request;
+            while (client.getComm().canRead()) {
+                request = client.getComm().receive();
+                if (request != null) {
+                    client.addToMailbox(request);
+                }
+            }
+        } finally {
+            client.getReadBufferLock().unlock();
+        }
+    }
+
+    /**
+     * If another task owns the mailbox already, it will process the frames added by this one.
+     * Only the frames present on acquire are processed, so a busy client does not hold a pool thread under a single timeout.
+     * Frames added meanwhile are left to a new task, submitted after the release.
+     */
+    void drainMailbox() throws Exception {
+        if (!client.tryAcquireMailbox()) {
+            return;
+        }
+
+        try {
+            Object request;
+            for (int batch = client.getMailboxSize(); batch > 0 && (request = client.pollMailbox()) != null; --batch) {
+                executeLastTask(new RequestExecuteTask(client, request));
+            }
+        } finally {
+            client.releaseMailbox();
+        }
+
+        if (client.getMailboxSize() > 0) {
+            client.getTaskExecutor().submit(new ClientRequestTask(client), client.getRequestTimeoutSeconds());
+        }
+    }
+
     RequestExecuteTask executeTask() throws Exception {
         List<Object> requests = new LinkedList<>();
 
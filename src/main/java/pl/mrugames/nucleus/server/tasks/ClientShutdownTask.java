@@ -29,12 +29,50 @@ public class ClientShutdownTask implements Callable<Void> {
                 client.getComm().send(result);
             }
         } finally {
+            client.leaveBroadcastGroups();
+
+            flush();
             closeChannel();
+            releaseBuffers();
         }
 
         return null;
     }
 
+    /**
+     * Writes what the socket accepts without waiting, frames which do not fit are dropped with the connection.
+     */
+    void flush() {
+        try {
+            if (!client.getComm().flush()) {
+                logger.warn("[{}] Not all queued frames were sent before closing the channel", client.getName());
+            }
+        } catch (Exception e) {
+            logger.debug("[{}] Failed to flush queued frames", client.getName(), e);
+        }
+    }
+
+    /**
+     * Returns client buffers to the pool. Both locks are taken, so buffers are not released while a codec is using them.
+     * The read buffer is left to GC while workers still process zero copy frames, which are views of it.
+     */
+    void releaseBuffers() {
+        client.getReadBufferLock().lock();
+        client.getWriteBufferLock().lock();
+        try {
+            client.getComm().close();
+
+            if (!client.getComm().isReadBufferInUse()) {
+                client.getBufferPool().release(client.getReadBuffer());
+            }
+
+            client.getBufferPool().release(client.getWriteBuffer());
+        } finally {
+            client.getWriteBufferLock().unlock();
+            client.getReadBufferLock().unlock();
+        }
+    }
+
     /**
      * Mocking purposes
      */
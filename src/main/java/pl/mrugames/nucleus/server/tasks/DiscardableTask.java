@@ -0,0 +1,12 @@
+package pl.mrugames.nucleus.server.tasks;
+
+/**
+ * Task which holds resources handed over by the code which submitted it, e.g. a frame which is a view of the read buffer.
+ * {@link TaskExecutor} discards it when it is cancelled or rejected before it runs, so the resources are not leaked.
+ */
+interface DiscardableTask {
+    /**
+     * Frees resources of the task. Does nothing if the task has started already, it frees them itself then.
+     */
+    void discard();
+}
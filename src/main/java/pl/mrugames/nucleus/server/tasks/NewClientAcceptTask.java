@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 import pl.mrugames.nucleus.server.client.Client;
 import pl.mrugames.nucleus.server.client.ClientFactory;
 import pl.mrugames.nucleus.server.client.ConnectionWatchdog;
+import pl.mrugames.nucleus.server.client.WriteScheduler;
 
 import java.io.IOException;
 import java.nio.channels.SocketChannel;
@@ -18,17 +19,20 @@ public class NewClientAcceptTask<In, Out> implements Callable<Client<In, Out>> {
     private final SocketChannel clientChannel;
     private final TaskExecutor taskExecutor;
     private final ConnectionWatchdog watchdog;
+    private final WriteScheduler writeScheduler;
 
     public NewClientAcceptTask(String hostName,
                                ClientFactory<In, Out> clientFactory,
                                SocketChannel clientChannel,
                                TaskExecutor taskExecutor,
-                               ConnectionWatchdog watchdog) {
+                               ConnectionWatchdog watchdog,
+                               WriteScheduler writeScheduler) {
         this.hostName = hostName;
         this.clientFactory = clientFactory;
         this.clientChannel = clientChannel;
         this.taskExecutor = taskExecutor;
         this.watchdog = watchdog;
+        this.writeScheduler = writeScheduler;
     }
 
     @Override
@@ -40,7 +44,7 @@ public class NewClientAcceptTask<In, Out> implements Callable<Client<In, Out>> {
         try {
             logger.info("[{}] New client has been accepted: {}/{}", hostName, clientChannel.getLocalAddress(), clientChannel.getRemoteAddress());
 
-            client = clientFactory.create(clientChannel, taskExecutor, watchdog);
+            client = clientFactory.create(clientChannel, taskExecutor, watchdog, writeScheduler);
 
             Out onInitResult = client.getClientWorker().onInit();
             if (onInitResult != null) {
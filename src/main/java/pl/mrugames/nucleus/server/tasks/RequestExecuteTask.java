@@ -5,19 +5,31 @@ import pl.mrugames.nucleus.server.client.ProtocolSwitch;
 import pl.mrugames.nucleus.server.client.SwitchProtocolStrategy;
 
 import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class RequestExecuteTask implements Callable<Void> {
+public class RequestExecuteTask implements Callable<Void>, DiscardableTask {
     private final Client client;
     private final Object frame;
+    private final AtomicBoolean started = new AtomicBoolean();
 
     public RequestExecuteTask(Client client, Object frame) {
         this.client = client;
         this.frame = frame;
+
+        client.requestTaskCreated();
     }
 
     @Override
     @SuppressWarnings("unchecked")
     public Void call() throws Exception {
+        if (!started.compareAndSet(false, true)) {
+            return null; // discarded
+        }
+
+        boolean coalescing = client.getComm().isCoalescingWrites();
+        if (coalescing) {
+            client.getComm().cork();
+        }
 
         try {
             Object response = client.getClientWorker().onRequest(frame);
@@ -39,11 +51,29 @@ public class RequestExecuteTask implements Callable<Void> {
         } catch (Exception e) {
             client.getTaskExecutor().submit(new ClientShutdownTask(client), client.getRequestTimeoutSeconds());
             throw e;
+        } finally {
+            if (coalescing) {
+                client.getComm().uncork();
+            }
+
+            client.getComm().frameProcessed();
+            ClientRequestTask.requestTaskFinished(client);
         }
 
         return null;
     }
 
+    /**
+     * The frame may be a view of the read buffer, it is marked as processed, so the buffer can be compacted again.
+     */
+    @Override
+    public void discard() {
+        if (started.compareAndSet(false, true)) {
+            client.getComm().frameProcessed();
+            ClientRequestTask.requestTaskFinished(client);
+        }
+    }
+
     Object getFrame() {
         return frame;
     }
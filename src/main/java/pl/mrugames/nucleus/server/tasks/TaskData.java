@@ -1,17 +1,26 @@
 package pl.mrugames.nucleus.server.tasks;
 
+import javax.annotation.Nullable;
 import java.time.Instant;
 import java.util.concurrent.Future;
 
 public class TaskData {
     private final Future result;
     private final Instant submitted;
-    private final long timeoutSeconds;
+    private final long timeoutMillis;
+    private final DiscardableTask discardable;
 
-    public TaskData(Future result, Instant submitted, long timeoutSeconds) {
+    private volatile TimingWheel.Timeout<TaskData> timeout;
+
+    public TaskData(Future result, Instant submitted, long timeoutMillis) {
+        this(result, submitted, timeoutMillis, null);
+    }
+
+    TaskData(Future result, Instant submitted, long timeoutMillis, @Nullable DiscardableTask discardable) {
         this.result = result;
         this.submitted = submitted;
-        this.timeoutSeconds = timeoutSeconds;
+        this.timeoutMillis = timeoutMillis;
+        this.discardable = discardable;
     }
 
     public Future getResult() {
@@ -22,8 +31,21 @@ public class TaskData {
         return submitted;
     }
 
-    public long getTimeoutSeconds() {
-        return timeoutSeconds;
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    @Nullable
+    DiscardableTask getDiscardable() {
+        return discardable;
+    }
+
+    TimingWheel.Timeout<TaskData> getTimeout() {
+        return timeout;
+    }
+
+    void setTimeout(TimingWheel.Timeout<TaskData> timeout) {
+        this.timeout = timeout;
     }
 
     @Override
@@ -31,7 +53,7 @@ public class TaskData {
         return "TaskData{" +
                 "result=" + result +
                 ", submitted=" + submitted +
-                ", timeoutSeconds=" + timeoutSeconds +
+                ", timeoutMillis=" + timeoutMillis +
                 '}';
     }
 }
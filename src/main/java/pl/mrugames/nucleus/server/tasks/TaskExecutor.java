@@ -3,6 +3,8 @@ package pl.mrugames.nucleus.server.tasks;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 public class TaskExecutor {
     private final CompletionService executor;
@@ -13,11 +15,26 @@ public class TaskExecutor {
         this.taskWatchdog = taskWatchdog;
     }
 
-    @SuppressWarnings("unchecked")
     public <T> Future<T> submit(Callable<T> task, long timeoutSeconds) {
-        Future future = executor.submit(task);
+        return submit(task, timeoutSeconds, TimeUnit.SECONDS);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Future<T> submit(Callable<T> task, long timeout, TimeUnit unit) {
+        DiscardableTask discardable = task instanceof DiscardableTask ? (DiscardableTask) task : null;
+
+        Future future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            if (discardable != null) {
+                discardable.discard();
+            }
+
+            throw e;
+        }
 
-        taskWatchdog.submit(future, timeoutSeconds);
+        taskWatchdog.submit(future, timeout, unit, discardable);
 
         return future;
     }
@@ -9,17 +9,25 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import pl.mrugames.nucleus.server.Metrics;
 
+import javax.annotation.Nullable;
 import java.time.Instant;
-import java.util.List;
+import java.util.Map;
 import java.util.concurrent.*;
-import java.util.stream.Collectors;
 
 import static com.codahale.metrics.MetricRegistry.name;
 
+/**
+ * Cancels tasks which exceed their timeout. Deadlines are tracked in a {@link TimingWheel},
+ * finished tasks are taken from the completion service, so no cycle scans all pending tasks.
+ */
 public class TaskWatchdog implements Runnable {
+    static final long TICK_MILLIS = 10;
+    static final int TICKS_PER_WHEEL = 512;
+
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
-    final List<TaskData> tasks;
+    final Map<Future<?>, TaskData> tasks;
+    final TimingWheel<TaskData> timingWheel;
     private final CompletionService completionService;
     private final CountDownLatch startSignal = new CountDownLatch(1);
     private final CountDownLatch stopSignal = new CountDownLatch(1);
@@ -35,7 +43,12 @@ public class TaskWatchdog implements Runnable {
     private volatile Instant lastCycle;
 
     public TaskWatchdog(CompletionService completionService) {
-        this.tasks = new CopyOnWriteArrayList<>();
+        this(completionService, TICK_MILLIS, TICKS_PER_WHEEL);
+    }
+
+    TaskWatchdog(CompletionService completionService, long tickMillis, int ticksPerWheel) {
+        this.tasks = new ConcurrentHashMap<>();
+        this.timingWheel = new TimingWheel<>(tickMillis, TimeUnit.MILLISECONDS, ticksPerWheel);
         this.completionService = completionService;
 
         Metrics.getRegistry().register(name(TaskWatchdog.class, "pending_tasks"), (Gauge<Integer>) tasks::size);
@@ -58,37 +71,29 @@ public class TaskWatchdog implements Runnable {
         });
     }
 
-    synchronized void submit(Future<?> request, long timeoutSeconds) {
-        tasks.add(new TaskData(request, Instant.now(), timeoutSeconds));
-        taskCount.release();
-        tasksSubmitted.inc();
+    void submit(Future<?> request, long timeoutSeconds) {
+        submit(request, timeoutSeconds, TimeUnit.SECONDS);
     }
 
-    long getNextPossibleTimeout() {
-        Instant now = Instant.now();
-
-        return tasks.stream()
-                .mapToLong(task -> getSecondsToTimeout(task.getSubmitted(), now, task.getTimeoutSeconds()))
-                .min()
-                .orElse(0);
+    void submit(Future<?> request, long timeout, TimeUnit unit) {
+        submit(request, timeout, unit, null);
     }
 
-    List<TaskData> getTimedOutList(Instant now) {
-        return tasks.stream()
-                .filter(task -> isTimeout(task.getSubmitted(), now, task.getTimeoutSeconds()))
-                .collect(Collectors.toList());
-    }
+    /**
+     * @param discardable discarded if the task is cancelled by timeout, null if the task holds nothing to free
+     */
+    void submit(Future<?> request, long timeout, TimeUnit unit, @Nullable DiscardableTask discardable) {
+        TaskData taskData = new TaskData(request, Instant.now(), unit.toMillis(timeout), discardable);
 
-    long getSecondsToTimeout(Instant submitted, Instant now, long timeoutSeconds) {
-        long secondsPassed = (now.toEpochMilli() - submitted.toEpochMilli()) / 1000;
-
-        long secondsLeft = timeoutSeconds - secondsPassed;
+        tasks.put(request, taskData);
+        taskCount.release();
+        tasksSubmitted.inc();
 
-        return secondsLeft > 0 ? secondsLeft : 0;
-    }
+        taskData.setTimeout(timingWheel.schedule(taskData, timeout, unit));
 
-    boolean isTimeout(Instant submitted, Instant now, long timeoutSeconds) {
-        return getSecondsToTimeout(submitted, now, timeoutSeconds) <= 0;
+        if (request.isDone()) {
+            removeDone(request); // it could be taken from the completion service before it was added to the watchdog
+        }
     }
 
     @Override
@@ -118,71 +123,77 @@ public class TaskWatchdog implements Runnable {
         stopSignal.countDown();
     }
 
+    /**
+     * Waits up to one tick of the wheel for finished tasks, then expires the tasks which passed their deadline.
+     */
+    @SuppressWarnings("unchecked")
     void cycle() throws InterruptedException {
         lastCycle = Instant.now();
         cleanUpCycles.mark();
 
-        long seconds = getNextPossibleTimeout();
+        Future<?> done = completionService.poll(timingWheel.getTick(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+        while (done != null) {
+            removeDone(done);
+            done = completionService.poll();
+        }
 
-        logger.debug("Next possible timeout in: {} seconds", seconds);
+        timingWheel.expire(System.nanoTime(), this::removeTimedOut);
+    }
 
-        if (seconds > 0) {
-            if (completionService.poll(seconds, TimeUnit.SECONDS) != null) {
-                logger.debug("Task has been finished before timeout, running checks");
-            }
+    void removeDone(Future<?> result) {
+        TaskData task = tasks.remove(result);
+        if (task == null) {
+            return; // timed out or finished already
         }
 
-        Instant now = Instant.now();
-        removeTimedOut(now);
-        removeDone();
-    }
+        taskCount.acquireUninterruptibly();
 
-    synchronized void removeDone() throws InterruptedException {
-        List<TaskData> completed = tasks.stream()
-                .filter(task -> task.getResult().isDone())
-                .collect(Collectors.toList());
+        TimingWheel.Timeout<TaskData> timeout = task.getTimeout();
+        if (timeout != null) {
+            timeout.cancel();
+        }
 
-        for (TaskData task : completed) {
-            try {
-                task.getResult().get();
-                finishedTasks.inc();
-                updateDuration(task);
-            } catch (Exception e) {
-                logger.error("Task finished with exception: {}", task, e);
-                failedTasks.inc();
-            } finally {
-                removeTask(task);
-            }
+        try {
+            result.get();
+            finishedTasks.inc();
+            updateDuration(task);
+        } catch (Exception e) {
+            logger.error("Task finished with exception: {}", task, e);
+            failedTasks.inc();
         }
     }
 
-    synchronized void removeTimedOut(Instant now) throws InterruptedException {
-        List<TaskData> timedOutList = getTimedOutList(now);
-
-        for (TaskData taskData : timedOutList) {
-            removeTask(taskData);
+    void removeTimedOut(TaskData taskData) {
+        if (!tasks.remove(taskData.getResult(), taskData)) {
+            return; // finished already
+        }
 
-            logger.error("Task timed out {}", taskData);
+        taskCount.acquireUninterruptibly();
 
-            boolean result = taskData.getResult().cancel(true);
-            if (!result) {
-                if (taskData.getResult().isDone()) {
-                    try {
-                        taskData.getResult().get();
-                        finishedTasks.inc();
-                        updateDuration(taskData);
-                    } catch (Exception e) {
-                        logger.error("Task completed with error: ", e);
-                        failedTasks.inc();
-                    }
+        logger.error("Task timed out {}", taskData);
 
-                } else {
-                    logger.error("Failed to shutdown task: {}", taskData);
+        boolean result = taskData.getResult().cancel(true);
+        if (!result) {
+            if (taskData.getResult().isDone()) {
+                try {
+                    taskData.getResult().get();
+                    finishedTasks.inc();
+                    updateDuration(taskData);
+                } catch (Exception e) {
+                    logger.error("Task completed with error: ", e);
+                    failedTasks.inc();
                 }
+
             } else {
-                timedOutTasks.inc();
+                logger.error("Failed to shutdown task: {}", taskData);
             }
+        } else {
+            timedOutTasks.inc();
 
+            // a task cancelled before it started never frees its resources itself
+            if (taskData.getDiscardable() != null) {
+                taskData.getDiscardable().discard();
+            }
         }
     }
 
@@ -193,11 +204,6 @@ public class TaskWatchdog implements Runnable {
         taskDurations.update(duration);
     }
 
-    void removeTask(TaskData taskData) throws InterruptedException {
-        tasks.remove(taskData);
-        taskCount.acquire();
-    }
-
     void awaitStart() throws InterruptedException {
         startSignal.await();
     }
@@ -0,0 +1,275 @@
+package pl.mrugames.nucleus.server.tasks;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel: scheduling and cancelling a timeout are O(1), expiring costs O(1) per tick plus the amount of expired items.
+ * Timeouts never expire before their deadline and expire at most one tick after it.
+ * <p>
+ * {@link #schedule(Object, long, TimeUnit)} and {@link Timeout#cancel()} are thread safe, they only enqueue the change.
+ * {@link #expire(long, Consumer)} must be called by a single thread (the owner of the wheel) which applies the changes.
+ */
+public class TimingWheel<T> {
+    private final static Logger logger = LoggerFactory.getLogger(TimingWheel.class);
+
+    private final long tickNanos;
+    private final int mask;
+    private final Bucket<T>[] buckets;
+    private final Queue<Timeout<T>> scheduled;
+    private final Queue<Timeout<T>> cancelled;
+    private final AtomicInteger size;
+    private final long startNanos;
+
+    private long currentTick;
+
+    public TimingWheel(long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("Tick duration must be greater than 0, got: " + tickDuration);
+        }
+
+        if (ticksPerWheel <= 0 || ticksPerWheel > 1 << 30) {
+            throw new IllegalArgumentException("Ticks per wheel must be in range (0, 2^30], got: " + ticksPerWheel);
+        }
+
+        int wheelSize = Integer.highestOneBit(ticksPerWheel);
+        if (wheelSize < ticksPerWheel) {
+            wheelSize <<= 1;
+        }
+
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.mask = wheelSize - 1;
+        this.buckets = newBuckets(wheelSize);
+
+        this.scheduled = new ConcurrentLinkedQueue<>();
+        this.cancelled = new ConcurrentLinkedQueue<>();
+        this.size = new AtomicInteger();
+        this.startNanos = System.nanoTime();
+    }
+
+    /**
+     * Thread safe.
+     */
+    public Timeout<T> schedule(T item, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() - startNanos + unit.toNanos(Math.max(delay, 0));
+
+        Timeout<T> timeout = new Timeout<>(this, item, deadline);
+        size.incrementAndGet();
+        scheduled.add(timeout);
+
+        return timeout;
+    }
+
+    /**
+     * Passes every item whose deadline is before given time to the consumer.
+     * Not thread safe - has to be called by the owner of the wheel only.
+     *
+     * @param nanoTime current value of {@link System#nanoTime()}
+     */
+    public void expire(long nanoTime, Consumer<? super T> consumer) {
+        transferScheduled();
+        removeCancelled();
+
+        long elapsed = nanoTime - startNanos;
+        long lastFinishedTick = elapsed / tickNanos;
+
+        while (currentTick < lastFinishedTick) {
+            buckets[(int) (currentTick & mask)].expire(consumer);
+            ++currentTick;
+        }
+    }
+
+    /**
+     * Amount of scheduled timeouts which are neither expired nor cancelled.
+     */
+    public int size() {
+        return size.get();
+    }
+
+    public long getTick(TimeUnit unit) {
+        return unit.convert(tickNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void transferScheduled() {
+        Timeout<T> timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.state != Timeout.PENDING) {
+                continue;
+            }
+
+            long deadlineTick = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (deadlineTick - currentTick) / buckets.length;
+
+            long tick = Math.max(deadlineTick, currentTick); // do not put the late ones into the past
+            buckets[(int) (tick & mask)].add(timeout);
+        }
+    }
+
+    private void removeCancelled() {
+        Timeout<T> timeout;
+        while ((timeout = cancelled.poll()) != null) {
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    public static final class Timeout<T> {
+        private static final int PENDING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        @SuppressWarnings("rawtypes")
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE = AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "state");
+
+        private final TimingWheel<T> wheel;
+        private final T item;
+        private final long deadline;
+
+        private volatile int state = PENDING;
+
+        // accessed by the owner of the wheel only
+        private long remainingRounds;
+        private Bucket<T> bucket;
+        private Timeout<T> prev;
+        private Timeout<T> next;
+
+        private Timeout(TimingWheel<T> wheel, T item, long deadline) {
+            this.wheel = wheel;
+            this.item = item;
+            this.deadline = deadline;
+        }
+
+        /**
+         * Thread safe.
+         *
+         * @return false if the timeout has been expired or cancelled already
+         */
+        @SuppressWarnings("unchecked")
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, PENDING, CANCELLED)) {
+                return false;
+            }
+
+            wheel.size.decrementAndGet();
+            wheel.cancelled.add(this);
+            return true;
+        }
+
+        public boolean isCancelled() {
+            return state == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        public T getItem() {
+            return item;
+        }
+
+        @SuppressWarnings("unchecked")
+        private boolean markExpired() {
+            if (!STATE.compareAndSet(this, PENDING, EXPIRED)) {
+                return false;
+            }
+
+            wheel.size.decrementAndGet();
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "Timeout{" +
+                    "item=" + item +
+                    ", state=" + state +
+                    '}';
+        }
+    }
+
+    /**
+     * Generic arrays cannot be created, the array holds only buckets of T, so the cast is safe.
+     */
+    @SuppressWarnings("unchecked")
+    private static <T> Bucket<T>[] newBuckets(int size) {
+        Bucket<T>[] buckets = (Bucket<T>[]) new Bucket<?>[size];
+        for (int i = 0; i < size; ++i) {
+            buckets[i] = new Bucket<>();
+        }
+
+        return buckets;
+    }
+
+    private static final class Bucket<T> {
+        private Timeout<T> head;
+        private Timeout<T> tail;
+
+        void add(Timeout<T> timeout) {
+            timeout.bucket = this;
+
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        Timeout<T> remove(Timeout<T> timeout) {
+            Timeout<T> next = timeout.next;
+
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+
+            if (next != null) {
+                next.prev = timeout.prev;
+            }
+
+            if (timeout == head) {
+                head = next;
+            }
+
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+
+            return next;
+        }
+
+        void expire(Consumer<? super T> consumer) {
+            Timeout<T> timeout = head;
+
+            while (timeout != null) {
+                if (timeout.remainingRounds > 0) {
+                    --timeout.remainingRounds;
+                    timeout = timeout.next;
+                    continue;
+                }
+
+                Timeout<T> current = timeout;
+                timeout = remove(current);
+
+                if (current.markExpired()) {
+                    try {
+                        consumer.accept(current.item);
+                    } catch (Exception e) {
+                        logger.error("Failed to process expired item: {}", current.item, e);
+                    }
+                }
+            }
+        }
+    }
+}
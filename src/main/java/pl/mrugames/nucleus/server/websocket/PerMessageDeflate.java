@@ -0,0 +1,157 @@
+package pl.mrugames.nucleus.server.websocket;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The {@code permessage-deflate} extension negotiated with a single client.
+ * <p>
+ * Compression is done by the writer under the write buffer lock, decompression by the reader under the read buffer lock,
+ * so the deflater and the inflater are never used concurrently.
+ * Coders kept for context takeover are returned to the extension's pool by {@link #close()}.
+ */
+public class PerMessageDeflate {
+    private static final byte[] TAIL = {0x00, 0x00, (byte) 0xFF, (byte) 0xFF};
+
+    private final PerMessageDeflateExtension extension;
+    private final boolean serverContextTakeover;
+    private final boolean clientContextTakeover;
+
+    private Deflater deflater;
+    private Inflater inflater;
+    private boolean closed;
+
+    PerMessageDeflate(PerMessageDeflateExtension extension, boolean serverContextTakeover, boolean clientContextTakeover) {
+        this.extension = extension;
+        this.serverContextTakeover = serverContextTakeover;
+        this.clientContextTakeover = clientContextTakeover;
+    }
+
+    /**
+     * @return value of the {@code Sec-WebSocket-Extensions} response header
+     */
+    public String getResponse() {
+        StringBuilder response = new StringBuilder(PerMessageDeflateExtension.NAME);
+
+        if (!serverContextTakeover) {
+            response.append("; server_no_context_takeover");
+        }
+
+        if (!clientContextTakeover) {
+            response.append("; client_no_context_takeover");
+        }
+
+        return response.toString();
+    }
+
+    public boolean shouldCompress(byte[] payload) {
+        return payload.length >= extension.getMinMessageSize();
+    }
+
+    /**
+     * Compresses the whole message.
+     */
+    public byte[] compress(byte[] payload) {
+        Deflater deflater = this.deflater != null ? this.deflater : extension.acquireDeflater();
+
+        try {
+            deflater.setInput(payload);
+
+            byte[] output = new byte[Math.max(64, payload.length / 2)];
+            int length = 0;
+
+            while (true) {
+                length += deflater.deflate(output, length, output.length - length, Deflater.SYNC_FLUSH);
+
+                if (length < output.length) {
+                    break;
+                }
+
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+
+            // the empty block ending the flush is implied by the extension
+            return Arrays.copyOf(output, length - TAIL.length);
+        } finally {
+            if (serverContextTakeover && !closed) {
+                this.deflater = deflater;
+            } else {
+                extension.releaseDeflater(deflater);
+            }
+        }
+    }
+
+    /**
+     * Decompresses the message, or a fragment of it. Fragments have to be passed in order.
+     *
+     * @param finalFragment whether this is the end of the message
+     * @param maxLength     maximum size of the decompressed data [bytes]
+     * @throws IllegalArgumentException if decompressed data is longer than maxLength
+     */
+    public byte[] decompress(byte[] data, boolean finalFragment, int maxLength) throws DataFormatException {
+        if (inflater == null) {
+            inflater = extension.acquireInflater();
+        }
+
+        try {
+            if (finalFragment) {
+                byte[] input = Arrays.copyOf(data, data.length + TAIL.length);
+                System.arraycopy(TAIL, 0, input, data.length, TAIL.length);
+
+                inflater.setInput(input);
+            } else {
+                inflater.setInput(data);
+            }
+
+            byte[] output = new byte[(int) Math.min(Math.max(64, data.length * 2L), maxLength + 1L)];
+            int length = 0;
+
+            do {
+                if (length == output.length) {
+                    output = Arrays.copyOf(output, (int) Math.min(output.length * 2L, maxLength + 1L));
+                }
+
+                length += inflater.inflate(output, length, output.length - length);
+
+                if (length > maxLength) {
+                    throw new IllegalArgumentException(String.format("Message length exceeds maximum allowed size. Message length: %d", length));
+                }
+            } while (length == output.length);
+
+            return Arrays.copyOf(output, length);
+        } finally {
+            if (closed || finalFragment && !clientContextTakeover) {
+                extension.releaseInflater(inflater);
+                inflater = null;
+            }
+        }
+    }
+
+    /**
+     * Returns the coders to the pool. Called when the connection is closed, under both buffer locks,
+     * so neither of them is in use. Idempotent.
+     */
+    public void close() {
+        closed = true;
+
+        if (deflater != null) {
+            extension.releaseDeflater(deflater);
+            deflater = null;
+        }
+
+        if (inflater != null) {
+            extension.releaseInflater(inflater);
+            inflater = null;
+        }
+    }
+
+    public boolean isServerContextTakeover() {
+        return serverContextTakeover;
+    }
+
+    public boolean isClientContextTakeover() {
+        return clientContextTakeover;
+    }
+}
@@ -0,0 +1,215 @@
+package pl.mrugames.nucleus.server.websocket;
+
+import javax.annotation.Nullable;
+import java.util.HashSet;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Server configuration of the {@code permessage-deflate} extension (RFC 7692), shared by all connections.
+ * <p>
+ * When context takeover is disabled, compression state is not kept between messages, so deflaters and inflaters
+ * are borrowed from a pool for a single message and idle connections hold no compression state at all.
+ * Connections with context takeover return theirs to the pool when they are closed. Coders above the pool limit are ended,
+ * so their native memory is freed without waiting for GC.
+ * <p>
+ * {@link Deflater} does not allow to limit the LZ77 window, so offers with {@code server_max_window_bits} lower than 15
+ * are declined. Inflaters always use the biggest window, which can decode data compressed with any window size.
+ */
+public class PerMessageDeflateExtension {
+    public static final String NAME = "permessage-deflate";
+    public static final int DEFAULT_MIN_MESSAGE_SIZE = 256;
+    public static final int DEFAULT_MAX_POOLED = 64;
+
+    private static final int MAX_WINDOW_BITS = 15;
+
+    private final int compressionLevel;
+    private final boolean contextTakeover;
+    private final int minMessageSize;
+    private final int maxPooled;
+    private final Queue<Deflater> deflaters;
+    private final Queue<Inflater> inflaters;
+    private final AtomicInteger pooledDeflaters;
+    private final AtomicInteger pooledInflaters;
+
+    public PerMessageDeflateExtension() {
+        this(Deflater.DEFAULT_COMPRESSION, true, DEFAULT_MIN_MESSAGE_SIZE);
+    }
+
+    /**
+     * @param compressionLevel {@link Deflater#DEFAULT_COMPRESSION} or 0-9
+     * @param contextTakeover  whether compression state is kept between messages, which compresses better,
+     *                         but costs memory on every connection
+     * @param minMessageSize   smaller messages are sent uncompressed [bytes]
+     */
+    public PerMessageDeflateExtension(int compressionLevel, boolean contextTakeover, int minMessageSize) {
+        this(compressionLevel, contextTakeover, minMessageSize, DEFAULT_MAX_POOLED);
+    }
+
+    /**
+     * @param compressionLevel {@link Deflater#DEFAULT_COMPRESSION} or 0-9
+     * @param contextTakeover  whether compression state is kept between messages, which compresses better,
+     *                         but costs memory on every connection
+     * @param minMessageSize   smaller messages are sent uncompressed [bytes]
+     * @param maxPooled        amount of idle deflaters and of idle inflaters kept for reuse, the ones above are ended
+     */
+    public PerMessageDeflateExtension(int compressionLevel, boolean contextTakeover, int minMessageSize, int maxPooled) {
+        if (compressionLevel != Deflater.DEFAULT_COMPRESSION && (compressionLevel < 0 || compressionLevel > 9)) {
+            throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+        }
+
+        if (maxPooled < 0) {
+            throw new IllegalArgumentException("Max pooled coders must not be negative, got: " + maxPooled);
+        }
+
+        this.compressionLevel = compressionLevel;
+        this.contextTakeover = contextTakeover;
+        this.minMessageSize = minMessageSize;
+        this.maxPooled = maxPooled;
+        this.deflaters = new ConcurrentLinkedQueue<>();
+        this.inflaters = new ConcurrentLinkedQueue<>();
+        this.pooledDeflaters = new AtomicInteger();
+        this.pooledInflaters = new AtomicInteger();
+    }
+
+    /**
+     * Picks the first acceptable offer from the {@code Sec-WebSocket-Extensions} request header.
+     *
+     * @param offers value of the header, null if the client did not send it
+     * @return null if the client did not offer the extension or no offer could be accepted
+     */
+    @Nullable
+    public PerMessageDeflate negotiate(@Nullable String offers) {
+        if (offers == null) {
+            return null;
+        }
+
+        for (String offer : offers.split(",")) {
+            PerMessageDeflate accepted = accept(offer);
+
+            if (accepted != null) {
+                return accepted;
+            }
+        }
+
+        return null;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public boolean isContextTakeover() {
+        return contextTakeover;
+    }
+
+    public int getMinMessageSize() {
+        return minMessageSize;
+    }
+
+    @Nullable
+    private PerMessageDeflate accept(String offer) {
+        String[] parts = offer.split(";");
+
+        if (!parts[0].trim().equalsIgnoreCase(NAME)) {
+            return null;
+        }
+
+        boolean serverNoContextTakeover = !contextTakeover;
+        boolean clientNoContextTakeover = !contextTakeover;
+        Set<String> names = new HashSet<>();
+
+        for (int i = 1; i < parts.length; ++i) {
+            String[] param = parts[i].split("=", 2);
+            String name = param[0].trim().toLowerCase();
+            String value = param.length > 1 ? param[1].trim().replace("\"", "") : null;
+
+            if (!names.add(name)) {
+                return null;
+            }
+
+            switch (name) {
+                case "server_no_context_takeover":
+                    serverNoContextTakeover = true;
+                    break;
+                case "client_no_context_takeover":
+                    clientNoContextTakeover = true;
+                    break;
+                case "server_max_window_bits":
+                    if (!isMaxWindow(value)) {
+                        return null;
+                    }
+                    break;
+                case "client_max_window_bits":
+                    // the client may limit its window, inflater handles any window size
+                    break;
+                default:
+                    return null;
+            }
+        }
+
+        return new PerMessageDeflate(this, !serverNoContextTakeover, !clientNoContextTakeover);
+    }
+
+    private boolean isMaxWindow(@Nullable String value) {
+        try {
+            return value != null && Integer.parseInt(value) == MAX_WINDOW_BITS;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    Deflater acquireDeflater() {
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            return new Deflater(compressionLevel, true);
+        }
+
+        pooledDeflaters.decrementAndGet();
+        return deflater;
+    }
+
+    void releaseDeflater(Deflater deflater) {
+        if (pooledDeflaters.incrementAndGet() > maxPooled) {
+            pooledDeflaters.decrementAndGet();
+            deflater.end();
+            return;
+        }
+
+        deflater.reset();
+        deflaters.add(deflater);
+    }
+
+    Inflater acquireInflater() {
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            return new Inflater(true);
+        }
+
+        pooledInflaters.decrementAndGet();
+        return inflater;
+    }
+
+    void releaseInflater(Inflater inflater) {
+        if (pooledInflaters.incrementAndGet() > maxPooled) {
+            pooledInflaters.decrementAndGet();
+            inflater.end();
+            return;
+        }
+
+        inflater.reset();
+        inflaters.add(inflater);
+    }
+
+    int pooledDeflaters() {
+        return pooledDeflaters.get();
+    }
+
+    int pooledInflaters() {
+        return pooledInflaters.get();
+    }
+}
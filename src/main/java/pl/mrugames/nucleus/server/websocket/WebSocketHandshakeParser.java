@@ -3,6 +3,7 @@ package pl.mrugames.nucleus.server.websocket;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -14,6 +15,7 @@ public class WebSocketHandshakeParser {
     private static final Logger logger = LoggerFactory.getLogger(WebSocketHandshakeParser.class);
     private static WebSocketHandshakeParser instance;
     private final static Pattern pattern = Pattern.compile("Sec-WebSocket-Key: (.*?)\r\n");
+    private final static Pattern extensionsPattern = Pattern.compile("^Sec-WebSocket-Extensions:[ \t]*(.*?)[ \t]*$", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
 
     public static synchronized WebSocketHandshakeParser getInstance() {
         if (instance == null) {
@@ -27,6 +29,13 @@ public class WebSocketHandshakeParser {
     }
 
     public String parse(String request) {
+        return parse(request, null);
+    }
+
+    /**
+     * @param extensions value of the {@code Sec-WebSocket-Extensions} response header, null if no extension was accepted
+     */
+    public String parse(String request, @Nullable String extensions) {
         String key = findKey(request);
         String responseKey = computeResponseKey(key);
 
@@ -34,9 +43,31 @@ public class WebSocketHandshakeParser {
                 "Upgrade: websocket\r\n" +
                 "Connection: Upgrade\r\n" +
                 "Sec-WebSocket-Accept: " + responseKey + "\r\n" +
+                (extensions != null ? "Sec-WebSocket-Extensions: " + extensions + "\r\n" : "") +
                 "\r\n";
     }
 
+    /**
+     * The header may be repeated, values of all occurrences are joined.
+     *
+     * @return null if the client did not request any extension
+     */
+    @Nullable
+    public String findExtensions(String request) {
+        Matcher matcher = extensionsPattern.matcher(request);
+        StringBuilder extensions = null;
+
+        while (matcher.find()) {
+            if (extensions == null) {
+                extensions = new StringBuilder(matcher.group(1));
+            } else {
+                extensions.append(", ").append(matcher.group(1));
+            }
+        }
+
+        return extensions != null ? extensions.toString() : null;
+    }
+
     public boolean isReady(String request) {
         return request.endsWith("\r\n\r\n");
     }
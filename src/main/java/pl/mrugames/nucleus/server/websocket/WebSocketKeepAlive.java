@@ -0,0 +1,60 @@
+package pl.mrugames.nucleus.server.websocket;
+
+import com.codahale.metrics.Histogram;
+import pl.mrugames.nucleus.server.Metrics;
+import pl.mrugames.nucleus.server.client.Comm;
+import pl.mrugames.nucleus.server.client.KeepAlive;
+import pl.mrugames.nucleus.server.client.frames.WebSocketFrame;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static com.codahale.metrics.MetricRegistry.name;
+
+/**
+ * Answers client pings with pongs. Server pings carry the time they were sent, so the round trip time
+ * is known when the pong comes back and no state is kept per connection.
+ */
+public class WebSocketKeepAlive implements KeepAlive {
+    private final Histogram roundTripTime;
+
+    public WebSocketKeepAlive() {
+        roundTripTime = Metrics.getRegistry().histogram(name(WebSocketKeepAlive.class, "round_trip_micros"));
+    }
+
+    @Override
+    public Serializable createPing(long nanoTime) {
+        return new WebSocketFrame(WebSocketFrame.FrameType.PING, ByteBuffer.allocate(Long.BYTES).putLong(nanoTime).array());
+    }
+
+    @Override
+    public boolean handle(Serializable rawFrame, Comm comm) throws Exception {
+        if (!(rawFrame instanceof WebSocketFrame)) {
+            return false;
+        }
+
+        WebSocketFrame frame = (WebSocketFrame) rawFrame;
+
+        if (frame.getFrameType() == WebSocketFrame.FrameType.PING) {
+            comm.sendRaw(new WebSocketFrame(WebSocketFrame.FrameType.PONG, frame.getPayload()));
+            return true;
+        }
+
+        if (frame.getFrameType() == WebSocketFrame.FrameType.PONG) {
+            // unsolicited pongs are allowed as a heartbeat, only answers to our pings carry the time
+            if (frame.getPayload().length == Long.BYTES) {
+                long sent = ByteBuffer.wrap(frame.getPayload()).getLong();
+                long rtt = System.nanoTime() - sent;
+
+                if (rtt >= 0) {
+                    roundTripTime.update(TimeUnit.NANOSECONDS.toMicros(rtt));
+                }
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+}
@@ -1,5 +1,15 @@
 package pl.mrugames.nucleus.server.websocket;
 
+import java.nio.ByteBuffer;
+
 public class WebsocketConstants {
     public final static String WEBSOCKET_CLOSE_FRAME = "WEBSOCKET_CLOSE_FRAME";
+
+    /**
+     * Close frame of the binary protocol. Compared by identity, so an empty message is not mistaken for it.
+     */
+    public final static ByteBuffer WEBSOCKET_CLOSE_BUFFER = ByteBuffer.allocate(0).asReadOnlyBuffer();
+
+    private WebsocketConstants() {
+    }
 }
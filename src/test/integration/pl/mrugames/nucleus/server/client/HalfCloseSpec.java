@@ -0,0 +1,130 @@
+package pl.mrugames.nucleus.server.client;
+
+import com.codahale.metrics.MetricFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.mrugames.nucleus.common.io.LineReader;
+import pl.mrugames.nucleus.common.io.LineWriter;
+import pl.mrugames.nucleus.server.Metrics;
+import pl.mrugames.nucleus.server.client.filters.FilterProcessor;
+import pl.mrugames.nucleus.server.host.HostManager;
+
+import javax.annotation.Nullable;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HalfCloseSpec {
+    private final int port = 10001;
+
+    private HostManager hostManager;
+    private ExecutorService executorService;
+    private CountDownLatch shutdownLatch;
+
+    @BeforeEach
+    void before() throws InterruptedException {
+        executorService = Executors.newCachedThreadPool();
+        shutdownLatch = new CountDownLatch(1);
+
+        ClientFactory clientFactory = new ClientFactoryBuilder<>(
+                (comm, clientInfo, killme) -> new SlowEchoWorker(),
+                new ProtocolFactory<>(
+                        LineWriter::new,
+                        LineReader::new,
+                        FilterProcessor.EMPTY_FILTER_PROCESSOR,
+                        FilterProcessor.EMPTY_FILTER_PROCESSOR,
+                        "default"
+                ))
+                .setName("Half Close Server")
+                .build();
+
+        hostManager = HostManager.create(executorService);
+        hostManager.newHost("Half Close Host", port, clientFactory);
+
+        executorService.submit(hostManager);
+        hostManager.awaitStart(1, TimeUnit.SECONDS);
+    }
+
+    @AfterEach
+    void after() throws InterruptedException {
+        executorService.shutdownNow();
+        hostManager.awaitTermination(1, TimeUnit.SECONDS);
+        Metrics.getRegistry().removeMatching(MetricFilter.ALL);
+    }
+
+    @Test
+    void givenClientShutsDownOutputAfterRequest_thenStillReceiveResponse() throws Exception {
+        try (Socket socket = connect()) {
+            OutputStream outputStream = socket.getOutputStream();
+            outputStream.write("hello\r\n".getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+            socket.shutdownOutput();
+
+            socket.setSoTimeout(5000);
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+
+            assertThat(reader.readLine()).isEqualTo("echo: hello");
+            assertThat(reader.readLine()).isNull();
+        }
+
+        assertThat(shutdownLatch.await(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    /**
+     * The host is bound by the manager's thread after it has started.
+     */
+    private Socket connect() throws IOException, InterruptedException {
+        for (int attempt = 0; ; ++attempt) {
+            try {
+                return new Socket("localhost", port);
+            } catch (ConnectException e) {
+                if (attempt == 50) {
+                    throw e;
+                }
+
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+        }
+    }
+
+    private class SlowEchoWorker implements ClientWorker<String, String> {
+        @Nullable
+        @Override
+        public String onInit() {
+            return null;
+        }
+
+        /**
+         * The delay lets the reactor read the end of stream while the request is still processed.
+         */
+        @Nullable
+        @Override
+        public String onRequest(String request) {
+            try {
+                TimeUnit.MILLISECONDS.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            return "echo: " + request;
+        }
+
+        @Nullable
+        @Override
+        public String onShutdown() {
+            shutdownLatch.countDown();
+            return null;
+        }
+    }
+}
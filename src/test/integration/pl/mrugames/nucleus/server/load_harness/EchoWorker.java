@@ -0,0 +1,29 @@
+package pl.mrugames.nucleus.server.load_harness;
+
+import pl.mrugames.nucleus.server.client.ClientWorker;
+
+import javax.annotation.Nullable;
+
+/**
+ * Returns every request, so the measured latency is the cost of the server itself.
+ */
+class EchoWorker<T> implements ClientWorker<T, T> {
+
+    @Nullable
+    @Override
+    public T onInit() {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public T onRequest(T request) {
+        return request;
+    }
+
+    @Nullable
+    @Override
+    public T onShutdown() {
+        return null;
+    }
+}
@@ -0,0 +1,189 @@
+package pl.mrugames.nucleus.server.load_harness;
+
+import pl.mrugames.nucleus.common.io.*;
+import pl.mrugames.nucleus.server.client.ClientFactories;
+import pl.mrugames.nucleus.server.client.ClientFactory;
+import pl.mrugames.nucleus.server.client.ClientFactoryBuilder;
+import pl.mrugames.nucleus.server.client.ProtocolFactories;
+import pl.mrugames.nucleus.server.client.ProtocolFactory;
+import pl.mrugames.nucleus.server.client.filters.FilterProcessor;
+import pl.mrugames.nucleus.server.client.frames.BufferFrame;
+import pl.mrugames.nucleus.server.client.frames.WebSocketFrame;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Server configuration and client codecs of every protocol under test.
+ * A request carries the time at which it was supposed to be sent, the echoed response carries it back.
+ */
+enum HarnessProtocol {
+    LINE {
+        @Override
+        ClientFactory<?, ?> createClientFactory(String name) {
+            return build(name, new ProtocolFactory<>(LineWriter::new, LineReader::new, FilterProcessor.EMPTY_FILTER_PROCESSOR, FilterProcessor.EMPTY_FILTER_PROCESSOR, "line"));
+        }
+
+        @Override
+        ClientWriter<? extends Serializable> createWriter(ByteBuffer buffer) {
+            return new LineWriter(buffer);
+        }
+
+        @Override
+        ClientReader<? extends Serializable> createReader(ByteBuffer buffer) {
+            return new LineReader(buffer);
+        }
+    },
+
+    OBJECT {
+        @Override
+        ClientFactory<?, ?> createClientFactory(String name) {
+            return build(name, ProtocolFactories.createProtocolFactoryForObjectSocket("object").get(0));
+        }
+
+        @Override
+        ClientWriter<? extends Serializable> createWriter(ByteBuffer buffer) {
+            return new ObjectWriter<>(buffer);
+        }
+
+        @Override
+        ClientReader<? extends Serializable> createReader(ByteBuffer buffer) {
+            return new ObjectReader<>(buffer);
+        }
+    },
+
+    LENGTH_PREFIXED {
+        @Override
+        ClientFactory<?, ?> createClientFactory(String name) {
+            return build(name, ProtocolFactories.createProtocolFactoryForLengthPrefixedSocket("length-prefixed", LengthPrefix.INT, BUFFER_SIZE).get(0));
+        }
+
+        @Override
+        ClientWriter<? extends Serializable> createWriter(ByteBuffer buffer) {
+            return new LengthPrefixedWriter(buffer);
+        }
+
+        @Override
+        ClientReader<? extends Serializable> createReader(ByteBuffer buffer) {
+            return new LengthPrefixedReader(buffer);
+        }
+
+        @Override
+        Serializable createRequest(long intendedNanos) {
+            ByteBuffer payload = ByteBuffer.allocate(Long.BYTES);
+            payload.putLong(0, intendedNanos);
+
+            return new BufferFrame(payload);
+        }
+
+        @Override
+        long getIntendedNanos(Object response) {
+            ByteBuffer payload = ((BufferFrame) response).getPayload();
+            return payload.getLong(payload.position());
+        }
+    },
+
+    /**
+     * Client frames are not masked, the server accepts them either way and masking would only load the generator.
+     */
+    WEB_SOCKET {
+        private static final String HANDSHAKE = "GET / HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "Upgrade: websocket\r\n" +
+                "Connection: Upgrade\r\n" +
+                "Sec-WebSocket-Key: dGhlIHNhbXBsZSBub25jZQ==\r\n" +
+                "Sec-WebSocket-Version: 13\r\n" +
+                "\r\n";
+
+        @Override
+        ClientFactory<?, ?> createClientFactory(String name) {
+            return ClientFactories.createClientFactoryForWSServer(name, TIMEOUT_SECONDS, TIMEOUT_SECONDS, (comm, clientInfo, controller) -> new EchoWorker<>(), BUFFER_SIZE);
+        }
+
+        @Override
+        ClientWriter<? extends Serializable> createWriter(ByteBuffer buffer) {
+            return new WebSocketWriter(buffer);
+        }
+
+        @Override
+        ClientReader<? extends Serializable> createReader(ByteBuffer buffer) {
+            return new WebSocketReader(buffer);
+        }
+
+        @Override
+        Serializable createRequest(long intendedNanos) {
+            return new WebSocketFrame(WebSocketFrame.FrameType.TEXT, Long.toString(intendedNanos).getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        long getIntendedNanos(Object response) {
+            return Long.parseLong(new String(((WebSocketFrame) response).getPayload(), StandardCharsets.UTF_8));
+        }
+
+        /**
+         * The server switches the protocol after the response is sent, so the response is read completely
+         * before the first frame.
+         */
+        @Override
+        void handshake(SocketChannel channel) throws IOException {
+            ByteBuffer request = ByteBuffer.wrap(HANDSHAKE.getBytes(StandardCharsets.US_ASCII));
+            while (request.hasRemaining()) {
+                channel.write(request);
+            }
+
+            StringBuilder response = new StringBuilder();
+            ByteBuffer buffer = ByteBuffer.allocate(1);
+
+            while (response.indexOf("\r\n\r\n") < 0) {
+                if (channel.read(buffer) < 0) {
+                    throw new IOException("Connection closed during handshake");
+                }
+
+                buffer.flip();
+                response.append((char) buffer.get());
+                buffer.clear();
+            }
+
+            if (!response.toString().startsWith("HTTP/1.1 101")) {
+                throw new IOException("Handshake refused: " + response);
+            }
+        }
+    };
+
+    static final int BUFFER_SIZE = 1024;
+
+    private static final int TIMEOUT_SECONDS = 600;
+
+    abstract ClientFactory<?, ?> createClientFactory(String name);
+
+    abstract ClientWriter<? extends Serializable> createWriter(ByteBuffer buffer);
+
+    abstract ClientReader<? extends Serializable> createReader(ByteBuffer buffer);
+
+    Serializable createRequest(long intendedNanos) {
+        return Long.toString(intendedNanos);
+    }
+
+    long getIntendedNanos(Object response) {
+        return Long.parseLong((String) response);
+    }
+
+    /**
+     * Called on a blocking channel, before the first request.
+     */
+    void handshake(SocketChannel channel) throws IOException {
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ClientFactory<?, ?> build(String name, ProtocolFactory<?, ?> protocolFactory) {
+        return new ClientFactoryBuilder<>((comm, clientInfo, controller) -> new EchoWorker<>(), protocolFactory)
+                .setName(name)
+                .setBufferSize(BUFFER_SIZE)
+                .setConnectionTimeout(TIMEOUT_SECONDS)
+                .setRequestTimeout(TIMEOUT_SECONDS)
+                .build();
+    }
+}
@@ -0,0 +1,85 @@
+package pl.mrugames.nucleus.server.load_harness;
+
+/**
+ * Log-linear histogram of latencies in nanoseconds. Every power of two is split into {@value #SUB_BUCKETS} buckets,
+ * so a reported percentile is at most 1/{@value #SUB_BUCKETS} above the recorded value, from nanoseconds up to hours,
+ * in a fixed amount of memory. Values below 2 * {@value #SUB_BUCKETS} are exact.
+ * <p>
+ * Not thread safe, every generator records into its own histogram, they are merged when the run is finished.
+ */
+class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 8;
+    private static final int SUB_BUCKETS = 1 << (SUB_BUCKET_BITS - 1);
+
+    private final long[] counts = new long[index(Long.MAX_VALUE) + 1];
+    private long total;
+    private long max;
+
+    void record(long nanos) {
+        long value = Math.max(0, nanos);
+
+        ++counts[index(value)];
+        ++total;
+        max = Math.max(max, value);
+    }
+
+    void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; ++i) {
+            counts[i] += other.counts[i];
+        }
+
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    long getTotal() {
+        return total;
+    }
+
+    long getMax() {
+        return max;
+    }
+
+    /**
+     * @param percentile 0-100
+     * @return highest value which falls into the same bucket as the percentile, 0 if nothing was recorded
+     */
+    long getValueAtPercentile(double percentile) {
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+
+        for (int i = 0; i < counts.length; ++i) {
+            seen += counts[i];
+
+            if (seen >= rank) {
+                return Math.min(highestValue(i), max);
+            }
+        }
+
+        return max;
+    }
+
+    static int index(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return (int) value;
+        }
+
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1;
+        return 2 * SUB_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    static long highestValue(int index) {
+        if (index < 2 * SUB_BUCKETS) {
+            return index;
+        }
+
+        int shift = (index - 2 * SUB_BUCKETS) / SUB_BUCKETS + 1;
+        long subBucket = (index - 2 * SUB_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS;
+
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
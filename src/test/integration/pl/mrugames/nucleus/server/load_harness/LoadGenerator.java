@@ -0,0 +1,263 @@
+package pl.mrugames.nucleus.server.load_harness;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.mrugames.nucleus.common.io.ClientReader;
+import pl.mrugames.nucleus.common.io.ClientWriter;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Drives a share of connections from a single selector thread, with open-loop (fixed rate) scheduling.
+ * <p>
+ * Request {@code n} is due at {@code start + n * interval}, no matter whether earlier responses arrived,
+ * and its latency is measured from that time, not from the time it was actually written.
+ * So a stalled server is charged for every request it delayed, instead of slowing the generator down
+ * and hiding the stall (coordinated omission).
+ * <p>
+ * Requests are spread over connections round-robin. Only requests due after the warmup are measured.
+ */
+class LoadGenerator implements Runnable {
+    private final static Logger logger = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private static final int OUTBOUND_BUFFER_SIZE = 16 * 1024;
+    private static final int INBOUND_BUFFER_SIZE = 8 * 1024;
+
+    private final HarnessProtocol protocol;
+    private final List<SocketChannel> channels;
+    private final double intervalNanos;
+    private final long warmupNanos;
+    private final long durationNanos;
+    private final long drainNanos;
+    private final LatencyHistogram histogram;
+
+    private long start;
+    private long measureFrom;
+    private long measureTo;
+    private long sent;
+    private long received;
+    private long receivedInWindow;
+    private long errors;
+
+    /**
+     * @param rate requests per second sent by this generator
+     */
+    LoadGenerator(HarnessProtocol protocol, List<SocketChannel> channels, double rate, long warmupNanos, long durationNanos, long drainNanos) {
+        this.protocol = protocol;
+        this.channels = channels;
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        this.warmupNanos = warmupNanos;
+        this.durationNanos = durationNanos;
+        this.drainNanos = drainNanos;
+        this.histogram = new LatencyHistogram();
+    }
+
+    @Override
+    public void run() {
+        try (Selector selector = Selector.open()) {
+            Connection[] connections = new Connection[channels.size()];
+
+            for (int i = 0; i < connections.length; ++i) {
+                connections[i] = new Connection(channels.get(i));
+                connections[i].key = channels.get(i).register(selector, SelectionKey.OP_READ, connections[i]);
+            }
+
+            start = System.nanoTime();
+            measureFrom = start + warmupNanos;
+            measureTo = measureFrom + durationNanos;
+
+            long scheduled = 0;
+
+            while (true) {
+                long now = System.nanoTime();
+                if (now >= measureTo) {
+                    break;
+                }
+
+                long due;
+                while ((due = start + (long) (scheduled * intervalNanos)) <= now && due < measureTo) {
+                    send(connections[(int) (scheduled % connections.length)], due);
+                    ++scheduled;
+                }
+
+                select(selector, Math.min(due, measureTo) - System.nanoTime());
+            }
+
+            long drainUntil = System.nanoTime() + drainNanos;
+            while (received < sent && System.nanoTime() < drainUntil) {
+                select(selector, drainUntil - System.nanoTime());
+            }
+        } catch (IOException e) {
+            logger.error("Load generator failed", e);
+            ++errors;
+        }
+    }
+
+    private void select(Selector selector, long timeoutNanos) throws IOException {
+        long timeoutMillis = TimeUnit.NANOSECONDS.toMillis(timeoutNanos);
+
+        // select(timeout) sleeps at least a millisecond, sends due sooner are spun for
+        if (timeoutMillis > 0) {
+            selector.select(timeoutMillis);
+        } else {
+            selector.selectNow();
+        }
+
+        for (SelectionKey key : selector.selectedKeys()) {
+            Connection connection = (Connection) key.attachment();
+
+            try {
+                if (key.isValid() && key.isWritable()) {
+                    connection.flush();
+                }
+
+                if (key.isValid() && key.isReadable()) {
+                    connection.receive();
+                }
+            } catch (Exception e) {
+                logger.error("Connection failed", e);
+                ++errors;
+
+                key.cancel();
+                key.channel().close();
+            }
+        }
+
+        selector.selectedKeys().clear();
+    }
+
+    private void send(Connection connection, long intendedNanos) {
+        if (!connection.key.isValid()) {
+            ++errors;
+            return;
+        }
+
+        try {
+            connection.send(protocol.createRequest(intendedNanos));
+        } catch (Exception e) {
+            logger.error("Failed to send a request", e);
+            ++errors;
+            return;
+        }
+
+        if (intendedNanos >= measureFrom) {
+            ++sent;
+        }
+    }
+
+    private void onResponse(Object response) {
+        long now = System.nanoTime();
+        long intendedNanos = protocol.getIntendedNanos(response);
+
+        if (intendedNanos < measureFrom) {
+            return;
+        }
+
+        histogram.record(now - intendedNanos);
+        ++received;
+
+        if (now < measureTo) {
+            ++receivedInWindow;
+        }
+    }
+
+    LatencyHistogram getHistogram() {
+        return histogram;
+    }
+
+    /**
+     * @return requests due after the warmup which were sent
+     */
+    long getSent() {
+        return sent;
+    }
+
+    /**
+     * @return responses to measured requests, including those received after the measurement window
+     */
+    long getReceived() {
+        return received;
+    }
+
+    /**
+     * @return responses to measured requests received during the measurement window
+     */
+    long getReceivedInWindow() {
+        return receivedInWindow;
+    }
+
+    long getErrors() {
+        return errors;
+    }
+
+    private class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer outbound;
+        private final ByteBuffer inbound;
+        private final ClientWriter<Serializable> writer;
+        private final ClientReader<? extends Serializable> reader;
+
+        private SelectionKey key;
+
+        @SuppressWarnings("unchecked")
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+            this.outbound = ByteBuffer.allocateDirect(OUTBOUND_BUFFER_SIZE);
+            this.inbound = ByteBuffer.allocateDirect(INBOUND_BUFFER_SIZE);
+            this.inbound.flip();
+            this.writer = (ClientWriter<Serializable>) protocol.createWriter(outbound);
+            this.reader = protocol.createReader(inbound);
+        }
+
+        /**
+         * A request which does not fit is an error, it is not delayed, so the generator never waits for the server.
+         */
+        private void send(Serializable request) throws Exception {
+            int position = outbound.position();
+
+            try {
+                writer.write(request);
+            } catch (Exception e) {
+                outbound.position(position);
+                throw new IOException("Outbound buffer is full, the server does not keep up", e);
+            }
+
+            if ((key.interestOps() & SelectionKey.OP_WRITE) == 0) {
+                flush();
+            }
+        }
+
+        private void flush() throws IOException {
+            outbound.flip();
+            channel.write(outbound);
+            outbound.compact();
+
+            key.interestOps(outbound.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        private void receive() throws Exception {
+            inbound.compact();
+            int read = channel.read(inbound);
+            inbound.flip();
+
+            if (read < 0) {
+                throw new IOException("Connection closed by the server");
+            }
+
+            while (reader.isReady()) {
+                Object response = reader.read();
+
+                if (response != null) {
+                    onResponse(response);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package pl.mrugames.nucleus.server.load_harness;
+
+import com.codahale.metrics.MetricFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.mrugames.nucleus.server.Metrics;
+import pl.mrugames.nucleus.server.host.HostManager;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts a Host Manager on loopback and loads it with echo requests over many connections, one protocol at a time.
+ * Latency is measured from the time a request was due, see {@link LoadGenerator}.
+ * <p>
+ * Every run prints one JSON line with throughput and latency percentiles, which is also appended to the output file,
+ * so results of different builds can be compared.
+ * <p>
+ * Arguments: protocol (line, object, length_prefixed, web_socket or all), connections, requests per second,
+ * duration [s], warmup [s], port, generator threads, server worker threads, output file (optional)
+ * <p>
+ * Every connection needs a file descriptor on both sides, raise {@code ulimit -n} for thousands of connections.
+ */
+public class Main {
+    private final static Logger logger = LoggerFactory.getLogger(Main.class);
+
+    private static final long DRAIN_SECONDS = 10;
+
+    public static void main(String... args) throws Exception {
+        if (args.length != 8 && args.length != 9) {
+            logger.error("Please provide protocol, connections, requests per second, duration [s], warmup [s], port, generator threads, server threads and optionally output file");
+            return;
+        }
+
+        final List<HarnessProtocol> protocols = args[0].equals("all")
+                ? Arrays.asList(HarnessProtocol.values())
+                : Collections.singletonList(HarnessProtocol.valueOf(args[0].toUpperCase(Locale.ROOT)));
+        final int connections = Integer.valueOf(args[1]);
+        final double rate = Double.valueOf(args[2]);
+        final long durationSeconds = Long.valueOf(args[3]);
+        final long warmupSeconds = Long.valueOf(args[4]);
+        final int port = Integer.valueOf(args[5]);
+        final int generators = Math.min(Integer.valueOf(args[6]), connections);
+        final int serverThreads = Integer.valueOf(args[7]);
+        final String output = args.length == 9 ? args[8] : null;
+
+        for (HarnessProtocol protocol : protocols) {
+            String report = run(protocol, port + protocol.ordinal(), connections, rate, durationSeconds, warmupSeconds, generators, serverThreads);
+
+            System.out.println(report);
+
+            if (output != null) {
+                try (Writer writer = new FileWriter(output, true)) {
+                    writer.write(report);
+                    writer.write(System.lineSeparator());
+                }
+            }
+        }
+    }
+
+    private static String run(HarnessProtocol protocol,
+                              int port,
+                              int connections,
+                              double rate,
+                              long durationSeconds,
+                              long warmupSeconds,
+                              int generators,
+                              int serverThreads) throws Exception {
+        Metrics.getRegistry().removeMatching(MetricFilter.ALL);
+
+        String name = protocol.name().toLowerCase(Locale.ROOT);
+        HostManager hostManager = HostManager.create(serverThreads);
+        hostManager.newHost(name, port, protocol.createClientFactory(name));
+
+        ExecutorService hostExecutor = Executors.newSingleThreadExecutor();
+        List<SocketChannel> channels = new ArrayList<>(connections);
+
+        try {
+            hostExecutor.execute(hostManager);
+            hostManager.awaitStart(1, TimeUnit.MINUTES);
+
+            logger.info("[{}] Opening {} connections", name, connections);
+            for (int i = 0; i < connections; ++i) {
+                channels.add(connect(protocol, port));
+            }
+
+            logger.info("[{}] Sending {} requests/s for {} s after {} s of warmup", name, rate, durationSeconds, warmupSeconds);
+
+            List<LoadGenerator> loadGenerators = new ArrayList<>(generators);
+            List<Thread> threads = new ArrayList<>(generators);
+
+            for (int i = 0; i < generators; ++i) {
+                LoadGenerator generator = new LoadGenerator(
+                        protocol,
+                        channels.subList(i * connections / generators, (i + 1) * connections / generators),
+                        rate / generators,
+                        TimeUnit.SECONDS.toNanos(warmupSeconds),
+                        TimeUnit.SECONDS.toNanos(durationSeconds),
+                        TimeUnit.SECONDS.toNanos(DRAIN_SECONDS)
+                );
+
+                Thread thread = new Thread(generator, "load-generator-" + i);
+                thread.start();
+
+                loadGenerators.add(generator);
+                threads.add(thread);
+            }
+
+            LatencyHistogram histogram = new LatencyHistogram();
+            long sent = 0;
+            long received = 0;
+            long receivedInWindow = 0;
+            long errors = 0;
+
+            for (int i = 0; i < generators; ++i) {
+                threads.get(i).join();
+
+                LoadGenerator generator = loadGenerators.get(i);
+                histogram.add(generator.getHistogram());
+                sent += generator.getSent();
+                received += generator.getReceived();
+                receivedInWindow += generator.getReceivedInWindow();
+                errors += generator.getErrors();
+            }
+
+            return String.format(Locale.ROOT,
+                    "{\"protocol\":\"%s\",\"connections\":%d,\"targetRate\":%.1f,\"durationSeconds\":%d,\"sent\":%d,\"received\":%d,\"lost\":%d,\"errors\":%d," +
+                            "\"throughput\":%.1f,\"latencyMicros\":{\"p50\":%.1f,\"p99\":%.1f,\"p999\":%.1f,\"max\":%.1f}}",
+                    name, connections, rate, durationSeconds, sent, received, sent - received, errors,
+                    (double) receivedInWindow / durationSeconds,
+                    micros(histogram.getValueAtPercentile(50)),
+                    micros(histogram.getValueAtPercentile(99)),
+                    micros(histogram.getValueAtPercentile(99.9)),
+                    micros(histogram.getMax()));
+        } finally {
+            for (SocketChannel channel : channels) {
+                closeQuietly(channel);
+            }
+
+            hostManager.shutdown();
+            hostManager.awaitTermination(1, TimeUnit.MINUTES);
+            hostExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Host Manager signals start before its hosts are bound, so the first attempts could be refused.
+     */
+    private static SocketChannel connect(HarnessProtocol protocol, int port) throws Exception {
+        for (int attempt = 0; ; ++attempt) {
+            SocketChannel channel = SocketChannel.open();
+
+            try {
+                channel.connect(new InetSocketAddress("localhost", port));
+                channel.socket().setTcpNoDelay(true);
+                protocol.handshake(channel);
+                channel.configureBlocking(false);
+
+                return channel;
+            } catch (ConnectException e) {
+                closeQuietly(channel);
+
+                if (attempt == 50) {
+                    throw e;
+                }
+
+                TimeUnit.MILLISECONDS.sleep(100);
+            } catch (Exception e) {
+                closeQuietly(channel);
+                throw e;
+            }
+        }
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Failed to close a connection", e);
+        }
+    }
+
+    private static double micros(long nanos) {
+        return nanos / 1000.0;
+    }
+}
@@ -0,0 +1,41 @@
+package pl.mrugames.nucleus.server.load_test;
+
+import pl.mrugames.nucleus.server.client.ClientWorker;
+
+import javax.annotation.Nullable;
+
+/**
+ * Simulates a worker which does blocking I/O (eg. a JDBC call) on every request.
+ */
+class BlockingClientWorker implements ClientWorker<String, String> {
+    private final long blockingMillis;
+
+    BlockingClientWorker(long blockingMillis) {
+        this.blockingMillis = blockingMillis;
+    }
+
+    @Nullable
+    @Override
+    public String onInit() {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public String onRequest(String request) {
+        try {
+            Thread.sleep(blockingMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "interrupted";
+        }
+
+        return request;
+    }
+
+    @Nullable
+    @Override
+    public String onShutdown() {
+        return null;
+    }
+}
@@ -0,0 +1,138 @@
+package pl.mrugames.nucleus.server.load_test;
+
+import com.codahale.metrics.MetricFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import pl.mrugames.nucleus.client.Client;
+import pl.mrugames.nucleus.common.io.LineReader;
+import pl.mrugames.nucleus.common.io.LineWriter;
+import pl.mrugames.nucleus.server.Metrics;
+import pl.mrugames.nucleus.server.client.ClientFactory;
+import pl.mrugames.nucleus.server.client.ClientFactoryBuilder;
+import pl.mrugames.nucleus.server.client.ProtocolFactory;
+import pl.mrugames.nucleus.server.client.filters.FilterProcessor;
+import pl.mrugames.nucleus.server.host.HostManager;
+
+import java.net.ConnectException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Compares throughput of a fixed thread pool and virtual threads, when every request blocks its thread.
+ * Run with Java 21 or newer, otherwise only the fixed pool is measured.
+ * <p>
+ * Arguments: port, clients, requests per client, blocking time of a request [ms], fixed pool size
+ */
+public class Main {
+    private final static Logger logger = LoggerFactory.getLogger(Main.class);
+
+    public static void main(String... args) throws Exception {
+        if (args.length != 5) {
+            logger.error("Please provide port, clients, requests per client, blocking time [ms] and fixed pool size");
+            return;
+        }
+
+        final int port = Integer.valueOf(args[0]);
+        final int clients = Integer.valueOf(args[1]);
+        final int requests = Integer.valueOf(args[2]);
+        final long blockingMillis = Long.valueOf(args[3]);
+        final int poolSize = Integer.valueOf(args[4]);
+
+        logger.info("Load test started: {} clients, {} requests each, {} ms per request", clients, requests, blockingMillis);
+
+        double fixedPool = run("fixed-pool-" + poolSize, () -> HostManager.create(poolSize), port, clients, requests, blockingMillis);
+
+        double virtualThreads;
+        try {
+            virtualThreads = run("virtual-threads", HostManager::createWithVirtualThreads, port + 1, clients, requests, blockingMillis);
+        } catch (UnsupportedOperationException e) {
+            logger.warn(e.getMessage());
+            virtualThreads = Double.NaN;
+        }
+
+        logger.info("Fixed pool of {} threads: {} requests/s", poolSize, String.format("%.1f", fixedPool));
+        logger.info("Virtual threads: {} requests/s", String.format("%.1f", virtualThreads));
+    }
+
+    private static double run(String name, Supplier<HostManager> hostManagerFactory, int port, int clients, int requests, long blockingMillis) throws Exception {
+        Metrics.getRegistry().removeMatching(MetricFilter.ALL);
+
+        HostManager hostManager = hostManagerFactory.get();
+
+        ClientFactory clientFactory = new ClientFactoryBuilder<>(
+                (comm, clientInfo, controller) -> new BlockingClientWorker(blockingMillis),
+                new ProtocolFactory<>(LineWriter::new, LineReader::new, FilterProcessor.EMPTY_FILTER_PROCESSOR, FilterProcessor.EMPTY_FILTER_PROCESSOR, "default")
+        )
+                .setName(name)
+                .setRequestTimeout(600)
+                .setConnectionTimeout(600)
+                .build();
+
+        hostManager.newHost(name, port, clientFactory);
+
+        ExecutorService hostExecutor = Executors.newSingleThreadExecutor();
+        ExecutorService clientExecutor = Executors.newFixedThreadPool(clients);
+
+        try {
+            hostExecutor.execute(hostManager);
+            hostManager.awaitStart(1, TimeUnit.MINUTES);
+
+            CountDownLatch finished = new CountDownLatch(clients);
+            AtomicInteger failures = new AtomicInteger();
+
+            long start = System.nanoTime();
+
+            for (int i = 0; i < clients; ++i) {
+                clientExecutor.execute(() -> {
+                    try (Client<String, String> client = connect(port)) {
+                        for (int r = 0; r < requests; ++r) {
+                            client.write("request-" + r);
+                            client.read();
+                        }
+                    } catch (Exception e) {
+                        logger.error("[{}] Client failed", name, e);
+                        failures.incrementAndGet();
+                    } finally {
+                        finished.countDown();
+                    }
+                });
+            }
+
+            finished.await();
+
+            double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+            double throughput = (clients - failures.get()) * requests / seconds;
+
+            logger.info("[{}] {} requests in {} s, failed clients: {}", name, clients * requests, String.format("%.2f", seconds), failures.get());
+
+            return throughput;
+        } finally {
+            clientExecutor.shutdownNow();
+
+            hostManager.shutdown();
+            hostManager.awaitTermination(1, TimeUnit.MINUTES);
+            hostExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Host Manager signals start before its hosts are bound, so the first attempts could be refused.
+     */
+    private static Client<String, String> connect(int port) throws Exception {
+        for (int attempt = 0; ; ++attempt) {
+            try {
+                return new Client<>("localhost", port, LineWriter::new, LineReader::new);
+            } catch (ConnectException e) {
+                if (attempt == 50) {
+                    throw e;
+                }
+
+                TimeUnit.MILLISECONDS.sleep(100);
+            }
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package pl.mrugames.nucleus.client;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.mrugames.nucleus.common.io.LengthPrefixedReader;
+import pl.mrugames.nucleus.common.io.LengthPrefixedWriter;
+import pl.mrugames.nucleus.common.io.LineReader;
+import pl.mrugames.nucleus.common.io.LineWriter;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ClosedChannelException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AsyncClientSpec {
+    private ServerSocket serverSocket;
+    private ClientEngine clientEngine;
+    private AsyncClientBuilder<String, String> builder;
+
+    @BeforeEach
+    void before() throws IOException {
+        serverSocket = new ServerSocket(0);
+        clientEngine = new ClientEngine("test", 2);
+        builder = new AsyncClientBuilder<>(clientEngine, LineWriter::new, LineReader::new);
+    }
+
+    @AfterEach
+    void after() throws Exception {
+        clientEngine.close();
+        clientEngine.awaitTermination(10, TimeUnit.SECONDS);
+        serverSocket.close();
+    }
+
+    @Test
+    void givenManyRequestsInFlight_whenServerAnswersInOrder_thenEveryRequestGetsItsResponse() throws Exception {
+        serve(lines -> lines, 100);
+
+        AsyncClient<String, String> client = connect();
+
+        List<CompletableFuture<String>> responses = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            responses.add(client.request("request-" + i));
+        }
+
+        for (int i = 0; i < 100; ++i) {
+            assertThat(responses.get(i).get(10, TimeUnit.SECONDS)).isEqualTo("request-" + i);
+        }
+
+        assertThat(client.getPendingRequests()).isEqualTo(0);
+    }
+
+    @Test
+    void givenCorrelationById_whenServerAnswersOutOfOrder_thenMatchResponsesById() throws Exception {
+        serve(lines -> {
+            List<String> reversed = new ArrayList<>(lines);
+            Collections.reverse(reversed);
+            return reversed;
+        }, 3);
+
+        builder.setCorrelation(request -> request.split(":")[0], response -> response.split(":")[0]);
+        AsyncClient<String, String> client = connect();
+
+        CompletableFuture<String> first = client.request("1:a");
+        CompletableFuture<String> second = client.request("2:b");
+        CompletableFuture<String> third = client.request("3:c");
+
+        assertThat(first.get(10, TimeUnit.SECONDS)).isEqualTo("1:a");
+        assertThat(second.get(10, TimeUnit.SECONDS)).isEqualTo("2:b");
+        assertThat(third.get(10, TimeUnit.SECONDS)).isEqualTo("3:c");
+    }
+
+    @Test
+    void givenCorrelationById_whenIdIsAlreadyPending_thenRequestFails() throws Exception {
+        serve(lines -> Collections.emptyList(), 1);
+
+        builder.setCorrelation(request -> request.split(":")[0], response -> response.split(":")[0]);
+        AsyncClient<String, String> client = connect();
+
+        client.request("1:a");
+        CompletableFuture<String> duplicate = client.request("1:b");
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> duplicate.get(10, TimeUnit.SECONDS));
+        assertThat(e.getCause()).isInstanceOf(IllegalStateException.class);
+        assertThat(e.getCause().getMessage()).isEqualTo("Request with the same id is already pending: 1");
+    }
+
+    @Test
+    void givenFrameWithoutRequest_thenPassItToUnsolicitedFrameHandler() throws Exception {
+        serve(lines -> {
+            List<String> responses = new ArrayList<>(lines);
+            responses.add(0, "pushed");
+            return responses;
+        }, 1);
+
+        List<String> unsolicited = new CopyOnWriteArrayList<>();
+        builder.setCorrelation(request -> request, response -> response).setUnsolicitedFrameHandler(unsolicited::add);
+        AsyncClient<String, String> client = connect();
+
+        assertThat(client.request("request").get(10, TimeUnit.SECONDS)).isEqualTo("request");
+        assertThat(unsolicited).containsExactly("pushed");
+    }
+
+    @Test
+    void givenServerClosesConnection_thenPendingRequestsFail() throws Exception {
+        CountDownLatch received = new CountDownLatch(1);
+        serve(lines -> {
+            received.countDown();
+            return null;
+        }, 1);
+
+        AsyncClient<String, String> client = connect();
+        CompletableFuture<String> response = client.request("request");
+        received.await(10, TimeUnit.SECONDS);
+
+        assertThrows(ExecutionException.class, () -> response.get(10, TimeUnit.SECONDS));
+        assertThat(client.isClosed()).isTrue();
+    }
+
+    @Test
+    void givenClosed_whenRequest_thenFailWithClosedChannel() throws Exception {
+        serve(lines -> lines, 1);
+
+        AsyncClient<String, String> client = connect();
+        client.close();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> client.request("request").get(10, TimeUnit.SECONDS));
+        assertThat(e.getCause()).isInstanceOf(ClosedChannelException.class);
+        assertThrows(ClosedChannelException.class, () -> client.send("frame"));
+    }
+
+    @Test
+    void whenEngineClosed_thenPendingRequestsFail() throws Exception {
+        serve(lines -> Collections.emptyList(), 1);
+
+        AsyncClient<String, String> client = connect();
+        CompletableFuture<String> response = client.request("request");
+
+        clientEngine.close();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> response.get(10, TimeUnit.SECONDS));
+        assertThat(e.getCause()).isInstanceOf(ClosedChannelException.class);
+        assertThrows(IllegalStateException.class, () -> builder.connect("localhost", serverSocket.getLocalPort()));
+    }
+
+    @Test
+    void givenNoServer_whenConnect_thenFutureFails() throws Exception {
+        int port = serverSocket.getLocalPort();
+        serverSocket.close();
+
+        CompletableFuture<AsyncClient<String, String>> client = builder.connect("localhost", port);
+
+        assertThrows(ExecutionException.class, () -> client.get(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void givenZeroCopyReader_whenConnect_thenFutureFails() {
+        CompletableFuture<?> client = new AsyncClientBuilder<>(clientEngine, LengthPrefixedWriter::new, LengthPrefixedReader::new)
+                .connect("localhost", serverSocket.getLocalPort());
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> client.get(10, TimeUnit.SECONDS));
+        assertThat(e.getCause()).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    private AsyncClient<String, String> connect() throws Exception {
+        return builder.connect("localhost", serverSocket.getLocalPort()).get(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Accepts one connection, reads the given amount of lines and writes lines returned by the handler.
+     * Null closes the connection.
+     */
+    private void serve(LinesHandler handler, int lines) {
+        Thread thread = new Thread(() -> {
+            try (Socket socket = serverSocket.accept()) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                OutputStream output = socket.getOutputStream();
+
+                List<String> received = new ArrayList<>();
+                for (int i = 0; i < lines; ++i) {
+                    received.add(reader.readLine());
+                }
+
+                List<String> responses = handler.handle(received);
+                if (responses == null) {
+                    return;
+                }
+
+                for (String response : responses) {
+                    output.write((response + "\r\n").getBytes(StandardCharsets.UTF_8));
+                }
+                output.flush();
+
+                // keeps the connection open until the client closes it
+                while (reader.readLine() != null) {
+                }
+            } catch (IOException e) {
+                // the test has finished
+            }
+        });
+
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private interface LinesHandler {
+        List<String> handle(List<String> lines);
+    }
+}
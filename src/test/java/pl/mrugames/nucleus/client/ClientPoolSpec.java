@@ -0,0 +1,345 @@
+package pl.mrugames.nucleus.client;
+
+import com.codahale.metrics.MetricFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.mrugames.nucleus.common.io.LineReader;
+import pl.mrugames.nucleus.common.io.LineWriter;
+import pl.mrugames.nucleus.server.Metrics;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+
+import static com.codahale.metrics.MetricRegistry.name;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ClientPoolSpec {
+    private final List<EchoServer> servers = new ArrayList<>();
+    private ClientPoolBuilder<String, String> builder;
+    private ClientPool<String, String> pool;
+
+    @BeforeEach
+    void before() {
+        Metrics.getRegistry().removeMatching(MetricFilter.ALL);
+        builder = new ClientPoolBuilder<>(LineWriter::new, LineReader::new)
+                .setName("pool")
+                .setValidationInterval(20, TimeUnit.MILLISECONDS);
+    }
+
+    @AfterEach
+    void after() throws IOException {
+        if (pool != null) {
+            pool.close();
+        }
+
+        for (EchoServer server : servers) {
+            server.close();
+        }
+
+        Metrics.getRegistry().removeMatching(MetricFilter.ALL);
+    }
+
+    @Test
+    void givenReturnedConnection_whenLease_thenReuseIt() throws Exception {
+        EchoServer server = server();
+        pool = builder.addEndpoint("localhost", server.getPort()).build();
+
+        for (int i = 0; i < 3; ++i) {
+            try (PooledClient<String, String> client = pool.lease()) {
+                client.write("request-" + i);
+                assertThat(client.read()).isEqualTo("request-" + i + "\r\n");
+            }
+        }
+
+        awaitUntil(() -> server.getAccepted() == 1);
+        awaitUntil(() -> pool.getIdleConnections() == 1);
+        assertThat(Metrics.getRegistry().counter(name(ClientPool.class, "pool", "created_connections")).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    void givenMaxConnectionsLeased_whenLease_thenWaitUntilOneIsReturned() throws Exception {
+        EchoServer server = server();
+        pool = builder.addEndpoint("localhost", server.getPort()).setMaxConnections(1).build();
+
+        PooledClient<String, String> leased = pool.lease();
+
+        assertThrows(TimeoutException.class, () -> pool.lease(50, TimeUnit.MILLISECONDS));
+        assertThat(Metrics.getRegistry().counter(name(ClientPool.class, "pool", "lease_timeouts")).getCount()).isEqualTo(1);
+
+        CompletableFuture<PooledClient<String, String>> waiting = CompletableFuture.supplyAsync(() -> {
+            try {
+                return pool.lease(10, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+
+        leased.close();
+
+        assertThat(waiting.get(10, TimeUnit.SECONDS)).isNotNull();
+        awaitUntil(() -> server.getAccepted() == 1);
+    }
+
+    @Test
+    void givenMinConnections_thenOpenThemInBackground() throws Exception {
+        EchoServer server = server();
+        pool = builder.addEndpoint("localhost", server.getPort()).setMinConnections(3).build();
+
+        awaitUntil(() -> pool.getIdleConnections() == 3);
+        awaitUntil(() -> server.getAccepted() == 3);
+    }
+
+    @Test
+    void givenIdleConnectionsAboveMinimum_whenIdleTimeoutPasses_thenEvictThem() throws Exception {
+        EchoServer server = server();
+        pool = builder.addEndpoint("localhost", server.getPort())
+                .setMinConnections(1)
+                .setIdleTimeout(50, TimeUnit.MILLISECONDS)
+                .build();
+        awaitUntil(() -> pool.getIdleConnections() == 1);
+
+        PooledClient<String, String> first = pool.lease();
+        PooledClient<String, String> second = pool.lease();
+        PooledClient<String, String> third = pool.lease();
+        first.close();
+        second.close();
+        third.close();
+
+        awaitUntil(() -> pool.getConnections() == 1);
+        assertThat(Metrics.getRegistry().counter(name(ClientPool.class, "pool", "evicted_connections")).getCount()).isEqualTo(2);
+    }
+
+    @Test
+    void givenServerClosedConnections_thenReplaceThemInBackground() throws Exception {
+        EchoServer server = server();
+        pool = builder.addEndpoint("localhost", server.getPort()).setMinConnections(2).build();
+        awaitUntil(() -> pool.getIdleConnections() == 2);
+        awaitUntil(() -> server.getAccepted() == 2);
+
+        server.closeConnections();
+
+        awaitUntil(() -> server.getAccepted() == 4 && pool.getIdleConnections() == 2);
+        assertThat(Metrics.getRegistry().counter(name(ClientPool.class, "pool", "failed_health_checks")).getCount()).isEqualTo(2);
+
+        try (PooledClient<String, String> client = pool.lease()) {
+            client.write("request");
+            assertThat(client.read()).isEqualTo("request\r\n");
+        }
+    }
+
+    @Test
+    void givenFailingHealthCheck_thenCloseIdleConnections() throws Exception {
+        EchoServer server = server();
+        pool = builder.addEndpoint("localhost", server.getPort()).setHealthCheck(client -> false).build();
+
+        pool.lease().close();
+
+        awaitUntil(() -> pool.getConnections() == 0);
+    }
+
+    @Test
+    void givenIdleConnectionWithUnreadResponse_thenCloseIt() throws Exception {
+        EchoServer server = server();
+        pool = builder.addEndpoint("localhost", server.getPort()).build();
+
+        PooledClient<String, String> client = pool.lease();
+        client.write("abandoned request");
+        client.close();
+
+        awaitUntil(() -> pool.getConnections() == 0);
+        assertThat(Metrics.getRegistry().counter(name(ClientPool.class, "pool", "failed_health_checks")).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    void givenManyEndpoints_thenSpreadConnectionsRoundRobin() throws Exception {
+        EchoServer first = server();
+        EchoServer second = server();
+        pool = builder.addEndpoint("localhost", first.getPort()).addEndpoint("localhost", second.getPort()).build();
+
+        List<PooledClient<String, String>> clients = new ArrayList<>();
+        for (int i = 0; i < 4; ++i) {
+            clients.add(pool.lease());
+        }
+
+        awaitUntil(() -> first.getAccepted() == 2);
+        awaitUntil(() -> second.getAccepted() == 2);
+        assertThat(clients).extracting(PooledClient::getPort).containsOnly(first.getPort(), second.getPort());
+    }
+
+    @Test
+    void givenEndpointDown_whenLease_thenUseOtherEndpoints() throws Exception {
+        EchoServer server = server();
+        EchoServer down = server();
+        down.close();
+
+        pool = builder.addEndpoint("localhost", down.getPort())
+                .addEndpoint("localhost", server.getPort())
+                .setValidationInterval(10, TimeUnit.SECONDS)
+                .build();
+
+        for (int i = 0; i < 4; ++i) {
+            assertThat(pool.lease().getPort()).isEqualTo(server.getPort());
+        }
+
+        awaitUntil(() -> server.getAccepted() == 4);
+        assertThat(Metrics.getRegistry().counter(name(ClientPool.class, "pool", "failed_connections")).getCount()).isEqualTo(1);
+    }
+
+    @Test
+    void givenAllEndpointsDown_whenLease_thenFail() throws Exception {
+        EchoServer down = server();
+        down.close();
+
+        pool = builder.addEndpoint("localhost", down.getPort()).build();
+
+        assertThrows(IOException.class, () -> pool.lease());
+        assertThat(pool.getConnections()).isEqualTo(0);
+    }
+
+    @Test
+    void givenInvalidatedConnection_whenReturned_thenCloseIt() throws Exception {
+        EchoServer server = server();
+        pool = builder.addEndpoint("localhost", server.getPort()).build();
+
+        PooledClient<String, String> client = pool.lease();
+        client.invalidate();
+        client.close();
+
+        assertThat(pool.getConnections()).isEqualTo(0);
+
+        pool.lease().close();
+        awaitUntil(() -> server.getAccepted() == 2);
+    }
+
+    @Test
+    void givenReturnedClient_whenWrite_thenFail() throws Exception {
+        EchoServer server = server();
+        pool = builder.addEndpoint("localhost", server.getPort()).build();
+
+        PooledClient<String, String> client = pool.lease();
+        client.close();
+        client.close();
+
+        assertThrows(IllegalStateException.class, () -> client.write("request"));
+        assertThat(pool.getLeasedConnections()).isEqualTo(0);
+        awaitUntil(() -> pool.getIdleConnections() == 1);
+    }
+
+    @Test
+    void givenClosedPool_whenLease_thenFail() throws Exception {
+        EchoServer server = server();
+        pool = builder.addEndpoint("localhost", server.getPort()).build();
+
+        PooledClient<String, String> client = pool.lease();
+        pool.close();
+        client.close();
+
+        assertThrows(IllegalStateException.class, () -> pool.lease());
+        assertThat(pool.getConnections()).isEqualTo(0);
+    }
+
+    @Test
+    void givenInvalidConnectionLimits_thenThrowException() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> builder.addEndpoint("localhost", 1).setMinConnections(3).setMaxConnections(2).build());
+
+        assertThat(e.getMessage()).isEqualTo("Connections per endpoint have to satisfy 0 <= min <= max and max >= 1, min: 3, max: 2");
+        assertThrows(IllegalArgumentException.class, () -> new ClientPoolBuilder<>(LineWriter::new, LineReader::new).build());
+    }
+
+    private EchoServer server() throws IOException {
+        EchoServer server = new EchoServer();
+        servers.add(server);
+        return server;
+    }
+
+    private void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime() - deadline).isNegative();
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Echoes lines of every accepted connection.
+     */
+    private static class EchoServer implements AutoCloseable {
+        private final ServerSocket serverSocket;
+        private final List<Socket> sockets;
+
+        private EchoServer() throws IOException {
+            this.serverSocket = new ServerSocket(0);
+            this.sockets = new CopyOnWriteArrayList<>();
+
+            Thread thread = new Thread(this::accept);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void accept() {
+            try {
+                while (true) {
+                    Socket socket = serverSocket.accept();
+                    sockets.add(socket);
+
+                    Thread thread = new Thread(() -> echo(socket));
+                    thread.setDaemon(true);
+                    thread.start();
+                }
+            } catch (IOException e) {
+                // the server is closed
+            }
+        }
+
+        private void echo(Socket socket) {
+            try (Socket closeable = socket) {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(closeable.getInputStream(), StandardCharsets.UTF_8));
+                OutputStream output = closeable.getOutputStream();
+
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    output.write((line + "\r\n").getBytes(StandardCharsets.UTF_8));
+                    output.flush();
+                }
+            } catch (IOException e) {
+                // the connection is closed
+            }
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        int getAccepted() {
+            return sockets.size();
+        }
+
+        void closeConnections() throws IOException {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            serverSocket.close();
+            closeConnections();
+        }
+    }
+}
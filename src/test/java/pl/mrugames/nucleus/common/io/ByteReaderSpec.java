@@ -8,6 +8,7 @@ import pl.mrugames.nucleus.server.SocketHelper;
 import java.io.IOException;
 
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class ByteReaderSpec {
     private ByteReader byteReader;
@@ -132,4 +133,20 @@ class ByteReaderSpec {
 
     }
 
+    @Test
+    void givenLengthAboveMaximum_whenCheckReady_thenException() throws IOException {
+        byteReader = new ByteReader(socketHelper.getReadBuffer(), 100);
+        socketHelper.writeInt(101);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, byteReader::isReady);
+        assertThat(e.getMessage()).isEqualTo("Frame length exceeds maximum allowed size. Frame length: 101");
+    }
+
+    @Test
+    void givenNegativeLength_whenCheckReady_thenException() throws IOException {
+        socketHelper.writeInt(-1);
+
+        assertThrows(IllegalArgumentException.class, byteReader::isReady);
+    }
+
 }
@@ -0,0 +1,124 @@
+package pl.mrugames.nucleus.common.io;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CompactSerializerSpec {
+    private CompactSerializer serializer;
+    private ByteBuffer buffer;
+
+    @BeforeEach
+    void before() {
+        serializer = new CompactSerializer.Builder().build();
+        buffer = ByteBuffer.allocate(64);
+    }
+
+    @Test
+    void givenBuiltInTypes_whenSerializeAndDeserialize_thenReturnTheSame() throws Exception {
+        Object[] values = {"ascii", "za\u017c\u00f3\u0142\u0107", 0, -1, Integer.MIN_VALUE, Long.MAX_VALUE, -5L, 1.5, true, false, null};
+
+        for (Object value : values) {
+            serializer.serialize(value, buffer);
+        }
+
+        serializer.serialize(new byte[]{1, 2, 3}, buffer);
+        buffer.flip();
+
+        for (Object value : values) {
+            assertThat(serializer.deserialize(buffer)).isEqualTo(value);
+        }
+
+        assertThat((byte[]) serializer.deserialize(buffer)).containsExactly(1, 2, 3);
+        assertThat(buffer.hasRemaining()).isFalse();
+    }
+
+    @Test
+    void givenSmallNumbers_whenSerialize_thenTakeTwoBytes() throws Exception {
+        serializer.serialize(-3, buffer);
+        serializer.serialize(60L, buffer);
+
+        assertThat(buffer.position()).isEqualTo(4);
+    }
+
+    @Test
+    void givenVarInts_whenPutAndGet_thenReturnTheSame() {
+        int[] values = {0, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1};
+
+        for (int value : values) {
+            CompactSerializer.putVarInt(buffer, value);
+        }
+        buffer.flip();
+
+        for (int value : values) {
+            assertThat(CompactSerializer.getVarInt(buffer)).isEqualTo(value);
+        }
+    }
+
+    @Test
+    void givenTooLongVarInt_whenGet_thenException() {
+        buffer.put(new byte[]{(byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF, 0x01}).flip();
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> CompactSerializer.getVarInt(buffer));
+        assertThat(e.getMessage()).isEqualTo("Malformed variable length integer");
+    }
+
+    @Test
+    void givenVarIntOverflowingInt_whenGet_thenException() {
+        buffer.put(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, 0x10}).flip();
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> CompactSerializer.getVarInt(buffer));
+        assertThat(e.getMessage()).isEqualTo("Malformed variable length integer");
+    }
+
+    @Test
+    void givenStringLongerThanFrame_whenGet_thenException() {
+        ByteBuffer backing = ByteBuffer.allocate(16);
+        backing.put((byte) 10).put("abc".getBytes()).flip();
+        ByteBuffer frame = backing.slice();
+        frame.limit(4);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> CompactSerializer.getString(frame));
+        assertThat(e.getMessage()).isEqualTo("Length exceeds the frame. Length: 10, remaining: 3");
+    }
+
+    @Test
+    void givenUnregisteredClass_whenSerialize_thenException() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> serializer.serialize(new Object(), buffer));
+        assertThat(e.getMessage()).isEqualTo("Class is not registered: java.lang.Object");
+    }
+
+    @Test
+    void givenUnknownTypeId_whenDeserialize_thenException() {
+        buffer.put((byte) 100).flip();
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, () -> serializer.deserialize(buffer));
+        assertThat(e.getMessage()).isEqualTo("Unknown type id: 100");
+    }
+
+    @Test
+    void givenReservedOrDuplicatedId_whenRegister_thenException() {
+        CompactSerializer.Codec<StringBuilder> codec = new CompactSerializer.Codec<StringBuilder>() {
+            @Override
+            public void write(StringBuilder value, ByteBuffer target) {
+            }
+
+            @Override
+            public StringBuilder read(ByteBuffer source) {
+                return new StringBuilder();
+            }
+        };
+
+        IllegalArgumentException reserved = assertThrows(IllegalArgumentException.class, () -> new CompactSerializer.Builder().register(StringBuilder.class, 3, codec));
+        assertThat(reserved.getMessage()).isEqualTo("Type ids below 16 are reserved, id: 3");
+
+        CompactSerializer.Builder builder = new CompactSerializer.Builder().register(StringBuilder.class, 16, codec);
+
+        IllegalArgumentException duplicatedClass = assertThrows(IllegalArgumentException.class, () -> builder.register(StringBuilder.class, 17, codec));
+        assertThat(duplicatedClass.getMessage()).isEqualTo("Class is already registered: java.lang.StringBuilder");
+    }
+}
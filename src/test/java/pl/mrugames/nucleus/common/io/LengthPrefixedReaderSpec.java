@@ -0,0 +1,177 @@
+package pl.mrugames.nucleus.common.io;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.mrugames.nucleus.server.client.frames.BufferFrame;
+
+import java.io.ByteArrayOutputStream;
+import java.io.NotSerializableException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class LengthPrefixedReaderSpec {
+    private ByteBuffer readBuffer;
+
+    @BeforeEach
+    void before() {
+        readBuffer = ByteBuffer.allocate(1024);
+        readBuffer.flip();
+    }
+
+    @Test
+    void givenIntPrefix_whenRead_thenReturnReadOnlySliceOfTheBuffer() {
+        LengthPrefixedReader reader = new LengthPrefixedReader(readBuffer);
+        receive((byte) 0, (byte) 0, (byte) 0, (byte) 3, (byte) 1, (byte) 2, (byte) 3);
+
+        assertThat(reader.isReady()).isTrue();
+        ByteBuffer payload = reader.read().getPayload();
+
+        assertThat(payload.isReadOnly()).isTrue();
+        assertThat(payload).isEqualTo(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+        assertThat(readBuffer.hasRemaining()).isFalse();
+
+        readBuffer.array()[4] = 9;
+        assertThat(payload.get(0)).isEqualTo((byte) 9);
+    }
+
+    @Test
+    void givenFrameArrivesInParts_whenCheckReady_thenTrueOnlyWhenComplete() {
+        LengthPrefixedReader reader = new LengthPrefixedReader(readBuffer);
+
+        receive((byte) 0, (byte) 0);
+        assertThat(reader.isReady()).isFalse();
+
+        receive((byte) 0, (byte) 2, (byte) 1);
+        assertThat(reader.isReady()).isFalse();
+
+        receive((byte) 2);
+        assertThat(reader.isReady()).isTrue();
+    }
+
+    @Test
+    void givenVarIntPrefix_whenRead_thenDecodeMultiByteLength() {
+        LengthPrefixedReader reader = new LengthPrefixedReader(readBuffer, LengthPrefix.VARINT, 1000);
+
+        receive((byte) 0xAC);
+        assertThat(reader.isReady()).isFalse();
+
+        receive((byte) 0x02);
+        assertThat(reader.isReady()).isFalse();
+
+        receive(new byte[300]);
+        assertThat(reader.isReady()).isTrue();
+        assertThat(reader.read().getPayload().remaining()).isEqualTo(300);
+    }
+
+    @Test
+    void givenFramesInTheBuffer_whenRead_thenEverySliceHasItsOwnBounds() {
+        LengthPrefixedReader reader = new LengthPrefixedReader(readBuffer, LengthPrefix.VARINT, 1000);
+        receive((byte) 1, (byte) 7, (byte) 2, (byte) 8, (byte) 9, (byte) 0);
+
+        assertThat(reader.read().getPayload()).isEqualTo(ByteBuffer.wrap(new byte[]{7}));
+        assertThat(reader.read().getPayload()).isEqualTo(ByteBuffer.wrap(new byte[]{8, 9}));
+        assertThat(reader.read().getPayload().hasRemaining()).isFalse();
+        assertThat(reader.isReady()).isFalse();
+    }
+
+    @Test
+    void givenLengthAboveMaximum_whenCheckReady_thenExceptionBeforePayloadArrives() {
+        LengthPrefixedReader reader = new LengthPrefixedReader(readBuffer, LengthPrefix.INT, 100);
+        receive((byte) 0, (byte) 0, (byte) 0, (byte) 101);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, reader::isReady);
+        assertThat(e.getMessage()).isEqualTo("Frame length exceeds maximum allowed size. Frame length: 101");
+    }
+
+    @Test
+    void givenNegativeLength_whenCheckReady_thenException() {
+        LengthPrefixedReader reader = new LengthPrefixedReader(readBuffer);
+        receive((byte) 0xFF, (byte) 0xFF, (byte) 0xFF, (byte) 0xFF);
+
+        assertThrows(IllegalArgumentException.class, reader::isReady);
+    }
+
+    @Test
+    void givenVarIntLongerThan5Bytes_whenCheckReady_thenException() {
+        LengthPrefixedReader reader = new LengthPrefixedReader(readBuffer, LengthPrefix.VARINT, 1000);
+        receive((byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80);
+
+        assertThrows(IllegalStateException.class, reader::isReady);
+    }
+
+    @Test
+    void givenWriter_whenWriteWithVarInt_thenReaderReturnsTheSamePayload() {
+        ByteBuffer writeBuffer = ByteBuffer.allocate(1024);
+        LengthPrefixedWriter writer = new LengthPrefixedWriter(writeBuffer, LengthPrefix.VARINT);
+
+        ByteBuffer payload = ByteBuffer.wrap(new byte[]{0, 1, 2, 3});
+        payload.position(1);
+
+        writer.write(new BufferFrame(payload));
+
+        assertThat(payload.position()).isEqualTo(1);
+        assertThat(writeBuffer.position()).isEqualTo(4);
+
+        writeBuffer.flip();
+        receive(writeBuffer);
+
+        BufferFrame frame = new LengthPrefixedReader(readBuffer, LengthPrefix.VARINT, 1000).read();
+        assertThat(frame.getPayload()).isEqualTo(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    void givenVarIntPrefix_whenComputeSize_thenMatchEncodedSize() {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+
+        for (int length : new int[]{0, 127, 128, 16383, 16384, Integer.MAX_VALUE}) {
+            buffer.clear();
+            LengthPrefix.VARINT.put(buffer, length);
+
+            assertThat(LengthPrefix.VARINT.size(length)).isEqualTo(buffer.position());
+        }
+    }
+
+    @Test
+    void givenVarIntPrefixOverflowingInt_whenPeek_thenException() {
+        for (byte last : new byte[]{0x08, 0x10, (byte) 0x80}) {
+            ByteBuffer buffer = ByteBuffer.wrap(new byte[]{(byte) 0x80, (byte) 0x80, (byte) 0x80, (byte) 0x80, last});
+
+            IllegalStateException e = assertThrows(IllegalStateException.class, () -> LengthPrefix.VARINT.peek(buffer));
+            assertThat(e.getMessage()).isEqualTo("Malformed variable length integer");
+        }
+    }
+
+    @Test
+    void givenVarIntPrefixOfMaxLength_whenPeek_thenReturnIt() {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        LengthPrefix.VARINT.put(buffer, Integer.MAX_VALUE);
+        buffer.flip();
+
+        assertThat(LengthPrefix.VARINT.peek(buffer)).isEqualTo(Integer.MAX_VALUE);
+    }
+
+    @Test
+    void whenSerializeFrame_thenException() {
+        BufferFrame frame = new BufferFrame(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+
+        assertThrows(NotSerializableException.class, () -> new ObjectOutputStream(new ByteArrayOutputStream()).writeObject(frame));
+    }
+
+    private void receive(byte... bytes) {
+        receive(ByteBuffer.wrap(bytes));
+    }
+
+    private void receive(ByteBuffer bytes) {
+        int position = readBuffer.position();
+
+        readBuffer.position(readBuffer.limit());
+        readBuffer.limit(readBuffer.capacity());
+        readBuffer.put(bytes);
+
+        readBuffer.limit(readBuffer.position());
+        readBuffer.position(position);
+    }
+}
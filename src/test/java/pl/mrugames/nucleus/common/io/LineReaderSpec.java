@@ -6,8 +6,11 @@ import org.junit.jupiter.api.Test;
 import pl.mrugames.nucleus.server.SocketHelper;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class LineReaderSpec {
     private SocketHelper socketHelper;
@@ -83,4 +86,88 @@ class LineReaderSpec {
         assertThat(lineReader.read()).isEqualTo("and a...");
     }
 
+    @Test
+    void givenLineEndingSplitBetweenReads_whenIsReady_thenTrue() throws Exception {
+        socketHelper.write("split\r".getBytes());
+        assertThat(lineReader.isReady()).isFalse();
+
+        socketHelper.write("\n".getBytes());
+
+        assertThat(lineReader.isReady()).isTrue();
+        assertThat(lineReader.read()).isEqualTo("split");
+    }
+
+    @Test
+    void givenLfWithoutCr_whenIsReady_thenFalse() throws Exception {
+        socketHelper.write("not\nyet".getBytes());
+        assertThat(lineReader.isReady()).isFalse();
+
+        socketHelper.write(lineWriter.getLineEnding().getBytes());
+
+        assertThat(lineReader.read()).isEqualTo("not\nyet");
+    }
+
+    @Test
+    void givenBufferCompactedBetweenCalls_whenRead_thenReturnLine() throws Exception {
+        socketHelper.write(("first" + lineWriter.getLineEnding() + "sec").getBytes());
+        assertThat(lineReader.read()).isEqualTo("first");
+        assertThat(lineReader.isReady()).isFalse();
+
+        socketHelper.write(("ond" + lineWriter.getLineEnding()).getBytes()); // compacts the buffer
+
+        assertThat(lineReader.read()).isEqualTo("second");
+        assertThat(socketHelper.getReadBuffer().hasRemaining()).isFalse();
+    }
+
+    @Test
+    void givenMultiByteCharacters_whenRead_thenDecodeThemAndMovePositionByBytes() throws Exception {
+        socketHelper.write(("za\u017c\u00f3\u0142\u0107" + lineWriter.getLineEnding() + "x" + lineWriter.getLineEnding()).getBytes(StandardCharsets.UTF_8));
+
+        assertThat(lineReader.read()).isEqualTo("za\u017c\u00f3\u0142\u0107");
+        assertThat(lineReader.read()).isEqualTo("x");
+    }
+
+    @Test
+    void givenDirectBuffer_whenRead_thenReturnLine() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(32);
+        buffer.put("direct\r\nrest".getBytes()).flip();
+        lineReader = new LineReader(buffer);
+
+        assertThat(lineReader.read()).isEqualTo("direct");
+        assertThat(buffer.remaining()).isEqualTo(4);
+    }
+
+    @Test
+    void givenNoLine_whenRead_thenException() {
+        IllegalStateException e = assertThrows(IllegalStateException.class, lineReader::read);
+        assertThat(e.getMessage()).isEqualTo("No complete line in the buffer");
+    }
+
+    @Test
+    void givenLineLongerThanMax_whenIsReady_thenException() throws Exception {
+        lineReader = new LineReader(socketHelper.getReadBuffer(), 4);
+        socketHelper.write("12345\r\n".getBytes());
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, lineReader::isReady);
+        assertThat(e.getMessage()).isEqualTo("Line length exceeds maximum allowed size. Line length: 5");
+    }
+
+    @Test
+    void givenIncompleteLineLongerThanMax_whenIsReady_thenException() throws Exception {
+        lineReader = new LineReader(socketHelper.getReadBuffer(), 4);
+        socketHelper.write("1234\r".getBytes());
+        assertThat(lineReader.isReady()).isFalse();
+
+        socketHelper.write("5".getBytes());
+
+        assertThrows(IllegalArgumentException.class, lineReader::isReady);
+    }
+
+    @Test
+    void givenLineOfMaxLength_whenRead_thenReturnIt() throws Exception {
+        lineReader = new LineReader(socketHelper.getReadBuffer(), 4);
+        socketHelper.write("1234\r\n".getBytes());
+
+        assertThat(lineReader.read()).isEqualTo("1234");
+    }
 }
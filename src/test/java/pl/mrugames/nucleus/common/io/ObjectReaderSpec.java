@@ -5,14 +5,18 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import pl.mrugames.nucleus.server.SocketHelper;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.ByteBuffer;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class Frame implements Serializable {
-    private final long num;
-    private final String str;
+    final long num;
+    final String str;
 
     public Frame(long num, String str) {
         this.num = num;
@@ -65,4 +69,72 @@ class ObjectReaderSpec {
         assertThat(objectReader.read()).isEqualTo(new Frame(99, "hello!"));
     }
 
+    @Test
+    void givenCompactSerializer_whenDataExchange_thenReturnTheSameFrame() throws Exception {
+        objectReader = new ObjectReader<>(socketHelper.getReadBuffer(), compactSerializer());
+        objectWriter = new ObjectWriter<>(socketHelper.getWriteBuffer(), compactSerializer());
+
+        objectWriter.write(new Frame(99, "hello!"));
+        objectWriter.write(new Frame(-1, null));
+        socketHelper.flush();
+
+        assertThat(objectReader.read()).isEqualTo(new Frame(99, "hello!"));
+        assertThat(objectReader.read()).isEqualTo(new Frame(-1, null));
+        assertThat(objectReader.isReady()).isFalse();
+    }
+
+    @Test
+    void whenWrite_thenPrefixFrameWithItsLength() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        new ObjectWriter<Frame>(buffer, compactSerializer()).write(new Frame(1, "ab"));
+
+        // type id, zigzag num, null marker of the string, string length, string
+        assertThat(buffer.getInt(0)).isEqualTo(1 + 1 + 1 + 1 + 2);
+        assertThat(buffer.position()).isEqualTo(4 + 6);
+    }
+
+    @Test
+    void givenFrameDoesNotFit_whenWrite_thenRestorePosition() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.put((byte) 1);
+
+        assertThrows(java.nio.BufferOverflowException.class, () -> new ObjectWriter<Frame>(buffer, compactSerializer()).write(new Frame(1, "too long")));
+        assertThat(buffer.position()).isEqualTo(1);
+    }
+
+    @Test
+    void givenStreams_whenDataExchange_thenReturnTheSameFrame() throws Exception {
+        String longString = new String(new char[5000]).replace("\0", "x");
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+        ObjectWriter<Frame> writer = new ObjectWriter<>(outputStream);
+        writer.write(new Frame(1, longString));
+        writer.write(new Frame(2, "short"));
+
+        ObjectReader<Frame> reader = new ObjectReader<>(new ByteArrayInputStream(outputStream.toByteArray()));
+
+        assertThat(reader.read()).isEqualTo(new Frame(1, longString));
+        assertThat(reader.read()).isEqualTo(new Frame(2, "short"));
+    }
+
+    private CompactSerializer compactSerializer() {
+        return new CompactSerializer.Builder()
+                .register(Frame.class, 16, new CompactSerializer.Codec<Frame>() {
+                    @Override
+                    public void write(Frame value, ByteBuffer target) {
+                        CompactSerializer.putVarLong(target, CompactSerializer.zigZag(value.num));
+                        target.put((byte) (value.str == null ? 0 : 1));
+                        if (value.str != null) {
+                            CompactSerializer.putString(target, value.str);
+                        }
+                    }
+
+                    @Override
+                    public Frame read(ByteBuffer source) {
+                        long num = CompactSerializer.unZigZag(CompactSerializer.getVarLong(source));
+                        return new Frame(num, source.get() == 0 ? null : CompactSerializer.getString(source));
+                    }
+                })
+                .build();
+    }
 }
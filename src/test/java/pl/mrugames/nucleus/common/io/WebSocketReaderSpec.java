@@ -2,10 +2,16 @@ package pl.mrugames.nucleus.common.io;
 
 import org.junit.jupiter.api.Test;
 import pl.mrugames.nucleus.server.client.frames.WebSocketFrame;
+import pl.mrugames.nucleus.server.websocket.PerMessageDeflate;
+import pl.mrugames.nucleus.server.websocket.PerMessageDeflateExtension;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class WebSocketReaderSpec {
     private ByteBuffer byteBuffer;
@@ -51,4 +57,351 @@ class WebSocketReaderSpec {
         assertThat(reader.isReady()).isFalse();
     }
 
+    @Test
+    void givenPayloadLongerThanWord_whenRead_thenUnmaskAllBytes() throws Exception {
+        byte[] mask = {(byte) 0xB5, (byte) 0x9C, 0x1E, (byte) 0x93};
+        byte[] payload = randomPayload(21);
+
+        byteBuffer = ByteBuffer.allocateDirect(2 + 4 + payload.length);
+        byteBuffer.put((byte) 0x82).put((byte) (0x80 | payload.length)).put(mask);
+        for (int i = 0; i < payload.length; ++i) {
+            byteBuffer.put((byte) (payload[i] ^ mask[i % 4]));
+        }
+        byteBuffer.flip();
+        reader = new WebSocketReader(byteBuffer);
+
+        assertThat(reader.read().getPayload()).containsExactly(payload);
+        assertThat(byteBuffer.hasRemaining()).isFalse();
+    }
+
+    @Test
+    void givenLittleEndianBuffer_whenUnmask_thenResultIsSameAsForBigEndian() {
+        byte[] masked = randomPayload(19);
+        int mask = 0xB59C1E93;
+
+        byte[] bigEndian = new byte[masked.length];
+        byte[] littleEndian = new byte[masked.length];
+
+        WebSocketReader.unmask(ByteBuffer.wrap(masked), 0, bigEndian, mask);
+        WebSocketReader.unmask(ByteBuffer.wrap(masked).order(ByteOrder.LITTLE_ENDIAN), 0, littleEndian, mask);
+
+        for (int i = 0; i < masked.length; ++i) {
+            assertThat(bigEndian[i]).isEqualTo((byte) (masked[i] ^ (mask >>> (24 - 8 * (i % 4)))));
+        }
+        assertThat(littleEndian).containsExactly(bigEndian);
+    }
+
+    @Test
+    void givenUnmaskedFrame_whenRead_thenCopyPayload() throws Exception {
+        mockReader(0x81, 0x03, 0x61, 0x62, 0x63);
+
+        assertThat(reader.read().getPayload()).containsExactly(0x61, 0x62, 0x63);
+    }
+
+    @Test
+    void givenFrameWithLongLengthIncomplete_whenIsReady_thenFalse() throws Exception {
+        mockReader(0x81, 0xFF, 0x00, 0x00, 0x00, 0x00);
+
+        assertThat(reader.isReady()).isFalse();
+        assertThat(byteBuffer.position()).isEqualTo(0);
+    }
+
+    @Test
+    void whenGetPayloadBuffer_thenReturnReadOnlyViewOfPayload() throws Exception {
+        mockReader(0x81, 0x85, 0xB5, 0x9C, 0x1E, 0x93, 0xDD, 0xF9, 0x72, 0xFF, 0xDA);
+
+        WebSocketFrame frame = reader.read();
+        ByteBuffer view = frame.getPayloadBuffer();
+
+        assertThat(view.isReadOnly()).isTrue();
+        assertThat(view.remaining()).isEqualTo(5);
+        assertThat(view.get(0)).isEqualTo((byte) 0x68);
+
+        frame.getPayload()[0] = 0x48;
+        assertThat(view.get(0)).isEqualTo((byte) 0x48);
+    }
+
+    @Test
+    void givenFragmentedMessage_whenRead_thenReassembleIt() throws Exception {
+        frames(frame(0x01, "Hel"), frame(0x00, "lo, "), frame(0x80, "world"));
+
+        assertThat(reader.isReady()).isTrue();
+        WebSocketFrame frame = reader.read();
+
+        assertThat(frame.getFrameType()).isEqualTo(WebSocketFrame.FrameType.TEXT);
+        assertThat(new String(frame.getPayload())).isEqualTo("Hello, world");
+        assertThat(frame.isFinalFragment()).isTrue();
+        assertThat(reader.isReady()).isFalse();
+    }
+
+    @Test
+    void givenOnlyFirstFragments_whenIsReady_thenFalseAndConsumeThem() throws Exception {
+        frames(frame(0x02, "ab"), frame(0x00, "cd"));
+
+        assertThat(reader.isReady()).isFalse();
+        assertThat(byteBuffer.hasRemaining()).isFalse();
+    }
+
+    @Test
+    void givenLastFragmentArrivesLater_whenRead_thenReturnWholeMessage() throws Exception {
+        frames(frame(0x02, "ab"));
+        assertThat(reader.isReady()).isFalse();
+
+        byteBuffer.clear();
+        byteBuffer.put(frame(0x80, "cd")).flip();
+
+        WebSocketFrame frame = reader.read();
+        assertThat(frame.getFrameType()).isEqualTo(WebSocketFrame.FrameType.BINARY);
+        assertThat(new String(frame.getPayload())).isEqualTo("abcd");
+    }
+
+    @Test
+    void givenControlFrameBetweenFragments_whenRead_thenReturnControlFrameFirst() throws Exception {
+        frames(frame(0x01, "a"), frame(0x88, ""), frame(0x80, "b"));
+
+        assertThat(reader.read().getFrameType()).isEqualTo(WebSocketFrame.FrameType.CLOSE);
+        assertThat(new String(reader.read().getPayload())).isEqualTo("ab");
+    }
+
+    @Test
+    void givenFragmentedControlFrame_whenRead_thenException() throws Exception {
+        frames(frame(0x08, ""));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, reader::read);
+        assertThat(e.getMessage()).isEqualTo("Control frames must not be fragmented");
+    }
+
+    @Test
+    void givenContinuationWithoutMessage_whenRead_thenException() throws Exception {
+        frames(frame(0x80, "a"));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, reader::read);
+        assertThat(e.getMessage()).isEqualTo("Continuation frame received, but no fragmented message was started");
+    }
+
+    @Test
+    void givenNewMessageBeforeFragmentedOneFinished_whenRead_thenException() throws Exception {
+        frames(frame(0x01, "a"), frame(0x81, "b"));
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, reader::read);
+        assertThat(e.getMessage()).isEqualTo("New message started before the fragmented one was finished");
+    }
+
+    @Test
+    void givenMessageExceedsBudget_whenIsReady_thenException() throws Exception {
+        frames(frame(0x01, "abc"), frame(0x00, "def"));
+        reader = new WebSocketReader(byteBuffer, 5, false);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, reader::isReady);
+        assertThat(e.getMessage()).isEqualTo("Message length exceeds maximum allowed size. Message length: 6");
+    }
+
+    @Test
+    void givenStreamingMode_whenRead_thenReturnEveryFragment() throws Exception {
+        frames(frame(0x02, "ab"), frame(0x00, "cd"), frame(0x80, "ef"));
+        reader = new WebSocketReader(byteBuffer, 2, true);
+
+        WebSocketFrame first = reader.read();
+        WebSocketFrame second = reader.read();
+        WebSocketFrame last = reader.read();
+
+        assertThat(new String(first.getPayload())).isEqualTo("ab");
+        assertThat(new String(second.getPayload())).isEqualTo("cd");
+        assertThat(new String(last.getPayload())).isEqualTo("ef");
+
+        assertThat(first.getFrameType()).isEqualTo(WebSocketFrame.FrameType.BINARY);
+        assertThat(second.getFrameType()).isEqualTo(WebSocketFrame.FrameType.BINARY);
+        assertThat(last.getFrameType()).isEqualTo(WebSocketFrame.FrameType.BINARY);
+
+        assertThat(first.isFinalFragment()).isFalse();
+        assertThat(second.isFinalFragment()).isFalse();
+        assertThat(last.isFinalFragment()).isTrue();
+    }
+
+    @Test
+    void givenStreamingMode_whenFragmentExceedsMaxSize_thenException() throws Exception {
+        frames(frame(0x02, "abc"));
+        reader = new WebSocketReader(byteBuffer, 2, true);
+
+        assertThrows(IllegalArgumentException.class, reader::read);
+    }
+
+    @Test
+    void givenPingAndPong_whenRead_thenReturnControlFrames() throws Exception {
+        frames(frame(0x89, "ping"), frame(0x8A, "pong"));
+
+        WebSocketFrame ping = reader.read();
+        WebSocketFrame pong = reader.read();
+
+        assertThat(ping.getFrameType()).isEqualTo(WebSocketFrame.FrameType.PING);
+        assertThat(new String(ping.getPayload())).isEqualTo("ping");
+        assertThat(pong.getFrameType()).isEqualTo(WebSocketFrame.FrameType.PONG);
+    }
+
+    @Test
+    void givenPingBetweenFragments_whenRead_thenReturnPingFirst() throws Exception {
+        frames(frame(0x01, "a"), frame(0x89, ""), frame(0x80, "b"));
+
+        assertThat(reader.read().getFrameType()).isEqualTo(WebSocketFrame.FrameType.PING);
+        assertThat(new String(reader.read().getPayload())).isEqualTo("ab");
+    }
+
+    @Test
+    void givenControlFrameLongerThan125Bytes_whenRead_thenException() throws Exception {
+        byteBuffer = ByteBuffer.allocate(130);
+        byteBuffer.put((byte) 0x89).put((byte) 0x7E).putShort((short) 126).put(new byte[126]).flip();
+        reader = new WebSocketReader(byteBuffer);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, reader::read);
+        assertThat(e.getMessage()).isEqualTo("Control frame payload too long. Payload length: 126");
+    }
+
+    @Test
+    void givenNoFrame_whenRead_thenException() {
+        mockReader(0x81);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, reader::read);
+        assertThat(e.getMessage()).isEqualTo("No complete frame in the buffer");
+    }
+
+    @Test
+    void givenCompressionNegotiated_whenReadCompressedFrame_thenDecompress() throws Exception {
+        // example from RFC 7692, section 7.2.3.1
+        mockReader(0xC1, 0x07, 0xF2, 0x48, 0xCD, 0xC9, 0xC9, 0x07, 0x00);
+        reader.setCompression(compression());
+
+        WebSocketFrame frame = reader.read();
+
+        assertThat(frame.getFrameType()).isEqualTo(WebSocketFrame.FrameType.TEXT);
+        assertThat(new String(frame.getPayload(), StandardCharsets.UTF_8)).isEqualTo("Hello");
+    }
+
+    @Test
+    void givenCompressionNegotiated_whenReadCompressedFragments_thenDecompressWholeMessage() throws Exception {
+        // example from RFC 7692, section 7.2.3.1
+        mockReader(0x41, 0x03, 0xF2, 0x48, 0xCD, 0x80, 0x04, 0xC9, 0xC9, 0x07, 0x00);
+        reader.setCompression(compression());
+
+        assertThat(new String(reader.read().getPayload(), StandardCharsets.UTF_8)).isEqualTo("Hello");
+    }
+
+    @Test
+    void givenCompressionNegotiated_whenReadUncompressedFrame_thenReturnPayload() throws Exception {
+        frames(frame(0x81, "Hello"));
+        reader.setCompression(compression());
+
+        assertThat(new String(reader.read().getPayload(), StandardCharsets.UTF_8)).isEqualTo("Hello");
+    }
+
+    @Test
+    void givenCompressionNegotiated_whenContinuationFrameIsCompressed_thenException() throws Exception {
+        frames(frame(0x01, "Hel"), frame(0xC0, "lo"));
+        reader.setCompression(compression());
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, reader::read);
+        assertThat(e.getMessage()).isEqualTo("Only the first frame of a data message may be compressed");
+    }
+
+    @Test
+    void givenCompressionNotNegotiated_whenRsv1IsSet_thenFrameTypeIsUnknown() throws Exception {
+        mockReader(0xC1, 0x07, 0xF2, 0x48, 0xCD, 0xC9, 0xC9, 0x07, 0x00);
+
+        WebSocketFrame frame = reader.read();
+
+        assertThat(frame.getFrameType()).isNull();
+        assertThat(frame.getPayload()).hasSize(7);
+    }
+
+    @Test
+    void givenCompressedMessageExceedsMaxSizeAfterDecompression_whenRead_thenException() throws Exception {
+        byte[] payload = new byte[1000];
+        byte[] compressed = compression().compress(payload);
+
+        byteBuffer = ByteBuffer.allocate(2 + compressed.length);
+        byteBuffer.put((byte) 0xC2).put((byte) compressed.length).put(compressed).flip();
+        reader = new WebSocketReader(byteBuffer, 500, false);
+        reader.setCompression(compression());
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, reader::read);
+        assertThat(e.getMessage()).startsWith("Message length exceeds maximum allowed size.");
+    }
+
+    @Test
+    void givenCompressionOnBothSides_whenWriteAndRead_thenPayloadIsTheSame() throws Exception {
+        String message = new String(new char[100]).replace("\0", "{\"key\":\"value\"}");
+
+        ByteBuffer writeBuffer = ByteBuffer.allocate(2048);
+        WebSocketWriter writer = new WebSocketWriter(writeBuffer);
+        writer.setCompression(compression());
+        writer.write(new WebSocketFrame(WebSocketFrame.FrameType.TEXT, message.getBytes(StandardCharsets.UTF_8)));
+        writer.write(new WebSocketFrame(WebSocketFrame.FrameType.TEXT, "short".getBytes(StandardCharsets.UTF_8)));
+        writeBuffer.flip();
+
+        assertThat(writeBuffer.get(0)).isEqualTo((byte) 0xC1);
+        assertThat(writeBuffer.remaining()).isLessThan(message.length() / 4);
+
+        reader = new WebSocketReader(writeBuffer);
+        reader.setCompression(compression());
+
+        assertThat(new String(reader.read().getPayload(), StandardCharsets.UTF_8)).isEqualTo(message);
+        assertThat(new String(reader.read().getPayload(), StandardCharsets.UTF_8)).isEqualTo("short");
+    }
+
+    @Test
+    void givenCompressedMessageDoesNotFit_whenWriteRetriedWithBiggerBuffer_thenDoNotCompressItAgain() throws Exception {
+        String message = new String(new char[100]).replace("\0", "{\"key\":\"value\"}");
+        WebSocketFrame frame = new WebSocketFrame(WebSocketFrame.FrameType.TEXT, message.getBytes(StandardCharsets.UTF_8));
+
+        WebSocketWriter writer = new WebSocketWriter(ByteBuffer.allocate(8));
+        writer.setCompression(compression());
+        assertThrows(java.nio.BufferOverflowException.class, () -> writer.write(frame));
+
+        ByteBuffer writeBuffer = ByteBuffer.allocate(2048);
+        writer.setBuffer(writeBuffer);
+        writer.write(frame);
+        writer.write(frame);
+        writeBuffer.flip();
+
+        reader = new WebSocketReader(writeBuffer);
+        reader.setCompression(compression());
+
+        assertThat(new String(reader.read().getPayload(), StandardCharsets.UTF_8)).isEqualTo(message);
+        assertThat(new String(reader.read().getPayload(), StandardCharsets.UTF_8)).isEqualTo(message);
+    }
+
+    /**
+     * @param first fin bit and opcode
+     */
+    private byte[] frame(int first, String payload) {
+        byte[] mask = {0x12, 0x34, 0x56, 0x78};
+        byte[] bytes = payload.getBytes();
+
+        ByteBuffer frame = ByteBuffer.allocate(6 + bytes.length);
+        frame.put((byte) first).put((byte) (0x80 | bytes.length)).put(mask);
+        for (int i = 0; i < bytes.length; ++i) {
+            frame.put((byte) (bytes[i] ^ mask[i % 4]));
+        }
+
+        return frame.array();
+    }
+
+    private void frames(byte[]... frames) {
+        byteBuffer = ByteBuffer.allocate(256);
+        for (byte[] frame : frames) {
+            byteBuffer.put(frame);
+        }
+
+        byteBuffer.flip();
+        reader = new WebSocketReader(byteBuffer);
+    }
+
+    private byte[] randomPayload(int length) {
+        byte[] payload = new byte[length];
+        new Random(length).nextBytes(payload);
+        return payload;
+    }
+
+    private PerMessageDeflate compression() {
+        return new PerMessageDeflateExtension().negotiate("permessage-deflate");
+    }
 }
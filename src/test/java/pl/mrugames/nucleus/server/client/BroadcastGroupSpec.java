@@ -0,0 +1,190 @@
+package pl.mrugames.nucleus.server.client;
+
+import com.codahale.metrics.MetricFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import pl.mrugames.nucleus.common.io.ClientWriter;
+import pl.mrugames.nucleus.server.Metrics;
+import pl.mrugames.nucleus.server.client.filters.Filter;
+import pl.mrugames.nucleus.server.client.filters.FilterProcessor;
+import pl.mrugames.nucleus.server.tasks.ClientShutdownTask;
+import pl.mrugames.nucleus.server.tasks.TaskExecutor;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.locks.Lock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+class BroadcastGroupSpec {
+    private BroadcastGroup group;
+    private ClientWriter<String> clientWriter;
+    private TaskExecutor taskExecutor;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void before() throws Exception {
+        clientWriter = mock(ClientWriter.class);
+        taskExecutor = mock(TaskExecutor.class);
+
+        ByteBuffer[] encodeBuffer = new ByteBuffer[1];
+        doAnswer(a -> encodeBuffer[0].put(((String) a.getArgument(0)).getBytes())).when(clientWriter).write(any());
+
+        group = new BroadcastGroup("test", buffer -> {
+            encodeBuffer[0] = buffer;
+            return clientWriter;
+        }, filterProcessor(), 64);
+    }
+
+    @AfterEach
+    void after() {
+        Metrics.getRegistry().removeMatching(MetricFilter.ALL);
+    }
+
+    @Test
+    void givenMembers_whenBroadcast_thenEncodeOnceAndQueueSharedReadOnlyBuffers() throws Exception {
+        Client<?, ?> first = client();
+        Client<?, ?> second = client();
+        group.add(first, SlowConsumerPolicy.DROP, 1024);
+        group.add(second, SlowConsumerPolicy.DROP, 1024);
+
+        assertThat(group.broadcast("hello")).isEqualTo(2);
+
+        verify(clientWriter, times(1)).write(any());
+
+        ByteBuffer firstFrame = sentFrame(first);
+        ByteBuffer secondFrame = sentFrame(second);
+
+        assertThat(firstFrame.isReadOnly()).isTrue();
+        assertThat(firstFrame).isEqualTo(ByteBuffer.wrap("hello!".getBytes()));
+        assertThat(secondFrame).isEqualTo(firstFrame);
+        assertThat(secondFrame).isNotSameAs(firstFrame);
+        assertThat(Metrics.getRegistry().meter("pl.mrugames.nucleus.server.client.BroadcastGroup.test.delivered").getCount()).isEqualTo(2);
+        assertThat(Metrics.getRegistry().histogram("pl.mrugames.nucleus.server.client.BroadcastGroup.test.fan_out_micros").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    void givenFrameFilteredOut_whenBroadcast_thenSendNothing() throws Exception {
+        Client<?, ?> client = client();
+        group.add(client, SlowConsumerPolicy.DROP, 1024);
+
+        assertThat(group.broadcast("skip")).isEqualTo(0);
+
+        verify(client.getComm(), never()).sendEncoded(any());
+    }
+
+    @Test
+    void givenSlowConsumerWithDropPolicy_whenBroadcast_thenSkipIt() throws Exception {
+        Client<?, ?> slow = client();
+        doReturn(1020L).when(slow.getComm()).getQueuedBytes();
+        group.add(slow, SlowConsumerPolicy.DROP, 1024);
+
+        assertThat(group.broadcast("hello")).isEqualTo(0);
+
+        verify(slow.getComm(), never()).sendEncoded(any());
+        verify(taskExecutor, never()).submit(any(), anyLong());
+        assertThat(group.contains(slow)).isTrue();
+        assertThat(Metrics.getRegistry().meter("pl.mrugames.nucleus.server.client.BroadcastGroup.test.dropped").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    void givenSlowConsumerWithDisconnectPolicy_whenBroadcast_thenRemoveAndShutdownIt() throws Exception {
+        Client<?, ?> slow = client();
+        Client<?, ?> fast = client();
+        doReturn(1020L).when(slow.getComm()).getQueuedBytes();
+        group.add(slow, SlowConsumerPolicy.DISCONNECT, 1024);
+        group.add(fast, SlowConsumerPolicy.DISCONNECT, 1024);
+
+        assertThat(group.broadcast("hello")).isEqualTo(1);
+
+        verify(taskExecutor).submit(any(ClientShutdownTask.class), anyLong());
+        assertThat(group.contains(slow)).isFalse();
+        assertThat(slow.getBroadcastGroups()).isEmpty();
+        assertThat(group.contains(fast)).isTrue();
+        assertThat(Metrics.getRegistry().counter("pl.mrugames.nucleus.server.client.BroadcastGroup.test.disconnected").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    void givenClosedMember_whenBroadcast_thenRemoveIt() throws Exception {
+        Client<?, ?> closed = client();
+        doThrow(ClosedChannelException.class).when(closed.getComm()).sendEncoded(any());
+        group.add(closed, SlowConsumerPolicy.DROP, 1024);
+
+        assertThat(group.broadcast("hello")).isEqualTo(0);
+        assertThat(group.size()).isEqualTo(0);
+    }
+
+    @Test
+    void givenClosedClient_whenAdd_thenDoNotKeepIt() {
+        Client<?, ?> closed = client();
+        doReturn(true).when(closed.getComm()).isClosed();
+
+        group.add(closed, SlowConsumerPolicy.DROP, 1024);
+
+        assertThat(group.contains(closed)).isFalse();
+        assertThat(closed.getBroadcastGroups()).isEmpty();
+    }
+
+    @Test
+    void givenShutdownClient_whenAdd_thenDoNotKeepIt() {
+        Client<?, ?> shutdown = client();
+        shutdown.getShutdown().set(true);
+
+        group.add(shutdown, SlowConsumerPolicy.DROP, 1024);
+
+        assertThat(group.contains(shutdown)).isFalse();
+        assertThat(shutdown.getBroadcastGroups()).isEmpty();
+    }
+
+    @Test
+    void givenClientInGroups_whenLeaveBroadcastGroups_thenRemoveFromAll() throws Exception {
+        BroadcastGroup other = new BroadcastGroup("other", buffer -> clientWriter, filterProcessor(), 64);
+        Client<?, ?> client = client();
+        group.add(client, SlowConsumerPolicy.DROP, 1024);
+        other.add(client, SlowConsumerPolicy.DROP, 1024);
+
+        client.leaveBroadcastGroups();
+
+        assertThat(group.size()).isEqualTo(0);
+        assertThat(other.size()).isEqualTo(0);
+        assertThat(client.getBroadcastGroups()).isEmpty();
+    }
+
+    @Test
+    void givenController_whenJoinAndLeave_thenUpdateMembership() {
+        Client<?, ?> client = client();
+        ClientController controller = new ClientController();
+        controller.setClient(client);
+
+        controller.join(group, SlowConsumerPolicy.DROP, 1024);
+        assertThat(group.contains(client)).isTrue();
+
+        controller.leave(group);
+        assertThat(group.contains(client)).isFalse();
+    }
+
+    /**
+     * Appends "!", filters out "skip".
+     */
+    private FilterProcessor filterProcessor() {
+        Filter<String, String> filter = s -> s == null || s.equals("skip") ? null : s + "!";
+        return FilterProcessor.oneFilterFactory(filter);
+    }
+
+    private Client<?, ?> client() {
+        return new Client<>("client", taskExecutor, mock(Comm.class), mock(ClientWorker.class), null,
+                ByteBuffer.allocate(0), ByteBuffer.allocate(0), mock(ByteBufferPool.class), mock(Lock.class), mock(Lock.class),
+                30, 30, 0, RequestExecutionMode.CONCURRENT, null);
+    }
+
+    private ByteBuffer sentFrame(Client<?, ?> client) throws Exception {
+        ArgumentCaptor<ByteBuffer> captor = ArgumentCaptor.forClass(ByteBuffer.class);
+        verify(client.getComm()).sendEncoded(captor.capture());
+        return captor.getValue();
+    }
+}
@@ -0,0 +1,98 @@
+package pl.mrugames.nucleus.server.client;
+
+import com.codahale.metrics.MetricFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.mrugames.nucleus.server.Metrics;
+
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ByteBufferPoolSpec {
+    private ByteBufferPool pool;
+
+    @BeforeEach
+    void before() {
+        pool = new ByteBufferPool("test", true, 64, 1024, 2);
+    }
+
+    @AfterEach
+    void after() {
+        Metrics.getRegistry().removeMatching(MetricFilter.ALL);
+    }
+
+    @Test
+    void givenInvalidSizes_whenCreate_thenException() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new ByteBufferPool("test", false, 128, 64, 1));
+        assertThat(e.getMessage()).isEqualTo("Invalid buffer sizes, min: 128, max: 64");
+    }
+
+    @Test
+    void whenAcquire_thenRoundCapacityUpToSizeClass() {
+        assertThat(pool.acquire(1).capacity()).isEqualTo(64);
+        assertThat(pool.acquire(64).capacity()).isEqualTo(64);
+        assertThat(pool.acquire(65).capacity()).isEqualTo(128);
+        assertThat(pool.acquire(1000).capacity()).isEqualTo(1024);
+    }
+
+    @Test
+    void givenDirectPool_whenAcquire_thenBufferIsDirect() {
+        assertThat(pool.acquire(10).isDirect()).isTrue();
+        assertThat(new ByteBufferPool("heap", false).acquire(10).isDirect()).isFalse();
+    }
+
+    @Test
+    void givenCapacityAboveBiggestSizeClass_whenAcquire_thenAllocateExactBuffer() {
+        assertThat(pool.acquire(1500).capacity()).isEqualTo(1500);
+    }
+
+    @Test
+    void givenBufferReleased_whenAcquire_thenReuseClearedBuffer() {
+        ByteBuffer buffer = pool.acquire(100);
+        buffer.put((byte) 1).flip();
+
+        pool.release(buffer);
+        ByteBuffer reused = pool.acquire(120);
+
+        assertThat(reused).isSameAs(buffer);
+        assertThat(reused.position()).isEqualTo(0);
+        assertThat(reused.limit()).isEqualTo(128);
+        assertThat(pool.size()).isEqualTo(0);
+        assertThat(Metrics.getRegistry().counter("pl.mrugames.nucleus.server.client.ByteBufferPool.test.reused").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    void givenBufferOfOtherSizeClassReleased_whenAcquire_thenAllocateNewOne() {
+        ByteBuffer buffer = pool.acquire(100);
+        pool.release(buffer);
+
+        assertThat(pool.acquire(10)).isNotSameAs(buffer);
+        assertThat(pool.size()).isEqualTo(1);
+    }
+
+    @Test
+    void givenSizeClassIsFull_whenRelease_thenDropBuffer() {
+        ByteBuffer a = pool.acquire(64);
+        ByteBuffer b = pool.acquire(64);
+        pool.release(a);
+        pool.release(b);
+        pool.release(ByteBuffer.allocateDirect(64));
+
+        assertThat(pool.size()).isEqualTo(2);
+        assertThat(Metrics.getRegistry().counter("pl.mrugames.nucleus.server.client.ByteBufferPool.test.dropped").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    void givenForeignBuffer_whenRelease_thenDropIt() {
+        pool.release(ByteBuffer.allocate(64));
+        pool.release(ByteBuffer.allocateDirect(100));
+        pool.release(ByteBuffer.allocateDirect(2048));
+        pool.release(ByteBuffer.allocateDirect(64).asReadOnlyBuffer());
+        pool.release(null);
+
+        assertThat(pool.size()).isEqualTo(0);
+    }
+}
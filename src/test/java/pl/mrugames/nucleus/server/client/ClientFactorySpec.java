@@ -33,10 +33,12 @@ class ClientFactorySpec {
     private TaskExecutor executorService;
     private Client client;
     private ConnectionWatchdog connectionWatchdog;
+    private WriteScheduler writeScheduler;
     private SocketChannel mockSocketChannel;
     private Socket mockSocket;
     private Function<ByteBuffer, ClientReader<String>> clientReaderFactory;
     Function<ByteBuffer, ClientWriter<String>> clientWriterFactory;
+    private List<ProtocolFactory<? extends Serializable, ? extends Serializable>> protocolFactories;
 
     @BeforeEach
     @SuppressWarnings("unchecked")
@@ -61,20 +63,15 @@ class ClientFactorySpec {
         executorService = mock(TaskExecutor.class);
 
         connectionWatchdog = mock(ConnectionWatchdog.class);
+        writeScheduler = mock(WriteScheduler.class);
         doReturn(true).when(connectionWatchdog).isRunning();
 
-        List<ProtocolFactory<? extends Serializable, ? extends Serializable>> protocolFactories = new LinkedList<>();
+        protocolFactories = new LinkedList<>();
         protocolFactories.add(new ProtocolFactory<>(clientWriterFactory, clientReaderFactory, inputFilterProcessor, outputFilterProcessor, "default"));
         protocolFactories.add(new ProtocolFactory<>(mock(Function.class), mock(Function.class), mock(FilterProcessor.class), mock(FilterProcessor.class), "mock1"));
         protocolFactories.add(new ProtocolFactory<>(mock(Function.class), mock(Function.class), mock(FilterProcessor.class), mock(FilterProcessor.class), "mock2"));
 
-        clientFactory = spy(new ClientFactory<>("factory",
-                "client",
-                clientWorkerFactory,
-                protocolFactories,
-                1024,
-                30,
-                30));
+        clientFactory = spy(clientFactory(protocolFactories, 1024, 1024, new ByteBufferPool("factory", false), Comm.DEFAULT_LOW_WATERMARK, Comm.DEFAULT_HIGH_WATERMARK));
 
         doNothing().when(clientFactory).closeChannel(any());
 
@@ -83,13 +80,13 @@ class ClientFactorySpec {
             client = spy(client);
 
             return client;
-        }).when(clientFactory).createClient(anyString(), any(), any(), any(), any(), any(), any(), any());
+        }).when(clientFactory).createClient(anyString(), any(), any(), any(), any(), any(), any(), any(), any());
     }
 
     @Test
     void givenClientCreated_setProperName() throws Exception {
-        Client client1 = clientFactory.create(mockSocketChannel, executorService, connectionWatchdog);
-        Client client2 = clientFactory.create(mockSocketChannel, executorService, connectionWatchdog);
+        Client client1 = clientFactory.create(mockSocketChannel, executorService, connectionWatchdog, writeScheduler);
+        Client client2 = clientFactory.create(mockSocketChannel, executorService, connectionWatchdog, writeScheduler);
 
         assertThat(client1.getName()).isEqualTo("client-1");
         assertThat(client2.getName()).isEqualTo("client-2");
@@ -100,16 +97,104 @@ class ClientFactorySpec {
         ClientWorker worker = mock(ClientWorker.class);
         doReturn(worker).when(clientWorkerFactory).create(any(), any(), any());
 
-        Client client = clientFactory.create(mockSocketChannel, executorService, connectionWatchdog);
+        Client client = clientFactory.create(mockSocketChannel, executorService, connectionWatchdog, writeScheduler);
 
         assertThat(client.getClientWorker()).isSameAs(worker);
     }
 
+    @Test
+    void givenDefaultExecutionMode_whenCreate_thenClientExecutesRequestsConcurrently() throws Exception {
+        Client client = clientFactory.create(mockSocketChannel, executorService, connectionWatchdog, writeScheduler);
+
+        assertThat(client.getRequestExecutionMode()).isEqualTo(RequestExecutionMode.CONCURRENT);
+        assertThat(client.getMailbox()).isNotNull();
+    }
+
+    @Test
+    void whenCreate_thenLeaseBuffersFromPool() throws Exception {
+        ByteBufferPool bufferPool = new ByteBufferPool("factory", true);
+        clientFactory = clientFactory(protocolFactories, 1000, 1000, bufferPool, Comm.DEFAULT_LOW_WATERMARK, Comm.DEFAULT_HIGH_WATERMARK);
+
+        Client client = clientFactory.create(mockSocketChannel, executorService, connectionWatchdog, writeScheduler);
+
+        assertThat(client.getBufferPool()).isSameAs(bufferPool);
+        assertThat(client.getComm().getBufferPool()).isSameAs(bufferPool);
+        assertThat(client.getReadBuffer().isDirect()).isTrue();
+        assertThat(client.getWriteBuffer().isDirect()).isTrue();
+        assertThat(client.getWriteBuffer().capacity()).isGreaterThanOrEqualTo(1000);
+        assertThat(client.getComm().getWriteBuffer()).isSameAs(client.getWriteBuffer());
+    }
+
+    @Test
+    void givenWebSocketFactoryBuilder_whenSetBufferPool_thenClientsUseIt() throws Exception {
+        ByteBufferPool bufferPool = new ByteBufferPool("factory", true);
+        ClientFactory<String, String> factory = ClientFactories.createClientFactoryBuilderForWSServer("factory", clientWorkerFactory, null)
+                .setBufferPool(bufferPool)
+                .build();
+
+        Client<String, String> client = factory.create(mockSocketChannel, executorService, connectionWatchdog, writeScheduler);
+
+        assertThat(client.getBufferPool()).isSameAs(bufferPool);
+        assertThat(client.getReadBuffer().isDirect()).isTrue();
+    }
+
+    @Test
+    void givenMaxBufferSizeBelowBufferSize_whenCreateFactory_thenException() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> clientFactory(protocolFactories,
+                1000, 500, new ByteBufferPool("factory", false), Comm.DEFAULT_LOW_WATERMARK, Comm.DEFAULT_HIGH_WATERMARK));
+
+        assertThat(e.getMessage()).isEqualTo("Max buffer size has to be at least the buffer size, max: 500, buffer size: 1000");
+    }
+
+    @Test
+    void givenLowWatermarkAboveHigh_whenCreateFactory_thenException() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> clientFactory(protocolFactories,
+                1000, 1000, new ByteBufferPool("factory", false), 200, 100));
+
+        assertThat(e.getMessage()).isEqualTo("Watermarks have to satisfy 0 <= low <= high, low: 200, high: 100");
+    }
+
+    @Test
+    void givenMaxFrameSize_whenCreate_thenCommUsesIt() throws Exception {
+        clientFactory = new ClientFactoryBuilder<String, String>(clientWorkerFactory, protocolFactories.get(0))
+                .setBufferSize(1000)
+                .setMaxFrameSize(4000)
+                .build();
+
+        Client client = clientFactory.create(mockSocketChannel, executorService, connectionWatchdog, writeScheduler);
+
+        assertThat(client.getComm().getMaxFrameSize()).isEqualTo(4000);
+    }
+
+    @Test
+    void givenMaxFrameSizeBelowBufferSize_whenCreateFactory_thenException() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new ClientFactoryBuilder<String, String>(clientWorkerFactory, protocolFactories.get(0))
+                .setBufferSize(1000)
+                .setMaxFrameSize(500)
+                .build());
+
+        assertThat(e.getMessage()).isEqualTo("Max frame size has to be at least the buffer size, max: 500, buffer size: 1000");
+    }
+
+    @Test
+    void givenWatermarks_whenCreate_thenCommUsesThemAndNotifiesWorker() throws Exception {
+        ClientWorker worker = mock(ClientWorker.class);
+        doReturn(worker).when(clientWorkerFactory).create(any(), any(), any());
+        clientFactory = clientFactory(protocolFactories, 1000, 1000, new ByteBufferPool("factory", false), 0, 1);
+
+        Client client = clientFactory.create(mockSocketChannel, executorService, connectionWatchdog, writeScheduler);
+        client.getComm().sendEncoded(ByteBuffer.allocate(2).asReadOnlyBuffer());
+
+        assertThat(client.getComm().getLowWatermark()).isEqualTo(0);
+        assertThat(client.getComm().getHighWatermark()).isEqualTo(1);
+        verify(worker).onWritabilityChanged(false);
+    }
+
     @Test
     void givenFactoryThrowsException_whenCreate_thenException() throws IOException {
         doThrow(RuntimeException.class).when(clientWorkerFactory).create(any(), any(), any());
 
-        assertThrows(RuntimeException.class, () -> clientFactory.create(mockSocketChannel, executorService, connectionWatchdog));
+        assertThrows(RuntimeException.class, () -> clientFactory.create(mockSocketChannel, executorService, connectionWatchdog, writeScheduler));
 
         verify(clientFactory).closeChannel(mockSocketChannel);
     }
@@ -122,7 +207,7 @@ class ClientFactorySpec {
         Lock readLock = mock(Lock.class);
         Lock writeLock = mock(Lock.class);
 
-        Comm comm = clientFactory.createComms("test", mock(SocketChannel.class), readBuffer, writeBuffer, readLock, writeLock);
+        Comm comm = clientFactory.createComms("test", mock(SocketChannel.class), readBuffer, writeBuffer, readLock, writeLock, writeScheduler);
 
         assertThat(comm.getClientReader()).isSameAs(clientReader);
         assertThat(comm.getClientWriter()).isSameAs(clientWriter);
@@ -131,6 +216,7 @@ class ClientFactorySpec {
         assertThat(comm.getWriteBuffer()).isSameAs(writeBuffer);
         assertThat(comm.getWriteBufferLock()).isSameAs(writeLock);
         assertThat(comm.getReadBufferLock()).isSameAs(readLock);
+        assertThat(comm.getWriteScheduler()).isSameAs(writeScheduler);
 
         ArgumentCaptor<ByteBuffer> argumentCaptor = ArgumentCaptor.forClass(ByteBuffer.class);
 
@@ -141,21 +227,21 @@ class ClientFactorySpec {
 
     @Test
     void whenCreateClient_thenRegisterToWatchdog() throws Exception {
-        Client client = clientFactory.create(mockSocketChannel, executorService, connectionWatchdog);
+        Client client = clientFactory.create(mockSocketChannel, executorService, connectionWatchdog, writeScheduler);
 
         verify(connectionWatchdog).register(client);
     }
 
     @Test
     void whenCreateClient_thenReadBufferIsInReadMode() throws Exception {
-        Client<String, String> client = clientFactory.create(mockSocketChannel, executorService, connectionWatchdog);
+        Client<String, String> client = clientFactory.create(mockSocketChannel, executorService, connectionWatchdog, writeScheduler);
 
         assertThat(client.getReadBuffer().limit()).isEqualTo(client.getReadBuffer().position());
     }
 
     @Test
     void protocolKeysShouldBeSameAsProtocolNames() throws Exception {
-        Client<String, String> client = clientFactory.create(mockSocketChannel, executorService, connectionWatchdog);
+        Client<String, String> client = clientFactory.create(mockSocketChannel, executorService, connectionWatchdog, writeScheduler);
         client.getComm().getProtocols().forEach((key, protocol) ->
                 assertThat(key).isEqualTo(protocol.getName())
         );
@@ -169,20 +255,20 @@ class ClientFactorySpec {
         protocolFactories.add(new ProtocolFactory<>(mock(Function.class), mock(Function.class), mock(FilterProcessor.class), mock(FilterProcessor.class), "mock1"));
         protocolFactories.add(new ProtocolFactory<>(mock(Function.class), mock(Function.class), mock(FilterProcessor.class), mock(FilterProcessor.class), "mock1"));
 
-        clientFactory = new ClientFactory<>("factory",
-                "client",
-                clientWorkerFactory,
-                protocolFactories,
-                1024,
-                30,
-                30);
+        clientFactory = clientFactory(protocolFactories, 1024, 1024, new ByteBufferPool("factory", false), Comm.DEFAULT_LOW_WATERMARK, Comm.DEFAULT_HIGH_WATERMARK);
 
         ByteBuffer readBuffer = mock(ByteBuffer.class);
         ByteBuffer writeBuffer = mock(ByteBuffer.class);
 
-        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> clientFactory.createComms("", mockSocketChannel, readBuffer, writeBuffer, mock(Lock.class), mock(Lock.class)));
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> clientFactory.createComms("", mockSocketChannel, readBuffer, writeBuffer, mock(Lock.class), mock(Lock.class), writeScheduler));
 
         assertThat(e.getMessage()).isEqualTo("Duplicate protocol name: 'mock1'");
     }
 
+    private ClientFactory<String, String> clientFactory(List<ProtocolFactory<? extends Serializable, ? extends Serializable>> protocolFactories,
+                                                        int bufferSize, int maxBufferSize, ByteBufferPool bufferPool,
+                                                        int lowWatermark, int highWatermark) {
+        return new ClientFactory<>("factory", "client", clientWorkerFactory, protocolFactories, bufferSize, maxBufferSize,
+                30, 30, 0, RequestExecutionMode.CONCURRENT, bufferPool, false, lowWatermark, highWatermark, Comm.DEFAULT_MAX_FRAME_SIZE);
+    }
 }
@@ -0,0 +1,180 @@
+package pl.mrugames.nucleus.server.client;
+
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.MetricFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.mrugames.nucleus.common.io.LineReader;
+import pl.mrugames.nucleus.common.io.LineWriter;
+import pl.mrugames.nucleus.server.Metrics;
+import pl.mrugames.nucleus.server.client.filters.FilterProcessor;
+import pl.mrugames.nucleus.server.tasks.TaskExecutor;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+class ClientSpec {
+    private ByteBufferPool bufferPool;
+    private ByteBuffer readBuffer;
+    private Comm comm;
+    private Counter grown;
+    private Counter shrunk;
+
+    @BeforeEach
+    void before() {
+        bufferPool = new ByteBufferPool("client", false, 16, 1024, 4);
+        readBuffer = bufferPool.acquire(16);
+        readBuffer.flip();
+
+        ByteBuffer writeBuffer = bufferPool.acquire(16);
+
+        Map<String, Protocol<? extends Serializable, ? extends Serializable>> protocols = new HashMap<>();
+        protocols.put("line", new Protocol<>(new LineWriter(writeBuffer), new LineReader(readBuffer),
+                FilterProcessor.EMPTY_FILTER_PROCESSOR, FilterProcessor.EMPTY_FILTER_PROCESSOR, "line"));
+
+        Lock readLock = new ReentrantLock();
+        comm = new Comm(protocols, writeBuffer, readLock, new ReentrantLock(), mock(SocketChannel.class), mock(WriteScheduler.class), bufferPool, "line");
+
+        grown = new Counter();
+        shrunk = new Counter();
+    }
+
+    @AfterEach
+    void after() {
+        Metrics.getRegistry().removeMatching(MetricFilter.ALL);
+    }
+
+    @Test
+    void givenFullBufferWithoutCompleteFrame_whenAdjust_thenGrowAndKeepUnreadData() throws Exception {
+        Client<?, ?> client = client(new ReadBufferSizer(16, 64, 2, grown, shrunk));
+        receive(client, "0123456789abcdef");
+
+        client.adjustReadBuffer();
+
+        assertThat(client.getReadBuffer().capacity()).isEqualTo(32);
+        assertThat(client.getReadBuffer()).isNotSameAs(readBuffer);
+        assertThat(grown.getCount()).isEqualTo(1);
+
+        receive(client, "\r\n");
+        assertThat(comm.receive()).isEqualTo("0123456789abcdef");
+    }
+
+    @Test
+    void givenFullBufferWithCompleteFrame_whenAdjust_thenDoNotGrow() throws Exception {
+        Client<?, ?> client = client(new ReadBufferSizer(16, 64, 2, grown, shrunk));
+        receive(client, "012345\r\n89abcdef");
+
+        client.adjustReadBuffer();
+
+        assertThat(client.getReadBuffer()).isSameAs(readBuffer);
+        assertThat(grown.getCount()).isEqualTo(0);
+    }
+
+    @Test
+    void givenGrownBuffer_whenSmallReads_thenShrinkBackAndReturnBufferToPool() throws Exception {
+        Client<?, ?> client = client(new ReadBufferSizer(16, 64, 2, grown, shrunk));
+        receive(client, "0123456789abcdef");
+        client.adjustReadBuffer();
+
+        receive(client, "\r\n");
+        comm.receive();
+        receive(client, "ab");
+
+        client.adjustReadBuffer();
+        ByteBuffer grownBuffer = client.getReadBuffer();
+        client.adjustReadBuffer();
+
+        assertThat(client.getReadBuffer().capacity()).isEqualTo(16);
+        assertThat(shrunk.getCount()).isEqualTo(1);
+        assertThat(bufferPool.acquire(32)).isSameAs(grownBuffer);
+
+        receive(client, "\r\n");
+        assertThat(comm.receive()).isEqualTo("ab");
+    }
+
+    @Test
+    void givenFixedSizeBuffer_whenAdjust_thenKeepTheBuffer() throws Exception {
+        Client<?, ?> client = client(null);
+        receive(client, "0123456789abcdef");
+
+        client.adjustReadBuffer();
+
+        assertThat(client.getReadBuffer()).isSameAs(readBuffer);
+    }
+
+    @Test
+    void givenNoRequestTasks_whenEndOfStream_thenShutdownNow() {
+        Client<?, ?> client = client(null);
+
+        assertThat(client.endOfStream()).isTrue();
+    }
+
+    @Test
+    void givenRequestTasksPending_whenEndOfStream_thenShutdownAfterTheLastOneFinishes() {
+        Client<?, ?> client = client(null);
+        client.requestTaskCreated();
+        client.requestTaskCreated();
+
+        assertThat(client.endOfStream()).isFalse();
+        assertThat(client.requestTaskFinished()).isFalse();
+        assertThat(client.requestTaskFinished()).isTrue();
+    }
+
+    @Test
+    void givenNoEndOfStream_whenLastRequestTaskFinishes_thenDoNotShutdown() {
+        Client<?, ?> client = client(null);
+        client.requestTaskCreated();
+
+        assertThat(client.requestTaskFinished()).isFalse();
+    }
+
+    @Test
+    void givenClientIsShutdown_whenEndOfStream_thenDoNotShutdownAgain() {
+        Client<?, ?> client = client(null);
+        client.getShutdown().set(true);
+
+        assertThat(client.endOfStream()).isFalse();
+    }
+
+    @Test
+    void givenMailboxIsOwned_whenTryAcquire_thenFalseUntilReleased() {
+        Client<?, ?> client = client(null);
+        client.addToMailbox("request");
+
+        assertThat(client.tryAcquireMailbox()).isTrue();
+        assertThat(client.tryAcquireMailbox()).isFalse();
+        assertThat(client.getMailboxSize()).isEqualTo(1);
+        assertThat(client.pollMailbox()).isEqualTo("request");
+
+        client.releaseMailbox();
+
+        assertThat(client.tryAcquireMailbox()).isTrue();
+    }
+
+    private Client<?, ?> client(ReadBufferSizer sizer) {
+        return new Client<>("client", mock(TaskExecutor.class), comm, mock(ClientWorker.class), null,
+                readBuffer, ByteBuffer.allocate(0), bufferPool, new ReentrantLock(), new ReentrantLock(),
+                30, 30, 0, RequestExecutionMode.CONCURRENT, sizer);
+    }
+
+    /**
+     * Appends data the way the reactor does.
+     */
+    private void receive(Client<?, ?> client, String data) {
+        ByteBuffer buffer = client.getReadBuffer();
+
+        buffer.compact();
+        buffer.put(data.getBytes(StandardCharsets.US_ASCII));
+        buffer.flip();
+    }
+}
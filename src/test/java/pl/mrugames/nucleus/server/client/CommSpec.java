@@ -5,21 +5,33 @@ import org.junit.jupiter.api.Test;
 import org.mockito.InOrder;
 import pl.mrugames.nucleus.common.io.ClientReader;
 import pl.mrugames.nucleus.common.io.ClientWriter;
+import pl.mrugames.nucleus.common.io.LineWriter;
 import pl.mrugames.nucleus.server.client.filters.FilterProcessor;
+import pl.mrugames.nucleus.server.client.frames.WebSocketFrame;
 
 import java.io.IOException;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.SocketChannel;
-import java.time.Instant;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
@@ -29,12 +41,15 @@ class CommSpec {
     private ClientReader<String> clientReader;
     private FilterProcessor inputFilterProcessor;
     private FilterProcessor outputFilterProcessor;
-    private Instant commCreation;
+    private long commCreation;
     private ByteBuffer writeBuffer;
     private SocketChannel channel;
     private Map<String, Protocol<? extends Serializable, ? extends Serializable>> protocols;
     private Lock readBufferLock;
     private Lock writeBufferLock;
+    private WriteScheduler writeScheduler;
+    private ByteBufferPool bufferPool;
+    private KeepAlive keepAlive;
 
     @BeforeEach
     @SuppressWarnings("unchecked")
@@ -43,8 +58,12 @@ class CommSpec {
         clientReader = mock(ClientReader.class);
         inputFilterProcessor = mock(FilterProcessor.class);
         outputFilterProcessor = mock(FilterProcessor.class);
-        writeBuffer = mock(ByteBuffer.class);
+        writeBuffer = ByteBuffer.allocate(64);
         channel = mock(SocketChannel.class);
+        writeScheduler = mock(WriteScheduler.class);
+        bufferPool = new ByteBufferPool("comm", false);
+
+        doAnswer(a -> writeBuffer.put(((String) a.getArguments()[0]).getBytes())).when(clientWriter).write(anyString());
 
         doAnswer(a -> Optional.of(a.getArguments()[0] + "filtered")).when(inputFilterProcessor).filter(anyString());
         doAnswer(a -> Optional.of(a.getArguments()[0] + "filtered")).when(outputFilterProcessor).filter(anyString());
@@ -55,11 +74,14 @@ class CommSpec {
         protocols.put("default", new Protocol<>(clientWriter, clientReader, inputFilterProcessor, outputFilterProcessor, "default"));
         protocols.put("secondary", new Protocol<>(mock(ClientWriter.class), mock(ClientReader.class), mock(FilterProcessor.class), mock(FilterProcessor.class), "secondary"));
 
+        keepAlive = mock(KeepAlive.class);
+        protocols.put("keepalive", new Protocol<>(clientWriter, clientReader, inputFilterProcessor, outputFilterProcessor, "keepalive", keepAlive));
+
         writeBufferLock = mock(Lock.class);
         readBufferLock = mock(Lock.class);
 
-        commCreation = Instant.now();
-        comm = spy(new Comm(protocols, writeBuffer, readBufferLock, writeBufferLock, channel, "default"));
+        commCreation = System.nanoTime();
+        comm = spy(new Comm(protocols, writeBuffer, readBufferLock, writeBufferLock, channel, writeScheduler, bufferPool, "default"));
 
         reset(writeBufferLock);
         reset(readBufferLock);
@@ -101,26 +123,26 @@ class CommSpec {
 
     @Test
     void whenInit_thenLastDataSentAndReceivedIsSetToNow() {
-        assertThat(comm.getLastDataReceived()).isBetween(commCreation, Instant.now());
-        assertThat(comm.getLastDataSent()).isBetween(commCreation, Instant.now());
+        assertThat(comm.getLastDataReceived()).isBetween(commCreation, System.nanoTime());
+        assertThat(comm.getLastDataSent()).isBetween(commCreation, System.nanoTime());
     }
 
     @Test
     void whenReceive_thenUpdateLastDataReceived() throws Exception {
         doReturn("next").when(clientReader).read();
 
-        Instant now = Instant.now();
+        long now = System.nanoTime();
         comm.receive();
 
-        assertThat(comm.getLastDataReceived()).isBetween(now, Instant.now());
+        assertThat(comm.getLastDataReceived()).isBetween(now, System.nanoTime());
     }
 
     @Test
     void whenSend_thenUpdateLastSentDate() throws Exception {
-        Instant now = Instant.now();
+        long now = System.nanoTime();
         comm.send("next");
 
-        assertThat(comm.getLastDataSent()).isBetween(now, Instant.now());
+        assertThat(comm.getLastDataSent()).isBetween(now, System.nanoTime());
     }
 
     @Test
@@ -172,24 +194,478 @@ class CommSpec {
     }
 
     @Test
-    void whenSend_thenPrepareBufferAndSend() throws Exception {
-        InOrder inOrder = inOrder(writeBuffer, channel, clientWriter);
+    void whenSend_thenQueueEncodedFrameAndScheduleWrite() throws Exception {
+        comm.send("abc");
+
+        assertThat(comm.getOutbound()).hasSize(1);
+        assertThat(content(comm.getOutbound().peek())).isEqualTo("abcfiltered");
+        assertThat(writeBuffer.position()).isEqualTo(0);
+
+        verify(writeScheduler).scheduleWrite(comm);
+        verify(channel, never()).write(any(ByteBuffer.class));
+    }
+
+    @Test
+    void givenWriteIsScheduled_whenSend_thenDoNotScheduleAgain() throws Exception {
+        comm.send("1");
+        comm.send("2");
+
+        assertThat(comm.getOutbound()).hasSize(2);
+        verify(writeScheduler, times(1)).scheduleWrite(comm);
+    }
+
+    @Test
+    void givenWriterThrowsException_whenSend_thenClearWriteBuffer() throws Exception {
+        doAnswer(a -> {
+            writeBuffer.put("partial".getBytes());
+            throw new IllegalStateException();
+        }).when(clientWriter).write(anyString());
+
+        assertThrows(IllegalStateException.class, () -> comm.send("anything"));
+
+        assertThat(writeBuffer.position()).isEqualTo(0);
+        assertThat(comm.getOutbound()).isEmpty();
+    }
+
+    @Test
+    void givenFrameLargerThanWriteBuffer_whenSend_thenEncodeItIntoBiggerPooledBuffer() throws Exception {
+        LineWriter lineWriter = new LineWriter(writeBuffer);
+        protocols.put("line", new Protocol<>(lineWriter, clientReader, FilterProcessor.EMPTY_FILTER_PROCESSOR, FilterProcessor.EMPTY_FILTER_PROCESSOR, "line"));
+        comm.switchProtocol("line");
+
+        String large = new String(new char[1000]).replace("\0", "x");
+        comm.send(large);
+        comm.send("small");
+
+        assertThat(comm.getOutbound()).hasSize(2);
+        assertThat(content(comm.getOutbound().poll())).isEqualTo(large + "\r\n");
+        assertThat(content(comm.getOutbound().poll())).isEqualTo("small\r\n");
+        assertThat(writeBuffer.position()).isEqualTo(0);
+    }
+
+    @Test
+    void givenFrameLargerThanMaxFrameSize_whenSend_thenExceptionAndReturnBuffersToPool() throws Exception {
+        comm = new Comm(protocols, writeBuffer, readBufferLock, writeBufferLock, channel, writeScheduler, bufferPool, "default", false,
+                Comm.DEFAULT_LOW_WATERMARK, Comm.DEFAULT_HIGH_WATERMARK, 200);
+        LineWriter lineWriter = new LineWriter(writeBuffer);
+        protocols.put("line", new Protocol<>(lineWriter, clientReader, FilterProcessor.EMPTY_FILTER_PROCESSOR, FilterProcessor.EMPTY_FILTER_PROCESSOR, "line"));
+        comm.switchProtocol("line");
+
+        String fits = new String(new char[198]).replace("\0", "x");
+        comm.send(fits);
+        assertThat(content(comm.getOutbound().poll())).isEqualTo(fits + "\r\n");
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> comm.send(fits + "x"));
+
+        assertThat(e.getMessage()).isEqualTo("Encoded frame exceeds maximum allowed size. Max frame size: 200");
+        assertThat(comm.getOutbound()).isEmpty();
+        assertThat(writeBuffer.position()).isEqualTo(0);
+        assertThat(bufferPool.size()).isEqualTo(2);
+    }
+
+    @Test
+    void givenWriterCannotSwitchBuffer_whenFrameLargerThanWriteBuffer_thenException() throws Exception {
+        ClientWriter<String> fixedBufferWriter = frame -> writeBuffer.put(new byte[writeBuffer.capacity() + 1]);
+        protocols.put("fixed", new Protocol<>(fixedBufferWriter, clientReader, FilterProcessor.EMPTY_FILTER_PROCESSOR, FilterProcessor.EMPTY_FILTER_PROCESSOR, "fixed"));
+        comm.switchProtocol("fixed");
+
+        assertThrows(UnsupportedOperationException.class, () -> comm.send("large"));
+
+        assertThat(writeBuffer.position()).isEqualTo(0);
+        assertThat(comm.getOutbound()).isEmpty();
+    }
+
+    @Test
+    void whenFlush_thenWriteAllQueuedFramesWithOneGatheringWrite() throws Exception {
+        doAnswer(a -> consume(a.getArgument(0), a.getArgument(1), a.getArgument(2), Integer.MAX_VALUE)).when(channel).write(any(ByteBuffer[].class), anyInt(), anyInt());
+
+        comm.send("1");
+        comm.send("2");
+
+        assertThat(comm.flush()).isTrue();
+        assertThat(comm.getOutbound()).isEmpty();
+        verify(channel).write(any(ByteBuffer[].class), eq(0), eq(2));
+        verify(channel, never()).write(any(ByteBuffer.class));
+    }
+
+    @Test
+    void givenGatheringWriteIsPartial_whenFlush_thenKeepFramesWhichAreNotWrittenFully() throws Exception {
+        doAnswer(a -> consume(a.getArgument(0), a.getArgument(1), a.getArgument(2), "1filtered".length() + 1)).when(channel).write(any(ByteBuffer[].class), anyInt(), anyInt());
+
+        comm.send("1");
+        comm.send("2");
+        comm.send("3");
+
+        assertThat(comm.flush()).isFalse();
+        assertThat(comm.getOutbound()).hasSize(2);
+        assertThat(comm.getOutbound().peek().remaining()).isEqualTo("2filtered".length() - 1);
+        assertThat(bufferPool.size()).isEqualTo(1);
+    }
+
+    @Test
+    void givenMoreFramesThanOneWriteTakes_whenFlush_thenWriteThemInBatches() throws Exception {
+        doAnswer(a -> consume(a.getArgument(0), a.getArgument(1), a.getArgument(2), Integer.MAX_VALUE)).when(channel).write(any(ByteBuffer[].class), anyInt(), anyInt());
+        doAnswer(a -> consume(a.getArgument(0), Integer.MAX_VALUE)).when(channel).write(any(ByteBuffer.class));
+
+        for (int i = 0; i < 65; ++i) {
+            comm.send("x");
+        }
+
+        assertThat(comm.flush()).isTrue();
+        verify(channel).write(any(ByteBuffer[].class), eq(0), eq(64));
+        verify(channel).write(any(ByteBuffer.class));
+    }
+
+    @Test
+    void givenCorked_whenSend_thenScheduleWriteWhenUncorked() throws Exception {
+        comm.cork();
+        comm.send("1");
+        comm.send("2");
+
+        verify(writeScheduler, never()).scheduleWrite(comm);
+        assertThat(comm.getOutbound()).hasSize(2);
+
+        comm.uncork();
+        verify(writeScheduler).scheduleWrite(comm);
+    }
+
+    @Test
+    void givenNestedCorks_whenUncorkOnce_thenStillCorked() throws Exception {
+        comm.cork();
+        comm.cork();
+        comm.send("1");
+
+        comm.uncork();
+        verify(writeScheduler, never()).scheduleWrite(comm);
+
+        comm.uncork();
+        verify(writeScheduler).scheduleWrite(comm);
+    }
+
+    @Test
+    void givenNothingSentWhileCorked_whenUncork_thenDoNotScheduleWrite() {
+        comm.cork();
+        comm.uncork();
+
+        verify(writeScheduler, never()).scheduleWrite(comm);
+    }
+
+    @Test
+    void givenNotCorked_whenUncork_thenException() {
+        IllegalStateException e = assertThrows(IllegalStateException.class, comm::uncork);
+        assertThat(e.getMessage()).isEqualTo("Comm is not corked");
+
+        comm.cork();
+        comm.uncork();
+    }
+
+    @Test
+    void whenSendAll_thenQueueAllFramesAndScheduleOneWrite() throws Exception {
+        comm.sendAll(Arrays.asList("1", "2", "3"));
+
+        assertThat(comm.getOutbound()).hasSize(3);
+        verify(writeScheduler).scheduleWrite(comm);
+    }
+
+    @Test
+    void givenSendFails_whenSendAll_thenUncork() throws Exception {
+        doThrow(RuntimeException.class).when(clientWriter).write("2filtered");
 
-        comm.send("anything");
+        assertThrows(RuntimeException.class, () -> comm.sendAll(Arrays.asList("1", "2")));
 
-        inOrder.verify(clientWriter).write(anyString());
-        inOrder.verify(writeBuffer).flip();
-        inOrder.verify(channel).write(writeBuffer);
-        inOrder.verify(writeBuffer).compact();
+        verify(writeScheduler).scheduleWrite(comm);
+        comm.send("3");
+        verify(writeScheduler).scheduleWrite(comm);
     }
 
     @Test
-    void givenWriteThrowsException_whenWrite_thenCallBufferCompactInFinallyBlock() throws IOException {
-        doThrow(RuntimeException.class).when(channel).write(writeBuffer);
+    void givenSocketIsFull_whenFlush_thenKeepRemainingBytes() throws Exception {
+        doAnswer(a -> consume(a.getArgument(0), 3)).when(channel).write(any(ByteBuffer.class));
 
-        assertThrows(RuntimeException.class, () -> comm.send("anything"));
+        comm.send("abc");
 
-        verify(writeBuffer).compact();
+        assertThat(comm.flush()).isFalse();
+        assertThat(comm.getOutbound()).hasSize(1);
+        assertThat(comm.getOutbound().peek().remaining()).isEqualTo("filtered".length());
+    }
+
+    @Test
+    void givenSocketWasFull_whenFlushAgain_thenSendTheRest() throws Exception {
+        doAnswer(a -> consume(a.getArgument(0), 3)).when(channel).write(any(ByteBuffer.class));
+        comm.send("abc");
+        comm.flush();
+
+        doAnswer(a -> consume(a.getArgument(0), Integer.MAX_VALUE)).when(channel).write(any(ByteBuffer.class));
+
+        assertThat(comm.flush()).isTrue();
+        assertThat(comm.getOutbound()).isEmpty();
+    }
+
+    @Test
+    void givenQueueFlushed_whenSend_thenScheduleWriteAgain() throws Exception {
+        doAnswer(a -> consume(a.getArgument(0), Integer.MAX_VALUE)).when(channel).write(any(ByteBuffer.class));
+
+        comm.send("1");
+        comm.flush();
+        comm.send("2");
+
+        verify(writeScheduler, times(2)).scheduleWrite(comm);
+    }
+
+    @Test
+    void givenSocketIsFull_whenSend_thenDoNotScheduleWriteAgain() throws Exception {
+        doAnswer(a -> consume(a.getArgument(0), 1)).when(channel).write(any(ByteBuffer.class));
+
+        comm.send("1");
+        comm.flush();
+        comm.send("2");
+
+        verify(writeScheduler, times(1)).scheduleWrite(comm);
+    }
+
+    @Test
+    void whenFrameIsWritten_thenReturnItToPool() throws Exception {
+        doAnswer(a -> consume(a.getArgument(0), Integer.MAX_VALUE)).when(channel).write(any(ByteBuffer.class));
+
+        comm.send("1");
+        ByteBuffer frame = comm.getOutbound().peek();
+        comm.flush();
+
+        assertThat(bufferPool.size()).isEqualTo(1);
+        assertThat(bufferPool.acquire(1)).isSameAs(frame);
+    }
+
+    @Test
+    void givenFrameIsNotWrittenFully_whenFlush_thenDoNotReturnItToPool() throws Exception {
+        doAnswer(a -> consume(a.getArgument(0), 1)).when(channel).write(any(ByteBuffer.class));
+
+        comm.send("1");
+        comm.flush();
+
+        assertThat(bufferPool.size()).isEqualTo(0);
+    }
+
+    @Test
+    void whenClose_thenReturnQueuedFramesToPool() throws Exception {
+        comm.send("1");
+        comm.send("2");
+
+        comm.close();
+
+        assertThat(comm.isClosed()).isTrue();
+        assertThat(comm.getOutbound()).isEmpty();
+        assertThat(bufferPool.size()).isEqualTo(2);
+    }
+
+    @Test
+    void whenClose_thenCloseCodecsOfAllProtocols() {
+        Protocol<? extends Serializable, ? extends Serializable> secondary = protocols.get("secondary");
+
+        comm.close();
+
+        verify(clientReader, atLeastOnce()).close();
+        verify(clientWriter, atLeastOnce()).close();
+        verify(secondary.getClientReader()).close();
+        verify(secondary.getClientWriter()).close();
+    }
+
+    @Test
+    void givenClosed_whenSend_thenException() {
+        comm.close();
+
+        assertThrows(ClosedChannelException.class, () -> comm.send("1"));
+        assertThat(comm.getOutbound()).isEmpty();
+    }
+
+    @Test
+    void givenClosed_whenReadOrReceive_thenDoNotTouchReader() throws Exception {
+        comm.close();
+
+        assertThat(comm.canRead()).isFalse();
+        assertThat(comm.receive()).isNull();
+        verify(clientReader, never()).isReady();
+    }
+
+    @Test
+    void whenSendRaw_thenDoNotFilterFrame() throws Exception {
+        long now = System.nanoTime();
+        comm.sendRaw("raw");
+
+        verify(outputFilterProcessor, never()).filter(any());
+        assertThat(content(comm.getOutbound().peek())).isEqualTo("raw");
+        assertThat(comm.getLastDataSent()).isBetween(now, System.nanoTime());
+        verify(writeScheduler).scheduleWrite(comm);
+    }
+
+    @Test
+    void givenProtocolWithoutKeepAlive_whenPing_thenFalse() throws Exception {
+        assertThat(comm.ping()).isFalse();
+        assertThat(comm.getOutbound()).isEmpty();
+    }
+
+    @Test
+    void givenProtocolWithKeepAlive_whenPing_thenSendPingWithoutFiltering() throws Exception {
+        comm.switchProtocol("keepalive");
+        doReturn("ping").when(keepAlive).createPing(anyLong());
+
+        long now = System.nanoTime();
+        assertThat(comm.ping()).isTrue();
+
+        verify(outputFilterProcessor, never()).filter(any());
+        assertThat(content(comm.getOutbound().peek())).isEqualTo("ping");
+        assertThat(comm.getLastPingSent()).isBetween(now, System.nanoTime());
+    }
+
+    @Test
+    void givenKeepAliveHandlesFrame_whenReceive_thenReturnNullWithoutFiltering() throws Exception {
+        comm.switchProtocol("keepalive");
+        doReturn("pong").when(clientReader).read();
+        doReturn(true).when(keepAlive).handle("pong", comm);
+
+        long now = System.nanoTime();
+        assertThat(comm.receive()).isNull();
+
+        verify(inputFilterProcessor, never()).filter(any());
+        assertThat(comm.getLastDataReceived()).isBetween(now, System.nanoTime());
+    }
+
+    @Test
+    void givenKeepAliveDoesNotHandleFrame_whenReceive_thenFilterIt() throws Exception {
+        comm.switchProtocol("keepalive");
+        doReturn("next").when(clientReader).read();
+
+        assertThat(comm.receive()).isEqualTo("nextfiltered");
+        verify(keepAlive).handle("next", comm);
+    }
+
+    @Test
+    void givenZeroCopyReader_whenReceive_thenReadBufferInUseUntilFrameProcessed() throws Exception {
+        doReturn(true).when(clientReader).isZeroCopy();
+        doReturn("frame").when(clientReader).read();
+
+        comm.receive();
+        comm.receive();
+        assertThat(comm.isReadBufferInUse()).isTrue();
+
+        comm.frameProcessed();
+        assertThat(comm.isReadBufferInUse()).isTrue();
+
+        comm.frameProcessed();
+        assertThat(comm.isReadBufferInUse()).isFalse();
+    }
+
+    @Test
+    void givenZeroCopyReader_whenFrameFilteredOut_thenReadBufferNotInUse() throws Exception {
+        doReturn(true).when(clientReader).isZeroCopy();
+        doReturn("frame").when(clientReader).read();
+        doReturn(Optional.empty()).when(inputFilterProcessor).filter("frame");
+
+        assertThat(comm.receive()).isNull();
+        assertThat(comm.isReadBufferInUse()).isFalse();
+    }
+
+    @Test
+    void givenReaderCopiesFrames_whenReceive_thenReadBufferNotInUse() throws Exception {
+        doReturn("frame").when(clientReader).read();
+
+        comm.receive();
+        assertThat(comm.isReadBufferInUse()).isFalse();
+    }
+
+    @Test
+    void givenReadingPausedWithZeroCopyReader_whenLastFrameProcessed_thenScheduleRead() throws Exception {
+        doReturn(true).when(clientReader).isZeroCopy();
+        doReturn("frame").when(clientReader).read();
+
+        comm.receive();
+        comm.receive();
+        comm.pauseReading();
+
+        comm.frameProcessed();
+        verify(writeScheduler, never()).scheduleRead(comm);
+
+        comm.frameProcessed();
+        verify(writeScheduler).scheduleRead(comm);
+        assertThat(comm.isReadPaused()).isFalse();
+    }
+
+    @Test
+    void givenReadingNotPaused_whenLastFrameProcessed_thenDoNotScheduleRead() throws Exception {
+        doReturn(true).when(clientReader).isZeroCopy();
+        doReturn("frame").when(clientReader).read();
+
+        comm.receive();
+        comm.frameProcessed();
+
+        verify(writeScheduler, never()).scheduleRead(any());
+    }
+
+    @Test
+    void givenReadingPausedWithZeroCopyReader_whenLastFrameFilteredOut_thenScheduleRead() throws Exception {
+        doReturn(true).when(clientReader).isZeroCopy();
+        doReturn("frame").when(clientReader).read();
+        doReturn(Optional.empty()).when(inputFilterProcessor).filter("frame");
+        comm.pauseReading();
+
+        comm.receive();
+
+        verify(writeScheduler).scheduleRead(comm);
+    }
+
+    @Test
+    void givenReadingPausedWithCopyingReader_whenReceive_thenScheduleReadOnce() throws Exception {
+        doReturn("frame").when(clientReader).read();
+        comm.pauseReading();
+
+        comm.receive();
+        comm.receive();
+        comm.frameProcessed();
+
+        verify(writeScheduler, times(1)).scheduleRead(comm);
+    }
+
+    @Test
+    void givenReadingResumedByReader_whenLastFrameProcessed_thenDoNotScheduleRead() throws Exception {
+        doReturn(true).when(clientReader).isZeroCopy();
+        doReturn("frame").when(clientReader).read();
+
+        comm.receive();
+        comm.pauseReading();
+        assertThat(comm.tryResumeReading()).isTrue();
+
+        comm.frameProcessed();
+
+        verify(writeScheduler, never()).scheduleRead(any());
+        assertThat(comm.tryResumeReading()).isFalse();
+    }
+
+    private void createProtocols(List<ProtocolFactory<? extends Serializable, ? extends Serializable>> factories, ByteBuffer readBuffer) {
+        protocols = new HashMap<>();
+        for (ProtocolFactory<?, ?> factory : factories) {
+            Protocol<?, ?> protocol = factory.create(writeBuffer, readBuffer);
+            protocols.put(protocol.getName(), protocol);
+        }
+    }
+
+    private int consume(ByteBuffer buffer, int max) {
+        int amount = Math.min(max, buffer.remaining());
+        buffer.position(buffer.position() + amount);
+        return amount;
+    }
+
+    private long consume(ByteBuffer[] buffers, int offset, int length, long max) {
+        long consumed = 0;
+        for (int i = offset; i < offset + length; ++i) {
+            consumed += consume(buffers[i], (int) Math.min(Integer.MAX_VALUE, max - consumed));
+        }
+
+        return consumed;
+    }
+
+    private String content(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return new String(bytes);
     }
 
     @Test
@@ -261,16 +737,271 @@ class CommSpec {
 
         InOrder inOrder = inOrder(comm, writeBufferLock);
         inOrder.verify(writeBufferLock).lock();
-        inOrder.verify(comm).writeToSocket(anyString());
+        inOrder.verify(comm).enqueue(anyString(), any());
         inOrder.verify(writeBufferLock).unlock();
     }
 
     @Test
-    void givenWriteToSocketThrowsException_whenSend_thenUnlockBuffer() throws Exception {
-        doThrow(RuntimeException.class).when(comm).writeToSocket(anyString());
+    void givenEnqueueThrowsException_whenSend_thenUnlockBuffer() throws Exception {
+        doThrow(RuntimeException.class).when(comm).enqueue(anyString(), any());
         assertThrows(RuntimeException.class, () -> comm.send("any"));
         verify(writeBufferLock).unlock();
 
     }
 
+    @Test
+    void givenBinaryWebSocketProtocol_whenReceiveAndSend_thenPassByteBuffers() throws Exception {
+        ByteBuffer readBuffer = ByteBuffer.allocate(64);
+        createProtocols(ProtocolFactories.createProtocolFactoryForBinaryWebSocket("http", "ws"), readBuffer);
+
+        comm = new Comm(protocols, writeBuffer, readBufferLock, writeBufferLock, channel, writeScheduler, bufferPool, "ws");
+
+        readBuffer.put(new byte[]{(byte) 0x82, 0x03, 1, 2, 3}).flip();
+        Object received = comm.receive();
+
+        assertThat(received).isEqualTo(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+
+        comm.send(received);
+
+        assertThat(comm.getOutbound().peek()).isEqualTo(ByteBuffer.wrap(new byte[]{(byte) 0x82, 0x03, 1, 2, 3}));
+    }
+
+    @Test
+    void givenStreamingWebSocketProtocol_whenReceiveFragments_thenPassThemUndecoded() throws Exception {
+        ByteBuffer readBuffer = ByteBuffer.allocate(64);
+        createProtocols(ProtocolFactories.createProtocolFactoryForWebSocket("http", "ws", 16, true), readBuffer);
+
+        comm = new Comm(protocols, writeBuffer, readBufferLock, writeBufferLock, channel, writeScheduler, bufferPool, "ws");
+
+        // second character split between the fragments
+        readBuffer.put(new byte[]{0x01, 0x02, 'z', (byte) 0xC5, (byte) 0x80, 0x01, (byte) 0x82}).flip();
+
+        WebSocketFrame first = (WebSocketFrame) comm.receive();
+        WebSocketFrame last = (WebSocketFrame) comm.receive();
+
+        assertThat(first.getFrameType()).isEqualTo(WebSocketFrame.FrameType.TEXT);
+        assertThat(first.isFinalFragment()).isFalse();
+        assertThat(first.getPayload()).containsExactly('z', 0xC5);
+
+        assertThat(last.getFrameType()).isEqualTo(WebSocketFrame.FrameType.TEXT);
+        assertThat(last.isFinalFragment()).isTrue();
+        assertThat(last.getPayload()).containsExactly(0x82);
+
+        // bytes of an incomplete character are left in the input until the next fragment
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+        CharBuffer text = CharBuffer.allocate(4);
+        ByteBuffer input = ByteBuffer.allocate(4);
+        decoder.decode(input.put(first.getPayload()).flip(), text, false);
+        decoder.decode(input.compact().put(last.getPayload()).flip(), text, true);
+
+        assertThat(text.flip().toString()).isEqualTo("z\u0142");
+
+        comm.send("ok");
+
+        assertThat(comm.getOutbound().peek()).isEqualTo(ByteBuffer.wrap(new byte[]{(byte) 0x81, 0x02, 'o', 'k'}));
+    }
+
+    @Test
+    void givenStreamingBinaryWebSocketProtocol_whenReceiveFragments_thenPassThem() throws Exception {
+        ByteBuffer readBuffer = ByteBuffer.allocate(64);
+        createProtocols(ProtocolFactories.createProtocolFactoryForBinaryWebSocket("http", "ws", 16, true), readBuffer);
+
+        comm = new Comm(protocols, writeBuffer, readBufferLock, writeBufferLock, channel, writeScheduler, bufferPool, "ws");
+
+        readBuffer.put(new byte[]{0x02, 0x02, 1, 2, (byte) 0x89, 0x00, (byte) 0x80, 0x01, 3}).flip();
+
+        WebSocketFrame first = (WebSocketFrame) comm.receive();
+        Object ping = comm.receive();
+        WebSocketFrame last = (WebSocketFrame) comm.receive();
+
+        assertThat(first.getFrameType()).isEqualTo(WebSocketFrame.FrameType.BINARY);
+        assertThat(first.isFinalFragment()).isFalse();
+        assertThat(first.getPayload()).containsExactly(1, 2);
+        assertThat(ping).isNull();
+        assertThat(last.isFinalFragment()).isTrue();
+        assertThat(last.getPayload()).containsExactly(3);
+    }
+
+    @Test
+    void givenWebSocketProtocolWithMaxMessageSize_whenReceiveLongerMessage_thenException() throws Exception {
+        ByteBuffer readBuffer = ByteBuffer.allocate(64);
+        createProtocols(ProtocolFactories.createProtocolFactoryForWebSocket("http", "ws", 2, false), readBuffer);
+
+        comm = new Comm(protocols, writeBuffer, readBufferLock, writeBufferLock, channel, writeScheduler, bufferPool, "ws");
+
+        readBuffer.put(new byte[]{0x01, 0x02, 'a', 'b', (byte) 0x80, 0x01, 'c'}).flip();
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> comm.receive());
+        assertThat(e.getMessage()).isEqualTo("Message length exceeds maximum allowed size. Message length: 3");
+    }
+
+    @Test
+    void givenWebSocketProtocol_whenReceiveFragments_thenPassReassembledMessage() throws Exception {
+        ByteBuffer readBuffer = ByteBuffer.allocate(64);
+        createProtocols(ProtocolFactories.createProtocolFactoryForWebSocket("http", "ws"), readBuffer);
+
+        comm = new Comm(protocols, writeBuffer, readBufferLock, writeBufferLock, channel, writeScheduler, bufferPool, "ws");
+
+        readBuffer.put(new byte[]{0x01, 0x02, 'z', (byte) 0xC5, (byte) 0x80, 0x01, (byte) 0x82}).flip();
+
+        assertThat(comm.receive()).isEqualTo("z\u0142");
+    }
+
+    @Test
+    void whenSendEncoded_thenQueueFrameWithoutWriterAndFilters() throws Exception {
+        ByteBuffer frame = ByteBuffer.wrap("shared".getBytes()).asReadOnlyBuffer();
+
+        comm.sendEncoded(frame);
+
+        verify(outputFilterProcessor, never()).filter(any());
+        verify(clientWriter, never()).write(any());
+        verify(writeScheduler).scheduleWrite(comm);
+        assertThat(comm.getOutbound().peek()).isSameAs(frame);
+        assertThat(comm.getQueuedBytes()).isEqualTo(6);
+    }
+
+    @Test
+    void givenWritableBuffer_whenSendEncoded_thenException() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> comm.sendEncoded(ByteBuffer.allocate(1)));
+        assertThat(e.getMessage()).isEqualTo("Encoded frame has to be a read-only buffer");
+    }
+
+    @Test
+    void givenClosed_whenSendEncoded_thenException() {
+        comm.close();
+        assertThrows(ClosedChannelException.class, () -> comm.sendEncoded(ByteBuffer.allocate(1).asReadOnlyBuffer()));
+    }
+
+    @Test
+    void givenFramesQueued_whenPartiallyWritten_thenQueuedBytesDecrease() throws Exception {
+        comm.send("abc");
+        comm.sendEncoded(ByteBuffer.wrap("de".getBytes()).asReadOnlyBuffer());
+        assertThat(comm.getQueuedBytes()).isEqualTo("abcfiltered".length() + 2);
+
+        doAnswer(a -> consume(a.getArgument(0), a.getArgument(1), a.getArgument(2), 4)).when(channel).write(any(ByteBuffer[].class), anyInt(), anyInt());
+        comm.flush();
+        assertThat(comm.getQueuedBytes()).isEqualTo("abcfiltered".length() + 2 - 4);
+
+        doAnswer(a -> consume(a.getArgument(0), a.getArgument(1), a.getArgument(2), Integer.MAX_VALUE)).when(channel).write(any(ByteBuffer[].class), anyInt(), anyInt());
+        comm.flush();
+        assertThat(comm.getQueuedBytes()).isEqualTo(0);
+    }
+
+    @Test
+    void givenEncodedFrameWritten_whenFlush_thenDoNotReturnItToPool() throws Exception {
+        doAnswer(a -> consume(a.getArgument(0), Integer.MAX_VALUE)).when(channel).write(any(ByteBuffer.class));
+        comm.sendEncoded(ByteBuffer.allocate(64).asReadOnlyBuffer());
+
+        comm.flush();
+
+        assertThat(bufferPool.size()).isEqualTo(0);
+    }
+
+    @Test
+    void givenFramesQueued_whenClose_thenResetQueuedBytes() throws Exception {
+        comm.send("abc");
+        comm.sendEncoded(ByteBuffer.allocate(64).asReadOnlyBuffer());
+
+        comm.close();
+
+        assertThat(comm.getQueuedBytes()).isEqualTo(0);
+        assertThat(bufferPool.size()).isEqualTo(1);
+    }
+
+    @Test
+    void whenSendAsync_thenCompleteFutureWhenFrameIsWritten() throws Exception {
+        doAnswer(a -> consume(a.getArgument(0), 3)).when(channel).write(any(ByteBuffer.class));
+
+        CompletableFuture<Void> future = comm.sendAsync("abc");
+        comm.flush();
+        assertThat(future).isNotDone();
+
+        doAnswer(a -> consume(a.getArgument(0), Integer.MAX_VALUE)).when(channel).write(any(ByteBuffer.class));
+        comm.flush();
+        assertThat(future).isCompleted();
+    }
+
+    @Test
+    void givenFramesSentAsyncAndSync_whenPartiallyWritten_thenCompleteOnlyWrittenFrames() throws Exception {
+        comm.send("1");
+        CompletableFuture<Void> first = comm.sendAsync("2");
+        comm.sendEncoded(ByteBuffer.wrap("3".getBytes()).asReadOnlyBuffer());
+        CompletableFuture<Void> second = comm.sendAsync("4");
+
+        doAnswer(a -> consume(a.getArgument(0), a.getArgument(1), a.getArgument(2), "1filtered2filtered".length() + 1)).when(channel).write(any(ByteBuffer[].class), anyInt(), anyInt());
+        comm.flush();
+
+        assertThat(first).isCompleted();
+        assertThat(second).isNotDone();
+    }
+
+    @Test
+    void givenFrameFilteredOut_whenSendAsync_thenFutureIsCompleted() throws Exception {
+        doReturn(Optional.empty()).when(outputFilterProcessor).filter(anyString());
+
+        assertThat(comm.sendAsync("abc")).isCompleted();
+        assertThat(comm.getOutbound()).isEmpty();
+    }
+
+    @Test
+    void givenClosed_whenSendAsync_thenFutureFailsWithoutException() {
+        comm.close();
+
+        CompletableFuture<Void> future = comm.sendAsync("abc");
+
+        ExecutionException e = assertThrows(ExecutionException.class, future::get);
+        assertThat(e.getCause()).isInstanceOf(ClosedChannelException.class);
+    }
+
+    @Test
+    void givenFrameNotWritten_whenClose_thenFutureFails() throws Exception {
+        CompletableFuture<Void> future = comm.sendAsync("abc");
+
+        comm.close();
+
+        ExecutionException e = assertThrows(ExecutionException.class, future::get);
+        assertThat(e.getCause()).isInstanceOf(ClosedChannelException.class);
+    }
+
+    @Test
+    void givenQueuedBytesExceedHighWatermark_thenNotWritableUntilLowWatermark() throws Exception {
+        ClientWorker<?, ?> worker = mock(ClientWorker.class);
+        comm = new Comm(protocols, writeBuffer, readBufferLock, writeBufferLock, channel, writeScheduler, bufferPool, "default", false, 5, 20, Comm.DEFAULT_MAX_FRAME_SIZE);
+        comm.setClientWorker(worker);
+
+        comm.send("abc");
+        assertThat(comm.isWritable()).isTrue();
+
+        comm.send("def");
+        assertThat(comm.isWritable()).isFalse();
+        verify(worker).onWritabilityChanged(false);
+
+        doAnswer(a -> consume(a.getArgument(0), a.getArgument(1), a.getArgument(2), 10)).when(channel).write(any(ByteBuffer[].class), anyInt(), anyInt());
+        comm.flush();
+        assertThat(comm.isWritable()).isFalse();
+
+        doAnswer(a -> consume(a.getArgument(0), a.getArgument(1), a.getArgument(2), Integer.MAX_VALUE)).when(channel).write(any(ByteBuffer[].class), anyInt(), anyInt());
+        comm.flush();
+        assertThat(comm.isWritable()).isTrue();
+
+        InOrder inOrder = inOrder(worker);
+        inOrder.verify(worker).onWritabilityChanged(false);
+        inOrder.verify(worker).onWritabilityChanged(true);
+        inOrder.verifyNoMoreInteractions();
+    }
+
+    @Test
+    void givenWritabilityCallbackThrows_whenFlush_thenStillWriteFrames() throws Exception {
+        ClientWorker<?, ?> worker = mock(ClientWorker.class);
+        doThrow(RuntimeException.class).when(worker).onWritabilityChanged(anyBoolean());
+        comm = new Comm(protocols, writeBuffer, readBufferLock, writeBufferLock, channel, writeScheduler, bufferPool, "default", false, 0, 0, Comm.DEFAULT_MAX_FRAME_SIZE);
+        comm.setClientWorker(worker);
+        doAnswer(a -> consume(a.getArgument(0), Integer.MAX_VALUE)).when(channel).write(any(ByteBuffer.class));
+
+        comm.send("abc");
+        assertThat(comm.flush()).isTrue();
+
+        assertThat(comm.isWritable()).isTrue();
+        assertThat(comm.getOutbound()).isEmpty();
+    }
 }
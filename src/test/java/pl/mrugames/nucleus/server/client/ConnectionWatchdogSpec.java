@@ -12,17 +12,18 @@ import java.io.IOException;
 import java.time.Instant;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
-import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.fail;
 import static org.mockito.Mockito.*;
 
 class ConnectionWatchdogSpec {
     private ConnectionWatchdog watchdog;
     private ExecutorService executorService;
     private Client client;
+    private Comm comm;
     private TaskExecutor taskExecutor;
 
     @BeforeEach
@@ -30,12 +31,16 @@ class ConnectionWatchdogSpec {
         client = mock(Client.class);
         doReturn(30L).when(client).getConnectionTimeoutSeconds();
         doReturn(Instant.now()).when(client).getCreated();
+        doReturn(new AtomicBoolean()).when(client).getShutdown();
+
+        comm = mock(Comm.class);
+        doReturn(comm).when(client).getComm();
 
         taskExecutor = mock(TaskExecutor.class);
         doReturn(taskExecutor).when(client).getTaskExecutor();
 
         executorService = Executors.newSingleThreadExecutor();
-        watchdog = spy(new ConnectionWatchdog());
+        watchdog = spy(new ConnectionWatchdog(10, 8));
 
         executorService.execute(watchdog);
         if (!watchdog.awaitStart(30, TimeUnit.SECONDS)) {
@@ -70,191 +75,225 @@ class ConnectionWatchdogSpec {
     }
 
     @Test
-    void sendTimeout() {
-        Comm comm = mock(Comm.class);
-        doReturn(Instant.now().minusSeconds(31)).when(comm).getLastDataSent();
-        doReturn(Instant.now()).when(comm).getLastDataReceived();
+    void whenRegister_thenScheduleTimeout() throws InterruptedException {
+        stop();
+
+        watchdog.register(client);
 
-        assertTrue(watchdog.isTimeout(comm, "", 30));
+        assertThat(watchdog.clients).containsExactly(client);
+        assertThat(watchdog.timingWheel.size()).isEqualTo(1);
     }
 
     @Test
-    void receiveTimeout() {
-        Comm comm = mock(Comm.class);
-        doReturn(Instant.now()).when(comm).getLastDataSent();
-        doReturn(Instant.now().minusSeconds(31)).when(comm).getLastDataReceived();
+    void givenSendTimeout_whenCalculateNanosToTimeout_thenNotPositive() {
+        long now = System.nanoTime();
+        doReturn(now - TimeUnit.SECONDS.toNanos(31)).when(comm).getLastDataSent();
+        doReturn(now).when(comm).getLastDataReceived();
 
-        assertTrue(watchdog.isTimeout(comm, "", 30));
+        assertThat(watchdog.calculateNanosToTimeout(comm, 30, now)).isEqualTo(-TimeUnit.SECONDS.toNanos(1));
     }
 
     @Test
-    void noTimeout() {
-        Comm comm = mock(Comm.class);
-        doReturn(Instant.now()).when(comm).getLastDataSent();
-        doReturn(Instant.now()).when(comm).getLastDataReceived();
+    void givenReceiveTimeout_whenCalculateNanosToTimeout_thenNotPositive() {
+        long now = System.nanoTime();
+        doReturn(now).when(comm).getLastDataSent();
+        doReturn(now - TimeUnit.SECONDS.toNanos(31)).when(comm).getLastDataReceived();
 
-        assertFalse(watchdog.isTimeout(comm, "", 30));
+        assertThat(watchdog.calculateNanosToTimeout(comm, 30, now)).isEqualTo(-TimeUnit.SECONDS.toNanos(1));
     }
 
     @Test
-    void calculateSecondsToSendTimeout() {
-        Comm comm = mock(Comm.class);
-        doReturn(Instant.now().minusSeconds(10)).when(comm).getLastDataSent();
-        doReturn(Instant.now().minusSeconds(5)).when(comm).getLastDataReceived();
+    void givenNoTimeout_whenCalculateNanosToTimeout_thenUseOlderActivity() {
+        long now = System.nanoTime();
+        doReturn(now - TimeUnit.SECONDS.toNanos(10)).when(comm).getLastDataSent();
+        doReturn(now - TimeUnit.SECONDS.toNanos(5)).when(comm).getLastDataReceived();
 
-        assertThat(watchdog.calculateSecondsToTimeout(comm, 30)).isEqualTo(20);
+        assertThat(watchdog.calculateNanosToTimeout(comm, 30, now)).isEqualTo(TimeUnit.SECONDS.toNanos(20));
     }
 
     @Test
-    void calculateSecondsToReceiveTimeout() {
-        Comm comm = mock(Comm.class);
-        doReturn(Instant.now().minusSeconds(5)).when(comm).getLastDataSent();
-        doReturn(Instant.now().minusSeconds(10)).when(comm).getLastDataReceived();
+    void givenConnectionTimedOut_whenCheck_thenSubmitShutdownAndRemove() throws InterruptedException {
+        stop();
+
+        doReturn(System.nanoTime() - TimeUnit.SECONDS.toNanos(31)).when(comm).getLastDataReceived();
+        doReturn(System.nanoTime()).when(comm).getLastDataSent();
+        watchdog.register(client);
 
-        assertThat(watchdog.calculateSecondsToTimeout(comm, 30)).isEqualTo(20);
+        watchdog.check(client);
+
+        verify(taskExecutor).submit(any(ClientShutdownTask.class), anyLong());
+        assertThat(watchdog.clients).isEmpty();
+        assertThat(watchdog.semaphore.availablePermits()).isEqualTo(0);
     }
 
     @Test
-    void givenSameTimeOnSendAndReceive_calculateSecondsToTimeout() {
-        Comm comm = mock(Comm.class);
-        doReturn(Instant.now().minusSeconds(15)).when(comm).getLastDataSent();
-        doReturn(Instant.now().minusSeconds(15)).when(comm).getLastDataReceived();
+    void givenConnectionActive_whenCheck_thenScheduleNextCheck() throws InterruptedException {
+        stop();
+
+        doReturn(System.nanoTime()).when(comm).getLastDataReceived();
+        doReturn(System.nanoTime()).when(comm).getLastDataSent();
+        watchdog.register(client);
+
+        watchdog.check(client);
 
-        assertThat(watchdog.calculateSecondsToTimeout(comm, 30)).isEqualTo(15);
+        verify(taskExecutor, never()).submit(any(), anyLong());
+        assertThat(watchdog.clients).containsExactly(client);
+        assertThat(watchdog.timingWheel.size()).isEqualTo(2);
     }
 
     @Test
-    void calculateTimeoutCeiling() {
-        Comm comm = mock(Comm.class);
-        doReturn(Instant.now().minusSeconds(29).minusMillis(50)).when(comm).getLastDataSent();
-        doReturn(Instant.now().minusSeconds(15)).when(comm).getLastDataReceived();
+    void givenClientIsShutdownAlready_whenCheck_thenRemoveWithoutSubmittingShutdown() throws InterruptedException {
+        stop();
 
-        assertThat(watchdog.calculateSecondsToTimeout(comm, 30)).isEqualTo(1);
+        watchdog.register(client);
+        client.getShutdown().set(true);
+
+        watchdog.check(client);
+
+        verify(taskExecutor, never()).submit(any(), anyLong());
+        assertThat(watchdog.clients).isEmpty();
     }
 
     @Test
     void givenNoConnections_whenWatchdogIsRun_thenWait() throws InterruptedException {
         Thread.sleep(250);
-        verify(watchdog, never()).check();
+        verify(watchdog, never()).cycle();
     }
 
     @Test
-    void givenConnectionRegistered_whenWatchdogIsRun_thenCallCheck() throws InterruptedException {
-        Thread.sleep(100);
-        doReturn(true).when(watchdog).isTimeout(any(), any(), anyLong());
+    void givenConnectionRegistered_whenWatchdogIsRun_thenCallCycle() throws InterruptedException {
+        doReturn(System.nanoTime()).when(comm).getLastDataReceived();
+        doReturn(System.nanoTime()).when(comm).getLastDataSent();
+
         watchdog.register(client);
 
-        Thread.sleep(100);
-        verify(watchdog, times(1)).check();
+        verify(watchdog, timeout(1000).atLeastOnce()).cycle();
     }
 
     @Test
-    void givenConnectionRegistered_whenIsTimeoutReturnTrue_thenRemove() throws InterruptedException, IOException {
-        stop();
-
-        doReturn(true).when(watchdog).isTimeout(any(), any(), anyLong());
+    void givenConnectionNotDue_whenWatchdogIsRun_thenDoNotCheckIt() throws InterruptedException {
+        doReturn(System.nanoTime()).when(comm).getLastDataReceived();
+        doReturn(System.nanoTime()).when(comm).getLastDataSent();
 
         watchdog.register(client);
 
-        watchdog.check();
-
-        verify(taskExecutor).submit(any(ClientShutdownTask.class), anyLong());
-        assertThat(watchdog.clients).isEmpty();
+        Thread.sleep(250);
+        verify(watchdog, never()).check(client);
     }
 
     @Test
-    void givenAllConnectionsTimedOut_whenCheck_thenReturnMinusOne() throws InterruptedException {
-        stop();
+    void givenConnectionIdle_whenWatchdogIsRun_thenShutdownItAfterTimeout() throws InterruptedException {
+        doReturn(1L).when(client).getConnectionTimeoutSeconds();
+        doReturn(System.nanoTime()).when(comm).getLastDataReceived();
+        doReturn(System.nanoTime()).when(comm).getLastDataSent();
 
-        TaskExecutor taskExecutor = mock(TaskExecutor.class);
+        watchdog.register(client);
 
-        Client client1 = mock(Client.class);
-        Client client2 = mock(Client.class);
+        Thread.sleep(800);
+        verify(taskExecutor, never()).submit(any(), anyLong());
 
-        doReturn(Instant.now()).when(client1).getCreated();
-        doReturn(Instant.now()).when(client2).getCreated();
+        verify(taskExecutor, timeout(1000)).submit(any(ClientShutdownTask.class), anyLong());
+        assertThat(watchdog.clients).isEmpty();
+    }
 
-        doReturn(taskExecutor).when(client1).getTaskExecutor();
-        doReturn(taskExecutor).when(client2).getTaskExecutor();
+    @Test
+    void givenConnectionActiveAtDeadline_whenWatchdogIsRun_thenPostponeTimeout() throws InterruptedException {
+        doReturn(1L).when(client).getConnectionTimeoutSeconds();
+        long start = System.nanoTime();
+        doReturn(start + TimeUnit.MILLISECONDS.toNanos(600)).when(comm).getLastDataReceived();
+        doReturn(start + TimeUnit.MILLISECONDS.toNanos(600)).when(comm).getLastDataSent();
 
-        doReturn(true).when(watchdog).isTimeout(any(), any(), anyLong());
+        watchdog.register(client);
 
-        watchdog.register(client1);
-        watchdog.register(client2);
+        verify(watchdog, timeout(1500)).check(client);
+        verify(taskExecutor, never()).submit(any(), anyLong());
 
-        assertThat(watchdog.check()).isEqualTo(-1);
+        verify(taskExecutor, timeout(1500)).submit(any(ClientShutdownTask.class), anyLong());
+        verify(watchdog, times(2)).check(client);
     }
 
     @Test
-    void givenConnectionsNotTimedOut_whenCheck_thenReturnSoonestPossibleTimeout() throws InterruptedException {
-        stop();
-
-        TaskExecutor taskExecutor = mock(TaskExecutor.class);
-        doReturn(mock(Future.class)).when(taskExecutor).submit(any(), anyLong());
+    void givenPingsDisabled_whenKeepAlive_thenDoNotPing() throws Exception {
+        assertThat(watchdog.keepAlive(client, 0, System.nanoTime())).isEqualTo(Long.MAX_VALUE);
+        verify(comm, never()).ping();
+    }
 
-        doReturn(true, false, false).when(watchdog).isTimeout(any(), any(), anyLong());
+    @Test
+    void givenConnectionIdleForPingInterval_whenKeepAlive_thenPing() throws Exception {
+        long now = System.nanoTime();
+        doReturn(now - TimeUnit.SECONDS.toNanos(11)).when(comm).getLastDataReceived();
+        doReturn(now - TimeUnit.SECONDS.toNanos(10)).when(comm).getLastDataSent();
 
-        Client client1 = mock(Client.class);
-        Client client2 = mock(Client.class);
-        Client client3 = mock(Client.class);
+        assertThat(watchdog.keepAlive(client, TimeUnit.SECONDS.toNanos(10), now)).isEqualTo(TimeUnit.SECONDS.toNanos(10));
+        verify(comm).ping();
+    }
 
-        doReturn(30L).when(client1).getConnectionTimeoutSeconds();
-        doReturn(30L).when(client2).getConnectionTimeoutSeconds();
-        doReturn(30L).when(client3).getConnectionTimeoutSeconds();
+    @Test
+    void givenRecentActivity_whenKeepAlive_thenDoNotPingAndReturnTimeToNextPing() throws Exception {
+        long now = System.nanoTime();
+        doReturn(now - TimeUnit.SECONDS.toNanos(20)).when(comm).getLastDataReceived();
+        doReturn(now - TimeUnit.SECONDS.toNanos(4)).when(comm).getLastDataSent();
 
-        doReturn(Instant.now()).when(client1).getCreated();
-        doReturn(Instant.now()).when(client2).getCreated();
-        doReturn(Instant.now()).when(client3).getCreated();
+        assertThat(watchdog.keepAlive(client, TimeUnit.SECONDS.toNanos(10), now)).isEqualTo(TimeUnit.SECONDS.toNanos(6));
+        verify(comm, never()).ping();
+    }
 
-        doReturn(taskExecutor).when(client1).getTaskExecutor();
-        doReturn(taskExecutor).when(client2).getTaskExecutor();
-        doReturn(taskExecutor).when(client3).getTaskExecutor();
+    @Test
+    void givenPingNotAnsweredWithinInterval_whenIsPeerDead_thenTrue() {
+        long now = System.nanoTime();
+        doReturn(now - TimeUnit.SECONDS.toNanos(10)).when(comm).getLastPingSent();
+        doReturn(now - TimeUnit.SECONDS.toNanos(15)).when(comm).getLastDataReceived();
 
-        Comm comm1 = mock(Comm.class);
-        Comm comm2 = mock(Comm.class);
-        Comm comm3 = mock(Comm.class);
+        assertThat(watchdog.isPeerDead(comm, TimeUnit.SECONDS.toNanos(10), now)).isTrue();
+    }
 
-        doReturn(comm1).when(client1).getComm();
-        doReturn(comm2).when(client2).getComm();
-        doReturn(comm3).when(client3).getComm();
+    @Test
+    void givenDataReceivedAfterPing_whenIsPeerDead_thenFalse() {
+        long now = System.nanoTime();
+        doReturn(now - TimeUnit.SECONDS.toNanos(10)).when(comm).getLastPingSent();
+        doReturn(now - TimeUnit.SECONDS.toNanos(9)).when(comm).getLastDataReceived();
 
-        watchdog.register(client1);
-        watchdog.register(client2);
-        watchdog.register(client3);
+        assertThat(watchdog.isPeerDead(comm, TimeUnit.SECONDS.toNanos(10), now)).isFalse();
+    }
 
-        doReturn(30L).when(watchdog).calculateSecondsToTimeout(comm2, 30);
-        doReturn(20L).when(watchdog).calculateSecondsToTimeout(comm3, 30);
+    @Test
+    void givenPingSentRecently_whenIsPeerDead_thenFalse() {
+        long now = System.nanoTime();
+        doReturn(now - TimeUnit.SECONDS.toNanos(5)).when(comm).getLastPingSent();
+        doReturn(now - TimeUnit.SECONDS.toNanos(15)).when(comm).getLastDataReceived();
 
-        assertThat(watchdog.check()).isEqualTo(20);
+        assertThat(watchdog.isPeerDead(comm, TimeUnit.SECONDS.toNanos(10), now)).isFalse();
     }
 
     @Test
-    void givenConnectionNotTimedOut_whenWatchdogIsRun_thenWaitGivenAmountOfSeconds() throws InterruptedException {
-        doReturn(false).when(watchdog).isTimeout(any(), any(), anyLong());
-        doReturn(1L).when(watchdog).calculateSecondsToTimeout(any(), anyLong());
+    void givenPeerIsDead_whenCheck_thenSubmitShutdown() throws InterruptedException {
+        stop();
 
+        long now = System.nanoTime();
+        doReturn(10L).when(client).getPingIntervalSeconds();
+        doReturn(now - TimeUnit.SECONDS.toNanos(11)).when(comm).getLastPingSent();
+        doReturn(now - TimeUnit.SECONDS.toNanos(12)).when(comm).getLastDataReceived();
+        doReturn(now).when(comm).getLastDataSent();
         watchdog.register(client);
 
-        Thread.sleep(550);
-        verify(watchdog, times(1)).check();
+        watchdog.check(client);
 
-        Thread.sleep(550);
-        verify(watchdog, times(2)).check();
+        verify(taskExecutor).submit(any(ClientShutdownTask.class), anyLong());
+        assertThat(watchdog.clients).isEmpty();
     }
 
     @Test
-    void givenConnectionNotTimedOut_whenWatchdogIsRun_thenNextCallIsWhenNewConnectionIsRegistered() throws InterruptedException {
-        doReturn(false).when(watchdog).isTimeout(any(), any(), anyLong());
-        doReturn(10L).when(watchdog).calculateSecondsToTimeout(any(), anyLong());
+    void givenPingInterval_whenConnectionIsIdle_thenPingBeforeTimeout() throws Exception {
+        doReturn(1L).when(client).getPingIntervalSeconds();
+        doReturn(true).when(comm).ping();
+        long now = System.nanoTime();
+        doReturn(now).when(comm).getLastDataReceived();
+        doReturn(now).when(comm).getLastDataSent();
+        doReturn(now).when(comm).getLastPingSent();
 
-        watchdog.register(mock(Client.class));
-
-        Thread.sleep(550);
-        verify(watchdog, times(1)).check();
-
-        watchdog.register(mock(Client.class));
+        watchdog.register(client);
 
-        Thread.sleep(550);
-        verify(watchdog, times(2)).check();
+        verify(comm, timeout(2000)).ping();
+        verify(taskExecutor, never()).submit(any(), anyLong());
     }
 }
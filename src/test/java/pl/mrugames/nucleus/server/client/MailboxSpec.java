@@ -0,0 +1,43 @@
+package pl.mrugames.nucleus.server.client;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MailboxSpec {
+    private Mailbox mailbox;
+
+    @BeforeEach
+    void before() {
+        mailbox = new Mailbox();
+    }
+
+    @Test
+    void whenAdd_thenPollInTheSameOrder() {
+        mailbox.add("1");
+        mailbox.add("2");
+
+        assertThat(mailbox.size()).isEqualTo(2);
+        assertThat(mailbox.poll()).isEqualTo("1");
+        assertThat(mailbox.poll()).isEqualTo("2");
+        assertThat(mailbox.poll()).isNull();
+        assertTrue(mailbox.isEmpty());
+    }
+
+    @Test
+    void givenMailboxIsOwned_whenTryAcquire_thenFalse() {
+        assertTrue(mailbox.tryAcquire());
+        assertFalse(mailbox.tryAcquire());
+    }
+
+    @Test
+    void givenMailboxIsReleased_whenTryAcquire_thenTrue() {
+        mailbox.tryAcquire();
+        mailbox.release();
+
+        assertTrue(mailbox.tryAcquire());
+    }
+}
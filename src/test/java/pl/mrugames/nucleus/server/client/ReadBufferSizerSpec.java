@@ -0,0 +1,94 @@
+package pl.mrugames.nucleus.server.client;
+
+import com.codahale.metrics.Counter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReadBufferSizerSpec {
+    private ReadBufferSizer sizer;
+    private Counter grown;
+    private Counter shrunk;
+
+    @BeforeEach
+    void before() {
+        grown = new Counter();
+        shrunk = new Counter();
+        sizer = new ReadBufferSizer(64, 300, 3, grown, shrunk);
+    }
+
+    @Test
+    void whenGrow_thenDoubleUpToMaxSize() {
+        assertThat(sizer.grow(64)).isEqualTo(128);
+        assertThat(sizer.grow(128)).isEqualTo(256);
+        assertThat(sizer.grow(256)).isEqualTo(300);
+        assertThat(sizer.grow(300)).isEqualTo(300);
+
+        assertThat(grown.getCount()).isEqualTo(3);
+    }
+
+    @Test
+    void givenUnreadData_whenCheckFull_thenCompactionIsTakenIntoAccount() {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.position(2);
+
+        assertThat(ReadBufferSizer.isFull(buffer, false)).isFalse();
+        assertThat(ReadBufferSizer.isFull(buffer, true)).isTrue();
+
+        buffer.position(0);
+        assertThat(ReadBufferSizer.isFull(buffer, false)).isTrue();
+    }
+
+    @Test
+    void givenSmallReads_whenShrink_thenHalveAfterConfiguredAmountOfReads() {
+        ByteBuffer buffer = buffer(256, 64);
+
+        assertThat(sizer.shrink(buffer, false)).isEqualTo(256);
+        assertThat(sizer.shrink(buffer, false)).isEqualTo(256);
+        assertThat(sizer.shrink(buffer, false)).isEqualTo(128);
+
+        assertThat(shrunk.getCount()).isEqualTo(1);
+    }
+
+    @Test
+    void givenBigRead_whenShrink_thenStartCountingAgain() {
+        sizer.shrink(buffer(256, 10), false);
+        sizer.shrink(buffer(256, 10), false);
+        sizer.shrink(buffer(256, 65), false);
+
+        assertThat(sizer.shrink(buffer(256, 10), false)).isEqualTo(256);
+        assertThat(sizer.shrink(buffer(256, 10), false)).isEqualTo(256);
+        assertThat(sizer.shrink(buffer(256, 10), false)).isEqualTo(128);
+    }
+
+    @Test
+    void givenBufferInUse_whenShrink_thenWaitUntilItIsReleased() {
+        ByteBuffer buffer = buffer(256, 0);
+
+        for (int i = 0; i < 5; ++i) {
+            assertThat(sizer.shrink(buffer, true)).isEqualTo(256);
+        }
+
+        assertThat(sizer.shrink(buffer, false)).isEqualTo(128);
+    }
+
+    @Test
+    void givenInitialSize_whenShrink_thenDoNotGoBelowIt() {
+        ByteBuffer buffer = buffer(64, 0);
+
+        for (int i = 0; i < 5; ++i) {
+            assertThat(sizer.shrink(buffer, false)).isEqualTo(64);
+        }
+
+        assertThat(shrunk.getCount()).isEqualTo(0);
+    }
+
+    private ByteBuffer buffer(int capacity, int remaining) {
+        ByteBuffer buffer = ByteBuffer.allocate(capacity);
+        buffer.limit(remaining);
+        return buffer;
+    }
+}
@@ -0,0 +1,45 @@
+package pl.mrugames.nucleus.server.client.filters;
+
+import org.junit.jupiter.api.Test;
+import pl.mrugames.nucleus.server.client.frames.WebSocketFrame;
+import pl.mrugames.nucleus.server.websocket.WebsocketConstants;
+
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ByteBufferToWebSocketFrameFilterSpec {
+    private final ByteBufferToWebSocketFrameFilter filter = ByteBufferToWebSocketFrameFilter.getInstance();
+
+    @Test
+    void givenBufferWrappingWholeArray_whenFilter_thenUseTheArray() {
+        byte[] payload = {1, 2, 3};
+
+        WebSocketFrame frame = filter.filter(ByteBuffer.wrap(payload));
+
+        assertThat(frame.getFrameType()).isEqualTo(WebSocketFrame.FrameType.BINARY);
+        assertThat(frame.getPayload()).isSameAs(payload);
+    }
+
+    @Test
+    void givenPartOfBuffer_whenFilter_thenCopyRemainingBytesWithoutMovingPosition() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(8);
+        buffer.put(new byte[]{1, 2, 3, 4}).flip().position(1);
+
+        WebSocketFrame frame = filter.filter(buffer);
+
+        assertThat(frame.getPayload()).containsExactly(2, 3, 4);
+        assertThat(buffer.position()).isEqualTo(1);
+    }
+
+    @Test
+    void givenCloseBuffer_whenFilter_thenReturnCloseFrame() {
+        assertThat(filter.filter(WebsocketConstants.WEBSOCKET_CLOSE_BUFFER).getFrameType()).isEqualTo(WebSocketFrame.FrameType.CLOSE);
+        assertThat(filter.filter(ByteBuffer.allocate(0)).getFrameType()).isEqualTo(WebSocketFrame.FrameType.BINARY);
+    }
+
+    @Test
+    void givenNull_whenFilter_thenNull() {
+        assertThat(filter.filter(null)).isNull();
+    }
+}
@@ -0,0 +1,40 @@
+package pl.mrugames.nucleus.server.client.filters;
+
+import org.junit.jupiter.api.Test;
+import pl.mrugames.nucleus.server.client.frames.WebSocketFrame;
+import pl.mrugames.nucleus.server.websocket.WebsocketConstants;
+
+import java.nio.ByteBuffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class WebSocketFrameToByteBufferFilterSpec {
+    private final WebSocketFrameToByteBufferFilter filter = WebSocketFrameToByteBufferFilter.getInstance();
+
+    @Test
+    void givenBinaryFrame_whenFilter_thenReturnReadOnlyPayload() {
+        ByteBuffer result = filter.filter(new WebSocketFrame(WebSocketFrame.FrameType.BINARY, new byte[]{1, 2, 3}));
+
+        assertThat(result.isReadOnly()).isTrue();
+        assertThat(result).isEqualTo(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+    }
+
+    @Test
+    void givenTextFrame_whenFilter_thenReturnPayloadBytes() {
+        ByteBuffer result = filter.filter(new WebSocketFrame(WebSocketFrame.FrameType.TEXT, new byte[]{0x68, 0x69}));
+
+        assertThat(result).isEqualTo(ByteBuffer.wrap(new byte[]{0x68, 0x69}));
+    }
+
+    @Test
+    void givenCloseFrame_whenFilter_thenReturnCloseBuffer() {
+        assertThat(filter.filter(new WebSocketFrame(WebSocketFrame.FrameType.CLOSE, new byte[0]))).isSameAs(WebsocketConstants.WEBSOCKET_CLOSE_BUFFER);
+    }
+
+    @Test
+    void givenControlFrameOrNull_whenFilter_thenNull() {
+        assertThat(filter.filter(new WebSocketFrame(WebSocketFrame.FrameType.PING, new byte[0]))).isNull();
+        assertThat(filter.filter(new WebSocketFrame(WebSocketFrame.FrameType.PONG, new byte[0]))).isNull();
+        assertThat(filter.filter(null)).isNull();
+    }
+}
@@ -8,15 +8,19 @@ import org.mockito.InOrder;
 import pl.mrugames.nucleus.server.Metrics;
 import pl.mrugames.nucleus.server.client.Client;
 import pl.mrugames.nucleus.server.client.ClientFactory;
+import pl.mrugames.nucleus.server.client.Comm;
 import pl.mrugames.nucleus.server.client.ConnectionWatchdog;
 import pl.mrugames.nucleus.server.tasks.*;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.*;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.locks.Lock;
 
 import static org.assertj.core.api.Assertions.assertThat;
@@ -31,11 +35,13 @@ class HostManagerSpec {
     private TaskExecutor clientExecutor;
     private Future<Client> acceptResult;
     private Client client;
+    private Comm comm;
     private ByteBuffer readBuffer;
     private ExecutorService executorService;
     private ExecutorService maintenanceExecutor;
     private ConnectionWatchdog connectionWatchdog;
     private TaskWatchdog taskWatchdog;
+    private IOReactor reactor;
 
     @BeforeEach
     @SuppressWarnings("unchecked")
@@ -45,7 +51,7 @@ class HostManagerSpec {
         maintenanceExecutor = mock(ExecutorService.class);
         connectionWatchdog = mock(ConnectionWatchdog.class);
         taskWatchdog = mock(TaskWatchdog.class);
-        hostManager = spy(new HostManager(executorService, false, clientExecutor, maintenanceExecutor, connectionWatchdog, taskWatchdog));
+        hostManager = spy(new HostManager(executorService, false, clientExecutor, maintenanceExecutor, connectionWatchdog, taskWatchdog, 1));
 
         host = mock(Host.class);
         serverSocketChannel = mock(ServerSocketChannel.class);
@@ -62,7 +68,10 @@ class HostManagerSpec {
         doReturn(acceptResult).when(clientExecutor).submit(any(NewClientAcceptTask.class), anyLong());
 
         doNothing().when(hostManager).configure(socketChannel);
-        doNothing().when(hostManager).register(socketChannel, acceptResult);
+        reactor = mock(IOReactor.class);
+        hostManager.reactors = Collections.singletonList(reactor);
+
+        doNothing().when(hostManager).register(reactor, socketChannel, acceptResult);
         doNothing().when(hostManager).closeClientChannel(socketChannel);
 
         client = mock(Client.class);
@@ -72,10 +81,14 @@ class HostManagerSpec {
         doReturn(socketChannel).when(client).getChannel();
         doReturn(mock(Lock.class)).when(client).getReadBufferLock();
         doReturn(mock(Lock.class)).when(client).getWriteBufferLock();
+        doReturn(new AtomicBoolean()).when(client).getShutdown();
 
         readBuffer = mock(ByteBuffer.class);
         doReturn(readBuffer).when(client).getReadBuffer();
 
+        comm = mock(Comm.class);
+        doReturn(comm).when(client).getComm();
+
     }
 
     @AfterEach
@@ -190,11 +203,203 @@ class HostManagerSpec {
 
     @Test
     @SuppressWarnings("unchecked")
-    void whenRead_thenSubmitNewTask() throws ExecutionException, InterruptedException {
+    void whenRead_thenSubmitNewTask() throws ExecutionException, InterruptedException, IOException {
+        doReturn(3).when(hostManager).readToBuffer(readBuffer, socketChannel);
+        assertTrue(hostManager.read(acceptResult, socketChannel));
+        verify(clientExecutor).submit(any(ClientRequestTask.class), anyLong());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenNoBytesRead_whenRead_thenDoNotSubmitTask() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.limit(3);
+        doReturn(buffer).when(client).getReadBuffer();
+        doReturn(0).when(hostManager).readToBuffer(buffer, socketChannel);
+
+        assertTrue(hostManager.read(acceptResult, socketChannel));
+
+        verify(clientExecutor, never()).submit(any(), anyLong());
+        verify(comm, never()).pauseReading();
+        assertThat(Metrics.getRegistry().counter("pl.mrugames.nucleus.server.host.HostManager.empty_reads").getCount()).isEqualTo(1);
+    }
+
+    @Test
+    void givenReadBufferIsFull_whenRead_thenPauseAndStopReading() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        doReturn(buffer).when(client).getReadBuffer();
+        doReturn(0).when(hostManager).readToBuffer(buffer, socketChannel);
+
+        assertFalse(hostManager.read(acceptResult, socketChannel));
+
+        verify(comm).pauseReading();
+        verify(comm, never()).tryResumeReading();
+        verify(clientExecutor, never()).submit(any(), anyLong());
+    }
+
+    @Test
+    void givenReadBufferInUseIsFull_whenRead_thenPauseAndStopReading() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.position(2);
+        doReturn(buffer).when(client).getReadBuffer();
+        doReturn(true).when(comm).isReadBufferInUse();
+        doReturn(0).when(hostManager).appendToBuffer(buffer, socketChannel);
+
+        assertFalse(hostManager.read(acceptResult, socketChannel));
+
+        verify(comm).pauseReading();
+        verify(comm, never()).tryResumeReading();
+    }
+
+    @Test
+    void givenReadBufferReleasedBeforePause_whenRead_thenResumeAndKeepReading() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.position(2);
+        doReturn(buffer).when(client).getReadBuffer();
+        doReturn(true, false).when(comm).isReadBufferInUse();
+        doReturn(true).when(comm).tryResumeReading();
+        doReturn(0).when(hostManager).appendToBuffer(buffer, socketChannel);
+
+        assertTrue(hostManager.read(acceptResult, socketChannel));
+
+        InOrder inOrder = inOrder(comm);
+        inOrder.verify(comm).pauseReading();
+        inOrder.verify(comm).tryResumeReading();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenEndOfStream_whenRead_thenSubmitShutdownTaskAndStopReading() throws IOException {
+        doReturn(-1).when(hostManager).readToBuffer(readBuffer, socketChannel);
+        doReturn(true).when(client).endOfStream();
+
+        assertFalse(hostManager.read(acceptResult, socketChannel));
+
+        verify(clientExecutor).submit(any(ClientShutdownTask.class), anyLong());
+        verify(clientExecutor, never()).submit(any(ClientRequestTask.class), anyLong());
+    }
+
+    @Test
+    void givenEndOfStreamWhileRequestTasksPending_whenRead_thenStopReadingButDoNotShutdown() throws IOException {
+        doReturn(-1).when(hostManager).readToBuffer(readBuffer, socketChannel);
+        doReturn(false).when(client).endOfStream();
+
+        assertFalse(hostManager.read(acceptResult, socketChannel));
+
+        verify(client).endOfStream();
+        verify(clientExecutor, never()).submit(any(), anyLong());
+    }
+
+    @Test
+    void givenClientIsShutdown_whenRead_thenDoNotTouchBufferAndStopReading() throws IOException {
+        client.getShutdown().set(true);
+
+        assertFalse(hostManager.read(acceptResult, socketChannel));
+
+        verify(hostManager, never()).readToBuffer(any(), any());
+        verify(clientExecutor, never()).submit(any(), anyLong());
+    }
+
+    @Test
+    void whenRead_thenUpdateBytesPerRead() throws IOException {
+        doReturn(10).when(hostManager).readToBuffer(readBuffer, socketChannel);
+
         hostManager.read(acceptResult, socketChannel);
+
+        assertThat(Metrics.getRegistry().histogram("pl.mrugames.nucleus.server.host.HostManager.bytes_per_read").getSnapshot().getMax()).isEqualTo(10);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenReadBufferInUse_whenRead_thenAppendToBuffer() throws IOException {
+        doReturn(true).when(comm).isReadBufferInUse();
+        doReturn(3).when(hostManager).appendToBuffer(readBuffer, socketChannel);
+
+        assertTrue(hostManager.read(acceptResult, socketChannel));
+
+        verify(hostManager, never()).readToBuffer(any(), any());
         verify(clientExecutor).submit(any(ClientRequestTask.class), anyLong());
     }
 
+    @Test
+    void whenAppendToBuffer_thenUnreadDataIsNotMoved() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.put(new byte[]{1, 2, 3});
+        buffer.flip();
+        buffer.get();
+
+        doAnswer(a -> {
+            ByteBuffer target = a.getArgument(0);
+            assertThat(target.position()).isEqualTo(3);
+            target.put((byte) 4);
+            return 1;
+        }).doReturn(0).when(socketChannel).read(buffer);
+
+        assertThat(hostManager.appendToBuffer(buffer, socketChannel)).isEqualTo(1);
+
+        assertThat(buffer.position()).isEqualTo(1);
+        assertThat(buffer.limit()).isEqualTo(4);
+        assertThat(buffer.get(0)).isEqualTo((byte) 1);
+    }
+
+    @Test
+    void givenNoSpaceBehindData_whenAppendToBuffer_thenNothingIsRead() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(4);
+        buffer.put(new byte[]{1, 2, 3, 4});
+        buffer.flip();
+        buffer.get();
+
+        assertThat(hostManager.appendToBuffer(buffer, socketChannel)).isEqualTo(0);
+
+        verify(socketChannel, never()).read(buffer);
+        assertThat(buffer.position()).isEqualTo(1);
+        assertThat(buffer.limit()).isEqualTo(4);
+    }
+
+    @Test
+    void whenReadToBuffer_thenDrainChannelUntilItHasNoMoreData() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.flip();
+
+        doAnswer(a -> put(a.getArgument(0), 5)).doAnswer(a -> put(a.getArgument(0), 7)).doReturn(0).when(socketChannel).read(buffer);
+
+        assertThat(hostManager.readToBuffer(buffer, socketChannel)).isEqualTo(12);
+        assertThat(buffer.remaining()).isEqualTo(12);
+        verify(socketChannel, times(3)).read(buffer);
+    }
+
+    @Test
+    void givenBufferIsFull_whenReadToBuffer_thenStopReading() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8);
+        buffer.flip();
+
+        doAnswer(a -> put(a.getArgument(0), 5)).doAnswer(a -> put(a.getArgument(0), 3)).when(socketChannel).read(buffer);
+
+        assertThat(hostManager.readToBuffer(buffer, socketChannel)).isEqualTo(8);
+        verify(socketChannel, times(2)).read(buffer);
+    }
+
+    @Test
+    void givenEndOfStreamAfterData_whenReadToBuffer_thenReturnData() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.flip();
+
+        doAnswer(a -> put(a.getArgument(0), 5)).doReturn(-1).when(socketChannel).read(buffer);
+
+        assertThat(hostManager.readToBuffer(buffer, socketChannel)).isEqualTo(5);
+    }
+
+    @Test
+    void givenEndOfStream_whenReadToBuffer_thenReturnMinusOne() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.flip();
+
+        doReturn(-1).when(socketChannel).read(buffer);
+
+        assertThat(hostManager.readToBuffer(buffer, socketChannel)).isEqualTo(-1);
+        assertThat(buffer.remaining()).isEqualTo(0);
+    }
+
     @Test
     @SuppressWarnings("unchecked")
     void whenAccept_thenConfigureSocketAndRegisterSelector() throws IOException {
@@ -204,7 +409,7 @@ class HostManagerSpec {
 
         inOrder.verify(hostManager).configure(socketChannel);
         inOrder.verify(clientExecutor).submit(any(NewClientAcceptTask.class), anyLong());
-        inOrder.verify(hostManager).register(socketChannel, acceptResult);
+        inOrder.verify(hostManager).register(reactor, socketChannel, acceptResult);
     }
 
     @Test
@@ -216,7 +421,7 @@ class HostManagerSpec {
 
     @Test
     void givenRegisterThrowsException_whenAccept_thenCloseSocket() throws IOException {
-        doThrow(RuntimeException.class).when(hostManager).register(socketChannel, acceptResult);
+        doThrow(RuntimeException.class).when(hostManager).register(reactor, socketChannel, acceptResult);
         hostManager.accept(serverSocketChannel, host);
         verify(hostManager).closeClientChannel(socketChannel);
     }
@@ -250,25 +455,37 @@ class HostManagerSpec {
 
     @Test
     void whenRead_thenPrepareBuffer() throws Exception {
-        ByteBuffer readBuffer = mock(ByteBuffer.class);
+        ByteBuffer readBuffer = ByteBuffer.allocate(8);
+        readBuffer.put(new byte[]{1, 2, 3});
+        readBuffer.flip();
+        readBuffer.get();
+
+        doAnswer(a -> {
+            ByteBuffer buffer = a.getArgument(0);
+            assertThat(buffer.position()).isEqualTo(2); // compacted
+            buffer.put((byte) 4);
+            return 1;
+        }).doReturn(0).when(socketChannel).read(readBuffer);
 
-        InOrder inOrder = inOrder(readBuffer, socketChannel);
         hostManager.readToBuffer(readBuffer, socketChannel);
 
-        inOrder.verify(readBuffer).compact();
-        inOrder.verify(socketChannel).read(readBuffer);
-        inOrder.verify(readBuffer).flip();
+        assertThat(readBuffer.position()).isEqualTo(0); // flipped
+        assertThat(readBuffer.remaining()).isEqualTo(3);
+        assertThat(readBuffer.get()).isEqualTo((byte) 2);
     }
 
     @Test
     void givenChannelThrowsException_whenReceive_thenCallFlipInFinallyBlock() throws Exception {
-        ByteBuffer readBuffer = mock(ByteBuffer.class);
+        ByteBuffer readBuffer = ByteBuffer.allocate(8);
+        readBuffer.put(new byte[]{1, 2});
+        readBuffer.flip();
 
         doThrow(RuntimeException.class).when(socketChannel).read(readBuffer);
 
         assertThrows(RuntimeException.class, () -> hostManager.readToBuffer(readBuffer, socketChannel));
 
-        verify(readBuffer).flip();
+        assertThat(readBuffer.position()).isEqualTo(0);
+        assertThat(readBuffer.limit()).isEqualTo(2);
     }
 
     @Test
@@ -292,7 +509,7 @@ class HostManagerSpec {
 
     @Test
     void givenManageExecutorServiceIsTrue_whenRun_thenManageExecutor() throws InterruptedException {
-        HostManager hostManager = new HostManager(executorService, true, clientExecutor, maintenanceExecutor, connectionWatchdog, taskWatchdog);
+        HostManager hostManager = new HostManager(executorService, true, clientExecutor, maintenanceExecutor, connectionWatchdog, taskWatchdog, 1);
         ExecutorService tmp = Executors.newSingleThreadExecutor();
         tmp.execute(hostManager);
 
@@ -305,7 +522,7 @@ class HostManagerSpec {
 
     @Test
     void giveManageExecutorServiceIsFalse_whenRun_thenDoNotManageExecutor() throws InterruptedException {
-        HostManager hostManager = new HostManager(executorService, false, clientExecutor, maintenanceExecutor, connectionWatchdog, taskWatchdog);
+        HostManager hostManager = new HostManager(executorService, false, clientExecutor, maintenanceExecutor, connectionWatchdog, taskWatchdog, 1);
         ExecutorService tmp = Executors.newSingleThreadExecutor();
         tmp.execute(hostManager);
 
@@ -352,4 +569,143 @@ class HostManagerSpec {
         hostManager.awaitTermination(1, TimeUnit.SECONDS);
     }
 
+    @Test
+    void whenNewVirtualThreadPerTaskExecutor_thenRunTasksOnVirtualThreadsIfSupported() throws Exception {
+        if (Runtime.version().major() < 21) {
+            assertThrows(UnsupportedOperationException.class, HostManager::newVirtualThreadPerTaskExecutor);
+            return;
+        }
+
+        ExecutorService executor = HostManager.newVirtualThreadPerTaskExecutor();
+        try {
+            Thread thread = executor.submit(Thread::currentThread).get(1, TimeUnit.SECONDS);
+            assertThat(Thread.class.getMethod("isVirtual").invoke(thread)).isEqualTo(true);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void whenNewWorkStealingExecutor_thenRunTasksOnAsyncForkJoinWorkers() throws Exception {
+        ExecutorService executor = HostManager.newWorkStealingExecutor(2);
+        try {
+            assertThat(executor).isInstanceOf(ForkJoinPool.class);
+            assertThat(((ForkJoinPool) executor).getAsyncMode()).isTrue();
+            assertThat(((ForkJoinPool) executor).getParallelism()).isEqualTo(2);
+
+            CompletionService<Object> completionService = HostManager.newCompletionService(executor);
+            Future<Object> outer = completionService.submit(() -> completionService.submit(() -> Thread.currentThread().getName()));
+
+            assertThat(((Future<?>) outer.get(1, TimeUnit.SECONDS)).get(1, TimeUnit.SECONDS)).asString().startsWith("nucleus-worker-");
+            assertThat(completionService.poll(1, TimeUnit.SECONDS)).isNotNull();
+            assertThat(completionService.poll(1, TimeUnit.SECONDS)).isNotNull();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void givenWorkStealingExecutor_whenTaskIsCancelled_thenInterruptIt() throws Exception {
+        ExecutorService executor = HostManager.newWorkStealingExecutor(1);
+        try {
+            CountDownLatch started = new CountDownLatch(1);
+            CountDownLatch interrupted = new CountDownLatch(1);
+
+            Future<?> task = HostManager.newCompletionService(executor).submit(() -> {
+                started.countDown();
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(10));
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return null;
+            });
+
+            assertThat(started.await(1, TimeUnit.SECONDS)).isTrue();
+            task.cancel(true);
+
+            assertThat(interrupted.await(1, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void givenNoIOThreads_whenCreate_thenException() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class,
+                () -> new HostManager(executorService, false, clientExecutor, maintenanceExecutor, connectionWatchdog, taskWatchdog, 0));
+
+        assertThat(e.getMessage()).isEqualTo("At least one I/O thread is required, got: 0");
+    }
+
+    @Test
+    void givenMultipleReactors_whenLeastLoadedReactor_thenReturnOneWithSmallestLoad() {
+        IOReactor reactor1 = mock(IOReactor.class);
+        IOReactor reactor2 = mock(IOReactor.class);
+        IOReactor reactor3 = mock(IOReactor.class);
+
+        doReturn(5).when(reactor1).getLoad();
+        doReturn(2).when(reactor2).getLoad();
+        doReturn(3).when(reactor3).getLoad();
+
+        hostManager.reactors = Arrays.asList(reactor1, reactor2, reactor3);
+
+        assertThat(hostManager.leastLoadedReactor()).isSameAs(reactor2);
+    }
+
+    @Test
+    void whenAccept_thenClientIsBoundToReactorItIsRegisteredIn() {
+        IOReactor reactor1 = mock(IOReactor.class);
+        IOReactor reactor2 = mock(IOReactor.class);
+
+        doReturn(5).when(reactor1).getLoad();
+        doReturn(2).when(reactor2).getLoad();
+
+        hostManager.reactors = Arrays.asList(reactor1, reactor2);
+        hostManager.accept(serverSocketChannel, host);
+
+        verify(hostManager).register(reactor2, socketChannel, acceptResult);
+    }
+
+    @Test
+    void givenNoReactors_whenLeastLoadedReactor_thenException() {
+        hostManager.reactors = Collections.emptyList();
+        assertThrows(IllegalStateException.class, hostManager::leastLoadedReactor);
+    }
+
+    @Test
+    void whenShutdown_thenShutdownReactors() throws IOException {
+        hostManager.selector = Selector.open();
+
+        IOReactor reactor1 = mock(IOReactor.class);
+        IOReactor reactor2 = mock(IOReactor.class);
+        hostManager.reactors = Arrays.asList(reactor1, reactor2);
+
+        hostManager.shutdown();
+
+        verify(reactor1).shutdown();
+        verify(reactor2).shutdown();
+    }
+
+    @Test
+    void whenStartReactors_thenCreateGivenAmountOfReactors() throws IOException, InterruptedException {
+        HostManager hostManager = new HostManager(executorService, false, clientExecutor, maintenanceExecutor, connectionWatchdog, taskWatchdog, 3);
+        hostManager.startReactors();
+
+        try {
+            assertThat(hostManager.reactors).hasSize(3);
+
+            for (IOReactor reactor : hostManager.reactors) {
+                assertTrue(reactor.awaitStart(1, TimeUnit.SECONDS));
+            }
+        } finally {
+            hostManager.reactors.forEach(IOReactor::shutdown);
+        }
+    }
+
+
+    private int put(ByteBuffer buffer, int bytes) {
+        buffer.put(new byte[bytes]);
+        return bytes;
+    }
 }
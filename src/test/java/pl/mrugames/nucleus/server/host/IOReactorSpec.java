@@ -0,0 +1,228 @@
+package pl.mrugames.nucleus.server.host;
+
+import com.codahale.metrics.MetricFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pl.mrugames.nucleus.server.Metrics;
+import pl.mrugames.nucleus.server.client.Client;
+import pl.mrugames.nucleus.server.client.Comm;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.*;
+import java.util.function.BiPredicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class IOReactorSpec {
+    private IOReactor reactor;
+    private BiPredicate<Future<Client>, SocketChannel> reader;
+    private ExecutorService executorService;
+    private ServerSocketChannel serverSocketChannel;
+    private SocketChannel client;
+    private SocketChannel server;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void before() throws IOException, InterruptedException {
+        reader = mock(BiPredicate.class);
+        doReturn(true).when(reader).test(any(), any());
+        reactor = new IOReactor("test-reactor", Selector.open(), reader);
+
+        executorService = Executors.newSingleThreadExecutor();
+        executorService.execute(reactor);
+        assertTrue(reactor.awaitStart(1, TimeUnit.SECONDS));
+
+        serverSocketChannel = ServerSocketChannel.open();
+        serverSocketChannel.bind(new InetSocketAddress("localhost", 0));
+
+        client = SocketChannel.open(serverSocketChannel.getLocalAddress());
+        server = serverSocketChannel.accept();
+        server.configureBlocking(false);
+    }
+
+    @AfterEach
+    void after() throws IOException, InterruptedException {
+        reactor.shutdown();
+        executorService.shutdownNow();
+        executorService.awaitTermination(1, TimeUnit.SECONDS);
+
+        client.close();
+        server.close();
+        serverSocketChannel.close();
+
+        Metrics.getRegistry().removeMatching(MetricFilter.ALL);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void whenRegister_thenChannelIsRegisteredForReading() throws InterruptedException {
+        Future<Client> future = mock(Future.class);
+        reactor.register(server, future);
+
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        SelectionKey key = server.keyFor(reactor.getSelector());
+        assertThat(key).isNotNull();
+        assertThat(key.interestOps()).isEqualTo(SelectionKey.OP_READ);
+        assertThat(key.attachment()).isSameAs(future);
+        assertThat(reactor.getLoad()).isEqualTo(1);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenChannelRegistered_whenDataArrives_thenCallReader() throws IOException {
+        Future<Client> future = mock(Future.class);
+        reactor.register(server, future);
+
+        client.write(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+
+        verify(reader, timeout(1000).atLeastOnce()).test(eq(future), eq(server));
+    }
+
+    @Test
+    void givenReaderThrowsException_whenDataArrives_thenKeepRunning() throws IOException, InterruptedException {
+        doThrow(RuntimeException.class).when(reader).test(any(), any());
+
+        reactor.register(server, null);
+        client.write(ByteBuffer.wrap(new byte[]{1}));
+
+        verify(reader, timeout(1000).atLeastOnce()).test(any(), any());
+        assertTrue(reactor.getSelector().isOpen());
+    }
+
+    @Test
+    void givenReaderReturnsFalse_whenDataArrives_thenStopSelectingForReading() throws IOException, InterruptedException {
+        doReturn(false).when(reader).test(any(), any());
+
+        reactor.register(server, null);
+        client.write(ByteBuffer.wrap(new byte[]{1}));
+
+        verify(reader, timeout(1000)).test(any(), eq(server));
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        assertThat(server.keyFor(reactor.getSelector()).interestOps()).isEqualTo(0);
+        verify(reader, times(1)).test(any(), any());
+    }
+
+    @Test
+    void givenReadingStopped_whenScheduleRead_thenSelectForReadingAgain() throws IOException, InterruptedException {
+        doReturn(false, true).when(reader).test(any(), any());
+        Comm comm = mock(Comm.class);
+        doReturn(server).when(comm).getSocketChannel();
+
+        reactor.register(server, null);
+        client.write(ByteBuffer.wrap(new byte[]{1}));
+
+        verify(reader, timeout(1000)).test(any(), eq(server));
+        TimeUnit.MILLISECONDS.sleep(100);
+        assertThat(server.keyFor(reactor.getSelector()).interestOps()).isEqualTo(0);
+
+        reactor.scheduleRead(comm);
+
+        verify(reader, timeout(1000).atLeast(2)).test(any(), eq(server));
+        assertThat(server.keyFor(reactor.getSelector()).interestOps()).isEqualTo(SelectionKey.OP_READ);
+    }
+
+    @Test
+    void givenChannelIsNotRegistered_whenScheduleRead_thenDoNotFail() throws InterruptedException {
+        Comm comm = mock(Comm.class);
+        doReturn(server).when(comm).getSocketChannel();
+
+        reactor.scheduleRead(comm);
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        assertThat(server.keyFor(reactor.getSelector())).isNull();
+        assertTrue(reactor.getSelector().isOpen());
+    }
+
+    @Test
+    void givenChannelIsClosed_whenRegister_thenDoNotFail() throws IOException, InterruptedException {
+        server.close();
+        reactor.register(server, null);
+
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        assertThat(reactor.getLoad()).isEqualTo(0);
+    }
+
+    @Test
+    void whenShutdown_thenCloseChannelsAndSelector() throws InterruptedException {
+        reactor.register(server, null);
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        reactor.shutdown();
+
+        assertFalse(server.isOpen());
+        assertFalse(reactor.getSelector().isOpen());
+    }
+
+    @Test
+    void whenScheduleWrite_thenFlushInReactorThread() throws IOException {
+        Comm comm = mock(Comm.class);
+        doReturn(server).when(comm).getSocketChannel();
+        doReturn(true).when(comm).flush();
+
+        reactor.scheduleWrite(comm);
+
+        verify(comm, timeout(1000)).flush();
+    }
+
+    @Test
+    void givenSocketIsFull_whenWrite_thenWaitForWritableChannel() throws IOException, InterruptedException {
+        reactor.register(server, null);
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        Comm comm = mock(Comm.class);
+        doReturn(server).when(comm).getSocketChannel();
+        doReturn(false, false, true).when(comm).flush();
+
+        reactor.scheduleWrite(comm);
+
+        verify(comm, timeout(1000).times(3)).flush();
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        assertThat(server.keyFor(reactor.getSelector()).interestOps()).isEqualTo(SelectionKey.OP_READ);
+    }
+
+    @Test
+    void givenChannelIsNotRegistered_whenWriteIncomplete_thenEnableWriteOnRegistration() throws IOException, InterruptedException {
+        Comm comm = mock(Comm.class);
+        doReturn(server).when(comm).getSocketChannel();
+        doReturn(false).when(comm).flush();
+
+        reactor.scheduleWrite(comm);
+        verify(comm, timeout(1000)).flush();
+
+        reactor.register(server, null);
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        assertThat(server.keyFor(reactor.getSelector()).interestOps()).isEqualTo(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+    }
+
+    @Test
+    void givenFlushThrowsException_whenWrite_thenForgetTheClient() throws IOException, InterruptedException {
+        Comm comm = mock(Comm.class);
+        doReturn(server).when(comm).getSocketChannel();
+        doReturn(false).doThrow(IOException.class).when(comm).flush();
+
+        reactor.scheduleWrite(comm);
+        reactor.scheduleWrite(comm);
+
+        verify(comm, timeout(1000).times(2)).flush();
+        TimeUnit.MILLISECONDS.sleep(100);
+
+        assertThat(reactor.getPendingWrites()).isEmpty();
+    }
+}
@@ -6,8 +6,13 @@ import org.mockito.ArgumentCaptor;
 import pl.mrugames.nucleus.server.client.Client;
 import pl.mrugames.nucleus.server.client.ClientWorker;
 import pl.mrugames.nucleus.server.client.Comm;
+import pl.mrugames.nucleus.server.client.RequestExecutionMode;
 
 import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
 
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -20,6 +25,8 @@ class ClientRequestTaskSpec {
     private Comm comm;
     private ClientWorker<Object, Object> worker;
     private TaskExecutor taskExecutor;
+    private Queue<Object> mailbox;
+    private AtomicBoolean mailboxOwned;
 
     @BeforeEach
     @SuppressWarnings("unchecked")
@@ -97,4 +104,121 @@ class ClientRequestTaskSpec {
 
         verify(requestExecuteTask).call();
     }
+
+    @Test
+    void givenSerialMode_whenCall_thenExecuteFramesInOrderWithoutSubmittingThem() throws Exception {
+        givenSerialMode();
+        doReturn(true, true, true, false).when(comm).canRead();
+        doReturn("1", "2", "3").when(comm).receive();
+
+        task.call();
+
+        ArgumentCaptor<RequestExecuteTask> argumentCaptor = ArgumentCaptor.forClass(RequestExecuteTask.class);
+        verify(task, times(3)).executeLastTask(argumentCaptor.capture());
+
+        assertThat(argumentCaptor.getAllValues()).extracting(RequestExecuteTask::getFrame).containsExactly("1", "2", "3");
+        verify(taskExecutor, never()).submit(any(), anyLong());
+        assertThat(mailbox).isEmpty();
+    }
+
+    @Test
+    void givenSerialModeAndMailboxIsOwnedByAnotherTask_whenCall_thenOnlyEnqueueFrames() throws Exception {
+        givenSerialMode();
+        mailboxOwned.set(true);
+
+        task.call();
+
+        verify(task, never()).executeLastTask(any());
+        assertThat(mailbox).containsExactly("request");
+    }
+
+    @Test
+    void givenSerialMode_whenRequestFails_thenReleaseMailboxAndRethrow() throws Exception {
+        givenSerialMode();
+        doThrow(RuntimeException.class).when(task).executeLastTask(any());
+
+        assertThrows(RuntimeException.class, task::call);
+
+        assertThat(mailboxOwned.get()).isFalse();
+    }
+
+    @Test
+    void givenSerialModeAndDecodingFails_whenCall_thenSubmitShutdownTask() throws Exception {
+        givenSerialMode();
+        doThrow(RuntimeException.class).when(comm).receive();
+
+        assertThrows(RuntimeException.class, task::call);
+
+        verify(taskExecutor).submit(any(ClientShutdownTask.class), anyLong());
+        verify(client.getReadBufferLock()).unlock();
+    }
+
+    @Test
+    void givenSerialMode_whenFramesAreAddedDuringExecution_thenLeaveThemToNewTask() throws Exception {
+        givenSerialMode();
+        doAnswer(a -> {
+            RequestExecuteTask requestExecuteTask = a.getArgument(0);
+            if (requestExecuteTask.getFrame().equals("request")) {
+                mailbox.add("added later");
+            }
+            return null;
+        }).when(task).executeLastTask(any());
+
+        task.call();
+
+        verify(task, times(1)).executeLastTask(any());
+        verify(taskExecutor).submit(any(ClientRequestTask.class), anyLong());
+        assertThat(mailbox).containsExactly("added later");
+        assertThat(mailboxOwned.get()).isFalse();
+    }
+
+    @Test
+    void whenCreate_thenCountRequestTask() {
+        verify(client).requestTaskCreated();
+    }
+
+    @Test
+    void givenLastRequestTaskAfterEndOfStream_whenCall_thenSubmitShutdownTask() throws Exception {
+        doReturn(false).when(comm).canRead();
+        doReturn(true).when(client).requestTaskFinished();
+
+        task.call();
+
+        verify(taskExecutor).submit(any(ClientShutdownTask.class), anyLong());
+    }
+
+    @Test
+    void givenOtherRequestTasksPending_whenCall_thenDoNotSubmitShutdownTask() throws Exception {
+        doReturn(false).when(comm).canRead();
+
+        task.call();
+
+        verify(client).requestTaskFinished();
+        verify(taskExecutor, never()).submit(any(ClientShutdownTask.class), anyLong());
+    }
+
+    @Test
+    void givenTaskDiscarded_whenCall_thenDoNotReadAndFinishOnlyOnce() throws Exception {
+        task.discard();
+        task.call();
+
+        verify(comm, never()).canRead();
+        verify(client, times(1)).requestTaskFinished();
+    }
+
+    private void givenSerialMode() {
+        doReturn(RequestExecutionMode.SERIAL).when(client).getRequestExecutionMode();
+        mailbox = new ConcurrentLinkedQueue<>();
+        mailboxOwned = new AtomicBoolean();
+
+        doAnswer(a -> mailbox.add(a.getArgument(0))).when(client).addToMailbox(any());
+        doAnswer(a -> mailboxOwned.compareAndSet(false, true)).when(client).tryAcquireMailbox();
+        doAnswer(a -> mailbox.poll()).when(client).pollMailbox();
+        doAnswer(a -> {
+            mailboxOwned.set(false);
+            return null;
+        }).when(client).releaseMailbox();
+        doAnswer(a -> mailbox.size()).when(client).getMailboxSize();
+        doReturn(mock(Lock.class)).when(client).getReadBufferLock();
+    }
 }
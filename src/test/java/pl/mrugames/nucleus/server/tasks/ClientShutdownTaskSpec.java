@@ -2,11 +2,16 @@ package pl.mrugames.nucleus.server.tasks;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+import pl.mrugames.nucleus.server.client.ByteBufferPool;
 import pl.mrugames.nucleus.server.client.Client;
 import pl.mrugames.nucleus.server.client.ClientWorker;
 import pl.mrugames.nucleus.server.client.Comm;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
 
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -18,6 +23,9 @@ class ClientShutdownTaskSpec {
     private ClientWorker clientWorker;
     private Comm comm;
     private AtomicBoolean shutdown;
+    private ByteBufferPool bufferPool;
+    private Lock readBufferLock;
+    private Lock writeBufferLock;
 
     @BeforeEach
     void before() {
@@ -32,6 +40,16 @@ class ClientShutdownTaskSpec {
         shutdown = new AtomicBoolean();
         doReturn(shutdown).when(client).getShutdown();
 
+        bufferPool = mock(ByteBufferPool.class);
+        doReturn(bufferPool).when(client).getBufferPool();
+        doReturn(ByteBuffer.allocate(1)).when(client).getReadBuffer();
+        doReturn(ByteBuffer.allocate(2)).when(client).getWriteBuffer();
+
+        readBufferLock = mock(Lock.class);
+        writeBufferLock = mock(Lock.class);
+        doReturn(readBufferLock).when(client).getReadBufferLock();
+        doReturn(writeBufferLock).when(client).getWriteBufferLock();
+
         task = spy(new ClientShutdownTask(client));
         doNothing().when(task).closeChannel();
     }
@@ -42,6 +60,12 @@ class ClientShutdownTaskSpec {
         verify(clientWorker).onShutdown();
     }
 
+    @Test
+    void whenCall_thenLeaveBroadcastGroups() throws Exception {
+        task.call();
+        verify(client).leaveBroadcastGroups();
+    }
+
     @Test
     void whenCall_thenShutdownChannel() throws Exception {
         task.call();
@@ -81,4 +105,55 @@ class ClientShutdownTaskSpec {
         IllegalStateException e = assertThrows(IllegalStateException.class, task::call);
         assertThat(e.getMessage()).isEqualTo("Client was already shutdown.");
     }
+
+    @Test
+    void givenOnShutdownReturnsObject_whenCall_thenFlushBeforeClosingChannel() throws Exception {
+        doReturn("task").when(clientWorker).onShutdown();
+
+        InOrder inOrder = inOrder(comm, task);
+        task.call();
+
+        inOrder.verify(comm).send("task");
+        inOrder.verify(comm).flush();
+        inOrder.verify(task).closeChannel();
+    }
+
+    @Test
+    void givenFlushThrowsException_whenCall_thenCloseChannel() throws Exception {
+        doThrow(IOException.class).when(comm).flush();
+        task.call();
+        verify(task).closeChannel();
+    }
+
+    @Test
+    void whenCall_thenReleaseBuffersAfterClosingChannel() throws Exception {
+        InOrder inOrder = inOrder(task, readBufferLock, writeBufferLock, comm, bufferPool);
+        task.call();
+
+        inOrder.verify(task).closeChannel();
+        inOrder.verify(readBufferLock).lock();
+        inOrder.verify(writeBufferLock).lock();
+        inOrder.verify(comm).close();
+        inOrder.verify(bufferPool).release(client.getReadBuffer());
+        inOrder.verify(bufferPool).release(client.getWriteBuffer());
+        inOrder.verify(writeBufferLock).unlock();
+        inOrder.verify(readBufferLock).unlock();
+    }
+
+    @Test
+    void givenReadBufferInUse_whenCall_thenDoNotReturnItToPool() throws Exception {
+        doReturn(true).when(comm).isReadBufferInUse();
+
+        task.call();
+
+        verify(bufferPool, never()).release(client.getReadBuffer());
+        verify(bufferPool).release(client.getWriteBuffer());
+    }
+
+    @Test
+    void givenOnShutdownThrowsException_whenCall_thenReleaseBuffers() {
+        doThrow(RuntimeException.class).when(clientWorker).onShutdown();
+        assertThrows(RuntimeException.class, task::call);
+        verify(task).releaseBuffers();
+    }
 }
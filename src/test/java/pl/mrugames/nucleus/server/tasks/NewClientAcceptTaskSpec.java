@@ -20,6 +20,7 @@ class NewClientAcceptTaskSpec {
     private ClientWorker clientWorker;
     private Comm comm;
     private ConnectionWatchdog watchdog;
+    private WriteScheduler writeScheduler;
 
     @SuppressWarnings("unchecked")
     @BeforeEach
@@ -30,6 +31,7 @@ class NewClientAcceptTaskSpec {
         comm = mock(Comm.class);
         clientChannel = mock(SocketChannel.class);
         watchdog = mock(ConnectionWatchdog.class);
+        writeScheduler = mock(WriteScheduler.class);
 
         doReturn(clientWorker).when(client).getClientWorker();
         doReturn(comm).when(client).getComm();
@@ -37,9 +39,9 @@ class NewClientAcceptTaskSpec {
         clientExecutor = mock(TaskExecutor.class);
         doReturn(clientExecutor).when(client).getTaskExecutor();
 
-        doReturn(client).when(clientFactory).create(clientChannel, clientExecutor, watchdog);
+        doReturn(client).when(clientFactory).create(clientChannel, clientExecutor, watchdog, writeScheduler);
 
-        task = spy(new NewClientAcceptTask("Test host", clientFactory, clientChannel, clientExecutor, watchdog));
+        task = spy(new NewClientAcceptTask("Test host", clientFactory, clientChannel, clientExecutor, watchdog, writeScheduler));
         doNothing().when(task).close(clientChannel);
     }
 
@@ -49,7 +51,7 @@ class NewClientAcceptTaskSpec {
 
         Client result = task.call();
 
-        inOrder.verify(clientFactory).create(clientChannel, clientExecutor, watchdog);
+        inOrder.verify(clientFactory).create(clientChannel, clientExecutor, watchdog, writeScheduler);
 
         assertThat(result).isSameAs(client);
     }
@@ -57,7 +59,7 @@ class NewClientAcceptTaskSpec {
     @Test
     void givenFactoryThrowsException_whenCall_thenCloseSocketAndRethrow() throws Exception {
         RuntimeException e = new RuntimeException();
-        doThrow(e).when(clientFactory).create(clientChannel, clientExecutor, watchdog);
+        doThrow(e).when(clientFactory).create(clientChannel, clientExecutor, watchdog, writeScheduler);
 
         RuntimeException thrown = assertThrows(RuntimeException.class, () -> task.call());
 
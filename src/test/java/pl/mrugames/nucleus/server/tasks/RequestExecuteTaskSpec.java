@@ -90,4 +90,65 @@ class RequestExecuteTaskSpec {
         inOrder.verify(comm).send("response");
     }
 
+
+    @Test
+    void whenCall_thenFrameProcessed() throws Exception {
+        task.call();
+        verify(comm).frameProcessed();
+    }
+
+    @Test
+    void givenWorkerThrowsException_whenCall_thenFrameProcessed() {
+        doThrow(RuntimeException.class).when(worker).onRequest("request");
+
+        assertThrows(RuntimeException.class, task::call);
+        verify(comm).frameProcessed();
+    }
+
+    @Test
+    void givenTaskDiscardedBeforeCall_thenFrameProcessedAndWorkerNotCalled() throws Exception {
+        task.discard();
+        task.call();
+
+        verify(comm, times(1)).frameProcessed();
+        verify(worker, never()).onRequest(any());
+    }
+
+    @Test
+    void givenTaskStarted_whenDiscard_thenDoNotMarkFrameProcessedAgain() throws Exception {
+        task.call();
+        task.discard();
+
+        verify(comm, times(1)).frameProcessed();
+    }
+
+    @Test
+    void givenCoalescingWrites_whenCall_thenCorkUntilWorkerReturns() throws Exception {
+        doReturn(true).when(comm).isCoalescingWrites();
+
+        task.call();
+
+        InOrder inOrder = inOrder(comm, worker);
+        inOrder.verify(comm).cork();
+        inOrder.verify(worker).onRequest("request");
+        inOrder.verify(comm).send("response");
+        inOrder.verify(comm).uncork();
+    }
+
+    @Test
+    void givenCoalescingWritesAndWorkerThrowsException_whenCall_thenUncork() {
+        doReturn(true).when(comm).isCoalescingWrites();
+        doThrow(RuntimeException.class).when(worker).onRequest("request");
+
+        assertThrows(RuntimeException.class, task::call);
+        verify(comm).uncork();
+    }
+
+    @Test
+    void givenCoalescingDisabled_whenCall_thenDoNotCork() throws Exception {
+        task.call();
+
+        verify(comm, never()).cork();
+        verify(comm, never()).uncork();
+    }
 }
@@ -6,8 +6,11 @@ import org.junit.jupiter.api.Test;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CompletionService;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.*;
 
 class TaskExecutorSpec {
@@ -34,9 +37,37 @@ class TaskExecutorSpec {
     @Test
     void whenSubmitTask_thenSubmitItToWatchdog() {
         Future<?> submit = taskExecutor.submit(task, timeout);
-        verify(taskWatchdog).submit(response, timeout);
+        verify(taskWatchdog).submit(response, timeout, TimeUnit.SECONDS, null);
 
         assertThat(submit).isSameAs(response);
     }
 
+    @Test
+    void whenSubmitTaskWithTimeUnit_thenSubmitItToWatchdog() {
+        Future<?> submit = taskExecutor.submit(task, 250, TimeUnit.MILLISECONDS);
+        verify(taskWatchdog).submit(response, 250, TimeUnit.MILLISECONDS, null);
+
+        assertThat(submit).isSameAs(response);
+    }
+
+    @Test
+    void whenSubmitDiscardableTask_thenPassItToWatchdog() {
+        RequestExecuteTask discardable = mock(RequestExecuteTask.class);
+        doReturn(response).when(completionService).submit(discardable);
+
+        taskExecutor.submit(discardable, timeout);
+
+        verify(taskWatchdog).submit(response, timeout, TimeUnit.SECONDS, discardable);
+    }
+
+    @Test
+    void givenTaskRejected_whenSubmit_thenDiscardItAndRethrow() {
+        RequestExecuteTask discardable = mock(RequestExecuteTask.class);
+        doThrow(RejectedExecutionException.class).when(completionService).submit(discardable);
+
+        assertThrows(RejectedExecutionException.class, () -> taskExecutor.submit(discardable, timeout));
+
+        verify(discardable).discard();
+        verifyZeroInteractions(taskWatchdog);
+    }
 }
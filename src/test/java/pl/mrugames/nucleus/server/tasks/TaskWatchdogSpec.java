@@ -8,7 +8,9 @@ import pl.mrugames.nucleus.server.Metrics;
 
 import java.time.Instant;
 import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.AssertionsForInterfaceTypes.assertThat;
 import static org.mockito.ArgumentMatchers.any;
@@ -22,7 +24,7 @@ class TaskWatchdogSpec {
     @BeforeEach
     void before() {
         completionService = mock(CompletionService.class);
-        watchdog = spy(new TaskWatchdog(completionService));
+        watchdog = spy(new TaskWatchdog(completionService, 1, 8));
     }
 
     @AfterEach
@@ -47,58 +49,171 @@ class TaskWatchdogSpec {
 
         assertThat(watchdog.tasks).hasSize(1);
 
-        TaskData taskData = watchdog.tasks.get(0);
+        TaskData taskData = watchdog.tasks.get(future);
 
         assertThat(taskData.getResult()).isSameAs(future);
         assertThat(taskData.getSubmitted()).isBetween(before, after);
-        assertThat(taskData.getTimeoutSeconds()).isEqualTo(10);
+        assertThat(taskData.getTimeoutMillis()).isEqualTo(10000);
+        assertThat(watchdog.timingWheel.size()).isEqualTo(1);
     }
 
     @Test
-    void shouldProperlyCalculateSecondsToTimeout() {
-        Instant submitted = Instant.now();
-        Instant now = submitted.plusSeconds(5);
+    void whenSubmitTaskWithMillis_thenKeepMillisecondResolution() {
+        Future future = mock(Future.class);
+
+        watchdog.submit(future, 250, TimeUnit.MILLISECONDS);
+
+        assertThat(watchdog.tasks.get(future).getTimeoutMillis()).isEqualTo(250);
+    }
+
+    @Test
+    void givenTaskIsDoneAlready_whenSubmit_thenRemoveItImmediately() {
+        Future future = mock(Future.class);
+        doReturn(true).when(future).isDone();
+
+        watchdog.submit(future, 10);
+
+        assertThat(watchdog.tasks).isEmpty();
+        assertThat(watchdog.timingWheel.size()).isEqualTo(0);
+        assertThat(counter("finished_tasks")).isEqualTo(1);
+    }
+
+    @Test
+    void whenRemoveDone_thenRemoveTaskAndCancelItsTimeout() {
+        Future future = mock(Future.class);
+        watchdog.submit(future, 10);
+
+        watchdog.removeDone(future);
 
-        assertThat(watchdog.getSecondsToTimeout(submitted, now, 15)).isEqualTo(10);
-        assertThat(watchdog.getSecondsToTimeout(submitted, now, 10)).isEqualTo(5);
-        assertThat(watchdog.getSecondsToTimeout(submitted, now, 5)).isEqualTo(0);
+        assertThat(watchdog.tasks).isEmpty();
+        assertThat(watchdog.timingWheel.size()).isEqualTo(0);
+        assertThat(counter("finished_tasks")).isEqualTo(1);
     }
 
     @Test
-    void givenTimeoutPassedSecondAgo_whenGetSecondsToTimeout_thenReturnZero() {
-        Instant submitted = Instant.now();
-        Instant now = submitted.plusSeconds(5);
+    void givenTaskFailed_whenRemoveDone_thenIncrementFailedTasks() throws ExecutionException, InterruptedException {
+        Future future = mock(Future.class);
+        doThrow(ExecutionException.class).when(future).get();
+        watchdog.submit(future, 10);
 
-        assertThat(watchdog.getSecondsToTimeout(submitted, now, 4)).isEqualTo(0);
+        watchdog.removeDone(future);
+
+        assertThat(counter("failed_tasks")).isEqualTo(1);
+        assertThat(counter("finished_tasks")).isEqualTo(0);
     }
 
     @Test
-    void givenThreeTasksInWatchdog_whenGetNextPossibleTimeout_thenReturnSoonestValue() {
-        watchdog.tasks.add(mock(TaskData.class));
-        watchdog.tasks.add(mock(TaskData.class));
-        watchdog.tasks.add(mock(TaskData.class));
-        watchdog.tasks.add(mock(TaskData.class));
-        watchdog.tasks.add(mock(TaskData.class));
-        watchdog.tasks.add(mock(TaskData.class));
-        doReturn(10L, 20L, 15L, 5L, 8L, 12L).when(watchdog).getSecondsToTimeout(any(), any(), anyLong());
+    void givenTaskIsNotWatched_whenRemoveDone_thenIgnoreIt() {
+        watchdog.removeDone(mock(Future.class));
 
-        assertThat(watchdog.getNextPossibleTimeout()).isEqualTo(5L);
+        assertThat(counter("finished_tasks")).isEqualTo(0);
+        assertThat(counter("failed_tasks")).isEqualTo(0);
     }
 
     @Test
-    void givenNoTasks_whenGetNextPossibleTimeout_thenReturnZero() {
-        assertThat(watchdog.getNextPossibleTimeout()).isEqualTo(0L);
+    void givenTaskCancelled_whenRemoveTimedOut_thenIncrementTimedOutTasks() {
+        Future future = mock(Future.class);
+        doReturn(true).when(future).cancel(true);
+        watchdog.submit(future, 10);
+
+        watchdog.removeTimedOut(watchdog.tasks.get(future));
+
+        verify(future).cancel(true);
+        assertThat(watchdog.tasks).isEmpty();
+        assertThat(counter("timed_out_tasks")).isEqualTo(1);
     }
 
     @Test
-    void givenGetSecondsToTimeoutReturnsZero_whenIsTimeout_thenTrue() {
-        doReturn(0L).when(watchdog).getSecondsToTimeout(any(), any(), anyLong());
-        assertThat(watchdog.isTimeout(Instant.now(), Instant.now(), 0)).isTrue();
+    void givenDiscardableTaskCancelled_whenRemoveTimedOut_thenDiscardIt() {
+        Future future = mock(Future.class);
+        DiscardableTask discardable = mock(DiscardableTask.class);
+        doReturn(true).when(future).cancel(true);
+        watchdog.submit(future, 10, TimeUnit.SECONDS, discardable);
+
+        watchdog.removeTimedOut(watchdog.tasks.get(future));
+
+        verify(discardable).discard();
     }
 
     @Test
-    void givenGetSecondsToTimeoutReturnsPositiveNumber_whenIsTimeout_thenTrue() {
-        doReturn(1L).when(watchdog).getSecondsToTimeout(any(), any(), anyLong());
-        assertThat(watchdog.isTimeout(Instant.now(), Instant.now(), 0)).isFalse();
+    void givenDiscardableTaskFinishedBeforeCancel_whenRemoveTimedOut_thenDoNotDiscardIt() {
+        Future future = mock(Future.class);
+        DiscardableTask discardable = mock(DiscardableTask.class);
+        doReturn(false).when(future).cancel(true);
+        watchdog.submit(future, 10, TimeUnit.SECONDS, discardable);
+        doReturn(true).when(future).isDone();
+
+        watchdog.removeTimedOut(watchdog.tasks.get(future));
+
+        verify(discardable, never()).discard();
+    }
+
+    @Test
+    void givenTaskFinishedBeforeCancel_whenRemoveTimedOut_thenIncrementFinishedTasks() {
+        Future future = mock(Future.class);
+        doReturn(false).when(future).cancel(true);
+        watchdog.submit(future, 10);
+        doReturn(true).when(future).isDone();
+
+        watchdog.removeTimedOut(watchdog.tasks.get(future));
+
+        assertThat(counter("finished_tasks")).isEqualTo(1);
+        assertThat(counter("timed_out_tasks")).isEqualTo(0);
+    }
+
+    @Test
+    void givenTaskRemovedAlready_whenRemoveTimedOut_thenDoNotCancelIt() {
+        Future future = mock(Future.class);
+        TaskData taskData = new TaskData(future, Instant.now(), 10);
+
+        watchdog.removeTimedOut(taskData);
+
+        verify(future, never()).cancel(anyBoolean());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void givenCompletionServiceReturnsFinishedTasks_whenCycle_thenRemoveThemAll() throws InterruptedException {
+        Future future1 = mock(Future.class);
+        Future future2 = mock(Future.class);
+        watchdog.submit(future1, 10);
+        watchdog.submit(future2, 10);
+
+        doReturn(future1).when(completionService).poll(anyLong(), any());
+        doReturn(future2, (Future) null).when(completionService).poll();
+
+        watchdog.cycle();
+
+        verify(watchdog).removeDone(future1);
+        verify(watchdog).removeDone(future2);
+        assertThat(watchdog.tasks).isEmpty();
+    }
+
+    @Test
+    void givenTimeoutPassed_whenCycle_thenRemoveTimedOut() throws InterruptedException {
+        Future future = mock(Future.class);
+        doReturn(true).when(future).cancel(true);
+        watchdog.submit(future, 5, TimeUnit.MILLISECONDS);
+        TaskData taskData = watchdog.tasks.get(future);
+
+        TimeUnit.MILLISECONDS.sleep(10);
+        watchdog.cycle();
+
+        verify(watchdog).removeTimedOut(taskData);
+        assertThat(watchdog.tasks).isEmpty();
+    }
+
+    @Test
+    void givenTimeoutNotPassed_whenCycle_thenDoNotRemoveTimedOut() throws InterruptedException {
+        watchdog.submit(mock(Future.class), 10);
+
+        watchdog.cycle();
+
+        verify(watchdog, never()).removeTimedOut(any());
+        assertThat(watchdog.tasks).hasSize(1);
+    }
+
+    private long counter(String name) {
+        return Metrics.getRegistry().counter("pl.mrugames.nucleus.server.tasks.TaskWatchdog." + name).getCount();
     }
 }
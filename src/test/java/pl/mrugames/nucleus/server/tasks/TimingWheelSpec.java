@@ -0,0 +1,139 @@
+package pl.mrugames.nucleus.server.tasks;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelSpec {
+    private TimingWheel<String> wheel;
+    private List<String> expired;
+
+    @BeforeEach
+    void before() {
+        wheel = new TimingWheel<>(10, TimeUnit.MILLISECONDS, 4);
+        expired = new LinkedList<>();
+    }
+
+    @Test
+    void givenInvalidTick_whenCreate_thenException() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new TimingWheel<>(0, TimeUnit.MILLISECONDS, 4));
+        assertThat(e.getMessage()).isEqualTo("Tick duration must be greater than 0, got: 0");
+    }
+
+    @Test
+    void givenInvalidWheelSize_whenCreate_thenException() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new TimingWheel<>(1, TimeUnit.MILLISECONDS, 0));
+        assertThat(e.getMessage()).isEqualTo("Ticks per wheel must be in range (0, 2^30], got: 0");
+    }
+
+    @Test
+    void whenSchedule_thenIncrementSize() {
+        wheel.schedule("a", 1, TimeUnit.SECONDS);
+        wheel.schedule("b", 1, TimeUnit.SECONDS);
+
+        assertThat(wheel.size()).isEqualTo(2);
+    }
+
+    @Test
+    void givenDeadlineNotPassed_whenExpire_thenDoNotExpire() {
+        wheel.schedule("a", 1, TimeUnit.SECONDS);
+
+        wheel.expire(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(900), expired::add);
+
+        assertThat(expired).isEmpty();
+        assertThat(wheel.size()).isEqualTo(1);
+    }
+
+    @Test
+    void givenDeadlinePassed_whenExpire_thenPassItemToConsumer() {
+        TimingWheel.Timeout<String> timeout = wheel.schedule("a", 20, TimeUnit.MILLISECONDS);
+
+        wheel.expire(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(40), expired::add);
+
+        assertThat(expired).containsExactly("a");
+        assertThat(wheel.size()).isEqualTo(0);
+        assertTrue(timeout.isExpired());
+    }
+
+    @Test
+    void givenDeadlineIsFewRotationsAway_whenExpire_thenWaitForAllRotations() {
+        wheel.schedule("a", 100, TimeUnit.MILLISECONDS); // 10 ticks, 4 ticks per wheel
+        long now = System.nanoTime();
+
+        for (int i = 1; i <= 8; ++i) {
+            wheel.expire(now + TimeUnit.MILLISECONDS.toNanos(i * 10), expired::add);
+        }
+
+        assertThat(expired).isEmpty();
+
+        wheel.expire(now + TimeUnit.MILLISECONDS.toNanos(130), expired::add);
+
+        assertThat(expired).containsExactly("a");
+    }
+
+    @Test
+    void whenExpire_thenExpireOnlyPassedDeadlines() {
+        wheel.schedule("a", 10, TimeUnit.MILLISECONDS);
+        wheel.schedule("b", 50, TimeUnit.MILLISECONDS);
+        wheel.schedule("c", 500, TimeUnit.MILLISECONDS);
+
+        wheel.expire(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(70), expired::add);
+
+        assertThat(expired).containsExactly("a", "b");
+        assertThat(wheel.size()).isEqualTo(1);
+    }
+
+    @Test
+    void givenTimeoutCancelled_whenExpire_thenDoNotExpireIt() {
+        TimingWheel.Timeout<String> timeout = wheel.schedule("a", 10, TimeUnit.MILLISECONDS);
+
+        assertTrue(timeout.cancel());
+        wheel.expire(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50), expired::add);
+
+        assertThat(expired).isEmpty();
+        assertThat(wheel.size()).isEqualTo(0);
+        assertTrue(timeout.isCancelled());
+    }
+
+    @Test
+    void givenTimeoutIsInBucket_whenCancel_thenRemoveItFromBucket() {
+        TimingWheel.Timeout<String> a = wheel.schedule("a", 10, TimeUnit.MILLISECONDS);
+        wheel.schedule("b", 10, TimeUnit.MILLISECONDS);
+        wheel.expire(System.nanoTime(), expired::add); // transfers timeouts to the buckets
+
+        a.cancel();
+        wheel.expire(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50), expired::add);
+
+        assertThat(expired).containsExactly("b");
+    }
+
+    @Test
+    void givenTimeoutExpired_whenCancel_thenFalse() {
+        TimingWheel.Timeout<String> timeout = wheel.schedule("a", 0, TimeUnit.MILLISECONDS);
+        wheel.expire(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20), expired::add);
+
+        assertFalse(timeout.cancel());
+        assertThat(wheel.size()).isEqualTo(0);
+    }
+
+    @Test
+    void givenConsumerThrowsException_whenExpire_thenExpireOtherItems() {
+        wheel.schedule("a", 0, TimeUnit.MILLISECONDS);
+        wheel.schedule("b", 0, TimeUnit.MILLISECONDS);
+
+        wheel.expire(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(20), item -> {
+            expired.add(item);
+            throw new RuntimeException();
+        });
+
+        assertThat(expired).containsExactly("a", "b");
+    }
+}
@@ -0,0 +1,147 @@
+package pl.mrugames.nucleus.server.websocket;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+class PerMessageDeflateExtensionSpec {
+    private PerMessageDeflateExtension extension;
+
+    @BeforeEach
+    void before() {
+        extension = new PerMessageDeflateExtension();
+    }
+
+    @Test
+    void givenInvalidCompressionLevel_whenCreate_thenException() {
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> new PerMessageDeflateExtension(10, true, 0));
+        assertThat(e.getMessage()).isEqualTo("Invalid compression level: 10");
+    }
+
+    @Test
+    void givenNoOffer_whenNegotiate_thenNull() {
+        assertThat(extension.negotiate(null)).isNull();
+        assertThat(extension.negotiate("x-webkit-deflate-frame")).isNull();
+    }
+
+    @Test
+    void givenPlainOffer_whenNegotiate_thenAcceptWithContextTakeover() {
+        PerMessageDeflate deflate = extension.negotiate("permessage-deflate");
+
+        assertThat(deflate.getResponse()).isEqualTo("permessage-deflate");
+        assertThat(deflate.isServerContextTakeover()).isTrue();
+        assertThat(deflate.isClientContextTakeover()).isTrue();
+    }
+
+    @Test
+    void givenClientRequestsNoContextTakeover_whenNegotiate_thenAcceptIt() {
+        PerMessageDeflate deflate = extension.negotiate("permessage-deflate; server_no_context_takeover; client_no_context_takeover");
+
+        assertThat(deflate.getResponse()).isEqualTo("permessage-deflate; server_no_context_takeover; client_no_context_takeover");
+    }
+
+    @Test
+    void givenContextTakeoverDisabled_whenNegotiate_thenDisableItOnBothSides() {
+        extension = new PerMessageDeflateExtension(Deflater.BEST_SPEED, false, 0);
+
+        PerMessageDeflate deflate = extension.negotiate("permessage-deflate; client_max_window_bits");
+
+        assertThat(deflate.getResponse()).isEqualTo("permessage-deflate; server_no_context_takeover; client_no_context_takeover");
+    }
+
+    @Test
+    void givenSmallServerWindowRequested_whenNegotiate_thenTakeNextOffer() {
+        PerMessageDeflate deflate = extension.negotiate("permessage-deflate; server_max_window_bits=10, permessage-deflate; server_max_window_bits=\"15\"");
+
+        assertThat(deflate).isNotNull();
+        assertThat(deflate.getResponse()).isEqualTo("permessage-deflate");
+    }
+
+    @Test
+    void givenInvalidOffers_whenNegotiate_thenNull() {
+        assertThat(extension.negotiate("permessage-deflate; server_max_window_bits")).isNull();
+        assertThat(extension.negotiate("permessage-deflate; unknown")).isNull();
+        assertThat(extension.negotiate("permessage-deflate; server_no_context_takeover; server_no_context_takeover")).isNull();
+    }
+
+    @Test
+    void givenNoContextTakeover_whenCompressAndDecompress_thenReturnCodersToPool() throws Exception {
+        extension = new PerMessageDeflateExtension(Deflater.DEFAULT_COMPRESSION, false, 0);
+        PerMessageDeflate deflate = extension.negotiate("permessage-deflate");
+
+        byte[] compressed = deflate.compress("Hello".getBytes());
+        deflate.decompress(compressed, true, 100);
+
+        assertThat(extension.pooledDeflaters()).isEqualTo(1);
+        assertThat(extension.pooledInflaters()).isEqualTo(1);
+    }
+
+    @Test
+    void givenContextTakeover_whenCompressAndDecompress_thenKeepCodersInConnection() throws Exception {
+        PerMessageDeflate deflate = extension.negotiate("permessage-deflate");
+
+        byte[] compressed = deflate.compress("Hello".getBytes());
+        deflate.decompress(compressed, true, 100);
+
+        assertThat(extension.pooledDeflaters()).isEqualTo(0);
+        assertThat(extension.pooledInflaters()).isEqualTo(0);
+    }
+
+    @Test
+    void givenContextTakeover_whenClose_thenReturnCodersToPoolOnce() throws Exception {
+        PerMessageDeflate deflate = extension.negotiate("permessage-deflate");
+
+        byte[] compressed = deflate.compress("Hello".getBytes());
+        deflate.decompress(compressed, true, 100);
+
+        deflate.close();
+        deflate.close();
+
+        assertThat(extension.pooledDeflaters()).isEqualTo(1);
+        assertThat(extension.pooledInflaters()).isEqualTo(1);
+    }
+
+    @Test
+    void givenClosed_whenCompress_thenDoNotKeepDeflater() {
+        PerMessageDeflate deflate = extension.negotiate("permessage-deflate");
+        deflate.close();
+
+        deflate.compress("Hello".getBytes());
+
+        assertThat(extension.pooledDeflaters()).isEqualTo(1);
+    }
+
+    @Test
+    void givenPoolIsFull_whenRelease_thenEndSurplusCoders() {
+        extension = new PerMessageDeflateExtension(Deflater.DEFAULT_COMPRESSION, true, 0, 1);
+        Deflater pooledDeflater = mock(Deflater.class);
+        Deflater surplusDeflater = mock(Deflater.class);
+        Inflater pooledInflater = mock(Inflater.class);
+        Inflater surplusInflater = mock(Inflater.class);
+
+        extension.releaseDeflater(pooledDeflater);
+        extension.releaseDeflater(surplusDeflater);
+        extension.releaseInflater(pooledInflater);
+        extension.releaseInflater(surplusInflater);
+
+        verify(pooledDeflater, never()).end();
+        verify(surplusDeflater).end();
+        verify(pooledInflater, never()).end();
+        verify(surplusInflater).end();
+        assertThat(extension.pooledDeflaters()).isEqualTo(1);
+        assertThat(extension.pooledInflaters()).isEqualTo(1);
+    }
+
+    @Test
+    void givenNegativeMaxPooled_whenCreate_thenException() {
+        assertThrows(IllegalArgumentException.class, () -> new PerMessageDeflateExtension(Deflater.DEFAULT_COMPRESSION, true, 0, -1));
+    }
+}
@@ -0,0 +1,78 @@
+package pl.mrugames.nucleus.server.websocket;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class PerMessageDeflateSpec {
+    private final byte[] hello = "Hello".getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void whenCompress_thenOmitEmptyBlockAtTheEnd() {
+        PerMessageDeflate deflate = new PerMessageDeflateExtension().negotiate("permessage-deflate; server_no_context_takeover");
+
+        // example from RFC 7692, section 7.2.3.1
+        assertThat(deflate.compress(hello)).containsExactly(0xF2, 0x48, 0xCD, 0xC9, 0xC9, 0x07, 0x00);
+    }
+
+    @Test
+    void givenContextTakeover_whenCompressSameMessageTwice_thenSecondIsShorter() {
+        PerMessageDeflate deflate = new PerMessageDeflateExtension().negotiate("permessage-deflate");
+
+        byte[] first = deflate.compress(hello);
+        byte[] second = deflate.compress(hello);
+
+        // example from RFC 7692, section 7.2.3.2
+        assertThat(second).containsExactly(0xF2, 0x00, 0x11, 0x00, 0x00);
+        assertThat(second.length).isLessThan(first.length);
+    }
+
+    @Test
+    void givenNoContextTakeover_whenCompressSameMessageTwice_thenOutputIsTheSame() {
+        PerMessageDeflate deflate = new PerMessageDeflateExtension().negotiate("permessage-deflate; server_no_context_takeover");
+
+        assertThat(deflate.compress(hello)).isEqualTo(deflate.compress(hello));
+    }
+
+    @Test
+    void givenMessageBelowThreshold_whenShouldCompress_thenFalse() {
+        PerMessageDeflate deflate = new PerMessageDeflateExtension(6, true, 10).negotiate("permessage-deflate");
+
+        assertThat(deflate.shouldCompress(hello)).isFalse();
+        assertThat(deflate.shouldCompress(new byte[10])).isTrue();
+    }
+
+    @Test
+    void givenFragments_whenDecompress_thenReturnDataOfEachFragment() throws Exception {
+        PerMessageDeflate deflate = new PerMessageDeflateExtension().negotiate("permessage-deflate");
+
+        byte[] first = deflate.decompress(new byte[]{(byte) 0xF2, 0x48, (byte) 0xCD}, false, 100);
+        byte[] second = deflate.decompress(new byte[]{(byte) 0xC9, (byte) 0xC9, 0x07, 0x00}, true, 100);
+
+        assertThat(new String(first, StandardCharsets.UTF_8) + new String(second, StandardCharsets.UTF_8)).isEqualTo("Hello");
+    }
+
+    @Test
+    void givenBigMessage_whenCompressAndDecompress_thenReturnTheSame() throws Exception {
+        PerMessageDeflate server = new PerMessageDeflateExtension().negotiate("permessage-deflate");
+        PerMessageDeflate client = new PerMessageDeflateExtension().negotiate("permessage-deflate");
+
+        byte[] message = new String(new char[10_000]).replace("\0", "{\"id\":1}").getBytes(StandardCharsets.UTF_8);
+
+        for (int i = 0; i < 3; ++i) {
+            assertThat(client.decompress(server.compress(message), true, message.length)).isEqualTo(message);
+        }
+    }
+
+    @Test
+    void givenDecompressedDataTooLong_whenDecompress_thenException() {
+        PerMessageDeflate deflate = new PerMessageDeflateExtension().negotiate("permessage-deflate");
+        byte[] compressed = deflate.compress(new byte[100_000]);
+
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> deflate.decompress(compressed, true, 1000));
+        assertThat(e.getMessage()).startsWith("Message length exceeds maximum allowed size.");
+    }
+}
@@ -47,4 +47,27 @@ class WebSocketHandshakeParserSpec {
     void givenRequest_whenParse_thenReturnResponse() {
         assertThat(parser.parse(request)).isEqualTo(expectedResponse);
     }
+
+    @Test
+    void givenExtensions_whenParse_thenAddExtensionsHeader() {
+        assertThat(parser.parse(request, "permessage-deflate")).isEqualTo("HTTP/1.1 101 Switching Protocols\r\n" +
+                "Upgrade: websocket\r\n" +
+                "Connection: Upgrade\r\n" +
+                "Sec-WebSocket-Accept: " + expectedResponseKey + "\r\n" +
+                "Sec-WebSocket-Extensions: permessage-deflate\r\n\r\n");
+    }
+
+    @Test
+    void givenRequestWithExtensions_whenFindExtensions_thenJoinAllHeaders() {
+        String withExtensions = request + "\r\n" +
+                "Sec-WebSocket-Extensions: permessage-deflate; client_max_window_bits \r\n" +
+                "sec-websocket-extensions: x-webkit-deflate-frame\r\n\r\n";
+
+        assertThat(parser.findExtensions(withExtensions)).isEqualTo("permessage-deflate; client_max_window_bits, x-webkit-deflate-frame");
+    }
+
+    @Test
+    void givenRequestWithoutExtensions_whenFindExtensions_thenNull() {
+        assertThat(parser.findExtensions(request)).isNull();
+    }
 }
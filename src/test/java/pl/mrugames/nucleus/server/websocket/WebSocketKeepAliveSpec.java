@@ -0,0 +1,83 @@
+package pl.mrugames.nucleus.server.websocket;
+
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.MetricFilter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import pl.mrugames.nucleus.server.Metrics;
+import pl.mrugames.nucleus.server.client.Comm;
+import pl.mrugames.nucleus.server.client.frames.WebSocketFrame;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+class WebSocketKeepAliveSpec {
+    private WebSocketKeepAlive keepAlive;
+    private Comm comm;
+
+    @BeforeEach
+    void before() {
+        keepAlive = new WebSocketKeepAlive();
+        comm = mock(Comm.class);
+    }
+
+    @AfterEach
+    void after() {
+        Metrics.getRegistry().removeMatching(MetricFilter.ALL);
+    }
+
+    @Test
+    void whenCreatePing_thenPayloadIsSendTime() {
+        WebSocketFrame ping = (WebSocketFrame) keepAlive.createPing(123456789L);
+
+        assertThat(ping.getFrameType()).isEqualTo(WebSocketFrame.FrameType.PING);
+        assertThat(ByteBuffer.wrap(ping.getPayload()).getLong()).isEqualTo(123456789L);
+    }
+
+    @Test
+    void givenPing_whenHandle_thenReplyWithPongWithSamePayload() throws Exception {
+        byte[] payload = {1, 2, 3};
+
+        assertTrue(keepAlive.handle(new WebSocketFrame(WebSocketFrame.FrameType.PING, payload), comm));
+
+        ArgumentCaptor<WebSocketFrame> captor = ArgumentCaptor.forClass(WebSocketFrame.class);
+        verify(comm).sendRaw(captor.capture());
+        assertThat(captor.getValue().getFrameType()).isEqualTo(WebSocketFrame.FrameType.PONG);
+        assertThat(captor.getValue().getPayload()).containsExactly(payload);
+    }
+
+    @Test
+    void givenPongForOurPing_whenHandle_thenRecordRoundTripTime() throws Exception {
+        long sent = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(5);
+        WebSocketFrame ping = (WebSocketFrame) keepAlive.createPing(sent);
+
+        assertTrue(keepAlive.handle(new WebSocketFrame(WebSocketFrame.FrameType.PONG, ping.getPayload()), comm));
+
+        Histogram histogram = Metrics.getRegistry().histogram("pl.mrugames.nucleus.server.websocket.WebSocketKeepAlive.round_trip_micros");
+        assertThat(histogram.getCount()).isEqualTo(1);
+        assertThat(histogram.getSnapshot().getMax()).isGreaterThanOrEqualTo(5000);
+        verify(comm, never()).sendRaw(any());
+    }
+
+    @Test
+    void givenUnsolicitedPong_whenHandle_thenConsumeItWithoutRecording() throws Exception {
+        assertTrue(keepAlive.handle(new WebSocketFrame(WebSocketFrame.FrameType.PONG, new byte[0]), comm));
+
+        assertThat(Metrics.getRegistry().histogram("pl.mrugames.nucleus.server.websocket.WebSocketKeepAlive.round_trip_micros").getCount()).isEqualTo(0);
+    }
+
+    @Test
+    void givenDataFrame_whenHandle_thenFalse() throws Exception {
+        assertFalse(keepAlive.handle(new WebSocketFrame(WebSocketFrame.FrameType.TEXT, new byte[0]), comm));
+        assertFalse(keepAlive.handle("not a frame", comm));
+
+        verifyZeroInteractions(comm);
+    }
+}